@@ -5,15 +5,16 @@
 extern const unsigned char blob[];
 extern const int32_t blob_size;
 
-JNIEXPORT jbyteArray JNICALL Java_com_termux_app_TermuxInstaller_getZip(JNIEnv *env, jclass clazz) {
+/*
+ * Return a direct ByteBuffer over the bootstrap zip embedded in the library, so that it can be
+ * read without copying it to the java heap. The blob is in a read-only segment, so the java side
+ * must not write to the buffer.
+ */
+JNIEXPORT jobject JNICALL Java_com_termux_app_TermuxInstaller_getZipBuffer(JNIEnv *env, jclass clazz) {
     (void)clazz;
     if (blob_size <= 0) {
         return NULL;
     }
 
-    jbyteArray ret = (*env)->NewByteArray(env, (jsize)blob_size);
-    if (ret == NULL) return NULL;
-
-    (*env)->SetByteArrayRegion(env, ret, 0, (jsize)blob_size, (const jbyte *)blob);
-    return ret;
-}
\ No newline at end of file
+    return (*env)->NewDirectByteBuffer(env, (void *)blob, (jlong)blob_size);
+}
@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
 
 import com.termux.R;
@@ -26,11 +27,18 @@ import com.termux.shared.notification.NotificationUtils;
 import com.termux.shared.shell.command.ExecutionCommand;
 import com.termux.shared.shell.command.ExecutionCommand.Runner;
 
+import java.util.ArrayList;
+
 /**
  * A service that receives {@link RUN_COMMAND_SERVICE#ACTION_RUN_COMMAND} intent from third party apps and
  * plugins that contains info on command execution and forwards the extras to {@link TermuxService}
  * for the actual execution.
  *
+ * If the {@link RUN_COMMAND_SERVICE#EXTRA_BATCH_COMMANDS} extra is passed, then all the commands in
+ * it are validated and forwarded to {@link TermuxService} with a single
+ * {@link TERMUX_SERVICE#ACTION_SERVICE_EXECUTE_BATCH} intent instead, and a single result is sent
+ * back for all of them.
+ *
  * Check https://github.com/termux/termux-app/wiki/RUN_COMMAND-Intent for more info.
  */
 public class RunCommandService extends Service {
@@ -79,6 +87,8 @@ public class RunCommandService extends Service {
             return stopService();
         }
 
+        ArrayList<Bundle> batchCommandBundles = intent.getParcelableArrayListExtra(RUN_COMMAND_SERVICE.EXTRA_BATCH_COMMANDS);
+
         String executableExtra = executionCommand.executable = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMAND_PATH, null);
         executionCommand.arguments = IntentUtils.getStringArrayExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_ARGUMENTS, null);
 
@@ -92,9 +102,10 @@ public class RunCommandService extends Service {
         * https://github.com/agnostic-apollo/tudo#passing-arguments-using-run_command-intent
         * https://android.googlesource.com/platform/frameworks/base/+/21bdaf1/cmds/am/src/com/android/commands/am/Am.java#572
         */
+        String commaAlternativeCharsInArguments = null;
         boolean replaceCommaAlternativeCharsInArguments = intent.getBooleanExtra(RUN_COMMAND_SERVICE.EXTRA_REPLACE_COMMA_ALTERNATIVE_CHARS_IN_ARGUMENTS, false);
         if (replaceCommaAlternativeCharsInArguments) {
-            String commaAlternativeCharsInArguments = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMA_ALTERNATIVE_CHARS_IN_ARGUMENTS, null);
+            commaAlternativeCharsInArguments = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMA_ALTERNATIVE_CHARS_IN_ARGUMENTS, null);
             if (commaAlternativeCharsInArguments == null)
                 commaAlternativeCharsInArguments = TermuxConstants.COMMA_ALTERNATIVE;
             // Replace any commaAlternativeCharsInArguments characters with normal commas
@@ -105,20 +116,28 @@ public class RunCommandService extends Service {
         executionCommand.workingDirectory = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_WORKDIR, null);
 
         // If EXTRA_RUNNER is passed, use that, otherwise check EXTRA_BACKGROUND and default to Runner.TERMINAL_SESSION
+        // Batch commands can only be run with Runner.APP_SHELL, which is used as default for them
         executionCommand.runner = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_RUNNER,
-            (intent.getBooleanExtra(RUN_COMMAND_SERVICE.EXTRA_BACKGROUND, false) ? Runner.APP_SHELL.getName() : Runner.TERMINAL_SESSION.getName()));
+            (batchCommandBundles != null || intent.getBooleanExtra(RUN_COMMAND_SERVICE.EXTRA_BACKGROUND, false) ? Runner.APP_SHELL.getName() : Runner.TERMINAL_SESSION.getName()));
         if (Runner.runnerOf(executionCommand.runner) == null) {
             errmsg = this.getString(R.string.error_run_command_service_invalid_execution_command_runner, executionCommand.runner);
             executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), errmsg);
             TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
             return stopService();
         }
+        if (batchCommandBundles != null && !Runner.APP_SHELL.equalsRunner(executionCommand.runner)) {
+            errmsg = this.getString(R.string.error_run_command_service_batch_unsupported_execution_command_runner, executionCommand.runner);
+            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), errmsg);
+            TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
+            return stopService();
+        }
 
         executionCommand.backgroundCustomLogLevel = IntentUtils.getIntegerExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_BACKGROUND_CUSTOM_LOG_LEVEL, null);
         executionCommand.sessionAction = intent.getStringExtra(RUN_COMMAND_SERVICE.EXTRA_SESSION_ACTION);
         executionCommand.shellName = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_SHELL_NAME, null);
         executionCommand.shellCreateMode = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_SHELL_CREATE_MODE, null);
-        executionCommand.commandLabel = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMAND_LABEL, "RUN_COMMAND Execution Intent Command");
+        executionCommand.commandLabel = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMAND_LABEL,
+            batchCommandBundles != null ? "RUN_COMMAND Execution Intent Batch Command" : "RUN_COMMAND Execution Intent Command");
         executionCommand.commandDescription = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMAND_DESCRIPTION, null);
         executionCommand.commandHelp = IntentUtils.getStringExtraIfSet(intent, RUN_COMMAND_SERVICE.EXTRA_COMMAND_HELP, null);
         executionCommand.isPluginExecutionCommand = true;
@@ -146,14 +165,115 @@ public class RunCommandService extends Service {
 
 
 
-        // If executable is null or empty, then exit here instead of getting canonical path which would expand to "/"
-        if (executionCommand.executable == null || executionCommand.executable.isEmpty()) {
-            errmsg  = this.getString(R.string.error_run_command_service_mandatory_extra_missing, RUN_COMMAND_SERVICE.EXTRA_COMMAND_PATH);
-            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), errmsg);
+        if (batchCommandBundles != null)
+            return runBatchCommands(intent, executionCommand, batchCommandBundles, commaAlternativeCharsInArguments);
+
+        error = validateExecutionCommand(executionCommand, executableExtra);
+        if (error != null) {
+            executionCommand.setStateFailed(error);
+            TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
+            return stopService();
+        }
+
+        executionCommand.executableUri = new Uri.Builder().scheme(TERMUX_SERVICE.URI_SCHEME_SERVICE_EXECUTE).path(executionCommand.executable).build();
+
+        Logger.logVerboseExtended(LOG_TAG, executionCommand.toString());
+
+        // Create execution intent with the action TERMUX_SERVICE#ACTION_SERVICE_EXECUTE to be sent to the TERMUX_SERVICE
+        Intent execIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE, executionCommand.executableUri);
+        execIntent.setClass(this, TermuxService.class);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_ARGUMENTS, executionCommand.arguments);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_STDIN, executionCommand.stdin);
+        if (executionCommand.workingDirectory != null && !executionCommand.workingDirectory.isEmpty()) execIntent.putExtra(TERMUX_SERVICE.EXTRA_WORKDIR, executionCommand.workingDirectory);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_RUNNER, executionCommand.runner);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_BACKGROUND_CUSTOM_LOG_LEVEL, DataUtils.getStringFromInteger(executionCommand.backgroundCustomLogLevel, null));
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_SESSION_ACTION, executionCommand.sessionAction);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_SHELL_NAME, executionCommand.shellName);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_SHELL_CREATE_MODE, executionCommand.shellCreateMode);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_LABEL, executionCommand.commandLabel);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_DESCRIPTION, executionCommand.commandDescription);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_HELP, executionCommand.commandHelp);
+        putResultExtras(execIntent, executionCommand);
+
+        return startTermuxService(execIntent);
+    }
+
+    /**
+     * Validate the commands in the {@link RUN_COMMAND_SERVICE#EXTRA_BATCH_COMMANDS} extra and
+     * forward them to {@link TermuxService} with a single {@link TERMUX_SERVICE#ACTION_SERVICE_EXECUTE_BATCH}
+     * intent. If any command is invalid, then none of the commands are run.
+     */
+    private int runBatchCommands(Intent intent, ExecutionCommand executionCommand, ArrayList<Bundle> batchCommandBundles, String commaAlternativeCharsInArguments) {
+        Error error;
+
+        if (batchCommandBundles.isEmpty()) {
+            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), this.getString(R.string.error_run_command_service_mandatory_extra_missing, RUN_COMMAND_SERVICE.EXTRA_BATCH_COMMANDS));
             TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
             return stopService();
         }
 
+        ArrayList<Bundle> execCommandBundles = new ArrayList<>(batchCommandBundles.size());
+        for (int i = 0; i < batchCommandBundles.size(); i++) {
+            Bundle batchCommandBundle = batchCommandBundles.get(i);
+            ExecutionCommand batchExecutionCommand = new ExecutionCommand();
+            String executableExtra = batchExecutionCommand.executable = batchCommandBundle.getString(RUN_COMMAND_SERVICE.EXTRA_COMMAND_PATH);
+            batchExecutionCommand.arguments = batchCommandBundle.getStringArray(RUN_COMMAND_SERVICE.EXTRA_ARGUMENTS);
+            if (commaAlternativeCharsInArguments != null)
+                DataUtils.replaceSubStringsInStringArrayItems(batchExecutionCommand.arguments, commaAlternativeCharsInArguments, TermuxConstants.COMMA_NORMAL);
+            batchExecutionCommand.stdin = batchCommandBundle.getString(RUN_COMMAND_SERVICE.EXTRA_STDIN);
+            batchExecutionCommand.workingDirectory = batchCommandBundle.getString(RUN_COMMAND_SERVICE.EXTRA_WORKDIR);
+            batchExecutionCommand.commandLabel = batchCommandBundle.getString(RUN_COMMAND_SERVICE.EXTRA_COMMAND_LABEL);
+
+            error = validateExecutionCommand(batchExecutionCommand, executableExtra);
+            if (error != null) {
+                executionCommand.setStateFailed(error.getType(), error.getCode(),
+                    this.getString(R.string.error_run_command_service_batch_command_failed, i, error.getMessage()), error.getThrowablesList());
+                TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
+                return stopService();
+            }
+
+            Bundle execCommandBundle = new Bundle();
+            execCommandBundle.putString(TERMUX_SERVICE.EXTRA_BATCH_EXECUTABLE, batchExecutionCommand.executable);
+            execCommandBundle.putStringArray(TERMUX_SERVICE.EXTRA_ARGUMENTS, batchExecutionCommand.arguments);
+            execCommandBundle.putString(TERMUX_SERVICE.EXTRA_STDIN, batchExecutionCommand.stdin);
+            if (batchExecutionCommand.workingDirectory != null && !batchExecutionCommand.workingDirectory.isEmpty()) execCommandBundle.putString(TERMUX_SERVICE.EXTRA_WORKDIR, batchExecutionCommand.workingDirectory);
+            execCommandBundle.putString(TERMUX_SERVICE.EXTRA_COMMAND_LABEL, batchExecutionCommand.commandLabel);
+            execCommandBundles.add(execCommandBundle);
+        }
+
+        Logger.logVerboseExtended(LOG_TAG, executionCommand.toString());
+
+        // Create execution intent with the action TERMUX_SERVICE#ACTION_SERVICE_EXECUTE_BATCH to be sent to the TERMUX_SERVICE
+        Intent execIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH);
+        execIntent.setClass(this, TermuxService.class);
+        execIntent.putParcelableArrayListExtra(TERMUX_SERVICE.EXTRA_BATCH_COMMANDS, execCommandBundles);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_BATCH_SEQUENTIAL, intent.getBooleanExtra(RUN_COMMAND_SERVICE.EXTRA_BATCH_SEQUENTIAL, false));
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_BATCH_FAIL_FAST, intent.getBooleanExtra(RUN_COMMAND_SERVICE.EXTRA_BATCH_FAIL_FAST, false));
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_BACKGROUND_CUSTOM_LOG_LEVEL, DataUtils.getStringFromInteger(executionCommand.backgroundCustomLogLevel, null));
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_LABEL, executionCommand.commandLabel);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_DESCRIPTION, executionCommand.commandDescription);
+        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_HELP, executionCommand.commandHelp);
+        putResultExtras(execIntent, executionCommand);
+
+        return startTermuxService(execIntent);
+    }
+
+    /**
+     * Validate the {@link ExecutionCommand#executable} and {@link ExecutionCommand#workingDirectory}
+     * of the {@link ExecutionCommand} and replace them with their canonical paths.
+     *
+     * @param executionCommand The {@link ExecutionCommand} to validate.
+     * @param executableExtra The executable path originally passed for the command.
+     * @return Returns the {@link Error} if validation failed, otherwise {@code null}.
+     */
+    private Error validateExecutionCommand(ExecutionCommand executionCommand, String executableExtra) {
+        Error error;
+
+        // If executable is null or empty, then exit here instead of getting canonical path which would expand to "/"
+        if (executionCommand.executable == null || executionCommand.executable.isEmpty()) {
+            return new Error(Errno.ERRNO_FAILED.getCode(), this.getString(R.string.error_run_command_service_mandatory_extra_missing, RUN_COMMAND_SERVICE.EXTRA_COMMAND_PATH));
+        }
+
         // Get canonical path of executable
         executionCommand.executable = TermuxFileUtils.getCanonicalPath(executionCommand.executable, null, true);
 
@@ -162,11 +282,8 @@ public class RunCommandService extends Service {
         error = FileUtils.validateRegularFileExistenceAndPermissions("executable", executionCommand.executable, null,
             FileUtils.APP_EXECUTABLE_FILE_PERMISSIONS, true, true,
             false);
-        if (error != null) {
-            executionCommand.setStateFailed(error);
-            TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
-            return stopService();
-        }
+        if (error != null)
+            return error;
 
 
 
@@ -183,11 +300,8 @@ public class RunCommandService extends Service {
             error = TermuxFileUtils.validateDirectoryFileExistenceAndPermissions("working", executionCommand.workingDirectory,
                 true, true, true,
                 false, true);
-            if (error != null) {
-                executionCommand.setStateFailed(error);
-                TermuxPluginUtils.processPluginExecutionCommandError(this, LOG_TAG, executionCommand, false);
-                return stopService();
-            }
+            if (error != null)
+                return error;
         }
 
         // If the executable passed as the extra was an applet for coreutils/busybox, then we must
@@ -200,24 +314,10 @@ public class RunCommandService extends Service {
             executionCommand.executable = executableExtra;
         }
 
-        executionCommand.executableUri = new Uri.Builder().scheme(TERMUX_SERVICE.URI_SCHEME_SERVICE_EXECUTE).path(executionCommand.executable).build();
-
-        Logger.logVerboseExtended(LOG_TAG, executionCommand.toString());
+        return null;
+    }
 
-        // Create execution intent with the action TERMUX_SERVICE#ACTION_SERVICE_EXECUTE to be sent to the TERMUX_SERVICE
-        Intent execIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE, executionCommand.executableUri);
-        execIntent.setClass(this, TermuxService.class);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_ARGUMENTS, executionCommand.arguments);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_STDIN, executionCommand.stdin);
-        if (executionCommand.workingDirectory != null && !executionCommand.workingDirectory.isEmpty()) execIntent.putExtra(TERMUX_SERVICE.EXTRA_WORKDIR, executionCommand.workingDirectory);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_RUNNER, executionCommand.runner);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_BACKGROUND_CUSTOM_LOG_LEVEL, DataUtils.getStringFromInteger(executionCommand.backgroundCustomLogLevel, null));
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_SESSION_ACTION, executionCommand.sessionAction);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_SHELL_NAME, executionCommand.shellName);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_SHELL_CREATE_MODE, executionCommand.shellCreateMode);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_LABEL, executionCommand.commandLabel);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_DESCRIPTION, executionCommand.commandDescription);
-        execIntent.putExtra(TERMUX_SERVICE.EXTRA_COMMAND_HELP, executionCommand.commandHelp);
+    private void putResultExtras(Intent execIntent, ExecutionCommand executionCommand) {
         execIntent.putExtra(TERMUX_SERVICE.EXTRA_PLUGIN_API_HELP, executionCommand.pluginAPIHelp);
         execIntent.putExtra(TERMUX_SERVICE.EXTRA_PENDING_INTENT, executionCommand.resultConfig.resultPendingIntent);
         execIntent.putExtra(TERMUX_SERVICE.EXTRA_RESULT_DIRECTORY, executionCommand.resultConfig.resultDirectoryPath);
@@ -228,7 +328,9 @@ public class RunCommandService extends Service {
             execIntent.putExtra(TERMUX_SERVICE.EXTRA_RESULT_FILE_ERROR_FORMAT, executionCommand.resultConfig.resultFileErrorFormat);
             execIntent.putExtra(TERMUX_SERVICE.EXTRA_RESULT_FILES_SUFFIX, executionCommand.resultConfig.resultFilesSuffix);
         }
+    }
 
+    private int startTermuxService(Intent execIntent) {
         // Start TERMUX_SERVICE and pass it execution intent
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             this.startForegroundService(execIntent);
@@ -43,10 +43,15 @@ import com.termux.shared.termux.crash.TermuxCrashUtils;
 import com.termux.shared.termux.extrakeys.ExtraKeysView;
 import com.termux.shared.termux.settings.preferences.TermuxAppSharedPreferences;
 import com.termux.shared.termux.settings.properties.TermuxAppSharedProperties;
+import com.termux.shared.termux.settings.properties.TermuxPropertyConstants;
+import com.termux.shared.termux.settings.properties.TermuxSharedProperties;
+import com.termux.shared.termux.shell.command.environment.TermuxShellEnvironment;
 import com.termux.terminal.TerminalSession;
 import com.termux.view.TerminalView;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public final class TermuxActivity extends AppCompatActivity implements ServiceConnection {
 
@@ -61,6 +66,9 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
 
     private final BroadcastReceiver mTermuxActivityBroadcastReceiver = new TermuxActivityBroadcastReceiver();
 
+    private final TermuxSharedProperties.OnPropertiesChangedListener mOnPropertiesChangedListener =
+        (properties, changedKeys) -> runOnUiThread(() -> onPropertiesChanged(changedKeys));
+
     private Toast mLastToast;
 
     private boolean mIsVisible;
@@ -68,6 +76,17 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
     private boolean mIsActivityRecreated = false;
     private boolean mIsInvalidState;
 
+    /**
+     * The keys of the properties that {@link #onPropertiesChanged(Set)} applies itself. The terminal
+     * properties are reloaded if any other key changed.
+     */
+    private static final Set<String> ACTIVITY_PROPERTY_KEYS = new HashSet<>(Arrays.asList(
+        TermuxPropertyConstants.KEY_EXTRA_KEYS_TEXT_ALL_CAPS, TermuxPropertyConstants.KEY_TERMINAL_TOOLBAR_HEIGHT_SCALE_FACTOR,
+        TermuxPropertyConstants.KEY_TERMINAL_MARGIN_HORIZONTAL, TermuxPropertyConstants.KEY_TERMINAL_MARGIN_VERTICAL,
+        TermuxPropertyConstants.KEY_NIGHT_MODE, TermuxPropertyConstants.KEY_TERMINAL_CURSOR_BLINK_RATE,
+        TermuxPropertyConstants.KEY_DISABLE_FILE_SHARE_RECEIVER, TermuxPropertyConstants.KEY_DISABLE_FILE_VIEW_RECEIVER,
+        TermuxPropertyConstants.KEY_TERMINAL_FRAME_STATS_OVERLAY, TermuxPropertyConstants.KEY_TERMINAL_LOCAL_ECHO));
+
     private static final String ARG_ACTIVITY_RECREATED = "activity_recreated";
     private static final String LOG_TAG = "TermuxActivity";
 
@@ -133,6 +152,12 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
         mUIManager.onStart();
 
         registerTermuxActivityBroadcastReceiver();
+
+        if (mProperties != null) {
+            mProperties.addOnPropertiesChangedListener(mOnPropertiesChangedListener);
+            // Apply changes made while the activity was stopped, this does not parse the file if unchanged
+            mProperties.loadTermuxPropertiesFromDisk();
+        }
     }
 
     @Override
@@ -144,7 +169,8 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
 
         mTerminalManager.onResume();
 
-        TermuxCrashUtils.notifyAppCrashFromCrashLogFile(this, LOG_TAG);
+        Context context = getApplicationContext();
+        TermuxApplication.runDeferred(() -> TermuxCrashUtils.notifyAppCrashFromCrashLogFile(context, LOG_TAG));
         mIsOnResumeAfterOnCreate = false;
     }
 
@@ -160,6 +186,9 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
         mUIManager.onStop();
 
         unregisterTermuxActivityBroadcastReceiver();
+
+        if (mProperties != null)
+            mProperties.removeOnPropertiesChangedListener(mOnPropertiesChangedListener);
     }
 
     @Override
@@ -340,6 +369,10 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
         mTerminalManager.notifySessionListUpdated();
     }
 
+    public void termuxSessionListNotifySessionUpdated(TerminalSession session) {
+        mTerminalManager.notifySessionUpdated(session);
+    }
+
     public boolean isVisible() {
         return mIsVisible;
     }
@@ -438,6 +471,7 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
     private void reloadActivityStyling(boolean recreateActivity) {
         if (mProperties != null) {
             mProperties.loadTermuxPropertiesFromDisk();
+            TermuxShellEnvironment.invalidateEnvironTemplates();
             mUIManager.reloadActivityStyling(getTerminalToolbarDefaultHeight());
             mTerminalManager.onReloadProperties();
         }
@@ -451,6 +485,52 @@ public final class TermuxActivity extends AppCompatActivity implements ServiceCo
         }
     }
 
+    /**
+     * Apply only the properties that changed after they were reloaded from disk, instead of
+     * reloading all styling like {@link #reloadActivityStyling(boolean)}.
+     */
+    private void onPropertiesChanged(@NonNull Set<String> changedKeys) {
+        if (!mIsVisible || mProperties == null) return;
+        Logger.logDebug(LOG_TAG, "Applying changed properties: " + changedKeys);
+
+        TermuxShellEnvironment.invalidateEnvironTemplates();
+
+        // The window flags and the extra keys are only set when the activity is created
+        if (containsAnyKey(changedKeys, TermuxPropertyConstants.KEY_USE_FULLSCREEN, TermuxPropertyConstants.KEY_USE_FULLSCREEN_WORKAROUND,
+            TermuxPropertyConstants.KEY_EXTRA_KEYS, TermuxPropertyConstants.KEY_EXTRA_KEYS_STYLE)) {
+            reloadActivityStyling(true);
+            return;
+        }
+
+        if (containsAnyKey(changedKeys, TermuxPropertyConstants.KEY_EXTRA_KEYS_TEXT_ALL_CAPS, TermuxPropertyConstants.KEY_TERMINAL_TOOLBAR_HEIGHT_SCALE_FACTOR,
+            TermuxPropertyConstants.KEY_TERMINAL_MARGIN_HORIZONTAL, TermuxPropertyConstants.KEY_TERMINAL_MARGIN_VERTICAL, TermuxPropertyConstants.KEY_NIGHT_MODE))
+            mUIManager.reloadActivityStyling(getTerminalToolbarDefaultHeight());
+
+        if (changedKeys.contains(TermuxPropertyConstants.KEY_TERMINAL_CURSOR_BLINK_RATE))
+            getTermuxTerminalViewClient().setTerminalCursorBlinkerState(true);
+
+        if (changedKeys.contains(TermuxPropertyConstants.KEY_TERMINAL_FRAME_STATS_OVERLAY))
+            getTerminalView().setFrameStatsOverlayEnabled(mProperties.isTerminalFrameStatsOverlayEnabled());
+
+        if (changedKeys.contains(TermuxPropertyConstants.KEY_TERMINAL_LOCAL_ECHO))
+            getTerminalView().setLocalEchoEnabled(mProperties.isTerminalLocalEchoEnabled());
+
+        if (containsAnyKey(changedKeys, TermuxPropertyConstants.KEY_DISABLE_FILE_SHARE_RECEIVER, TermuxPropertyConstants.KEY_DISABLE_FILE_VIEW_RECEIVER))
+            FileReceiverActivity.updateFileReceiverActivityComponentsState(this);
+
+        // Properties like the session shortcuts are applied by reloading the terminal properties,
+        // which is also done for keys not handled above so that they are never silently ignored
+        if (!ACTIVITY_PROPERTY_KEYS.containsAll(changedKeys))
+            mTerminalManager.onReloadProperties();
+    }
+
+    private static boolean containsAnyKey(@NonNull Set<String> changedKeys, String... keys) {
+        for (String key : keys) {
+            if (changedKeys.contains(key)) return true;
+        }
+        return false;
+    }
+
     public static void startTermuxActivity(@NonNull final Context context) {
         ActivityUtils.startActivity(context, newInstance(context));
     }
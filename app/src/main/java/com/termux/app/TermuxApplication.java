@@ -2,9 +2,15 @@ package com.termux.app;
 
 import android.app.Application;
 import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
 
 import com.termux.BuildConfig;
 import com.termux.shared.errors.Error;
+import com.termux.shared.logger.AsyncLogWriter;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.termux.TermuxBootstrap;
 import com.termux.shared.termux.TermuxConstants;
@@ -17,13 +23,71 @@ import com.termux.shared.termux.shell.am.TermuxAmSocketServer;
 import com.termux.shared.termux.shell.TermuxShellManager;
 import com.termux.shared.termux.theme.TermuxThemeUtils;
 
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The app is initialized in two phases so that as little as possible runs before the first frame.
+ *
+ * The critical phase runs on the main thread in {@link #onCreate()} and only sets up what the
+ * activity needs to be shown, like the crash handler, log config, properties and shell manager.
+ *
+ * The deferred phase runs on the {@link #DEFERRED_INIT_EXECUTOR} and checks and creates the termux
+ * files directories, starts the {@link TermuxAmSocketServer}, and initializes the
+ * {@link TermuxShellEnvironment} and writes it to the environment file. Components that need any of
+ * that must not use it before the deferred phase has finished. Work on the main thread must be
+ * queued after it with {@link #runDeferred(Runnable)} instead of blocking, like {@link TermuxService}
+ * does before it starts shells, and only background threads may call {@link #awaitDeferredInit()}.
+ * Other startup work that is not needed for the first frame can be queued with
+ * {@link #runDeferred(Runnable)} as well.
+ *
+ * Both phases are traced with {@link Trace} sections and their times and the time to the first
+ * terminal output are logged, relative to the start of the process.
+ */
 public class TermuxApplication extends Application {
 
+    /** Executor for the deferred init phase and startup work queued after it. */
+    private static final ExecutorService DEFERRED_INIT_EXECUTOR =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "TermuxDeferredInit"));
+
+    /** Released when the deferred init phase has finished. */
+    private static final CountDownLatch DEFERRED_INIT_LATCH = new CountDownLatch(1);
+
+    /** Whether the time to the first terminal output has been logged. */
+    private static final AtomicBoolean FIRST_TERMINAL_OUTPUT_REPORTED = new AtomicBoolean();
+
     private static final String LOG_TAG = "TermuxApplication";
 
     public void onCreate() {
         super.onCreate();
 
+        long startTime = SystemClock.uptimeMillis();
+        Trace.beginSection("TermuxApplication.criticalInit");
+        try {
+            criticalInit();
+        } finally {
+            Trace.endSection();
+        }
+        logStartupPhase("Critical init", startTime);
+
+        DEFERRED_INIT_EXECUTOR.execute(() -> {
+            long deferredStartTime = SystemClock.uptimeMillis();
+            Trace.beginSection("TermuxApplication.deferredInit");
+            try {
+                deferredInit();
+            } finally {
+                Trace.endSection();
+                DEFERRED_INIT_LATCH.countDown();
+            }
+            logStartupPhase("Deferred init", deferredStartTime);
+        });
+    }
+
+    /** Init what is needed before the first frame. This runs on the main thread. */
+    private void criticalInit() {
         Context context = getApplicationContext();
 
         // Set crash handler for the app
@@ -40,15 +104,27 @@ public class TermuxApplication extends Application {
         // Init app wide SharedProperties loaded from termux.properties
         TermuxAppSharedProperties properties = TermuxAppSharedProperties.init(context);
 
+        // Write log entries on a background thread to logcat and the rotated log file if enabled
+        if (properties.isAsyncLoggingEnabled())
+            Logger.setAsyncLogWriter(new AsyncLogWriter(AsyncLogWriter.DEFAULT_CAPACITY, true,
+                new File(TermuxConstants.TERMUX_APP.LOG_FILE_PATH), AsyncLogWriter.DEFAULT_MAX_LOG_FILE_SIZE));
+
         // Init app wide shell manager
-        TermuxShellManager shellManager = TermuxShellManager.init(context);
+        TermuxShellManager.init(context);
 
         // Set NightMode.APP_NIGHT_MODE
         TermuxThemeUtils.setAppNightMode(properties.getNightMode());
+    }
+
+    /** Init what is not needed before the first frame. This runs on the {@link #DEFERRED_INIT_EXECUTOR}. */
+    private void deferredInit() {
+        Context context = getApplicationContext();
 
         // Check and create termux files directory. If failed to access it like in case of secondary
         // user or external sd card installation, then don't run files directory related code
+        Trace.beginSection("TermuxFileUtils.isTermuxFilesDirectoryAccessible");
         Error error = TermuxFileUtils.isTermuxFilesDirectoryAccessible(this, true, true);
+        Trace.endSection();
         boolean isTermuxFilesDirectoryAccessible = error == null;
         if (isTermuxFilesDirectoryAccessible) {
             Logger.logInfo(LOG_TAG, "Termux files directory is accessible");
@@ -60,19 +136,75 @@ public class TermuxApplication extends Application {
             }
 
             // Setup termux-am-socket server
+            Trace.beginSection("TermuxAmSocketServer.setup");
             TermuxAmSocketServer.setupTermuxAmSocketServer(context);
+            Trace.endSection();
         } else {
             Logger.logErrorExtended(LOG_TAG, "Termux files directory is not accessible\n" + error);
         }
 
         // Init TermuxShellEnvironment constants and caches after everything has been setup including termux-am-socket server
+        Trace.beginSection("TermuxShellEnvironment.init");
         TermuxShellEnvironment.init(this);
+        Trace.endSection();
 
         if (isTermuxFilesDirectoryAccessible) {
+            Trace.beginSection("TermuxShellEnvironment.writeEnvironmentToFile");
             TermuxShellEnvironment.writeEnvironmentToFile(this);
+            Trace.endSection();
         }
     }
 
+    /**
+     * Wait for the deferred init phase to finish. This must be called before using anything it
+     * sets up, like the termux files directories, the {@link TermuxAmSocketServer} state or the
+     * {@link TermuxShellEnvironment}. This blocks, so it must not be called on the main thread.
+     */
+    public static void awaitDeferredInit() {
+        if (DEFERRED_INIT_LATCH.getCount() == 0) return;
+
+        long startTime = SystemClock.uptimeMillis();
+        Trace.beginSection("TermuxApplication.awaitDeferredInit");
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    DEFERRED_INIT_LATCH.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            Trace.endSection();
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        Logger.logDebug(LOG_TAG, "Waited " + (SystemClock.uptimeMillis() - startTime) + "ms for deferred init");
+    }
+
+    /** Whether the deferred init phase has finished. */
+    public static boolean isDeferredInitDone() {
+        return DEFERRED_INIT_LATCH.getCount() == 0;
+    }
+
+    /** Run startup work that is not needed for the first frame in the background after the deferred init phase. */
+    public static void runDeferred(@NonNull Runnable runnable) {
+        DEFERRED_INIT_EXECUTOR.execute(runnable);
+    }
+
+    /** Log the time to the first terminal output since the start of the process, only the first time this is called. */
+    public static void reportFirstTerminalOutput() {
+        if (FIRST_TERMINAL_OUTPUT_REPORTED.getAndSet(true)) return;
+        Logger.logInfo(LOG_TAG, "First terminal output " + (SystemClock.uptimeMillis() - Process.getStartUptimeMillis()) +
+            "ms after process start");
+    }
+
+    private static void logStartupPhase(String phase, long startTime) {
+        long endTime = SystemClock.uptimeMillis();
+        Logger.logDebug(LOG_TAG, phase + " took " + (endTime - startTime) + "ms, finished " +
+            (endTime - Process.getStartUptimeMillis()) + "ms after process start");
+    }
+
     public static void setLogConfig(Context context) {
         Logger.setDefaultLogTag(TermuxConstants.TERMUX_APP_NAME);
 
@@ -0,0 +1,735 @@
+package com.termux.app;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Extracts the bootstrap zip from a {@link ByteBuffer}, like the direct buffer over the zip
+ * embedded in the native bootstrap library, without copying the whole zip to the java heap.
+ *
+ * The zip central directory is read up front so that the entries can be inflated in parallel by
+ * multiple threads, instead of one at a time like with a {@link java.util.zip.ZipInputStream}.
+ * All directories are created in one pass before the files are extracted, and executable files
+ * have their permissions set as they are extracted. The symlinks listed in the
+ * {@link #SYMLINKS_FILE_NAME} entry are created by {@link #createSymlinks()}.
+ *
+ * A manifest of every directory, file and symlink with the expected mode, size and CRC-32 from
+ * the zip central directory is written to {@link #MANIFEST_FILE_PATH} with {@link #writeManifest()}
+ * once an extraction is complete. An existing directory, like the staging directory of an
+ * interrupted install or the installed prefix, can be repaired with {@link #repair(int, ProgressListener)}
+ * and {@link #repairSymlinks()}, which verify the existing files in parallel against the manifest,
+ * or against the zip central directory if there is no manifest, and only extract the ones that
+ * are missing or do not match.
+ */
+public final class TermuxBootstrapExtractor {
+
+    /** The name of the zip entry that lists the symlinks to create, with lines in the format `target←link`. */
+    public static final String SYMLINKS_FILE_NAME = "SYMLINKS.txt";
+
+    /** The path relative to the target directory that the manifest is written to by {@link #writeManifest()}. */
+    public static final String MANIFEST_FILE_PATH = "etc/termux/bootstrap.manifest";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_MIN_SIZE = 22;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final String LOG_TAG = "TermuxBootstrapExtractor";
+
+    /** Listener for the extraction progress. */
+    public interface ProgressListener {
+        /**
+         * Called when the extracted percentage changes. This is called from the extraction threads.
+         *
+         * @param percent The percentage of bytes extracted.
+         */
+        void onProgress(int percent);
+    }
+
+    private final ByteBuffer mZip;
+    private final String mTargetDirectoryPath;
+    private final List<Entry> mEntries = new ArrayList<>();
+    private final List<String[]> mSymlinks = new ArrayList<>();
+    private final List<Entry> mFiles = new ArrayList<>();
+    private final TreeSet<String> mDirectories = new TreeSet<>();
+    /** The files that {@link #repair(int, ProgressListener)} kept because they match the manifest but not the zip. */
+    private final Map<String, ManifestFile> mKeptFiles = new ConcurrentHashMap<>();
+    private boolean mPrepared;
+
+    private long mTotalBytes;
+    private final AtomicLong mExtractedBytes = new AtomicLong();
+    private final AtomicInteger mExtractedPercent = new AtomicInteger();
+
+    private final Stats mStats = new Stats();
+
+    /**
+     * Create a {@link TermuxBootstrapExtractor} and read the central directory of the zip.
+     *
+     * @param zip The {@link ByteBuffer} containing the zip. It will not be modified.
+     * @param targetDirectoryPath The path of the existing directory to extract to.
+     */
+    public TermuxBootstrapExtractor(@NonNull ByteBuffer zip, @NonNull String targetDirectoryPath) throws IOException {
+        mZip = zip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        mTargetDirectoryPath = targetDirectoryPath;
+
+        long startTime = System.nanoTime();
+        readCentralDirectory();
+        mStats.centralDirectoryTime = getMillisSince(startTime);
+    }
+
+    /**
+     * Extract all entries to the target directory.
+     *
+     * @param threads The number of threads to inflate entries with.
+     * @param progressListener The optional {@link ProgressListener}.
+     * @return Returns the {@link Stats} for the extraction.
+     */
+    @NonNull
+    public Stats extract(int threads, @Nullable final ProgressListener progressListener) throws IOException {
+        long startTime = System.nanoTime();
+        prepare();
+        createDirectories(false);
+
+        long filesStartTime = System.nanoTime();
+        mStats.threads = runInParallel(mFiles, threads, (entry, worker) -> extractFile(entry, worker, progressListener));
+        mStats.files = mFiles.size();
+        mStats.bytes = mTotalBytes;
+        mStats.filesTime = getMillisSince(filesStartTime);
+        mStats.totalTime = mStats.centralDirectoryTime + getMillisSince(startTime);
+        return mStats;
+    }
+
+    /**
+     * Repair an existing extraction in the target directory. Directories that are missing are
+     * created, and files that are missing, have a different size, executable permission or CRC-32
+     * than expected are extracted again. Files that do not exist in the zip are not removed.
+     *
+     * If the target directory has a manifest at {@link #MANIFEST_FILE_PATH}, each file is
+     * verified against the manifest and otherwise against the zip central directory. A file that
+     * matches the manifest but not the zip entry, like one extracted from an older bootstrap zip,
+     * is kept and {@link #writeManifest()} will keep its manifest line.
+     *
+     * @param threads The number of threads to verify and inflate entries with.
+     * @param progressListener The optional {@link ProgressListener}. The progress of each file is
+     *                         reported once it has been verified and, if needed, extracted.
+     * @return Returns the {@link Stats} for the repair.
+     */
+    @NonNull
+    public Stats repair(int threads, @Nullable final ProgressListener progressListener) throws IOException {
+        long startTime = System.nanoTime();
+        prepare();
+        createDirectories(true);
+
+        long filesStartTime = System.nanoTime();
+        final Map<String, ManifestFile> manifest = readManifest();
+        final AtomicInteger repairedFiles = new AtomicInteger();
+        final AtomicLong repairedBytes = new AtomicLong();
+        mKeptFiles.clear();
+        mStats.threads = runInParallel(mFiles, threads, (entry, worker) -> {
+            ManifestFile entryFile = new ManifestFile(isExecutable(entry.name), entry.size, entry.crc);
+            ManifestFile expectedFile = manifest != null ? manifest.get(entry.name) : null;
+            if (expectedFile == null) expectedFile = entryFile;
+
+            if (isFileValid(entry.name, expectedFile, worker)) {
+                if (!expectedFile.equals(entryFile))
+                    mKeptFiles.put(entry.name, expectedFile);
+            } else {
+                File file = new File(mTargetDirectoryPath, entry.name);
+                // Do not write through a symlink or into a directory that exists in place of the file
+                if (!file.delete() && file.exists())
+                    throw new IOException("Failed to delete invalid file \"" + file.getAbsolutePath() + "\"");
+                extractFile(entry, worker, null);
+                repairedFiles.incrementAndGet();
+                repairedBytes.addAndGet(entry.size);
+            }
+            onBytesExtracted(entry.size, progressListener);
+        });
+        mStats.files = mFiles.size();
+        mStats.bytes = mTotalBytes;
+        mStats.manifest = manifest != null;
+        mStats.repairedFiles = repairedFiles.get();
+        mStats.repairedBytes = repairedBytes.get();
+        mStats.filesTime = getMillisSince(filesStartTime);
+        mStats.totalTime = mStats.centralDirectoryTime + getMillisSince(startTime);
+        return mStats;
+    }
+
+    /**
+     * Create the symlinks listed in the {@link #SYMLINKS_FILE_NAME} entry. This must be called
+     * after {@link #extract(int, ProgressListener)}.
+     *
+     * @return Returns the {@link Stats} for the extraction.
+     */
+    @NonNull
+    public Stats createSymlinks() throws ErrnoException {
+        long startTime = System.nanoTime();
+        for (String[] symlink : mSymlinks)
+            Os.symlink(symlink[0], symlink[1]);
+        mStats.symlinks = mSymlinks.size();
+        mStats.symlinksTime = getMillisSince(startTime);
+        mStats.totalTime += mStats.symlinksTime;
+        return mStats;
+    }
+
+    /**
+     * Create the symlinks listed in the {@link #SYMLINKS_FILE_NAME} entry that are missing or
+     * point to a different target. This must be called after {@link #repair(int, ProgressListener)}.
+     *
+     * @return Returns the {@link Stats} for the repair.
+     */
+    @NonNull
+    public Stats repairSymlinks() throws ErrnoException {
+        long startTime = System.nanoTime();
+        int repairedSymlinks = 0;
+        for (String[] symlink : mSymlinks) {
+            try {
+                if (symlink[0].equals(Os.readlink(symlink[1]))) continue;
+            } catch (ErrnoException e) {
+                // Does not exist or is not a symlink
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(symlink[1]).delete();
+            Os.symlink(symlink[0], symlink[1]);
+            repairedSymlinks++;
+        }
+        mStats.symlinks = mSymlinks.size();
+        mStats.repairedSymlinks = repairedSymlinks;
+        mStats.symlinksTime = getMillisSince(startTime);
+        mStats.totalTime += mStats.symlinksTime;
+        return mStats;
+    }
+
+    /**
+     * Get the manifest of the extraction. Each line has tab separated fields and is either
+     * `D mode path` for a directory, `F mode size crc32 path` for a file or `L target path` for
+     * a symlink, where mode is the expected octal permissions, crc32 is in hex and paths are
+     * relative to the target directory.
+     */
+    @NonNull
+    public String getManifest() throws IOException {
+        prepare();
+        StringBuilder manifest = new StringBuilder();
+        for (String directory : mDirectories)
+            manifest.append("D\t0700\t").append(directory).append('\n');
+        for (Entry entry : mFiles) {
+            ManifestFile file = mKeptFiles.get(entry.name);
+            if (file == null) file = new ManifestFile(isExecutable(entry.name), entry.size, entry.crc);
+            manifest.append("F\t").append(file.executable ? "0700" : "0600").append('\t')
+                .append(file.size).append('\t').append(String.format(Locale.ROOT, "%08x", file.crc)).append('\t')
+                .append(entry.name).append('\n');
+        }
+        for (String[] symlink : mSymlinks)
+            manifest.append("L\t").append(symlink[0]).append('\t')
+                .append(symlink[1].substring(mTargetDirectoryPath.length() + 1)).append('\n');
+        return manifest.toString();
+    }
+
+    /**
+     * Write the {@link #getManifest()} to {@link #MANIFEST_FILE_PATH} in the target directory.
+     * This must be called after the extraction or repair has finished, so that the manifest only
+     * exists for complete extractions.
+     *
+     * @return Returns the manifest {@link File}.
+     */
+    @NonNull
+    public File writeManifest() throws IOException {
+        File manifestFile = new File(mTargetDirectoryPath, MANIFEST_FILE_PATH);
+        File parent = manifestFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Failed to create directory \"" + parent.getAbsolutePath() + "\"");
+
+        File tempFile = new File(manifestFile.getAbsolutePath() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            outputStream.write(getManifest().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tempFile.renameTo(manifestFile))
+            throw new IOException("Failed to move \"" + tempFile.getAbsolutePath() + "\" to \"" + manifestFile.getAbsolutePath() + "\"");
+        return manifestFile;
+    }
+
+    /** Get the `{target, link}` pairs of the symlinks listed in the {@link #SYMLINKS_FILE_NAME} entry. */
+    @NonNull
+    public List<String[]> getSymlinks() {
+        return mSymlinks;
+    }
+
+    /** Check if a file in the bootstrap zip should be made executable. */
+    public static boolean isExecutable(@NonNull String name) {
+        return name.startsWith("bin/") || name.startsWith("libexec") ||
+            name.startsWith("lib/apt/apt-helper") || name.startsWith("lib/apt/methods");
+    }
+
+
+
+    /** Split the entries into files, directories and symlinks. This is only done once. */
+    private void prepare() throws IOException {
+        if (mPrepared) return;
+
+        Entry symlinksEntry = null;
+        for (Entry entry : mEntries) {
+            if (entry.name.equals(SYMLINKS_FILE_NAME)) {
+                symlinksEntry = entry;
+            } else if (entry.name.endsWith("/")) {
+                addDirectory(mDirectories, entry.name.substring(0, entry.name.length() - 1));
+            } else {
+                addDirectory(mDirectories, getParent(entry.name));
+                mFiles.add(entry);
+                mTotalBytes += entry.size;
+            }
+        }
+
+        if (symlinksEntry == null)
+            throw new IOException("No " + SYMLINKS_FILE_NAME + " encountered");
+        readSymlinks(symlinksEntry, mDirectories);
+        mPrepared = true;
+    }
+
+    /**
+     * Create all directories in sorted order, which ensures that parents are created before their
+     * children.
+     *
+     * @param replaceFiles Set to {@code true} to delete files that exist in place of directories.
+     */
+    private void createDirectories(boolean replaceFiles) throws IOException {
+        long startTime = System.nanoTime();
+        for (String directory : mDirectories) {
+            File directoryFile = new File(mTargetDirectoryPath, directory);
+            if (directoryFile.mkdir() || directoryFile.isDirectory()) continue;
+            if (!replaceFiles || !directoryFile.delete() || !directoryFile.mkdir())
+                throw new IOException("Failed to create directory \"" + directoryFile.getAbsolutePath() + "\"");
+        }
+        mStats.directories = mDirectories.size();
+        mStats.directoriesTime = getMillisSince(startTime);
+    }
+
+    /**
+     * Run a task for each entry with multiple threads that each have their own {@link Worker}.
+     * The largest entries are started first so that a large entry does not end up running alone
+     * at the end.
+     *
+     * @return Returns the number of threads used.
+     */
+    private int runInParallel(@NonNull List<Entry> entries, int threads, @NonNull final EntryTask task) throws IOException {
+        final List<Entry> sortedEntries = new ArrayList<>(entries);
+        Collections.sort(sortedEntries, (entry1, entry2) -> Long.compare(entry2.size, entry1.size));
+
+        final AtomicInteger nextEntry = new AtomicInteger();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        threads = Math.max(1, Math.min(threads, sortedEntries.size()));
+        List<Thread> threadList = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(LOG_TAG + "-" + i) {
+                @Override
+                public void run() {
+                    Worker worker = new Worker(mZip.duplicate());
+                    try {
+                        int index;
+                        while (failure.get() == null && (index = nextEntry.getAndIncrement()) < sortedEntries.size())
+                            task.run(sortedEntries.get(index), worker);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        worker.inflater.end();
+                    }
+                }
+            };
+            threadList.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threadList) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        Exception exception = failure.get();
+        if (exception instanceof IOException)
+            throw (IOException) exception;
+        else if (exception != null)
+            throw new IOException("Failed to extract bootstrap zip", exception);
+        return threads;
+    }
+
+    private void readCentralDirectory() throws IOException {
+        int limit = mZip.limit();
+        int endOfCentralDirectory = -1;
+        // The record is at the end of the zip, followed by an optional comment of up to 65535 bytes
+        for (int i = limit - END_OF_CENTRAL_DIRECTORY_MIN_SIZE; i >= Math.max(0, limit - END_OF_CENTRAL_DIRECTORY_MIN_SIZE - 0xFFFF); i--) {
+            if (mZip.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                endOfCentralDirectory = i;
+                break;
+            }
+        }
+        if (endOfCentralDirectory < 0)
+            throw new IOException("End of central directory record not found in bootstrap zip");
+
+        int count = getUnsignedShort(endOfCentralDirectory + 10);
+        long centralDirectoryOffset = getUnsignedInt(endOfCentralDirectory + 16);
+        if (count == 0xFFFF || centralDirectoryOffset == 0xFFFFFFFFL)
+            throw new IOException("Zip64 bootstrap zips are not supported");
+
+        int offset = (int) centralDirectoryOffset;
+        for (int i = 0; i < count; i++) {
+            checkBounds(offset, 46);
+            if (mZip.getInt(offset) != CENTRAL_DIRECTORY_HEADER_SIGNATURE)
+                throw new IOException("Invalid central directory header signature at offset " + offset);
+
+            int flags = getUnsignedShort(offset + 8);
+            int method = getUnsignedShort(offset + 10);
+            long crc = getUnsignedInt(offset + 16);
+            long compressedSize = getUnsignedInt(offset + 20);
+            long size = getUnsignedInt(offset + 24);
+            int nameLength = getUnsignedShort(offset + 28);
+            int extraLength = getUnsignedShort(offset + 30);
+            int commentLength = getUnsignedShort(offset + 32);
+            long localHeaderOffset = getUnsignedInt(offset + 42);
+
+            checkBounds(offset + 46, nameLength);
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = mZip.duplicate();
+            nameBuffer.position(offset + 46);
+            nameBuffer.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            if ((flags & 1) != 0)
+                throw new IOException("Encrypted zip entry \"" + name + "\" is not supported");
+            if (method != METHOD_STORED && method != METHOD_DEFLATED)
+                throw new IOException("Unsupported compression method " + method + " for zip entry \"" + name + "\"");
+            if (name.startsWith("/") || name.equals("..") || name.startsWith("../") || name.contains("/../"))
+                throw new IOException("Invalid path for zip entry \"" + name + "\"");
+
+            checkBounds(localHeaderOffset, 30);
+            if (mZip.getInt((int) localHeaderOffset) != LOCAL_FILE_HEADER_SIGNATURE)
+                throw new IOException("Invalid local file header signature for zip entry \"" + name + "\"");
+            long dataOffset = localHeaderOffset + 30 + getUnsignedShort((int) localHeaderOffset + 26) + getUnsignedShort((int) localHeaderOffset + 28);
+            checkBounds(dataOffset, compressedSize);
+
+            mEntries.add(new Entry(name, method, crc, (int) dataOffset, (int) compressedSize, size));
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private void readSymlinks(@NonNull Entry symlinksEntry, @NonNull TreeSet<String> directories) throws IOException {
+        ByteArrayOutputStream symlinksOutput = new ByteArrayOutputStream((int) symlinksEntry.size);
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            inflateEntry(symlinksEntry, mZip.duplicate(), inflater, buffer, buffer.clone(), new CRC32(), symlinksOutput, null);
+        } finally {
+            inflater.end();
+        }
+
+        BufferedReader symlinksReader = new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(symlinksOutput.toByteArray()), StandardCharsets.UTF_8));
+        String line;
+        while ((line = symlinksReader.readLine()) != null) {
+            String[] parts = line.split("←");
+            if (parts.length != 2)
+                throw new IOException("Malformed symlink line: " + line);
+            mSymlinks.add(new String[]{parts[0], mTargetDirectoryPath + "/" + parts[1]});
+            addDirectory(directories, getParent(parts[1]));
+        }
+
+        if (mSymlinks.isEmpty())
+            throw new IOException("No symlinks found in " + SYMLINKS_FILE_NAME);
+    }
+
+    /**
+     * Read the files in the manifest at {@link #MANIFEST_FILE_PATH} in the target directory.
+     *
+     * @return Returns the manifest files mapped to their paths, or {@code null} if the manifest
+     * does not exist or is malformed.
+     */
+    @Nullable
+    private Map<String, ManifestFile> readManifest() {
+        File manifestFile = new File(mTargetDirectoryPath, MANIFEST_FILE_PATH);
+        if (!manifestFile.isFile()) return null;
+
+        Map<String, ManifestFile> files = new HashMap<>();
+        try (BufferedReader manifestReader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = manifestReader.readLine()) != null) {
+                if (!line.startsWith("F\t")) continue;
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5)
+                    throw new IOException("Malformed manifest line: " + line);
+                files.put(fields[4], new ManifestFile("0700".equals(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3], 16)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            Logger.logStackTraceWithMessage(LOG_TAG, "Ignoring the unreadable manifest \"" + manifestFile.getAbsolutePath() + "\"", e);
+            return null;
+        }
+        return files;
+    }
+
+    private void extractFile(@NonNull Entry entry, @NonNull Worker worker, @Nullable ProgressListener progressListener) throws IOException {
+        File file = new File(mTargetDirectoryPath, entry.name);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            inflateEntry(entry, worker.zip, worker.inflater, worker.input, worker.output, worker.crc, outputStream, progressListener);
+        }
+
+        if (isExecutable(entry.name) && !file.setExecutable(true, true))
+            throw new IOException("Failed to set executable permission for \"" + file.getAbsolutePath() + "\"");
+    }
+
+    /** Check if the file at the path is a regular file with the expected size, executable permission and CRC-32. */
+    private boolean isFileValid(@NonNull String name, @NonNull ManifestFile expectedFile, @NonNull Worker worker) throws IOException {
+        File file = new File(mTargetDirectoryPath, name);
+        // Cheap checks first so that only files that look intact are read
+        if (!file.isFile() || file.length() != expectedFile.size || file.canExecute() != expectedFile.executable)
+            return false;
+
+        worker.crc.reset();
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int count;
+            while ((count = inputStream.read(worker.output)) != -1)
+                worker.crc.update(worker.output, 0, count);
+        }
+        return worker.crc.getValue() == expectedFile.crc;
+    }
+
+    private void inflateEntry(@NonNull Entry entry, @NonNull ByteBuffer zip, @NonNull Inflater inflater,
+                              @NonNull byte[] input, @NonNull byte[] output, @NonNull CRC32 crc,
+                              @NonNull OutputStream outputStream, @Nullable ProgressListener progressListener) throws IOException {
+        zip.clear();
+        zip.position(entry.dataOffset);
+        zip.limit(entry.dataOffset + entry.compressedSize);
+        crc.reset();
+
+        if (entry.method == METHOD_STORED) {
+            while (zip.hasRemaining()) {
+                int count = Math.min(output.length, zip.remaining());
+                zip.get(output, 0, count);
+                crc.update(output, 0, count);
+                outputStream.write(output, 0, count);
+                onBytesExtracted(count, progressListener);
+            }
+        } else {
+            inflater.reset();
+            boolean dummyByteAdded = false;
+            try {
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        if (zip.hasRemaining()) {
+                            int count = Math.min(input.length, zip.remaining());
+                            zip.get(input, 0, count);
+                            inflater.setInput(input, 0, count);
+                        } else if (!dummyByteAdded) {
+                            // The inflater may need an extra dummy byte when the zlib header and checksum are not used
+                            input[0] = 0;
+                            inflater.setInput(input, 0, 1);
+                            dummyByteAdded = true;
+                        } else {
+                            throw new EOFException("Unexpected end of data for zip entry \"" + entry.name + "\"");
+                        }
+                    }
+
+                    int count = inflater.inflate(output);
+                    if (count > 0) {
+                        crc.update(output, 0, count);
+                        outputStream.write(output, 0, count);
+                        onBytesExtracted(count, progressListener);
+                    } else if (inflater.needsDictionary()) {
+                        throw new IOException("Zip entry \"" + entry.name + "\" requires a preset dictionary");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid deflate data for zip entry \"" + entry.name + "\"", e);
+            }
+        }
+
+        if (crc.getValue() != entry.crc)
+            throw new IOException("CRC mismatch for zip entry \"" + entry.name + "\"");
+    }
+
+    private void onBytesExtracted(long count, @Nullable ProgressListener progressListener) {
+        // Only count the bytes reported to the listener, since repair() extracts invalid files
+        // without a listener and reports each file once it is done with it
+        if (progressListener == null || mTotalBytes <= 0) return;
+        long extractedBytes = mExtractedBytes.addAndGet(count);
+
+        int percent = (int) Math.min(100, extractedBytes * 100 / mTotalBytes);
+        int previousPercent = mExtractedPercent.get();
+        if (percent > previousPercent && mExtractedPercent.compareAndSet(previousPercent, percent))
+            progressListener.onProgress(percent);
+    }
+
+    private void checkBounds(long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > mZip.limit())
+            throw new IOException("Bootstrap zip is truncated or corrupted");
+    }
+
+    private int getUnsignedShort(int offset) {
+        return mZip.getShort(offset) & 0xFFFF;
+    }
+
+    private long getUnsignedInt(int offset) {
+        return mZip.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    private static void addDirectory(@NonNull TreeSet<String> directories, @Nullable String directory) {
+        while (directory != null && !directory.isEmpty() && directories.add(directory))
+            directory = getParent(directory);
+    }
+
+    @Nullable
+    private static String getParent(@NonNull String path) {
+        int index = path.lastIndexOf('/');
+        return index > 0 ? path.substring(0, index) : null;
+    }
+
+    private static long getMillisSince(long startTime) {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+
+
+    private static final class Entry {
+
+        final String name;
+        final int method;
+        final long crc;
+        final int dataOffset;
+        final int compressedSize;
+        final long size;
+
+        Entry(String name, int method, long crc, int dataOffset, int compressedSize, long size) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.dataOffset = dataOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+    }
+
+    /** The expected mode, size and CRC-32 of a file in the manifest. */
+    private static final class ManifestFile {
+
+        final boolean executable;
+        final long size;
+        final long crc;
+
+        ManifestFile(boolean executable, long size, long crc) {
+            this.executable = executable;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ManifestFile)) return false;
+            ManifestFile file = (ManifestFile) other;
+            return executable == file.executable && size == file.size && crc == file.crc;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (crc ^ size) ^ (executable ? 1 : 0);
+        }
+
+    }
+
+    private interface EntryTask {
+        void run(@NonNull Entry entry, @NonNull Worker worker) throws IOException;
+    }
+
+    /** The state that is owned by each thread of {@link #runInParallel(List, int, EntryTask)}. */
+    private static final class Worker {
+
+        final ByteBuffer zip;
+        final Inflater inflater = new Inflater(true);
+        final byte[] input = new byte[BUFFER_SIZE];
+        final byte[] output = new byte[BUFFER_SIZE];
+        final CRC32 crc = new CRC32();
+
+        Worker(ByteBuffer zip) {
+            this.zip = zip;
+        }
+
+    }
+
+    /** The stats of an extraction or repair. */
+    public static final class Stats {
+
+        public int files;
+        public int directories;
+        public int symlinks;
+        public long bytes;
+        public int threads;
+        /** If the files were verified against a manifest instead of the zip central directory. */
+        public boolean manifest;
+
+        public int repairedFiles = -1;
+        public long repairedBytes;
+        public int repairedSymlinks;
+
+        public long centralDirectoryTime;
+        public long directoriesTime;
+        public long filesTime;
+        public long symlinksTime;
+        public long totalTime;
+
+        @NonNull
+        @Override
+        public String toString() {
+            if (repairedFiles >= 0)
+                return "Verified " + files + " files (" + bytes + " bytes), " + directories + " directories and " +
+                    symlinks + " symlinks and repaired " + repairedFiles + " files (" + repairedBytes + " bytes) and " +
+                    repairedSymlinks + " symlinks in " + totalTime + "ms with " + threads + " threads against the " +
+                    (manifest ? "manifest" : "zip central directory") + " (central directory: " +
+                    centralDirectoryTime + "ms, directories: " + directoriesTime + "ms, files: " + filesTime +
+                    "ms, symlinks: " + symlinksTime + "ms)";
+            return "Extracted " + files + " files (" + bytes + " bytes), " + directories + " directories and " +
+                symlinks + " symlinks in " + totalTime + "ms with " + threads + " threads (central directory: " +
+                centralDirectoryTime + "ms, directories: " + directoriesTime + "ms, files: " + filesTime +
+                "ms, symlinks: " + symlinksTime + "ms)";
+        }
+
+    }
+
+}
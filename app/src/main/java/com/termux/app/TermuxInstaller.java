@@ -7,7 +7,6 @@ import android.content.Context;
 import android.os.Build;
 import android.os.Environment;
 import android.system.Os;
-import android.util.Pair;
 import android.view.WindowManager;
 
 import com.termux.R;
@@ -23,17 +22,8 @@ import com.termux.shared.termux.TermuxConstants;
 import com.termux.shared.termux.TermuxUtils;
 import com.termux.shared.termux.shell.command.environment.TermuxShellEnvironment;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.nio.ByteBuffer;
 
 import static com.termux.shared.termux.TermuxConstants.TERMUX_PREFIX_DIR;
 import static com.termux.shared.termux.TermuxConstants.TERMUX_PREFIX_DIR_PATH;
@@ -99,12 +89,17 @@ public final class TermuxInstaller {
 
                     Error error;
 
-                    error = FileUtils.deleteFile("termux prefix staging directory", TERMUX_STAGING_PREFIX_DIR_PATH, true);
-                    if (error != null) {
-                        showBootstrapErrorDialog(activity, whenDone, Error.getErrorMarkdownString(error));
-                        return;
+                    // The staging directory of an interrupted install is repaired instead of being deleted
+                    boolean repairStagingDirectory = FileUtils.directoryFileExists(TERMUX_STAGING_PREFIX_DIR_PATH, false);
+                    if (!repairStagingDirectory) {
+                        error = FileUtils.deleteFile("termux prefix staging directory", TERMUX_STAGING_PREFIX_DIR_PATH, true);
+                        if (error != null) {
+                            showBootstrapErrorDialog(activity, whenDone, Error.getErrorMarkdownString(error));
+                            return;
+                        }
                     }
 
+                    // The prefix is empty or not a directory here, an installed prefix is repaired in place by repairPrefix()
                     error = FileUtils.deleteFile("termux prefix directory", TERMUX_PREFIX_DIR_PATH, true);
                     if (error != null) {
                         showBootstrapErrorDialog(activity, whenDone, Error.getErrorMarkdownString(error));
@@ -123,63 +118,27 @@ public final class TermuxInstaller {
                         return;
                     }
 
-                    Logger.logInfo(LOG_TAG, "Extracting bootstrap zip to prefix staging directory \"" + TERMUX_STAGING_PREFIX_DIR_PATH + "\".");
-
-                    final byte[] buffer = new byte[8096];
-                    final List<Pair<String, String>> symlinks = new ArrayList<>(50);
-
-                    final byte[] zipBytes = loadZipBytes(activity);
-                    try (ZipInputStream zipInput = new ZipInputStream(new ByteArrayInputStream(zipBytes))) {
-                        ZipEntry zipEntry;
-                        while ((zipEntry = zipInput.getNextEntry()) != null) {
-                            if (zipEntry.getName().equals("SYMLINKS.txt")) {
-                                BufferedReader symlinksReader = new BufferedReader(new InputStreamReader(zipInput));
-                                String line;
-                                while ((line = symlinksReader.readLine()) != null) {
-                                    String[] parts = line.split("←");
-                                    if (parts.length != 2)
-                                        throw new RuntimeException("Malformed symlink line: " + line);
-                                    String oldPath = parts[0];
-                                    String newPath = TERMUX_STAGING_PREFIX_DIR_PATH + "/" + parts[1];
-                                    symlinks.add(Pair.create(oldPath, newPath));
-
-                                    error = ensureDirectoryExists(new File(newPath).getParentFile());
-                                    if (error != null) {
-                                        showBootstrapErrorDialog(activity, whenDone, Error.getErrorMarkdownString(error));
-                                        return;
-                                    }
-                                }
-                            } else {
-                                String zipEntryName = zipEntry.getName();
-                                File targetFile = new File(TERMUX_STAGING_PREFIX_DIR_PATH, zipEntryName);
-                                boolean isDirectory = zipEntry.isDirectory();
-
-                                error = ensureDirectoryExists(isDirectory ? targetFile : targetFile.getParentFile());
-                                if (error != null) {
-                                    showBootstrapErrorDialog(activity, whenDone, Error.getErrorMarkdownString(error));
-                                    return;
-                                }
-
-                                if (!isDirectory) {
-                                    try (FileOutputStream outStream = new FileOutputStream(targetFile)) {
-                                        int readBytes;
-                                        while ((readBytes = zipInput.read(buffer)) != -1)
-                                            outStream.write(buffer, 0, readBytes);
-                                    }
-                                    if (zipEntryName.startsWith("bin/") || zipEntryName.startsWith("libexec") ||
-                                        zipEntryName.startsWith("lib/apt/apt-helper") || zipEntryName.startsWith("lib/apt/methods")) {
-                                        Os.chmod(targetFile.getAbsolutePath(), 0700);
-                                    }
-                                }
-                            }
+                    TermuxBootstrapExtractor extractor = new TermuxBootstrapExtractor(loadZipBuffer(), TERMUX_STAGING_PREFIX_DIR_PATH);
+                    TermuxBootstrapExtractor.ProgressListener progressListener = percent -> activity.runOnUiThread(() -> {
+                        try {
+                            progress.setMessage(activity.getString(R.string.bootstrap_installer_progress_body, percent));
+                        } catch (RuntimeException e) {
                         }
-                    }
+                    });
 
-                    if (symlinks.isEmpty())
-                        throw new RuntimeException("No SYMLINKS.txt encountered");
-                    for (Pair<String, String> symlink : symlinks) {
-                        Os.symlink(symlink.first, symlink.second);
+                    TermuxBootstrapExtractor.Stats stats;
+                    if (repairStagingDirectory) {
+                        Logger.logInfo(LOG_TAG, "Repairing existing prefix staging directory \"" + TERMUX_STAGING_PREFIX_DIR_PATH + "\" from bootstrap zip.");
+                        extractor.repair(Runtime.getRuntime().availableProcessors(), progressListener);
+                        stats = extractor.repairSymlinks();
+                    } else {
+                        Logger.logInfo(LOG_TAG, "Extracting bootstrap zip to prefix staging directory \"" + TERMUX_STAGING_PREFIX_DIR_PATH + "\".");
+                        extractor.extract(Runtime.getRuntime().availableProcessors(), progressListener);
+                        stats = extractor.createSymlinks();
                     }
+                    Logger.logInfo(LOG_TAG, stats.toString());
+
+                    extractor.writeManifest();
 
                     Logger.logInfo(LOG_TAG, "Moving termux prefix staging to prefix directory.");
 
@@ -189,6 +148,7 @@ public final class TermuxInstaller {
 
                     Logger.logInfo(LOG_TAG, "Bootstrap packages installed successfully.");
 
+                    TermuxApplication.awaitDeferredInit();
                     TermuxShellEnvironment.writeEnvironmentToFile(activity);
 
                     activity.runOnUiThread(whenDone);
@@ -208,6 +168,72 @@ public final class TermuxInstaller {
         }.start();
     }
 
+    /**
+     * Repair the installed {@link TermuxConstants#TERMUX_PREFIX_DIR_PATH} in place from the
+     * bootstrap zip, instead of deleting it and extracting the whole bootstrap again. The files
+     * are verified in parallel against the {@link TermuxBootstrapExtractor#MANIFEST_FILE_PATH}
+     * written when the bootstrap was installed, and only the files that are missing or do not
+     * match are extracted again. Files of bootstrap packages that have since been upgraded do not
+     * match and are reverted to the bootstrap version, while other files are not touched.
+     */
+    public static void repairPrefix(final Activity activity) {
+        final ProgressDialog progress = ProgressDialog.show(activity, null, activity.getString(R.string.bootstrap_repair_body), true, false);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Logger.logInfo(LOG_TAG, "Repairing termux prefix directory \"" + TERMUX_PREFIX_DIR_PATH + "\" from bootstrap zip.");
+
+                    Error error = TermuxFileUtils.isTermuxPrefixDirectoryAccessible(true, true);
+                    if (error != null) {
+                        showBootstrapRepairErrorDialog(activity, Error.getErrorMarkdownString(error));
+                        return;
+                    }
+
+                    TermuxBootstrapExtractor extractor = new TermuxBootstrapExtractor(loadZipBuffer(), TERMUX_PREFIX_DIR_PATH);
+                    extractor.repair(Runtime.getRuntime().availableProcessors(), percent -> activity.runOnUiThread(() -> {
+                        try {
+                            progress.setMessage(activity.getString(R.string.bootstrap_repair_progress_body, percent));
+                        } catch (RuntimeException e) {
+                        }
+                    }));
+                    final TermuxBootstrapExtractor.Stats stats = extractor.repairSymlinks();
+                    Logger.logInfo(LOG_TAG, stats.toString());
+
+                    extractor.writeManifest();
+
+                    activity.runOnUiThread(() -> Logger.showToast(activity,
+                        activity.getString(R.string.bootstrap_repair_done, stats.repairedFiles, stats.repairedSymlinks), true));
+
+                } catch (final Exception e) {
+                    showBootstrapRepairErrorDialog(activity, Logger.getStackTracesMarkdownString(null, Logger.getStackTracesStringArray(e)));
+
+                } finally {
+                    activity.runOnUiThread(() -> {
+                        try {
+                            progress.dismiss();
+                        } catch (RuntimeException e) {
+                        }
+                    });
+                }
+            }
+        }.start();
+    }
+
+    private static void showBootstrapRepairErrorDialog(Activity activity, String message) {
+        Logger.logErrorExtended(LOG_TAG, "Bootstrap Repair Error:\n" + message);
+
+        sendBootstrapCrashReportNotification(activity, message);
+
+        activity.runOnUiThread(() -> {
+            try {
+                MessageDialogUtils.showMessage(activity, activity.getString(R.string.bootstrap_repair_error_title),
+                    activity.getString(R.string.bootstrap_repair_error_body), null);
+            } catch (WindowManager.BadTokenException e) {
+            }
+        });
+    }
+
     public static void showBootstrapErrorDialog(Activity activity, Runnable whenDone, String message) {
         Logger.logErrorExtended(LOG_TAG, "Bootstrap Error:\n" + message);
 
@@ -222,7 +248,7 @@ public final class TermuxInstaller {
                     })
                     .setPositiveButton(R.string.bootstrap_error_try_again, (dialog, which) -> {
                         dialog.dismiss();
-                        FileUtils.deleteFile("termux prefix directory", TERMUX_PREFIX_DIR_PATH, true);
+                        // The prefix is only moved in place once the install succeeds and the staging directory is repaired
                         TermuxInstaller.setupBootstrapIfNeeded(activity, whenDone);
                     }).show();
             } catch (WindowManager.BadTokenException e1) {
@@ -326,25 +352,25 @@ public final class TermuxInstaller {
         }.start();
     }
 
-    private static Error ensureDirectoryExists(File directory) {
-        return FileUtils.createDirectoryFile(directory.getAbsolutePath());
-    }
-
-    public static byte[] loadZipBytes(Context context) {
+    /**
+     * Load the bootstrap zip embedded in the native bootstrap library as a read-only direct
+     * {@link ByteBuffer} over the library memory, without copying it to the java heap.
+     */
+    public static ByteBuffer loadZipBuffer() {
         try {
             Logger.logInfo(LOG_TAG, "Loading bootstrap zip directly from native library...");
             System.loadLibrary("termux-bootstrap");
-            byte[] zip = getZip();
-            if (zip == null || zip.length == 0) {
-                throw new RuntimeException("Native getZip() returned null or empty array");
+            ByteBuffer zip = getZipBuffer();
+            if (zip == null || zip.capacity() == 0) {
+                throw new RuntimeException("Native getZipBuffer() returned null or empty buffer");
             }
-            return zip;
+            return zip.asReadOnlyBuffer();
         } catch (Throwable e) {
             Logger.logError(LOG_TAG, "Critical failure loading native bootstrap: " + e.getMessage());
             throw new RuntimeException("Cannot install Termux: native bootstrap library is missing or corrupted", e);
         }
     }
 
-    public static native byte[] getZip();
+    public static native ByteBuffer getZipBuffer();
 
 }
@@ -2,36 +2,48 @@ package com.termux.app;
 
 import android.annotation.SuppressLint;
 import android.app.Service;
+import android.content.ComponentCallbacks2;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.termux.app.event.SystemEventReceiver;
 import com.termux.app.service.ServiceExecutionManager;
+import com.termux.app.service.ServiceMemoryGovernor;
+import com.termux.app.service.ServiceSessionMetrics;
 import com.termux.app.service.ServiceNotificationManager;
 import com.termux.app.service.ServiceWakeLockManager;
 import com.termux.app.terminal.TermuxTerminalSessionActivityClient;
 import com.termux.app.terminal.TermuxTerminalSessionServiceClient;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.data.IntentUtils;
+import com.termux.shared.errors.Error;
+import com.termux.shared.file.FileUtils;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.shell.command.ExecutionCommand;
 import com.termux.shared.shell.command.ExecutionCommand.Runner;
 import com.termux.shared.shell.command.runner.app.AppShell;
+import com.termux.shared.shell.command.runner.app.AppShellBatch;
 import com.termux.shared.termux.TermuxConstants;
 import com.termux.shared.termux.TermuxConstants.TERMUX_APP.TERMUX_SERVICE;
 import com.termux.shared.termux.plugins.TermuxPluginUtils;
 import com.termux.shared.termux.settings.preferences.TermuxAppSharedPreferences;
 import com.termux.shared.termux.settings.properties.TermuxAppSharedProperties;
+import com.termux.shared.termux.settings.properties.TermuxPropertyConstants;
+import com.termux.shared.termux.settings.properties.TermuxSharedProperties;
 import com.termux.shared.termux.shell.TermuxShellManager;
 import com.termux.shared.termux.shell.TermuxShellUtils;
+import com.termux.shared.termux.shell.am.TermuxAmSocketServer;
 import com.termux.shared.termux.shell.command.runner.terminal.TermuxSession;
+import com.termux.shared.termux.shell.command.runner.terminal.TermuxSessionPool;
 import com.termux.shared.termux.terminal.TermuxTerminalSessionClientBase;
 import com.termux.terminal.TerminalSession;
+import java.util.ArrayList;
 import java.util.List;
 
-public final class TermuxService extends Service implements AppShell.AppShellClient, TermuxSession.TermuxSessionClient {
+public final class TermuxService extends Service implements AppShell.AppShellClient, AppShellBatch.AppShellBatchClient, TermuxSession.TermuxSessionClient {
 
     class LocalBinder extends Binder {
         public final TermuxService service = TermuxService.this;
@@ -42,13 +54,25 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
     private TermuxTerminalSessionActivityClient mTermuxTerminalSessionActivityClient;
     private final TermuxTerminalSessionServiceClient mTermuxTerminalSessionServiceClient = new TermuxTerminalSessionServiceClient(this);
     private TermuxAppSharedProperties mProperties;
+    private final TermuxSharedProperties.OnPropertiesChangedListener mOnPropertiesChangedListener =
+        (properties, changedKeys) -> {
+            if (changedKeys.contains(TermuxPropertyConstants.KEY_SHELL_POOL_SIZE))
+                TermuxSessionPool.getSessionPool().setup(this, mProperties.getShellPoolSize());
+        };
     private TermuxShellManager mShellManager;
     private boolean mWantsToStop = false;
+    /** Whether the app deferred init phase has finished and shells can be started, only accessed on the main thread. */
+    private boolean mDeferredInitDone = false;
+    private boolean mDestroyed = false;
+    /** The work that starts shells queued by {@link #runWhenDeferredInitDone(Runnable)} until {@link #mDeferredInitDone}. */
+    private final List<Runnable> mPendingDeferredInitRunnables = new ArrayList<>();
     private static final String LOG_TAG = "TermuxService";
 
     private ServiceWakeLockManager mWakeLockManager;
     private ServiceNotificationManager mNotificationManager;
     private ServiceExecutionManager mExecutionManager;
+    private ServiceMemoryGovernor mMemoryGovernor;
+    private ServiceSessionMetrics mSessionMetrics;
 
     static {
         System.loadLibrary("termux_loader");
@@ -63,11 +87,48 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
         mWakeLockManager = new ServiceWakeLockManager(this);
         mNotificationManager = new ServiceNotificationManager(this);
         mExecutionManager = new ServiceExecutionManager(this, mShellManager);
+        mMemoryGovernor = new ServiceMemoryGovernor(this);
+        mSessionMetrics = new ServiceSessionMetrics(this);
 
         mNotificationManager.setWakeLockManager(mWakeLockManager);
 
+        TermuxAmSocketServer.setMetricsProvider(mSessionMetrics);
+
         runStartForeground();
         SystemEventReceiver.registerPackageUpdateEvents(this);
+
+        // Shells need the termux files directories and environment, so do not start any until the
+        // deferred init phase has finished, but do not block the main thread waiting for it
+        TermuxApplication.runDeferred(() -> {
+            // Sessions do not outlive the service, so any scrollback files left are from a killed process
+            Error error = FileUtils.deleteDirectoryFile("terminal scrollback directory", TermuxConstants.TERMUX_APP.TERMINAL_SCROLLBACK_DIR_PATH, true);
+            if (error != null) Logger.logErrorExtended(LOG_TAG, error.toString());
+            mHandler.post(this::onDeferredInitDone);
+        });
+    }
+
+    private void onDeferredInitDone() {
+        if (mDestroyed) return;
+        mDeferredInitDone = true;
+        TermuxSessionPool.getSessionPool().setup(this, mProperties.getShellPoolSize());
+        mProperties.addOnPropertiesChangedListener(mOnPropertiesChangedListener);
+
+        if (!mPendingDeferredInitRunnables.isEmpty())
+            Logger.logDebug(LOG_TAG, "Running " + mPendingDeferredInitRunnables.size() + " commands queued until deferred init was done");
+        for (Runnable runnable : mPendingDeferredInitRunnables)
+            runnable.run();
+        mPendingDeferredInitRunnables.clear();
+    }
+
+    /**
+     * Run work that starts shells, like creating a session or executing a command, on the main
+     * thread once the {@link TermuxApplication} deferred init phase has finished. If it has already
+     * finished, the runnable is run right away, otherwise it is queued in order. This must be called
+     * on the main thread.
+     */
+    public void runWhenDeferredInitDone(@NonNull Runnable runnable) {
+        if (mDeferredInitDone) runnable.run();
+        else mPendingDeferredInitRunnables.add(runnable);
     }
 
     @SuppressLint("Wakelock")
@@ -96,7 +157,11 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
                     break;
                 case TERMUX_SERVICE.ACTION_SERVICE_EXECUTE:
                     Logger.logDebug(LOG_TAG, "ACTION_SERVICE_EXECUTE intent received");
-                    mExecutionManager.actionServiceExecute(intent);
+                    runWhenDeferredInitDone(() -> mExecutionManager.actionServiceExecute(intent));
+                    break;
+                case TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH:
+                    Logger.logDebug(LOG_TAG, "ACTION_SERVICE_EXECUTE_BATCH intent received");
+                    runWhenDeferredInitDone(() -> mExecutionManager.actionServiceExecuteBatch(intent));
                     break;
                 default:
                     Logger.logError(LOG_TAG, "Invalid action: \"" + action + "\"");
@@ -109,14 +174,32 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
     @Override
     public void onDestroy() {
         Logger.logVerbose(LOG_TAG, "onDestroy");
+        mDestroyed = true;
+        mPendingDeferredInitRunnables.clear();
+        TermuxAmSocketServer.setMetricsProvider(null);
+        mNotificationManager.cancelPendingNotificationUpdate();
         TermuxShellUtils.clearTermuxTMPDIR(true);
         mWakeLockManager.releaseWakeLock(false);
+        mProperties.removeOnPropertiesChangedListener(mOnPropertiesChangedListener);
+        TermuxSessionPool.getSessionPool().clear();
         if (!mWantsToStop) mExecutionManager.killAllTermuxExecutionCommands();
         TermuxShellManager.onAppExit(this);
         SystemEventReceiver.unregisterPackageUpdateEvents(this);
         runStopForeground();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        Logger.logVerbose(LOG_TAG, "onTrimMemory: " + level);
+        super.onTrimMemory(level);
+        // Pooled shells will be started again when the next session is created. They are kept
+        // when only the UI is hidden, since that is when the next session is most likely needed.
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL ||
+            level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+            TermuxSessionPool.getSessionPool().clear();
+        mMemoryGovernor.onTrimMemory(level);
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         Logger.logVerbose(LOG_TAG, "onBind");
@@ -173,6 +256,32 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
         });
     }
 
+    @Override
+    public void onAppShellBatchCommandStarted(final AppShellBatch termuxTaskBatch, final AppShell termuxTask) {
+        mHandler.post(() -> {
+            if (!termuxTask.getExecutionCommand().hasExecuted()) mShellManager.mTermuxTasks.add(termuxTask);
+            updateNotification();
+        });
+    }
+
+    @Override
+    public void onAppShellBatchCommandExited(final AppShellBatch termuxTaskBatch, final AppShell termuxTask) {
+        onAppShellExited(termuxTask);
+    }
+
+    @Override
+    public void onAppShellBatchExited(final AppShellBatch termuxTaskBatch) {
+        mHandler.post(() -> {
+            if (termuxTaskBatch != null) {
+                ExecutionCommand executionCommand = termuxTaskBatch.getExecutionCommand();
+                Logger.logVerbose(LOG_TAG, "The onAppShellBatchExited() callback called for \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxTask batch command");
+                if (executionCommand.isPluginExecutionCommand) TermuxPluginUtils.processPluginExecutionCommandResult(this, LOG_TAG, executionCommand);
+                mShellManager.mTermuxTaskBatches.remove(termuxTaskBatch);
+            }
+            updateNotification();
+        });
+    }
+
     @Nullable
     public TermuxSession createTermuxSession(String executablePath, String[] arguments, String stdin, String workingDirectory, boolean isFailSafe, String sessionName) {
         ExecutionCommand executionCommand = new ExecutionCommand(TermuxShellManager.getNextShellId(), executablePath, arguments, stdin, workingDirectory, Runner.TERMINAL_SESSION.getName(), isFailSafe);
@@ -180,9 +289,11 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
         return mExecutionManager.createTermuxSession(executionCommand);
     }
 
-    public synchronized int removeTermuxSession(TerminalSession sessionToRemove) {
-        int index = getIndexOfSession(sessionToRemove);
-        if (index >= 0) mShellManager.mTermuxSessions.get(index).finish();
+    public int removeTermuxSession(TerminalSession sessionToRemove) {
+        TermuxSession termuxSession = getTermuxSessionForTerminalSession(sessionToRemove);
+        if (termuxSession == null) return -1;
+        int index = mShellManager.mTermuxSessions.indexOf(termuxSession);
+        termuxSession.finish();
         return index;
     }
 
@@ -193,6 +304,7 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
             Logger.logVerbose(LOG_TAG, "The onTermuxSessionExited() callback called for \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxSession command");
             if (executionCommand != null && executionCommand.isPluginExecutionCommand) TermuxPluginUtils.processPluginExecutionCommandResult(this, LOG_TAG, executionCommand);
             mShellManager.mTermuxSessions.remove(termuxSession);
+            termuxSession.getTerminalSession().closeDiskScrollback();
             if (mTermuxTerminalSessionActivityClient != null) mTermuxTerminalSessionActivityClient.termuxSessionListNotifyUpdated();
         }
         updateNotification();
@@ -205,11 +317,11 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
 
     public synchronized void setTermuxTerminalSessionClient(TermuxTerminalSessionActivityClient termuxTerminalSessionActivityClient) {
         mTermuxTerminalSessionActivityClient = termuxTerminalSessionActivityClient;
-        for (int i = 0; i < mShellManager.mTermuxSessions.size(); i++) mShellManager.mTermuxSessions.get(i).getTerminalSession().updateTerminalSessionClient(mTermuxTerminalSessionActivityClient);
+        for (TermuxSession termuxSession : mShellManager.mTermuxSessions) termuxSession.getTerminalSession().updateTerminalSessionClient(mTermuxTerminalSessionActivityClient);
     }
 
     public synchronized void unsetTermuxTerminalSessionClient() {
-        for (int i = 0; i < mShellManager.mTermuxSessions.size(); i++) mShellManager.mTermuxSessions.get(i).getTerminalSession().updateTerminalSessionClient(mTermuxTerminalSessionServiceClient);
+        for (TermuxSession termuxSession : mShellManager.mTermuxSessions) termuxSession.getTerminalSession().updateTerminalSessionClient(mTermuxTerminalSessionServiceClient);
         mTermuxTerminalSessionActivityClient = null;
     }
 
@@ -220,82 +332,83 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
         preferences.setCurrentSession(terminalSession.mHandle);
     }
 
-    public synchronized boolean isTermuxSessionsEmpty() {
+    public boolean isTermuxSessionsEmpty() {
         return mShellManager.mTermuxSessions.isEmpty();
     }
 
-    public synchronized boolean isTermuxTasksEmpty() {
+    public boolean isTermuxTasksEmpty() {
         return mShellManager.mTermuxTasks.isEmpty();
     }
 
-    public synchronized int getTermuxSessionsSize() {
+    public int getTermuxSessionsSize() {
         return mShellManager.mTermuxSessions.size();
     }
 
-    public synchronized int getTermuxTasksSize() {
+    public int getTermuxTasksSize() {
         return mShellManager.mTermuxTasks.size();
     }
 
-    public synchronized List<TermuxSession> getTermuxSessions() {
+    /**
+     * Get the list of sessions. It can be read from any thread and iterating it does not throw a
+     * {@link java.util.ConcurrentModificationException} if sessions are added or removed.
+     */
+    public List<TermuxSession> getTermuxSessions() {
         return mShellManager.mTermuxSessions;
     }
 
     @Nullable
-    public synchronized TermuxSession getTermuxSession(int index) {
-        if (index >= 0 && index < mShellManager.mTermuxSessions.size()) return mShellManager.mTermuxSessions.get(index);
-        else return null;
+    public TermuxSession getTermuxSession(int index) {
+        return mShellManager.mTermuxSessions.getOrNull(index);
     }
 
     @Nullable
-    public synchronized TermuxSession getTermuxSessionForTerminalSession(TerminalSession terminalSession) {
+    public TermuxSession getTermuxSessionForTerminalSession(TerminalSession terminalSession) {
         if (terminalSession == null) return null;
-        for (int i = 0; i < mShellManager.mTermuxSessions.size(); i++) {
-            if (mShellManager.mTermuxSessions.get(i).getTerminalSession().equals(terminalSession)) return mShellManager.mTermuxSessions.get(i);
-        }
-        return null;
+        return mShellManager.mTermuxSessions.getForHandle(terminalSession.mHandle);
     }
 
-    public synchronized TermuxSession getLastTermuxSession() {
-        return mShellManager.mTermuxSessions.isEmpty() ? null : mShellManager.mTermuxSessions.get(mShellManager.mTermuxSessions.size() - 1);
+    public TermuxSession getLastTermuxSession() {
+        return mShellManager.mTermuxSessions.getLast();
     }
 
-    public synchronized int getIndexOfSession(TerminalSession terminalSession) {
-        if (terminalSession == null) return -1;
-        for (int i = 0; i < mShellManager.mTermuxSessions.size(); i++) {
-            if (mShellManager.mTermuxSessions.get(i).getTerminalSession().equals(terminalSession)) return i;
-        }
-        return -1;
+    public int getIndexOfSession(TerminalSession terminalSession) {
+        TermuxSession termuxSession = getTermuxSessionForTerminalSession(terminalSession);
+        return termuxSession == null ? -1 : mShellManager.mTermuxSessions.indexOf(termuxSession);
     }
 
-    public synchronized TerminalSession getTerminalSessionForHandle(String sessionHandle) {
-        TerminalSession terminalSession;
-        for (int i = 0, len = mShellManager.mTermuxSessions.size(); i < len; i++) {
-            terminalSession = mShellManager.mTermuxSessions.get(i).getTerminalSession();
-            if (terminalSession.mHandle.equals(sessionHandle)) return terminalSession;
-        }
-        return null;
+    public TerminalSession getTerminalSessionForHandle(String sessionHandle) {
+        TermuxSession termuxSession = mShellManager.mTermuxSessions.getForHandle(sessionHandle);
+        return termuxSession == null ? null : termuxSession.getTerminalSession();
     }
 
-    public synchronized AppShell getTermuxTaskForShellName(String name) {
+    public AppShell getTermuxTaskForShellName(String name) {
         if (DataUtils.isNullOrEmpty(name)) return null;
-        AppShell appShell;
-        for (int i = 0, len = mShellManager.mTermuxTasks.size(); i < len; i++) {
-            appShell = mShellManager.mTermuxTasks.get(i);
-            String shellName = appShell.getExecutionCommand().shellName;
-            if (shellName != null && shellName.equals(name)) return appShell;
-        }
-        return null;
+        return mShellManager.mTermuxTasks.getForName(name);
     }
 
-    public synchronized TermuxSession getTermuxSessionForShellName(String name) {
+    public TermuxSession getTermuxSessionForShellName(String name) {
         if (DataUtils.isNullOrEmpty(name)) return null;
-        TermuxSession termuxSession;
-        for (int i = 0, len = mShellManager.mTermuxSessions.size(); i < len; i++) {
-            termuxSession = mShellManager.mTermuxSessions.get(i);
-            String shellName = termuxSession.getExecutionCommand().shellName;
-            if (shellName != null && shellName.equals(name)) return termuxSession;
-        }
-        return null;
+        return mShellManager.mTermuxSessions.getForName(name);
+    }
+
+    /** Set the shell name of a session so that it can be found with {@link #getTermuxSessionForShellName(String)}. */
+    public void setTermuxSessionShellName(@NonNull TermuxSession termuxSession, String name) {
+        mShellManager.mTermuxSessions.setShellName(termuxSession, name);
+    }
+
+    /** Set the shell pid of a session so that it can be found with {@link #getTermuxSessionForPid(int)}. */
+    public void setTermuxSessionShellPid(@NonNull TermuxSession termuxSession, int pid) {
+        mShellManager.mTermuxSessions.setShellPid(termuxSession, pid);
+    }
+
+    @Nullable
+    public AppShell getTermuxTaskForPid(int pid) {
+        return mShellManager.mTermuxTasks.getForPid(pid);
+    }
+
+    @Nullable
+    public TermuxSession getTermuxSessionForPid(int pid) {
+        return mShellManager.mTermuxSessions.getForPid(pid);
     }
 
     public boolean wantsToStop() {
@@ -306,6 +419,14 @@ public final class TermuxService extends Service implements AppShell.AppShellCli
         return mProperties;
     }
 
+    public ServiceMemoryGovernor getMemoryGovernor() {
+        return mMemoryGovernor;
+    }
+
+    public ServiceSessionMetrics getSessionMetrics() {
+        return mSessionMetrics;
+    }
+
     public TermuxTerminalSessionActivityClient getTermuxTerminalSessionActivityClient() {
         return mTermuxTerminalSessionActivityClient;
     }
@@ -10,13 +10,24 @@ import android.view.MenuItem;
 
 import com.termux.R;
 import com.termux.app.TermuxActivity;
+import com.termux.app.TermuxInstaller;
 import com.termux.app.activities.HelpActivity;
 import com.termux.app.activities.SettingsActivity;
 import com.termux.shared.activity.ActivityUtils;
 import com.termux.shared.data.DataUtils;
+import com.termux.shared.errors.Error;
+import com.termux.shared.file.FileUtils;
+import com.termux.shared.logger.Logger;
 import com.termux.shared.termux.TermuxConstants;
+import com.termux.terminal.TerminalRecorder;
 import com.termux.terminal.TerminalSession;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
 public class TermuxActivityContextMenuManager {
 
     private final TermuxActivity mActivity;
@@ -33,6 +44,11 @@ public class TermuxActivityContextMenuManager {
     private static final int CONTEXT_MENU_HELP_ID = 7;
     private static final int CONTEXT_MENU_SETTINGS_ID = 8;
     private static final int CONTEXT_MENU_REPORT_ID = 9;
+    private static final int CONTEXT_MENU_TOGGLE_FRAME_STATS_OVERLAY = 12;
+    private static final int CONTEXT_MENU_TOGGLE_SESSION_RECORDING = 13;
+    private static final int CONTEXT_MENU_REPAIR_BOOTSTRAP_ID = 14;
+
+    private static final String LOG_TAG = "TermuxActivityContextMenuManager";
 
     public TermuxActivityContextMenuManager(TermuxActivity activity) {
         this.mActivity = activity;
@@ -56,6 +72,9 @@ public class TermuxActivityContextMenuManager {
         menu.add(Menu.NONE, CONTEXT_MENU_KILL_PROCESS_ID, Menu.NONE, mActivity.getResources().getString(R.string.action_kill_process, currentSession.getPid())).setEnabled(currentSession.isRunning());
         menu.add(Menu.NONE, CONTEXT_MENU_STYLING_ID, Menu.NONE, R.string.action_style_terminal);
         menu.add(Menu.NONE, CONTEXT_MENU_TOGGLE_KEEP_SCREEN_ON, Menu.NONE, R.string.action_toggle_keep_screen_on).setCheckable(true).setChecked(mActivity.getPreferences().shouldKeepScreenOn());
+        menu.add(Menu.NONE, CONTEXT_MENU_TOGGLE_FRAME_STATS_OVERLAY, Menu.NONE, R.string.action_toggle_frame_stats_overlay).setCheckable(true).setChecked(terminalManager.getTerminalView().isFrameStatsOverlayEnabled());
+        menu.add(Menu.NONE, CONTEXT_MENU_TOGGLE_SESSION_RECORDING, Menu.NONE, R.string.action_toggle_session_recording).setCheckable(true).setChecked(currentSession.isRecording()).setEnabled(currentSession.isRunning() || currentSession.isRecording());
+        menu.add(Menu.NONE, CONTEXT_MENU_REPAIR_BOOTSTRAP_ID, Menu.NONE, R.string.action_repair_bootstrap);
         menu.add(Menu.NONE, CONTEXT_MENU_HELP_ID, Menu.NONE, R.string.action_open_help);
         menu.add(Menu.NONE, CONTEXT_MENU_SETTINGS_ID, Menu.NONE, R.string.action_open_settings);
         menu.add(Menu.NONE, CONTEXT_MENU_REPORT_ID, Menu.NONE, R.string.action_report_issue);
@@ -92,6 +111,15 @@ public class TermuxActivityContextMenuManager {
             case CONTEXT_MENU_TOGGLE_KEEP_SCREEN_ON:
                 toggleKeepScreenOn(terminalManager);
                 return true;
+            case CONTEXT_MENU_TOGGLE_FRAME_STATS_OVERLAY:
+                terminalManager.getTerminalView().setFrameStatsOverlayEnabled(!terminalManager.getTerminalView().isFrameStatsOverlayEnabled());
+                return true;
+            case CONTEXT_MENU_TOGGLE_SESSION_RECORDING:
+                toggleSessionRecording(session);
+                return true;
+            case CONTEXT_MENU_REPAIR_BOOTSTRAP_ID:
+                showRepairBootstrapDialog();
+                return true;
             case CONTEXT_MENU_HELP_ID:
                 ActivityUtils.startActivity(mActivity, new Intent(mActivity, HelpActivity.class));
                 return true;
@@ -120,6 +148,18 @@ public class TermuxActivityContextMenuManager {
         b.show();
     }
 
+    private void showRepairBootstrapDialog() {
+        final AlertDialog.Builder b = new AlertDialog.Builder(mActivity);
+        b.setIcon(android.R.drawable.ic_dialog_alert);
+        b.setMessage(R.string.title_confirm_repair_bootstrap);
+        b.setPositiveButton(android.R.string.yes, (dialog, id) -> {
+            dialog.dismiss();
+            TermuxInstaller.repairPrefix(mActivity);
+        });
+        b.setNegativeButton(android.R.string.no, null);
+        b.show();
+    }
+
     private void onResetTerminalSession(TerminalSession session, TermuxActivityTerminalManager terminalManager) {
         if (session != null) {
             session.reset();
@@ -143,6 +183,35 @@ public class TermuxActivityContextMenuManager {
         }
     }
 
+    private void toggleSessionRecording(TerminalSession session) {
+        if (session == null) return;
+
+        TerminalRecorder recorder = session.stopRecording();
+        if (recorder != null) {
+            mActivity.showToast(mActivity.getString(R.string.msg_session_recording_stopped, recorder.getFile().getAbsolutePath()), true);
+            return;
+        }
+
+        if (session.getEmulator() == null) return;
+
+        Error error = FileUtils.createDirectoryFile("terminal recordings directory", TermuxConstants.TERMUX_APP.TERMINAL_RECORDINGS_DIR_PATH);
+        if (error != null) {
+            Logger.logErrorExtended(LOG_TAG, error.toString());
+            mActivity.showToast(mActivity.getString(R.string.error_session_recording_failed), true);
+            return;
+        }
+
+        String fileName = "session-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss", Locale.US).format(new Date()) + ".cast";
+        File file = new File(TermuxConstants.TERMUX_APP.TERMINAL_RECORDINGS_DIR_PATH, fileName);
+        try {
+            session.startRecording(file);
+            mActivity.showToast(mActivity.getString(R.string.msg_session_recording_started, file.getAbsolutePath()), true);
+        } catch (IOException e) {
+            Logger.logStackTraceWithMessage(LOG_TAG, "Failed to start session recording to \"" + file.getAbsolutePath() + "\"", e);
+            mActivity.showToast(mActivity.getString(R.string.error_session_recording_failed), true);
+        }
+    }
+
     private void toggleKeepScreenOn(TermuxActivityTerminalManager terminalManager) {
         if (terminalManager.getTerminalView().getKeepScreenOn()) {
             terminalManager.getTerminalView().setKeepScreenOn(false);
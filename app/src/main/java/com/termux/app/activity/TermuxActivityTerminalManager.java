@@ -24,6 +24,15 @@ public class TermuxActivityTerminalManager {
     private TermuxTerminalViewClient mTermuxTerminalViewClient;
     private TermuxTerminalSessionActivityClient mTermuxTerminalSessionActivityClient;
     private TermuxSessionsListViewController mTermuxSessionListViewController;
+    private ListView mTermuxSessionsListView;
+
+    /** Whether a {@link #mNotifySessionListUpdatedRunnable} is posted for the next frame. */
+    private boolean mSessionListUpdatePending;
+    private final Runnable mNotifySessionListUpdatedRunnable = () -> {
+        mSessionListUpdatePending = false;
+        if (mTermuxSessionListViewController != null)
+            mTermuxSessionListViewController.notifyDataSetChanged();
+    };
 
     public TermuxActivityTerminalManager(TermuxActivity activity) {
         this.mActivity = activity;
@@ -83,11 +92,11 @@ public class TermuxActivityTerminalManager {
     }
 
     public void setupSessionsListView(TermuxService service) {
-        ListView termuxSessionsListView = mActivity.findViewById(R.id.terminal_sessions_list);
+        mTermuxSessionsListView = mActivity.findViewById(R.id.terminal_sessions_list);
         mTermuxSessionListViewController = new TermuxSessionsListViewController(mActivity, service.getTermuxSessions());
-        termuxSessionsListView.setAdapter(mTermuxSessionListViewController);
-        termuxSessionsListView.setOnItemClickListener(mTermuxSessionListViewController);
-        termuxSessionsListView.setOnItemLongClickListener(mTermuxSessionListViewController);
+        mTermuxSessionsListView.setAdapter(mTermuxSessionListViewController);
+        mTermuxSessionsListView.setOnItemClickListener(mTermuxSessionListViewController);
+        mTermuxSessionsListView.setOnItemLongClickListener(mTermuxSessionListViewController);
     }
 
     public void handleOnServiceConnected(TermuxService service) {
@@ -124,10 +133,22 @@ public class TermuxActivityTerminalManager {
         service.setTermuxTerminalSessionClient(mTermuxTerminalSessionActivityClient);
     }
 
+    /**
+     * Notify the sessions list that sessions were added or removed. All the notifications until the
+     * next frame are coalesced into a single {@link TermuxSessionsListViewController#notifyDataSetChanged()}.
+     */
     public void notifySessionListUpdated() {
-        if (mTermuxSessionListViewController != null) {
-            mTermuxSessionListViewController.notifyDataSetChanged();
-        }
+        if (mTermuxSessionListViewController == null || mSessionListUpdatePending) return;
+        mSessionListUpdatePending = true;
+        mTermuxSessionsListView.postOnAnimation(mNotifySessionListUpdatedRunnable);
+    }
+
+    /** Notify the sessions list that the title or name of a session changed, which only rebinds its row. */
+    public void notifySessionUpdated(TerminalSession session) {
+        if (mTermuxSessionListViewController == null || mSessionListUpdatePending) return;
+        TermuxService service = mActivity.getTermuxService();
+        if (service == null) return;
+        mTermuxSessionListViewController.notifySessionUpdated(mTermuxSessionsListView, service.getTermuxSessionForTerminalSession(session));
     }
 
     public TerminalView getTerminalView() {
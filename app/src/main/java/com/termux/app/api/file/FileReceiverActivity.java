@@ -4,10 +4,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.provider.OpenableColumns;
 import android.util.Patterns;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.termux.R;
@@ -26,14 +28,15 @@ import com.termux.shared.logger.Logger;
 import com.termux.shared.termux.settings.properties.TermuxAppSharedProperties;
 import com.termux.shared.termux.settings.properties.TermuxPropertyConstants;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 public class FileReceiverActivity extends AppCompatActivity {
@@ -50,6 +53,9 @@ public class FileReceiverActivity extends AppCompatActivity {
      */
     boolean mFinishOnDismissNameDialog = true;
 
+    /** The source being prompted for that has not been passed to {@link FileReceiverService} yet. */
+    private ParcelFileDescriptor mPendingSource;
+
     private static final String API_TAG = TermuxConstants.TERMUX_APP_NAME + "FileReceiver";
 
     private static final String LOG_TAG = "FileReceiverActivity";
@@ -86,12 +92,19 @@ public class FileReceiverActivity extends AppCompatActivity {
                 } else {
                     String subject = IntentUtils.getStringExtraIfSet(intent, Intent.EXTRA_SUBJECT, null);
                     if (subject == null) subject = sharedTitle;
-                    if (subject != null) subject += ".txt";
-                    promptNameAndSave(new ByteArrayInputStream(sharedText.getBytes(StandardCharsets.UTF_8)), subject);
+                    if (subject != null) subject = getReceivedFileName(subject + ".txt");
+                    promptNameAndSave(null, sharedText.getBytes(StandardCharsets.UTF_8), subject);
                 }
             } else {
                 showErrorDialogAndQuit("Send action without content - nothing to save.");
             }
+        } else if (Intent.ACTION_SEND_MULTIPLE.equals(action) && type != null) {
+            final ArrayList<Uri> sharedUris = intent.getParcelableArrayListExtra(Intent.EXTRA_STREAM);
+            if (sharedUris != null && !sharedUris.isEmpty()) {
+                handleContentUrisAndFinish(sharedUris);
+            } else {
+                showErrorDialogAndQuit("Send multiple action without content - nothing to save.");
+            }
         } else {
             Uri dataUri = intent.getData();
 
@@ -114,8 +127,8 @@ public class FileReceiverActivity extends AppCompatActivity {
 
                 File file = new File(path);
                 try {
-                    FileInputStream in = new FileInputStream(file);
-                    promptNameAndSave(in, file.getName());
+                    ParcelFileDescriptor source = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+                    promptNameAndSave(source, null, file.getName());
                 } catch (FileNotFoundException e) {
                     showErrorDialogAndQuit("Cannot open file: " + e.getMessage() + ".");
                 }
@@ -134,39 +147,166 @@ public class FileReceiverActivity extends AppCompatActivity {
             dialog -> finish());
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // Close the source if it was not passed to FileReceiverService, like if the dialog was canceled
+        closePendingSource();
+    }
+
+    void closePendingSource() {
+        if (mPendingSource == null) return;
+        try {
+            mPendingSource.close();
+        } catch (IOException e) {
+            Logger.logStackTraceWithMessage(LOG_TAG, "Failed to close source", e);
+        }
+        mPendingSource = null;
+    }
+
     void handleContentUri(@NonNull final Uri uri, String subjectFromIntent) {
         try {
-            Logger.logVerbose(LOG_TAG, "uri: \"" + uri + "\", path: \"" + uri.getPath() + "\", fragment: \"" + uri.getFragment() + "\"");
+            Logger.logVerbose(LOG_TAG, () -> "uri: \"" + uri + "\", path: \"" + uri.getPath() + "\", fragment: \"" + uri.getFragment() + "\"");
 
-            String attachmentFileName = null;
+            String attachmentFileName = getReceivedFileName(getContentUriFileName(uri));
+            if (attachmentFileName == null) attachmentFileName = getReceivedFileName(subjectFromIntent);
+            if (attachmentFileName == null) attachmentFileName = getReceivedFileName(UriUtils.getUriFileBasename(uri, true));
 
-            String[] projection = new String[]{OpenableColumns.DISPLAY_NAME};
-            try (Cursor c = getContentResolver().query(uri, projection, null, null, null)) {
-                if (c != null && c.moveToFirst()) {
-                    final int fileNameColumnId = c.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                    if (fileNameColumnId >= 0) attachmentFileName = c.getString(fileNameColumnId);
-                }
+            ParcelFileDescriptor source = getContentResolver().openFileDescriptor(uri, "r");
+            if (source == null) {
+                showErrorDialogAndQuit("Unable to open shared content.");
+                return;
             }
-
-            if (attachmentFileName == null) attachmentFileName = subjectFromIntent;
-            if (attachmentFileName == null) attachmentFileName = UriUtils.getUriFileBasename(uri, true);
-
-            InputStream in = getContentResolver().openInputStream(uri);
-            promptNameAndSave(in, attachmentFileName);
+            promptNameAndSave(source, null, attachmentFileName);
         } catch (Exception e) {
             showErrorDialogAndQuit("Unable to handle shared content:\n\n" + e.getMessage());
             Logger.logStackTraceWithMessage(LOG_TAG, "handleContentUri(uri=" + uri + ") failed", e);
         }
     }
 
-    void promptNameAndSave(final InputStream in, final String attachmentFileName) {
+    /**
+     * Save multiple shared content uris with their display names in {@link #TERMUX_RECEIVEDIR}
+     * without prompting for each of them. The uris are opened here while the uri permissions are
+     * granted to the activity, and are then saved in parallel by {@link FileReceiverService}.
+     */
+    void handleContentUrisAndFinish(@NonNull final List<Uri> uris) {
+        File receiveDir = getReceiveDir();
+        if (receiveDir == null) return;
+
+        List<FileReceiverService.ReceivedFile> receivedFiles = new ArrayList<>();
+        Set<String> fileNames = new HashSet<>();
+        for (Uri uri : uris) {
+            if (uri == null) continue;
+            try {
+                String fileName = getReceivedFileName(getContentUriFileName(uri));
+                if (fileName == null) fileName = getReceivedFileName(UriUtils.getUriFileBasename(uri, true));
+                if (fileName == null) fileName = "file";
+                fileName = getUniqueFileName(receiveDir, fileName, fileNames);
+                File outFile = new File(receiveDir, fileName);
+                if (!isFileInDirectory(receiveDir, outFile))
+                    throw new IOException("The file \"" + outFile.getAbsolutePath() + "\" is not in the receive directory");
+                fileNames.add(fileName);
+
+                ParcelFileDescriptor source = getContentResolver().openFileDescriptor(uri, "r");
+                if (source == null) throw new FileNotFoundException("Unable to open shared content");
+                receivedFiles.add(new FileReceiverService.ReceivedFile(source, outFile,
+                    FileReceiverService.ON_SAVED_NONE));
+            } catch (Exception e) {
+                Logger.logStackTraceWithMessage(LOG_TAG, "handleContentUrisAndFinish(uri=" + uri + ") failed", e);
+            }
+        }
+
+        if (receivedFiles.isEmpty()) {
+            showErrorDialogAndQuit("Unable to open any of the shared content.");
+            return;
+        }
+
+        FileReceiverService.saveFiles(this, receivedFiles);
+        Logger.showToast(this, getString(R.string.msg_files_received_saving, receivedFiles.size()), false);
+        finish();
+    }
+
+    @Nullable
+    String getContentUriFileName(@NonNull final Uri uri) {
+        String[] projection = new String[]{OpenableColumns.DISPLAY_NAME};
+        try (Cursor c = getContentResolver().query(uri, projection, null, null, null)) {
+            if (c != null && c.moveToFirst()) {
+                final int fileNameColumnId = c.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                if (fileNameColumnId >= 0) return c.getString(fileNameColumnId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the name to save a received file with from a name sent by another app, like the
+     * {@link OpenableColumns#DISPLAY_NAME} of a content uri, which may be a path like
+     * "../../.bashrc" that would otherwise be saved outside of {@link #TERMUX_RECEIVEDIR}.
+     *
+     * @param fileName The name sent by the other app.
+     * @return Returns the last segment of the name, or {@code null} if it is not a valid file name.
+     */
+    @Nullable
+    static String getReceivedFileName(@Nullable String fileName) {
+        if (fileName == null) return null;
+
+        fileName = new File(fileName).getName();
+        if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")
+            || fileName.indexOf('/') >= 0 || fileName.indexOf('\0') >= 0)
+            return null;
+        return fileName;
+    }
+
+    /**
+     * Check if a file is under a directory after resolving symlinks and ".." segments of both, so
+     * that it is not written outside of it.
+     */
+    static boolean isFileInDirectory(@NonNull File directory, @NonNull File file) {
+        try {
+            return file.getCanonicalPath().startsWith(directory.getCanonicalPath() + "/");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get a file name that does not exist in a directory and is not in a set of names already
+     * used, by adding a " (n)" suffix before the extension.
+     */
+    @NonNull
+    static String getUniqueFileName(@NonNull File directory, @NonNull String fileName, @NonNull Set<String> usedFileNames) {
+        if (!usedFileNames.contains(fileName) && !new File(directory, fileName).exists())
+            return fileName;
+
+        int extensionIndex = fileName.lastIndexOf('.');
+        if (extensionIndex <= 0) extensionIndex = fileName.length();
+        String baseName = fileName.substring(0, extensionIndex);
+        String extension = fileName.substring(extensionIndex);
+        for (int i = 1; ; i++) {
+            String uniqueFileName = baseName + " (" + i + ")" + extension;
+            if (!usedFileNames.contains(uniqueFileName) && !new File(directory, uniqueFileName).exists())
+                return uniqueFileName;
+        }
+    }
+
+    /**
+     * Prompt for the name of the received file and then save it in the background with
+     * {@link FileReceiverService}.
+     *
+     * @param source The source {@link ParcelFileDescriptor}, or {@code null} if {@code data} is passed.
+     * @param data The data received in the intent, or {@code null} if {@code source} is passed.
+     * @param attachmentFileName The initial file name.
+     */
+    void promptNameAndSave(@Nullable final ParcelFileDescriptor source, @Nullable final byte[] data, final String attachmentFileName) {
+        mPendingSource = source;
+
         TextInputDialogUtils.textInput(this, R.string.title_file_received, attachmentFileName,
             R.string.action_file_received_edit, text -> {
-                File outFile = saveStreamWithName(in, text);
-                if (outFile == null) return;
-
                 final File editorProgramFile = new File(EDITOR_PROGRAM);
                 if (!editorProgramFile.isFile()) {
+                    // Still save the file before showing the error like was done previously
+                    if (saveWithName(source, data, text, FileReceiverService.ON_SAVED_NONE) == null) return;
                     showErrorDialogAndQuit("The following file does not exist:\n$HOME/bin/termux-file-editor\n\n"
                         + "Create this file as a script or a symlink - it will be called with the received file as only argument.");
                     return;
@@ -176,21 +316,11 @@ public class FileReceiverActivity extends AppCompatActivity {
                 //noinspection ResultOfMethodCallIgnored
                 editorProgramFile.setExecutable(true);
 
-                final Uri scriptUri = UriUtils.getFileUri(EDITOR_PROGRAM);
-
-                Intent executeIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE, scriptUri);
-                executeIntent.setClass(FileReceiverActivity.this, TermuxService.class);
-                executeIntent.putExtra(TERMUX_SERVICE.EXTRA_ARGUMENTS, new String[]{outFile.getAbsolutePath()});
-                startService(executeIntent);
+                if (saveWithName(source, data, text, FileReceiverService.ON_SAVED_EDIT) == null) return;
                 finish();
             },
             R.string.action_file_received_open_directory, text -> {
-                if (saveStreamWithName(in, text) == null) return;
-
-                Intent executeIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE);
-                executeIntent.putExtra(TERMUX_SERVICE.EXTRA_WORKDIR, TERMUX_RECEIVEDIR);
-                executeIntent.setClass(FileReceiverActivity.this, TermuxService.class);
-                startService(executeIntent);
+                if (saveWithName(source, data, text, FileReceiverService.ON_SAVED_OPEN_DIRECTORY) == null) return;
                 finish();
             },
             android.R.string.cancel, text -> finish(), dialog -> {
@@ -198,34 +328,51 @@ public class FileReceiverActivity extends AppCompatActivity {
             });
     }
 
-    public File saveStreamWithName(InputStream in, String attachmentFileName) {
-        File receiveDir = new File(TERMUX_RECEIVEDIR);
-
+    /**
+     * Save the received file with a name in the background with {@link FileReceiverService}.
+     *
+     * @return Returns the output {@link File}, or {@code null} if saving failed to start.
+     */
+    @Nullable
+    public File saveWithName(@Nullable ParcelFileDescriptor source, @Nullable byte[] data, String attachmentFileName, int onSavedAction) {
         if (DataUtils.isNullOrEmpty(attachmentFileName)) {
             showErrorDialogAndQuit("File name cannot be null or empty");
             return null;
         }
 
-        if (!receiveDir.isDirectory() && !receiveDir.mkdirs()) {
-            showErrorDialogAndQuit("Cannot create directory: " + receiveDir.getAbsolutePath());
+        File receiveDir = getReceiveDir();
+        if (receiveDir == null) return null;
+
+        final File outFile = new File(receiveDir, attachmentFileName);
+        if (!isFileInDirectory(receiveDir, outFile)) {
+            showErrorDialogAndQuit("Cannot save file outside of directory: " + receiveDir.getAbsolutePath());
             return null;
         }
 
-        try {
-            final File outFile = new File(receiveDir, attachmentFileName);
-            try (FileOutputStream f = new FileOutputStream(outFile)) {
-                byte[] buffer = new byte[4096];
-                int readBytes;
-                while ((readBytes = in.read(buffer)) > 0) {
-                    f.write(buffer, 0, readBytes);
-                }
-            }
-            return outFile;
-        } catch (IOException e) {
-            showErrorDialogAndQuit("Error saving file:\n\n" + e);
-            Logger.logStackTraceWithMessage(LOG_TAG, "Error saving file", e);
+        FileReceiverService.ReceivedFile receivedFile;
+        if (source != null) {
+            receivedFile = new FileReceiverService.ReceivedFile(source, outFile, onSavedAction);
+            // The service closes the source from now on
+            mPendingSource = null;
+        } else if (data != null) {
+            receivedFile = new FileReceiverService.ReceivedFile(data, outFile, onSavedAction);
+        } else {
+            showErrorDialogAndQuit("Nothing to save.");
+            return null;
+        }
+
+        FileReceiverService.saveFiles(this, Collections.singletonList(receivedFile));
+        return outFile;
+    }
+
+    @Nullable
+    File getReceiveDir() {
+        File receiveDir = new File(TERMUX_RECEIVEDIR);
+        if (!receiveDir.isDirectory() && !receiveDir.mkdirs()) {
+            showErrorDialogAndQuit("Cannot create directory: " + receiveDir.getAbsolutePath());
             return null;
         }
+        return receiveDir;
     }
 
     void handleUrlAndFinish(final String url) {
@@ -0,0 +1,346 @@
+package com.termux.app.api.file;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.text.format.Formatter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.R;
+import com.termux.app.TermuxService;
+import com.termux.shared.file.FileOperations;
+import com.termux.shared.logger.Logger;
+import com.termux.shared.net.uri.UriUtils;
+import com.termux.shared.notification.NotificationUtils;
+import com.termux.shared.termux.TermuxConstants;
+import com.termux.shared.termux.TermuxConstants.TERMUX_APP.TERMUX_SERVICE;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A service that saves the files received by {@link FileReceiverActivity} in the background, so
+ * that large files like videos and archives do not block the activity while they are copied.
+ *
+ * The activity opens the sources as {@link ParcelFileDescriptor}s while it still holds the uri
+ * permissions and passes them with {@link #saveFiles(Context, List)}. Up to
+ * {@link #MAX_PARALLEL_SAVES} files are copied at the same time with
+ * {@link FileOperations#copyFromFileDescriptor(java.io.FileDescriptor, File, FileOperations.CopyProgressListener, CancellationSignal)}
+ * into a temporary file, which is renamed to the output file once it is complete. The progress
+ * is shown in a notification that has an action to cancel all files being saved.
+ */
+public class FileReceiverService extends Service {
+
+    /** Intent action to cancel saving all files. */
+    static final String ACTION_CANCEL = TermuxConstants.TERMUX_PACKAGE_NAME + ".file_receiver_cancel";
+
+    /** The max number of files that are copied at the same time. */
+    static final int MAX_PARALLEL_SAVES = 3;
+
+    /** Do nothing after the file is saved. */
+    static final int ON_SAVED_NONE = 0;
+    /** Open the saved file with {@link FileReceiverActivity#EDITOR_PROGRAM}. */
+    static final int ON_SAVED_EDIT = 1;
+    /** Open a session in {@link FileReceiverActivity#TERMUX_RECEIVEDIR}. */
+    static final int ON_SAVED_OPEN_DIRECTORY = 2;
+
+    /** The min interval in milliseconds between notification updates. */
+    private static final long NOTIFICATION_UPDATE_INTERVAL = 500;
+
+    private static final String LOG_TAG = "FileReceiverService";
+
+    /** The files passed with {@link #saveFiles(Context, List)} that have not been started yet. */
+    private static final List<ReceivedFile> sPendingFiles = new ArrayList<>();
+
+    /** A file to save. */
+    static class ReceivedFile {
+
+        private final ParcelFileDescriptor mSource;
+        private final byte[] mData;
+        private final File mOutFile;
+        private final int mOnSavedAction;
+        private final long mSize;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+        private volatile long mBytesCopied;
+
+        /**
+         * Create a {@link ReceivedFile} for a source file descriptor.
+         *
+         * @param source The source {@link ParcelFileDescriptor}, which is closed once the file is saved.
+         * @param outFile The output file.
+         * @param onSavedAction The {@code ON_SAVED_*} action to run after the file is saved.
+         */
+        ReceivedFile(@NonNull ParcelFileDescriptor source, @NonNull File outFile, int onSavedAction) {
+            mSource = source;
+            mData = null;
+            mOutFile = outFile;
+            mOnSavedAction = onSavedAction;
+            // This will be -1 if the source is not a regular file, like a pipe
+            mSize = source.getStatSize();
+        }
+
+        /**
+         * Create a {@link ReceivedFile} for data that was received in the intent, like shared text.
+         *
+         * @param data The data.
+         * @param outFile The output file.
+         * @param onSavedAction The {@code ON_SAVED_*} action to run after the file is saved.
+         */
+        ReceivedFile(@NonNull byte[] data, @NonNull File outFile, int onSavedAction) {
+            mSource = null;
+            mData = data;
+            mOutFile = outFile;
+            mOnSavedAction = onSavedAction;
+            mSize = data.length;
+        }
+
+        @NonNull
+        File getOutFile() {
+            return mOutFile;
+        }
+
+        void close() {
+            if (mSource == null) return;
+            try {
+                mSource.close();
+            } catch (IOException e) {
+                Logger.logStackTraceWithMessage(LOG_TAG, "Failed to close source of \"" + mOutFile.getName() + "\"", e);
+            }
+        }
+
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mUpdateNotificationRunnable = this::updateNotification;
+
+    private ExecutorService mExecutor;
+
+    /** The files being saved, only accessed on the main thread. */
+    private final List<ReceivedFile> mActiveFiles = new ArrayList<>();
+    private int mLastStartId;
+
+    /**
+     * Save files in the background with the {@link FileReceiverService}.
+     *
+     * @param context The {@link Context} for operations.
+     * @param receivedFiles The {@link ReceivedFile}s to save.
+     */
+    static void saveFiles(@NonNull Context context, @NonNull List<ReceivedFile> receivedFiles) {
+        synchronized (sPendingFiles) {
+            sPendingFiles.addAll(receivedFiles);
+        }
+        context.startService(new Intent(context, FileReceiverService.class));
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onCreate() {
+        Logger.logVerbose(LOG_TAG, "onCreate");
+        mExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_SAVES);
+        runStartForeground();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Logger.logDebug(LOG_TAG, "onStartCommand");
+        mLastStartId = startId;
+
+        // Run again in case service is already started and onCreate() is not called
+        runStartForeground();
+
+        List<ReceivedFile> receivedFiles;
+        synchronized (sPendingFiles) {
+            receivedFiles = new ArrayList<>(sPendingFiles);
+            sPendingFiles.clear();
+        }
+
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            Logger.logInfo(LOG_TAG, "Canceling saving " + (mActiveFiles.size() + receivedFiles.size()) + " received files");
+            for (ReceivedFile receivedFile : receivedFiles)
+                receivedFile.close();
+            for (ReceivedFile receivedFile : mActiveFiles)
+                receivedFile.mCancellationSignal.cancel();
+        } else {
+            for (ReceivedFile receivedFile : receivedFiles) {
+                mActiveFiles.add(receivedFile);
+                mExecutor.execute(() -> saveFile(receivedFile));
+            }
+        }
+
+        updateNotification();
+        stopIfDone();
+        return Service.START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        Logger.logVerbose(LOG_TAG, "onDestroy");
+        mHandler.removeCallbacks(mUpdateNotificationRunnable);
+        for (ReceivedFile receivedFile : mActiveFiles)
+            receivedFile.mCancellationSignal.cancel();
+        mExecutor.shutdown();
+        runStopForeground();
+        super.onDestroy();
+    }
+
+    /** Save a file. This is called on a thread of {@link #mExecutor}. */
+    private void saveFile(@NonNull ReceivedFile receivedFile) {
+        File outFile = receivedFile.mOutFile;
+        File partFile = new File(outFile.getParentFile(), "." + outFile.getName() + ".part");
+        boolean saved = false;
+        String errmsg = null;
+
+        try {
+            if (receivedFile.mData != null) {
+                try (FileOutputStream outputStream = new FileOutputStream(partFile)) {
+                    outputStream.write(receivedFile.mData);
+                }
+            } else {
+                FileOperations.copyFromFileDescriptor(receivedFile.mSource.getFileDescriptor(), partFile,
+                    bytesCopied -> receivedFile.mBytesCopied = bytesCopied, receivedFile.mCancellationSignal);
+            }
+
+            if (!partFile.renameTo(outFile))
+                throw new IOException("Failed to rename \"" + partFile.getAbsolutePath() + "\" to \"" + outFile.getAbsolutePath() + "\"");
+            saved = true;
+            Logger.logDebug(LOG_TAG, () -> "Saved received file \"" + outFile.getAbsolutePath() + "\"");
+        } catch (OperationCanceledException e) {
+            Logger.logInfo(LOG_TAG, "Canceled saving received file \"" + outFile.getAbsolutePath() + "\"");
+        } catch (IOException e) {
+            Logger.logStackTraceWithMessage(LOG_TAG, "Error saving file \"" + outFile.getAbsolutePath() + "\"", e);
+            errmsg = e.getMessage();
+        } finally {
+            receivedFile.close();
+            //noinspection ResultOfMethodCallIgnored
+            if (!saved) partFile.delete();
+        }
+
+        final boolean finalSaved = saved;
+        final String finalErrmsg = errmsg;
+        mHandler.post(() -> onFileSaveFinished(receivedFile, finalSaved, finalErrmsg));
+    }
+
+    private void onFileSaveFinished(@NonNull ReceivedFile receivedFile, boolean saved, @Nullable String errmsg) {
+        mActiveFiles.remove(receivedFile);
+
+        if (saved) {
+            if (receivedFile.mOnSavedAction == ON_SAVED_EDIT) {
+                Uri scriptUri = UriUtils.getFileUri(FileReceiverActivity.EDITOR_PROGRAM);
+                Intent executeIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE, scriptUri);
+                executeIntent.setClass(this, TermuxService.class);
+                executeIntent.putExtra(TERMUX_SERVICE.EXTRA_ARGUMENTS, new String[]{receivedFile.mOutFile.getAbsolutePath()});
+                startService(executeIntent);
+            } else if (receivedFile.mOnSavedAction == ON_SAVED_OPEN_DIRECTORY) {
+                Intent executeIntent = new Intent(TERMUX_SERVICE.ACTION_SERVICE_EXECUTE);
+                executeIntent.putExtra(TERMUX_SERVICE.EXTRA_WORKDIR, FileReceiverActivity.TERMUX_RECEIVEDIR);
+                executeIntent.setClass(this, TermuxService.class);
+                startService(executeIntent);
+            }
+        } else if (errmsg != null) {
+            Logger.showToast(this, getString(R.string.error_file_received_save_failed, receivedFile.mOutFile.getName(), errmsg), true);
+        }
+
+        stopIfDone();
+    }
+
+    private void stopIfDone() {
+        if (!mActiveFiles.isEmpty()) return;
+        mHandler.removeCallbacks(mUpdateNotificationRunnable);
+        runStopForeground();
+        // Do not stop if saveFiles() was called again since the last start
+        stopSelf(mLastStartId);
+    }
+
+    private void runStartForeground() {
+        setupNotificationChannel();
+        startForeground(TermuxConstants.TERMUX_FILE_RECEIVER_NOTIFICATION_ID, buildNotification());
+    }
+
+    private void runStopForeground() {
+        stopForeground(true);
+    }
+
+    private void updateNotification() {
+        mHandler.removeCallbacks(mUpdateNotificationRunnable);
+        if (mActiveFiles.isEmpty()) return;
+
+        NotificationManager notificationManager = NotificationUtils.getNotificationManager(this);
+        if (notificationManager != null)
+            notificationManager.notify(TermuxConstants.TERMUX_FILE_RECEIVER_NOTIFICATION_ID, buildNotification());
+        mHandler.postDelayed(mUpdateNotificationRunnable, NOTIFICATION_UPDATE_INTERVAL);
+    }
+
+    private Notification buildNotification() {
+        long bytesCopied = 0;
+        long size = 0;
+        boolean sizeKnown = true;
+        for (ReceivedFile receivedFile : mActiveFiles) {
+            bytesCopied += receivedFile.mBytesCopied;
+            if (receivedFile.mSize >= 0) size += receivedFile.mSize;
+            else sizeKnown = false;
+        }
+
+        int fileCount = mActiveFiles.size();
+        String title = getString(R.string.notification_file_receiver_title, fileCount);
+        String text;
+        if (fileCount == 1)
+            text = mActiveFiles.get(0).mOutFile.getName() + ": " + Formatter.formatFileSize(this, bytesCopied);
+        else
+            text = Formatter.formatFileSize(this, bytesCopied);
+        if (sizeKnown && size > 0)
+            text += " / " + Formatter.formatFileSize(this, size);
+
+        // Build the notification
+        Notification.Builder builder = NotificationUtils.geNotificationBuilder(this,
+            TermuxConstants.TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_ID, Notification.PRIORITY_LOW,
+            title, text, null, null, null, NotificationUtils.NOTIFICATION_MODE_SILENT);
+        if (builder == null) return null;
+
+        builder.setShowWhen(false);
+        builder.setSmallIcon(R.drawable.ic_service_notification);
+        builder.setColor(0xFF607D8B);
+        builder.setOngoing(true);
+        builder.setOnlyAlertOnce(true);
+
+        if (sizeKnown && size > 0)
+            builder.setProgress(1000, (int) Math.min(1000, bytesCopied * 1000 / size), false);
+        else
+            builder.setProgress(0, 0, true);
+
+        Intent cancelIntent = new Intent(this, FileReceiverService.class).setAction(ACTION_CANCEL);
+        builder.addAction(android.R.drawable.ic_menu_close_clear_cancel, getString(android.R.string.cancel),
+            PendingIntent.getService(this, 0, cancelIntent, PendingIntent.FLAG_IMMUTABLE));
+
+        return builder.build();
+    }
+
+    private void setupNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+
+        NotificationUtils.setupNotificationChannel(this, TermuxConstants.TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_ID,
+            TermuxConstants.TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_NAME, NotificationManager.IMPORTANCE_LOW);
+    }
+
+}
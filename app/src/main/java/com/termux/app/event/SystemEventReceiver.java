@@ -9,6 +9,7 @@ import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.termux.shared.android.PackageCache;
 import com.termux.shared.data.IntentUtils;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.termux.TermuxUtils;
@@ -44,6 +45,7 @@ public class SystemEventReceiver extends BroadcastReceiver {
             case Intent.ACTION_PACKAGE_ADDED:
             case Intent.ACTION_PACKAGE_REMOVED:
             case Intent.ACTION_PACKAGE_REPLACED:
+            case Intent.ACTION_PACKAGE_CHANGED:
                 onActionPackageUpdated(context, intent);
                 break;
             default:
@@ -57,9 +59,13 @@ public class SystemEventReceiver extends BroadcastReceiver {
 
     public synchronized void onActionPackageUpdated(@NonNull Context context, @NonNull Intent intent) {
         Uri data = intent.getData();
+        if (data != null && data.getSchemeSpecificPart() != null)
+            PackageCache.invalidate(data.getSchemeSpecificPart());
+
         if (data != null && TermuxUtils.isUriDataForTermuxPluginPackage(data)) {
             Logger.logDebug(LOG_TAG, intent.getAction().replaceAll("^android.intent.action.", "") +
                 " event received for \"" + data.toString().replaceAll("^package:", "") + "\"");
+            TermuxShellEnvironment.invalidateEnvironTemplates();
             if (TermuxFileUtils.isTermuxFilesDirectoryAccessible(context, false, false) == null)
                 TermuxShellEnvironment.writeEnvironmentToFile(context);
         }
@@ -69,10 +75,14 @@ public class SystemEventReceiver extends BroadcastReceiver {
 
     /**
      * Register {@link SystemEventReceiver} to listen to {@link Intent#ACTION_PACKAGE_ADDED},
-     * {@link Intent#ACTION_PACKAGE_REMOVED} and {@link Intent#ACTION_PACKAGE_REPLACED} broadcasts.
+     * {@link Intent#ACTION_PACKAGE_REMOVED}, {@link Intent#ACTION_PACKAGE_REPLACED} and
+     * {@link Intent#ACTION_PACKAGE_CHANGED} broadcasts.
      * They must be registered dynamically and cannot be registered implicitly in
      * the AndroidManifest.xml due to Android 8+ restrictions.
      *
+     * The {@link PackageCache} is enabled while they are registered, since the cached values
+     * for a package are invalidated when they are received.
+     *
      *  https://developer.android.com/guide/components/broadcast-exceptions
      */
     public synchronized static void registerPackageUpdateEvents(@NonNull Context context) {
@@ -80,11 +90,15 @@ public class SystemEventReceiver extends BroadcastReceiver {
         intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
         intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
         intentFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
         intentFilter.addDataScheme("package");
         context.registerReceiver(getInstance(), intentFilter);
+        PackageCache.setEnabled(true);
     }
 
     public synchronized static void unregisterPackageUpdateEvents(@NonNull Context context) {
+        Logger.logDebug(LOG_TAG, PackageCache.getStatsLogString());
+        PackageCache.setEnabled(false);
         context.unregisterReceiver(getInstance());
     }
 
@@ -2,6 +2,7 @@ package com.termux.app.service;
 
 import android.content.Intent;
 import android.os.Build;
+import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.termux.R;
@@ -18,6 +19,8 @@ import com.termux.shared.shell.command.ExecutionCommand;
 import com.termux.shared.shell.command.ExecutionCommand.Runner;
 import com.termux.shared.shell.command.ExecutionCommand.ShellCreateMode;
 import com.termux.shared.shell.command.runner.app.AppShell;
+import com.termux.shared.shell.command.runner.app.AppShellBatch;
+import com.termux.shared.termux.TermuxConstants;
 import com.termux.shared.termux.TermuxConstants.TERMUX_APP.TERMUX_ACTIVITY;
 import com.termux.shared.termux.TermuxConstants.TERMUX_APP.TERMUX_SERVICE;
 import com.termux.shared.termux.plugins.TermuxPluginUtils;
@@ -27,6 +30,7 @@ import com.termux.shared.termux.shell.command.environment.TermuxShellEnvironment
 import com.termux.shared.termux.shell.command.runner.terminal.TermuxSession;
 import com.termux.terminal.TerminalSession;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -66,7 +70,7 @@ public class ServiceExecutionManager {
         }
 
         if (executionCommand.executableUri != null) {
-            Logger.logVerbose(LOG_TAG, "uri: \"" + executionCommand.executableUri + "\", path: \"" + executionCommand.executableUri.getPath() + "\", fragment: \"" + executionCommand.executableUri.getFragment() + "\"");
+            Logger.logVerbose(LOG_TAG, () -> "uri: \"" + executionCommand.executableUri + "\", path: \"" + executionCommand.executableUri.getPath() + "\", fragment: \"" + executionCommand.executableUri.getFragment() + "\"");
             executionCommand.executable = UriUtils.getUriFilePathWithFragment(executionCommand.executableUri);
             executionCommand.arguments = IntentUtils.getStringArrayExtraIfSet(intent, TERMUX_SERVICE.EXTRA_ARGUMENTS, null);
             if (Runner.APP_SHELL.equalsRunner(executionCommand.runner)) executionCommand.stdin = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_STDIN, null);
@@ -106,9 +110,71 @@ public class ServiceExecutionManager {
         }
     }
 
+    public void actionServiceExecuteBatch(Intent intent) {
+        if (intent == null) {
+            Logger.logError(LOG_TAG, "Ignoring null intent to actionServiceExecuteBatch");
+            return;
+        }
+
+        ExecutionCommand executionCommand = new ExecutionCommand(TermuxShellManager.getNextShellId());
+        executionCommand.isPluginExecutionCommand = true;
+        executionCommand.runner = Runner.APP_SHELL.getName();
+        executionCommand.backgroundCustomLogLevel = IntentUtils.getIntegerExtraIfSet(intent, TERMUX_SERVICE.EXTRA_BACKGROUND_CUSTOM_LOG_LEVEL, null);
+        executionCommand.commandLabel = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_COMMAND_LABEL, "Execution Intent Batch Command");
+        executionCommand.commandDescription = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_COMMAND_DESCRIPTION, null);
+        executionCommand.commandHelp = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_COMMAND_HELP, null);
+        executionCommand.pluginAPIHelp = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_PLUGIN_API_HELP, null);
+        executionCommand.resultConfig.resultPendingIntent = intent.getParcelableExtra(TERMUX_SERVICE.EXTRA_PENDING_INTENT);
+        executionCommand.resultConfig.resultDirectoryPath = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_RESULT_DIRECTORY, null);
+
+        if (executionCommand.resultConfig.resultDirectoryPath != null) {
+            executionCommand.resultConfig.resultSingleFile = intent.getBooleanExtra(TERMUX_SERVICE.EXTRA_RESULT_SINGLE_FILE, false);
+            executionCommand.resultConfig.resultFileBasename = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_RESULT_FILE_BASENAME, null);
+            executionCommand.resultConfig.resultFileOutputFormat = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_RESULT_FILE_OUTPUT_FORMAT, null);
+            executionCommand.resultConfig.resultFileErrorFormat = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_RESULT_FILE_ERROR_FORMAT, null);
+            executionCommand.resultConfig.resultFilesSuffix = IntentUtils.getStringExtraIfSet(intent, TERMUX_SERVICE.EXTRA_RESULT_FILES_SUFFIX, null);
+        }
+
+        ArrayList<Bundle> commandBundles = intent.getParcelableArrayListExtra(TERMUX_SERVICE.EXTRA_BATCH_COMMANDS);
+        if (commandBundles == null || commandBundles.isEmpty()) {
+            TermuxPluginUtils.setAndProcessPluginExecutionCommandError(mService, LOG_TAG, executionCommand, false, mService.getString(R.string.error_termux_service_batch_commands_unset));
+            return;
+        }
+
+        List<ExecutionCommand> executionCommands = new ArrayList<>(commandBundles.size());
+        for (int i = 0; i < commandBundles.size(); i++) {
+            Bundle commandBundle = commandBundles.get(i);
+            ExecutionCommand batchExecutionCommand = new ExecutionCommand(TermuxShellManager.getNextShellId(), commandBundle.getString(TERMUX_SERVICE.EXTRA_BATCH_EXECUTABLE), commandBundle.getStringArray(TERMUX_SERVICE.EXTRA_ARGUMENTS), commandBundle.getString(TERMUX_SERVICE.EXTRA_STDIN), commandBundle.getString(TERMUX_SERVICE.EXTRA_WORKDIR), Runner.APP_SHELL.getName(), false);
+            batchExecutionCommand.commandLabel = commandBundle.getString(TERMUX_SERVICE.EXTRA_COMMAND_LABEL);
+            batchExecutionCommand.backgroundCustomLogLevel = executionCommand.backgroundCustomLogLevel;
+            batchExecutionCommand.setShellCommandShellEnvironment = true;
+            executionCommands.add(batchExecutionCommand);
+        }
+
+        mShellManager.mPendingPluginExecutionCommands.add(executionCommand);
+        createTermuxTaskBatch(executionCommand, executionCommands, intent.getBooleanExtra(TERMUX_SERVICE.EXTRA_BATCH_SEQUENTIAL, false), intent.getBooleanExtra(TERMUX_SERVICE.EXTRA_BATCH_FAIL_FAST, false));
+    }
+
+    @Nullable
+    public synchronized AppShellBatch createTermuxTaskBatch(ExecutionCommand executionCommand, List<ExecutionCommand> executionCommands, boolean sequential, boolean failFast) {
+        if (executionCommand == null || executionCommands == null) return null;
+        Logger.logDebug(LOG_TAG, () -> "Creating \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxTask batch with " + executionCommands.size() + " commands");
+        Logger.logVerboseExtended(LOG_TAG, executionCommand::toString);
+        AppShellBatch newTermuxTaskBatch = AppShellBatch.execute(mService, executionCommand, executionCommands, sequential, failFast, mService, new TermuxShellEnvironment(), null);
+        if (newTermuxTaskBatch == null) {
+            Logger.logError(LOG_TAG, "Failed to execute new TermuxTask batch command for:\n" + executionCommand.getCommandIdAndLabelLogString());
+            if (executionCommand.isPluginExecutionCommand) TermuxPluginUtils.processPluginExecutionCommandError(mService, LOG_TAG, executionCommand, false);
+            return null;
+        }
+        mShellManager.mTermuxTaskBatches.add(newTermuxTaskBatch);
+        if (executionCommand.isPluginExecutionCommand) mShellManager.mPendingPluginExecutionCommands.remove(executionCommand);
+        mService.updateNotification();
+        return newTermuxTaskBatch;
+    }
+
     private void executeTermuxTaskCommand(ExecutionCommand executionCommand) {
         if (executionCommand == null) return;
-        Logger.logDebug(LOG_TAG, "Executing background \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxTask command");
+        Logger.logDebug(LOG_TAG, () -> "Executing background \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxTask command");
         if (executionCommand.shellName == null && executionCommand.executable != null) executionCommand.shellName = ShellUtils.getExecutableBasename(executionCommand.executable);
         AppShell newTermuxTask = null;
         ShellCreateMode shellCreateMode = processShellCreateMode(executionCommand);
@@ -124,13 +190,14 @@ public class ServiceExecutionManager {
     @Nullable
     public synchronized AppShell createTermuxTask(ExecutionCommand executionCommand) {
         if (executionCommand == null) return null;
-        Logger.logDebug(LOG_TAG, "Creating \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxTask");
+        Logger.logDebug(LOG_TAG, () -> "Creating \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxTask");
         if (!Runner.APP_SHELL.equalsRunner(executionCommand.runner)) {
             Logger.logDebug(LOG_TAG, "Ignoring wrong runner \"" + executionCommand.runner + "\" command passed to createTermuxTask()");
             return null;
         }
         executionCommand.setShellCommandShellEnvironment = true;
-        if (Logger.getLogLevel() >= Logger.LOG_LEVEL_VERBOSE) Logger.logVerboseExtended(LOG_TAG, executionCommand.toString());
+        TermuxPluginUtils.setupPluginResultDirectoryStream(mService, LOG_TAG, executionCommand);
+        Logger.logVerboseExtended(LOG_TAG, executionCommand::toString);
         AppShell newTermuxTask = AppShell.execute(mService, executionCommand, mService, new TermuxShellEnvironment(), null, false);
         if (newTermuxTask == null) {
             Logger.logError(LOG_TAG, "Failed to execute new TermuxTask command for:\n" + executionCommand.getCommandIdAndLabelLogString());
@@ -149,7 +216,7 @@ public class ServiceExecutionManager {
 
     private void executeTermuxSessionCommand(ExecutionCommand executionCommand) {
         if (executionCommand == null) return;
-        Logger.logDebug(LOG_TAG, "Executing foreground \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxSession command");
+        Logger.logDebug(LOG_TAG, () -> "Executing foreground \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxSession command");
         if (executionCommand.shellName == null && executionCommand.executable != null) executionCommand.shellName = ShellUtils.getExecutableBasename(executionCommand.executable);
         TermuxSession newTermuxSession = null;
         ShellCreateMode shellCreateMode = processShellCreateMode(executionCommand);
@@ -167,14 +234,14 @@ public class ServiceExecutionManager {
     @Nullable
     public synchronized TermuxSession createTermuxSession(ExecutionCommand executionCommand) {
         if (executionCommand == null) return null;
-        Logger.logDebug(LOG_TAG, "Creating \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxSession");
+        Logger.logDebug(LOG_TAG, () -> "Creating \"" + executionCommand.getCommandIdAndLabelLogString() + "\" TermuxSession");
         if (!Runner.TERMINAL_SESSION.equalsRunner(executionCommand.runner)) {
             Logger.logDebug(LOG_TAG, "Ignoring wrong runner \"" + executionCommand.runner + "\" command passed to createTermuxSession()");
             return null;
         }
         executionCommand.setShellCommandShellEnvironment = true;
         executionCommand.terminalTranscriptRows = mService.getProperties().getTerminalTranscriptRows();
-        if (Logger.getLogLevel() >= Logger.LOG_LEVEL_VERBOSE) Logger.logVerboseExtended(LOG_TAG, executionCommand.toString());
+        Logger.logVerboseExtended(LOG_TAG, executionCommand::toString);
         TermuxSession newTermuxSession = TermuxSession.execute(mService, executionCommand, mService.getTermuxTerminalSessionClient(), mService, new TermuxShellEnvironment(), null, executionCommand.isPluginExecutionCommand);
         if (newTermuxSession == null) {
             Logger.logError(LOG_TAG, "Failed to execute new TermuxSession command for:\n" + executionCommand.getCommandIdAndLabelLogString());
@@ -185,7 +252,13 @@ public class ServiceExecutionManager {
             }
             return null;
         }
+        int scrollbackDiskRows = mService.getProperties().getTerminalScrollbackDiskRows();
+        if (scrollbackDiskRows > 0) {
+            TerminalSession terminalSession = newTermuxSession.getTerminalSession();
+            terminalSession.setDiskScrollback(new File(TermuxConstants.TERMUX_APP.TERMINAL_SCROLLBACK_DIR_PATH, terminalSession.mHandle), scrollbackDiskRows);
+        }
         mShellManager.mTermuxSessions.add(newTermuxSession);
+        mService.getMemoryGovernor().enforceBudget();
         if (executionCommand.isPluginExecutionCommand) mShellManager.mPendingPluginExecutionCommands.remove(executionCommand);
         if (mService.getTermuxTerminalSessionActivityClient() != null) mService.getTermuxTerminalSessionActivityClient().termuxSessionListNotifyUpdated();
         mService.updateNotification();
@@ -195,9 +268,10 @@ public class ServiceExecutionManager {
 
     public synchronized void killAllTermuxExecutionCommands() {
         boolean processResult;
-        Logger.logDebug(LOG_TAG, "Killing TermuxSessions=" + mShellManager.mTermuxSessions.size() + ", TermuxTasks=" + mShellManager.mTermuxTasks.size() + ", PendingPluginExecutionCommands=" + mShellManager.mPendingPluginExecutionCommands.size());
+        Logger.logDebug(LOG_TAG, () -> "Killing TermuxSessions=" + mShellManager.mTermuxSessions.size() + ", TermuxTasks=" + mShellManager.mTermuxTasks.size() + ", TermuxTaskBatches=" + mShellManager.mTermuxTaskBatches.size() + ", PendingPluginExecutionCommands=" + mShellManager.mPendingPluginExecutionCommands.size());
         List<TermuxSession> termuxSessions = new ArrayList<>(mShellManager.mTermuxSessions);
         List<AppShell> termuxTasks = new ArrayList<>(mShellManager.mTermuxTasks);
+        List<AppShellBatch> termuxTaskBatches = new ArrayList<>(mShellManager.mTermuxTaskBatches);
         List<ExecutionCommand> pendingPluginExecutionCommands = new ArrayList<>(mShellManager.mPendingPluginExecutionCommands);
 
         for (int i = 0; i < termuxSessions.size(); i++) {
@@ -213,6 +287,15 @@ public class ServiceExecutionManager {
             else mShellManager.mTermuxTasks.remove(termuxTasks.get(i));
         }
 
+        // The commands of batches are not plugin commands and so are only removed from termuxTasks
+        // above, the batch kills the ones still running itself and cancels the ones not yet started
+        for (int i = 0; i < termuxTaskBatches.size(); i++) {
+            ExecutionCommand executionCommand = termuxTaskBatches.get(i).getExecutionCommand();
+            processResult = executionCommand.isPluginExecutionCommandWithPendingResult();
+            termuxTaskBatches.get(i).killIfExecuting(mService, processResult);
+            if (!processResult) mShellManager.mTermuxTaskBatches.remove(termuxTaskBatches.get(i));
+        }
+
         for (int i = 0; i < pendingPluginExecutionCommands.size(); i++) {
             ExecutionCommand executionCommand = pendingPluginExecutionCommands.get(i);
             if (!executionCommand.shouldNotProcessResults() && executionCommand.isPluginExecutionCommandWithPendingResult()) {
@@ -239,7 +322,7 @@ public class ServiceExecutionManager {
     }
 
     private void handleSessionAction(int sessionAction, TerminalSession newTerminalSession) {
-        Logger.logDebug(LOG_TAG, "Processing sessionAction \"" + sessionAction + "\" for session \"" + newTerminalSession.mSessionName + "\"");
+        Logger.logDebug(LOG_TAG, () -> "Processing sessionAction \"" + sessionAction + "\" for session \"" + newTerminalSession.mSessionName + "\"");
         switch (sessionAction) {
             case TERMUX_SERVICE.VALUE_EXTRA_SESSION_ACTION_SWITCH_TO_NEW_SESSION_AND_OPEN_ACTIVITY:
                 mService.setCurrentStoredTerminalSession(newTerminalSession);
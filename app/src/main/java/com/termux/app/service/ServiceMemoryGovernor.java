@@ -0,0 +1,170 @@
+package com.termux.app.service;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.termux.app.TermuxService;
+import com.termux.app.terminal.TermuxTerminalSessionActivityClient;
+import com.termux.shared.logger.Logger;
+import com.termux.shared.termux.shell.command.runner.terminal.TermuxSession;
+import com.termux.terminal.TerminalEmulator;
+import com.termux.terminal.TerminalScrollback;
+import com.termux.terminal.TerminalSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the heap used by the terminal buffers of all {@link TermuxSession}s within a global
+ * budget, which is a fraction of the heap limit of the app.
+ *
+ * The budget is enforced when a session is created and when {@link TermuxService#onTrimMemory(int)}
+ * is called. The transcripts of the sessions that have not been written to or had output the
+ * longest are trimmed first. The session currently shown in the activity is never trimmed. The
+ * trimmed transcript rows are moved to the disk backed {@link TerminalScrollback} if one is
+ * enabled for the session, otherwise they are dropped.
+ */
+public class ServiceMemoryGovernor {
+
+    /** The fraction of the heap limit of the app that the buffers of all sessions may use. */
+    private static final float BUFFER_MEMORY_BUDGET_FRACTION = 0.25f;
+
+    /** The time after which a session without any input or output is considered idle. */
+    private static final long SESSION_IDLE_TIME = 5 * 60 * 1000; // 5 mins
+
+    /** The number of transcript rows kept in memory for a session whose transcript is trimmed. */
+    private static final int TRIMMED_TRANSCRIPT_ROWS = 100;
+
+    private static final String LOG_TAG = "ServiceMemoryGovernor";
+
+    private final TermuxService mService;
+    private final long mBudget;
+
+    public ServiceMemoryGovernor(TermuxService service) {
+        this.mService = service;
+        ActivityManager activityManager = (ActivityManager) service.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = activityManager != null ? activityManager.getMemoryClass() : 64;
+        mBudget = (long) (memoryClass * 1024L * 1024L * BUFFER_MEMORY_BUDGET_FRACTION);
+    }
+
+    /** Get the number of bytes the buffers of all sessions may use. */
+    public long getBudget() {
+        return mBudget;
+    }
+
+    /** Get the memory usage of each session whose emulator has been initialized. */
+    @NonNull
+    public List<SessionMemoryUsage> getSessionMemoryUsage() {
+        List<SessionMemoryUsage> usages = new ArrayList<>();
+        long now = SystemClock.elapsedRealtime();
+        for (TermuxSession termuxSession : mService.getTermuxSessions()) {
+            TerminalEmulator emulator = termuxSession.getTerminalSession().getEmulator();
+            if (emulator == null) continue;
+            usages.add(new SessionMemoryUsage(termuxSession, emulator, now));
+        }
+        return usages;
+    }
+
+    /** Trim the transcripts of idle sessions if the buffers of all sessions use more than the budget. */
+    public void enforceBudget() {
+        trim(mBudget, false);
+    }
+
+    /**
+     * Trim the transcripts of sessions depending on the memory pressure.
+     *
+     * @param level The level passed to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // The app is likely to be killed next, so trim sessions even if they are not idle
+            trim(mBudget / 4, true);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trim(mBudget / 2, false);
+        } else {
+            trim(mBudget, false);
+        }
+    }
+
+    /**
+     * Trim the transcripts of sessions until the buffers of all sessions use less than a target.
+     *
+     * @param target The target number of bytes.
+     * @param trimActiveSessions Whether sessions that are not idle should be trimmed.
+     */
+    private void trim(long target, boolean trimActiveSessions) {
+        List<SessionMemoryUsage> usages = getSessionMemoryUsage();
+        long total = 0;
+        for (SessionMemoryUsage usage : usages)
+            total += usage.memoryUsage;
+        Logger.logDebug(LOG_TAG, () -> getMemoryUsageLogString(usages));
+        if (total <= target) return;
+
+        TermuxTerminalSessionActivityClient activityClient = mService.getTermuxTerminalSessionActivityClient();
+        TerminalSession currentSession = activityClient != null ? activityClient.getCurrentSession() : null;
+
+        // Least recently active sessions first
+        Collections.sort(usages, (usage1, usage2) -> Long.compare(usage2.idleTime, usage1.idleTime));
+        int trimmedSessions = 0;
+        long freed = 0;
+        for (SessionMemoryUsage usage : usages) {
+            if (total - freed <= target) break;
+            TerminalSession terminalSession = usage.termuxSession.getTerminalSession();
+            if (terminalSession == currentSession) continue;
+            if (!trimActiveSessions && usage.idleTime < SESSION_IDLE_TIME) continue;
+
+            TerminalEmulator emulator = terminalSession.getEmulator();
+            if (emulator == null || emulator.trimTranscript(TRIMMED_TRANSCRIPT_ROWS) == 0) continue;
+            freed += usage.memoryUsage - emulator.getMemoryUsage();
+            trimmedSessions++;
+        }
+
+        if (trimmedSessions > 0)
+            Logger.logInfo(LOG_TAG, "Trimmed transcripts of " + trimmedSessions + " sessions to free " + (freed / 1024) +
+                "KB of " + (total / 1024) + "KB used, budget " + (mBudget / 1024) + "KB");
+    }
+
+    @NonNull
+    private String getMemoryUsageLogString(@NonNull List<SessionMemoryUsage> usages) {
+        StringBuilder logString = new StringBuilder("Session buffer memory usage (budget " + (mBudget / 1024) + "KB):");
+        for (SessionMemoryUsage usage : usages)
+            logString.append("\n").append(usage);
+        return logString.toString();
+    }
+
+
+
+    /** The memory usage of the buffers of a {@link TermuxSession}. */
+    public static class SessionMemoryUsage {
+
+        public final TermuxSession termuxSession;
+        /** The estimated number of bytes of heap used by the main and alternate buffers. */
+        public final long memoryUsage;
+        /** The number of transcript rows in the {@link TerminalScrollback}. */
+        public final int scrollbackRows;
+        /** The time since the session was last written to or had output. */
+        public final long idleTime;
+
+        SessionMemoryUsage(@NonNull TermuxSession termuxSession, @NonNull TerminalEmulator emulator, long now) {
+            this.termuxSession = termuxSession;
+            this.memoryUsage = emulator.getMemoryUsage();
+            TerminalScrollback scrollback = emulator.getScrollback();
+            this.scrollbackRows = scrollback != null ? scrollback.getRowCount() : 0;
+            this.idleTime = now - termuxSession.getTerminalSession().getLastActivityTime();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return termuxSession.getExecutionCommand().getCommandIdAndLabelLogString() + ": " + (memoryUsage / 1024) + "KB, " +
+                scrollbackRows + " scrollback rows on disk, idle " + (idleTime / 1000) + "s";
+        }
+
+    }
+
+}
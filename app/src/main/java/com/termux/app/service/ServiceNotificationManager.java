@@ -7,6 +7,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import com.termux.R;
 import com.termux.app.TermuxActivity;
@@ -19,9 +22,21 @@ import com.termux.shared.termux.TermuxConstants.TERMUX_APP.TERMUX_SERVICE;
 public class ServiceNotificationManager {
 
     private static final String LOG_TAG = "ServiceNotificationManager";
+
+    /**
+     * The min time between updates of the notification, so that many sessions or tasks starting or
+     * exiting at once rebuild and post it only once.
+     */
+    private static final long NOTIFICATION_UPDATE_INTERVAL = 250;
+
     private final TermuxService mService;
     private ServiceWakeLockManager mWakeLockManager;
 
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mUpdateNotificationRunnable = this::updateNotificationNow;
+    private boolean mNotificationUpdatePending;
+    private long mLastNotificationUpdateTime;
+
     public ServiceNotificationManager(TermuxService service) {
         this.mService = service;
     }
@@ -64,7 +79,26 @@ public class ServiceNotificationManager {
         return builder.build();
     }
 
+    /**
+     * Update the notification, or stop the service if there are no sessions and tasks left. The
+     * update is done at most once every {@link #NOTIFICATION_UPDATE_INTERVAL} on the main thread.
+     */
     public synchronized void updateNotification() {
+        if (mNotificationUpdatePending) return;
+        mNotificationUpdatePending = true;
+        long delay = mLastNotificationUpdateTime + NOTIFICATION_UPDATE_INTERVAL - SystemClock.uptimeMillis();
+        mHandler.postDelayed(mUpdateNotificationRunnable, Math.max(0, delay));
+    }
+
+    /** Cancel a pending update of the notification, like when the service is destroyed. */
+    public synchronized void cancelPendingNotificationUpdate() {
+        mHandler.removeCallbacks(mUpdateNotificationRunnable);
+        mNotificationUpdatePending = false;
+    }
+
+    private synchronized void updateNotificationNow() {
+        mNotificationUpdatePending = false;
+        mLastNotificationUpdateTime = SystemClock.uptimeMillis();
         if (mWakeLockManager == null) return;
         if (!mWakeLockManager.isWakeLockHeld() && mService.isTermuxSessionsEmpty() && mService.isTermuxTasksEmpty()) {
             mService.requestStopService();
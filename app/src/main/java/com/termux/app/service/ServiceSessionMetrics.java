@@ -0,0 +1,116 @@
+package com.termux.app.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.app.TermuxService;
+import com.termux.shared.errors.Error;
+import com.termux.shared.file.FileUtils;
+import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.am.AmSocketServerErrno;
+import com.termux.shared.termux.TermuxConstants;
+import com.termux.shared.termux.shell.am.TermuxAmSocketServer;
+import com.termux.shared.termux.shell.command.runner.terminal.TermuxSession;
+import com.termux.terminal.TerminalSession;
+import com.termux.terminal.TerminalSessionMetrics;
+
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reports the {@link TerminalSessionMetrics} of all {@link TermuxSession}s of the {@link TermuxService}.
+ *
+ * The metrics are served by the {@link TermuxAmSocketServer#METRICS_COMMAND} while the service is
+ * running and can be dumped to {@link TermuxConstants.TERMUX_APP#TERMINAL_METRICS_FILE_PATH}.
+ * They are always got on the main thread, which owns the sessions list and the emulators.
+ */
+public class ServiceSessionMetrics implements TermuxAmSocketServer.MetricsProvider {
+
+    /** The max time in milliseconds to wait for the main thread to get the metrics. */
+    private static final long MAIN_THREAD_TIMEOUT = 5000;
+
+    private static final String LOG_TAG = "ServiceSessionMetrics";
+
+    private final TermuxService mService;
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    public ServiceSessionMetrics(TermuxService service) {
+        this.mService = service;
+    }
+
+    /** Get the metrics of the session with the {@link TerminalSession#mHandle}, or {@code null} if there is none. */
+    @Nullable
+    public TerminalSessionMetrics getSessionMetrics(String sessionHandle) {
+        TerminalSession terminalSession = mService.getTerminalSessionForHandle(sessionHandle);
+        return terminalSession == null ? null : terminalSession.getMetrics();
+    }
+
+    /**
+     * Get the metrics of all sessions, one line for each session. If not called on the main
+     * thread, this waits for the main thread to get them for up to {@link #MAIN_THREAD_TIMEOUT}.
+     *
+     * @return Returns the metrics, or {@code null} if the main thread did not get them in time.
+     */
+    @Nullable
+    @Override
+    public String getMetrics() {
+        if (Looper.myLooper() == Looper.getMainLooper())
+            return getMetricsOnMainThread();
+
+        FutureTask<String> task = new FutureTask<>(this::getMetricsOnMainThread);
+        mMainThreadHandler.post(task);
+        try {
+            return task.get(MAIN_THREAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Logger.logStackTraceWithMessage(LOG_TAG, "Failed to get terminal metrics on the main thread", e);
+        }
+        task.cancel(false);
+        return null;
+    }
+
+    @NonNull
+    private String getMetricsOnMainThread() {
+        List<TermuxSession> termuxSessions = new ArrayList<>(mService.getTermuxSessions());
+
+        StringBuilder metricsString = new StringBuilder();
+        metricsString.append("Terminal session metrics at ")
+            .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS z", Locale.US).format(new Date()))
+            .append(" (buffer memory budget ").append(mService.getMemoryGovernor().getBudget() / 1024).append("KB):");
+        for (TermuxSession termuxSession : termuxSessions) {
+            metricsString.append("\n").append(termuxSession.getExecutionCommand().getCommandIdAndLabelLogString())
+                .append(": ").append(termuxSession.getTerminalSession().getMetrics());
+        }
+        return metricsString.toString();
+    }
+
+    /** Write the metrics of all sessions to {@link TermuxConstants.TERMUX_APP#TERMINAL_METRICS_FILE_PATH}. */
+    @Nullable
+    @Override
+    public Error dumpMetrics() {
+        String metrics = getMetrics();
+        if (metrics == null)
+            return AmSocketServerErrno.ERRNO_RUN_COMMAND_FAILED.getError(TermuxAmSocketServer.METRICS_COMMAND, "Failed to get the terminal session metrics");
+
+        Error error = FileUtils.writeTextToFile("terminal metrics", TermuxConstants.TERMUX_APP.TERMINAL_METRICS_FILE_PATH,
+            Charset.defaultCharset(), metrics + "\n", false);
+        if (error != null)
+            Logger.logErrorExtended(LOG_TAG, error.toString());
+        else
+            Logger.logDebug(LOG_TAG, "Dumped terminal metrics to \"" + TermuxConstants.TERMUX_APP.TERMINAL_METRICS_FILE_PATH + "\"");
+        return error;
+    }
+
+}
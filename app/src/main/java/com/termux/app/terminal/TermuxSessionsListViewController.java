@@ -13,6 +13,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -92,6 +93,18 @@ public class TermuxSessionsListViewController extends ArrayAdapter<TermuxSession
         return sessionRowView;
     }
 
+    /**
+     * Rebind the row of a session if it is visible, instead of rebinding all the visible rows with
+     * {@link #notifyDataSetChanged()}.
+     */
+    public void notifySessionUpdated(@NonNull ListView listView, TermuxSession termuxSession) {
+        if (termuxSession == null) return;
+        int position = getPosition(termuxSession);
+        if (position < 0) return;
+        View sessionRowView = listView.getChildAt(position - listView.getFirstVisiblePosition());
+        if (sessionRowView != null) getView(position, sessionRowView, listView);
+    }
+
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
         TermuxSession clickedSession = getItem(position);
@@ -21,6 +21,7 @@ import com.termux.shared.interact.ShareUtils;
 import com.termux.shared.termux.shell.command.runner.terminal.TermuxSession;
 import com.termux.shared.termux.interact.TextInputDialogUtils;
 import com.termux.app.TermuxActivity;
+import com.termux.app.TermuxApplication;
 import com.termux.shared.termux.terminal.TermuxTerminalSessionClientBase;
 import com.termux.shared.termux.TermuxConstants;
 import com.termux.app.TermuxService;
@@ -56,6 +57,12 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         checkForFontAndColors();
     }
 
+    /** Get the {@link TerminalSession} currently shown in the activity. */
+    @Nullable
+    public TerminalSession getCurrentSession() {
+        return mActivity.getCurrentSession();
+    }
+
     public void onStart() {
         if (mActivity.getTermuxService() != null) {
             setCurrentSession(getCurrentStoredSessionOrLast());
@@ -82,7 +89,10 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
     @Override
     public void onTextChanged(@NonNull TerminalSession changedSession) {
         if (!mActivity.isVisible()) return;
-        if (mActivity.getCurrentSession() == changedSession) mActivity.getTerminalView().onScreenUpdated();
+        if (mActivity.getCurrentSession() == changedSession) {
+            mActivity.getTerminalView().onScreenUpdated();
+            TermuxApplication.reportFirstTerminalOutput();
+        }
     }
 
     @Override
@@ -92,7 +102,7 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
             mActivity.showToast(toToastTitle(updatedSession), true);
         }
 
-        termuxSessionListNotifyUpdated();
+        termuxSessionListNotifySessionUpdated(updatedSession);
     }
 
     @Override
@@ -182,7 +192,7 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         
         TermuxSession termuxSession = service.getTermuxSessionForTerminalSession(terminalSession);
         if (termuxSession != null)
-            termuxSession.getExecutionCommand().mPid = pid;
+            service.setTermuxSessionShellPid(termuxSession, pid);
     }
 
     public void onResetTerminalSession() {
@@ -265,7 +275,7 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         if (sessionToRename == null) return;
         TextInputDialogUtils.textInput(mActivity, R.string.title_rename_session, sessionToRename.mSessionName, R.string.action_rename_session_confirm, text -> {
             renameSession(sessionToRename, text);
-            termuxSessionListNotifyUpdated();
+            termuxSessionListNotifySessionUpdated(sessionToRename);
         }, -1, null, -1, null, null);
     }
 
@@ -276,13 +286,19 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         if (service != null) {
             TermuxSession termuxSession = service.getTermuxSessionForTerminalSession(sessionToRename);
             if (termuxSession != null)
-                termuxSession.getExecutionCommand().shellName = text;
+                service.setTermuxSessionShellName(termuxSession, text);
         }
     }
 
+    /** Add a new session once the service can start shells, see {@link TermuxService#runWhenDeferredInitDone(Runnable)}. */
     public void addNewSession(boolean isFailSafe, String sessionName) {
         TermuxService service = mActivity.getTermuxService();
         if (service == null) return;
+        service.runWhenDeferredInitDone(() -> addNewSession(service, isFailSafe, sessionName));
+    }
+
+    private void addNewSession(@NonNull TermuxService service, boolean isFailSafe, String sessionName) {
+        if (mActivity.isFinishing()) return;
 
         if (service.getTermuxSessionsSize() >= MAX_SESSIONS) {
             new AlertDialog.Builder(mActivity).setTitle(R.string.title_max_terminals_reached).setMessage(R.string.msg_max_terminals_reached)
@@ -364,6 +380,10 @@ public class TermuxTerminalSessionActivityClient extends TermuxTerminalSessionCl
         mActivity.termuxSessionListNotifyUpdated();
     }
 
+    public void termuxSessionListNotifySessionUpdated(TerminalSession session) {
+        mActivity.termuxSessionListNotifySessionUpdated(session);
+    }
+
     public void checkAndScrollToSession(TerminalSession session) {
         if (!mActivity.isVisible()) return;
         TermuxService service = mActivity.getTermuxService();
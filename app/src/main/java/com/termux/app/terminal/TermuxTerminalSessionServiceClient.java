@@ -25,7 +25,7 @@ public class TermuxTerminalSessionServiceClient extends TermuxTerminalSessionCli
     public void setTerminalShellPid(@NonNull TerminalSession terminalSession, int pid) {
         TermuxSession termuxSession = mService.getTermuxSessionForTerminalSession(terminalSession);
         if (termuxSession != null)
-            termuxSession.getExecutionCommand().mPid = pid;
+            mService.setTermuxSessionShellPid(termuxSession, pid);
     }
 
 }
@@ -111,6 +111,8 @@ public class TermuxTerminalViewClient extends TermuxTerminalViewClientBase {
 
     public void onReloadProperties() {
         setSessionShortcuts();
+        mActivity.getTerminalView().setFrameStatsOverlayEnabled(mActivity.getProperties().isTerminalFrameStatsOverlayEnabled());
+        mActivity.getTerminalView().setLocalEchoEnabled(mActivity.getProperties().isTerminalLocalEchoEnabled());
     }
 
     public void onReloadActivityStyling() {
@@ -0,0 +1,117 @@
+package com.termux.filepicker;
+
+import android.database.AbstractCursor;
+import android.database.DatabaseUtils;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A {@link android.database.Cursor} for the children of a directory of {@link TermuxDocumentsProvider}.
+ *
+ * Only the names of the children are read when the cursor is created. The row of a child is
+ * loaded when the cursor is moved to it, so files are only stat-ed for the rows of the
+ * {@link android.database.CursorWindow} that is being filled for the client, instead of for all
+ * children of huge directories before the first row is returned.
+ */
+public class DirectoryDocumentsCursor extends AbstractCursor {
+
+    private final String[] mColumns;
+    private final File mDirectory;
+    private final List<String> mNames;
+    private final boolean mDirectoryWritable;
+
+    private Object[] mRow;
+    private int mRowPosition = -1;
+
+    /**
+     * Create a {@link DirectoryDocumentsCursor}.
+     *
+     * @param columns The columns of the rows.
+     * @param directory The directory of the children.
+     * @param names The names of the children.
+     */
+    public DirectoryDocumentsCursor(@NonNull String[] columns, @NonNull File directory, @NonNull List<String> names) {
+        mColumns = columns;
+        mDirectory = directory;
+        mNames = names;
+        mDirectoryWritable = directory.canWrite();
+    }
+
+    @Override
+    public int getCount() {
+        return mNames.size();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumns;
+    }
+
+    @NonNull
+    private Object[] getRow() {
+        int position = getPosition();
+        if (position < 0 || position >= getCount())
+            throw new IllegalStateException("Cursor position " + position + " is out of bounds for count " + getCount());
+        if (mRowPosition != position) {
+            mRow = TermuxDocumentsProvider.getDocumentValues(mColumns, new File(mDirectory, mNames.get(position)), mDirectoryWritable);
+            mRowPosition = position;
+        }
+        return mRow;
+    }
+
+    private Object get(int column) {
+        if (column < 0 || column >= mColumns.length)
+            throw new IllegalArgumentException("Requested column " + column + " but there are only " + mColumns.length + " columns");
+        return getRow()[column];
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = get(column);
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public short getShort(int column) {
+        Object value = get(column);
+        return value instanceof Number ? ((Number) value).shortValue() : 0;
+    }
+
+    @Override
+    public int getInt(int column) {
+        Object value = get(column);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = get(column);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    @Override
+    public float getFloat(int column) {
+        Object value = get(column);
+        return value instanceof Number ? ((Number) value).floatValue() : 0;
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = get(column);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    @Override
+    public int getType(int column) {
+        return DatabaseUtils.getTypeOfObject(get(column));
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return get(column) == null;
+    }
+
+}
@@ -1,24 +1,37 @@
 package com.termux.filepicker;
 
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
 import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.graphics.Point;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.provider.DocumentsContract.Root;
 import android.provider.DocumentsProvider;
 import android.webkit.MimeTypeMap;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
 import com.termux.R;
+import com.termux.shared.file.filesystem.DirectoryWalker;
+import com.termux.shared.file.filesystem.FileAttributes;
 import com.termux.shared.termux.TermuxConstants;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * A document provider for the Storage Access Framework which exposes the files in the
@@ -37,6 +50,13 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
 
     private static final File BASE_DIR = TermuxConstants.TERMUX_HOME_DIR;
 
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    /** The name of the {@link TermuxFileNameIndex} file in the cache directory. */
+    private static final String FILE_NAME_INDEX_FILE_NAME = "documents_file_name_index";
+
+    private String mAuthority;
+    private TermuxFileNameIndex mFileNameIndex;
 
     // The default columns to return information about a root if no specific
     // columns are requested in a query.
@@ -88,11 +108,34 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
 
     @Override
     public Cursor queryChildDocuments(String parentDocumentId, String[] projection, String sortOrder) throws FileNotFoundException {
-        final MatrixCursor result = new MatrixCursor(projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION);
         final File parent = getFileForDocId(parentDocumentId);
-        for (File file : parent.listFiles()) {
-            includeFile(result, null, file);
-        }
+        return new DirectoryDocumentsCursor(projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION,
+            parent, getChildNames(parent));
+    }
+
+    /**
+     * Query the children of a directory with paging if {@link ContentResolver#QUERY_ARG_OFFSET}
+     * or {@link ContentResolver#QUERY_ARG_LIMIT} are passed.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @Override
+    public Cursor queryChildDocuments(String parentDocumentId, String[] projection, Bundle queryArgs) throws FileNotFoundException {
+        if (queryArgs == null || (!queryArgs.containsKey(ContentResolver.QUERY_ARG_OFFSET) &&
+            !queryArgs.containsKey(ContentResolver.QUERY_ARG_LIMIT)))
+            return super.queryChildDocuments(parentDocumentId, projection, queryArgs);
+
+        final File parent = getFileForDocId(parentDocumentId);
+        List<String> names = getChildNames(parent);
+        final int count = names.size();
+        final int offset = Math.min(Math.max(queryArgs.getInt(ContentResolver.QUERY_ARG_OFFSET, 0), 0), count);
+        final int limit = Math.min(Math.max(queryArgs.getInt(ContentResolver.QUERY_ARG_LIMIT, count), 0), count - offset);
+
+        final Cursor result = new DirectoryDocumentsCursor(projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION,
+            parent, names.subList(offset, offset + limit));
+        final Bundle extras = new Bundle();
+        extras.putInt(ContentResolver.EXTRA_TOTAL_COUNT, count);
+        extras.putStringArray(ContentResolver.EXTRA_HONORED_ARGS, new String[]{ContentResolver.QUERY_ARG_OFFSET, ContentResolver.QUERY_ARG_LIMIT});
+        result.setExtras(extras);
         return result;
     }
 
@@ -110,6 +153,12 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
         return new AssetFileDescriptor(pfd, 0, file.length());
     }
 
+    @Override
+    public void attachInfo(Context context, ProviderInfo info) {
+        super.attachInfo(context, info);
+        mAuthority = info.authority;
+    }
+
     @Override
     public boolean onCreate() {
         return true;
@@ -157,38 +206,67 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
         final MatrixCursor result = new MatrixCursor(projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION);
         final File parent = getFileForDocId(rootId);
 
-        // This example implementation searches file names for the query and doesn't rank search
-        // results, so we can stop as soon as we find a sufficient number of matches.  Other
-        // implementations might rank results and use other data about files, rather than the file
-        // name, to produce a match.
-        final LinkedList<File> pending = new LinkedList<>();
-        pending.add(parent);
-
-        final int MAX_SEARCH_RESULTS = 50;
-        while (!pending.isEmpty() && result.getCount() < MAX_SEARCH_RESULTS) {
-            final File file = pending.removeFirst();
-            // Avoid directories outside the $HOME directory linked with symlinks (to avoid e.g. search
-            // through the whole SD card).
-            boolean isInsideHome;
-            try {
-                isInsideHome = file.getCanonicalPath().startsWith(TermuxConstants.TERMUX_HOME_DIR_PATH);
-            } catch (IOException e) {
-                isInsideHome = true;
-            }
-            if (isInsideHome) {
-                if (file.isDirectory()) {
-                    Collections.addAll(pending, file.listFiles());
-                } else {
-                    if (file.getName().toLowerCase().contains(query)) {
-                        includeFile(result, null, file);
-                    }
-                }
-            }
+        // Search file names with the index of the $HOME directory, which does not follow symlinks
+        // to avoid directories outside it (to avoid e.g. search through the whole SD card).
+        final TermuxFileNameIndex fileNameIndex = getFileNameIndex();
+        final String parentPath = getDocIdForFile(parent);
+        for (String path : fileNameIndex.search(query, MAX_SEARCH_RESULTS)) {
+            if (!path.startsWith(parentPath + "/")) continue;
+            File file = new File(path);
+            // The file may have been deleted since the index was updated
+            if (!file.exists() && !isSymlink(file)) continue;
+            includeFile(result, null, file);
+        }
+
+        // If the index is still being built, then the client will query again once it is ready
+        if (!fileNameIndex.isReady()) {
+            final Bundle extras = new Bundle();
+            extras.putBoolean(DocumentsContract.EXTRA_LOADING, true);
+            result.setExtras(extras);
+            result.setNotificationUri(getContext().getContentResolver(),
+                DocumentsContract.buildSearchDocumentsUri(mAuthority, rootId, query));
         }
 
         return result;
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // The index is loaded again from its cache file on the next search
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL ||
+            level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+            releaseFileNameIndex();
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        releaseFileNameIndex();
+    }
+
+    /** Get the {@link TermuxFileNameIndex} of {@link #BASE_DIR}, starting it if required. */
+    @NonNull
+    private synchronized TermuxFileNameIndex getFileNameIndex() {
+        if (mFileNameIndex == null) {
+            final Context context = getContext();
+            final String rootId = getDocIdForFile(BASE_DIR);
+            mFileNameIndex = new TermuxFileNameIndex(BASE_DIR.getAbsolutePath(),
+                new File(context.getCacheDir(), FILE_NAME_INDEX_FILE_NAME),
+                () -> context.getContentResolver().notifyChange(
+                    DocumentsContract.buildSearchDocumentsUri(mAuthority, rootId, ""), null, false));
+        }
+        mFileNameIndex.start();
+        return mFileNameIndex;
+    }
+
+    /** Stop the {@link TermuxFileNameIndex} and release its memory and {@link android.os.FileObserver}s. */
+    private synchronized void releaseFileNameIndex() {
+        if (mFileNameIndex == null) return;
+        mFileNameIndex.stop();
+        mFileNameIndex = null;
+    }
+
     @Override
     public boolean isChildDocument(String parentDocumentId, String documentId) {
         return documentId.startsWith(parentDocumentId);
@@ -214,10 +292,13 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
     }
 
     private static String getMimeType(File file) {
-        if (file.isDirectory()) {
+        return getMimeType(file.getName(), file.isDirectory());
+    }
+
+    private static String getMimeType(String name, boolean isDirectory) {
+        if (isDirectory) {
             return Document.MIME_TYPE_DIR;
         } else {
-            final String name = file.getName();
             final int lastDot = name.lastIndexOf('.');
             if (lastDot >= 0) {
                 final String extension = name.substring(lastDot + 1).toLowerCase();
@@ -228,6 +309,37 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
         }
     }
 
+    private static boolean isSymlink(File file) {
+        try {
+            return FileAttributes.get(file.getAbsolutePath(), false).isSymbolicLink();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the names of the children of a directory.
+     */
+    @NonNull
+    private static List<String> getChildNames(File directory) throws FileNotFoundException {
+        final List<String> names = new ArrayList<>();
+        final DirectoryWalker.Batch batch = new DirectoryWalker.Batch(256);
+        try (DirectoryWalker directoryWalker = DirectoryWalker.open(directory.getAbsolutePath(), null)) {
+            while (directoryWalker.next(batch) > 0) {
+                for (int i = 0; i < batch.size(); i++)
+                    names.add(batch.getName(i));
+            }
+        } catch (IOException e) {
+            // The directory may be a symlink, which is not opened by the walker
+            final String[] listedNames = directory.list();
+            if (listedNames == null)
+                throw new FileNotFoundException("Failed to list directory " + directory.getAbsolutePath() + ": " + e.getMessage());
+            names.clear();
+            Collections.addAll(names, listedNames);
+        }
+        return names;
+    }
+
     /**
      * Add a representation of a file to a cursor.
      *
@@ -243,26 +355,53 @@ public class TermuxDocumentsProvider extends DocumentsProvider {
             file = getFileForDocId(docId);
         }
 
+        result.addRow(getDocumentValues(result.getColumnNames(), file, file.getParentFile().canWrite()));
+    }
+
+    /**
+     * Get the values of the columns of the row of a file. The file is only stat-ed once.
+     *
+     * @param columns the columns of the row
+     * @param file    the File object representing the desired file
+     * @param parentWritable whether the parent directory of the file is writable
+     */
+    static Object[] getDocumentValues(String[] columns, File file, boolean parentWritable) {
+        final String path = file.getAbsolutePath();
+        FileAttributes fileAttributes;
+        try {
+            fileAttributes = FileAttributes.get(path, true);
+        } catch (IOException e) {
+            // Broken symlink or deleted file
+            fileAttributes = null;
+        }
+
+        final boolean isDirectory = fileAttributes != null && fileAttributes.isDirectory();
+        final boolean writable = file.canWrite();
         int flags = 0;
-        if (file.isDirectory()) {
-            if (file.canWrite()) flags |= Document.FLAG_DIR_SUPPORTS_CREATE;
-        } else if (file.canWrite()) {
+        if (isDirectory) {
+            if (writable) flags |= Document.FLAG_DIR_SUPPORTS_CREATE;
+        } else if (writable) {
             flags |= Document.FLAG_SUPPORTS_WRITE;
         }
-        if (file.getParentFile().canWrite()) flags |= Document.FLAG_SUPPORTS_DELETE;
+        if (parentWritable) flags |= Document.FLAG_SUPPORTS_DELETE;
 
         final String displayName = file.getName();
-        final String mimeType = getMimeType(file);
+        final String mimeType = getMimeType(displayName, isDirectory);
         if (mimeType.startsWith("image/")) flags |= Document.FLAG_SUPPORTS_THUMBNAIL;
 
-        final MatrixCursor.RowBuilder row = result.newRow();
-        row.add(Document.COLUMN_DOCUMENT_ID, docId);
-        row.add(Document.COLUMN_DISPLAY_NAME, displayName);
-        row.add(Document.COLUMN_SIZE, file.length());
-        row.add(Document.COLUMN_MIME_TYPE, mimeType);
-        row.add(Document.COLUMN_LAST_MODIFIED, file.lastModified());
-        row.add(Document.COLUMN_FLAGS, flags);
-        row.add(Document.COLUMN_ICON, R.mipmap.ic_launcher);
+        final Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i]) {
+                case Document.COLUMN_DOCUMENT_ID: values[i] = getDocIdForFile(file); break;
+                case Document.COLUMN_DISPLAY_NAME: values[i] = displayName; break;
+                case Document.COLUMN_SIZE: values[i] = fileAttributes != null ? fileAttributes.size() : 0L; break;
+                case Document.COLUMN_MIME_TYPE: values[i] = mimeType; break;
+                case Document.COLUMN_LAST_MODIFIED: values[i] = fileAttributes != null ? fileAttributes.lastModifiedTime().toMillis() : 0L; break;
+                case Document.COLUMN_FLAGS: values[i] = flags; break;
+                case Document.COLUMN_ICON: values[i] = R.mipmap.ic_launcher; break;
+            }
+        }
+        return values;
     }
 
 }
@@ -0,0 +1,741 @@
+package com.termux.filepicker;
+
+import android.os.FileObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.file.filesystem.DirectoryWalker;
+import com.termux.shared.file.filesystem.FileAttributes;
+import com.termux.shared.logger.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent index of the names of all files under a directory, used for the searches of
+ * {@link TermuxDocumentsProvider}.
+ *
+ * The index is a tree of names that is built in the background with {@link DirectoryWalker} on
+ * first use and saved to a cache file, so that it is available immediately after the process is
+ * restarted. Every indexed directory is observed with a {@link FileObserver} to update the index
+ * incrementally, up to {@link #MAX_OBSERVED_DIRECTORIES} to not exhaust the inotify watches.
+ * Directories are revalidated with their modification time after the index is loaded and, if
+ * some are not observed, on searches after {@link #REFRESH_INTERVAL}, so only directories that
+ * changed are listed again.
+ *
+ * Symlinks are indexed but not followed, so that searches do not leave the root directory. At
+ * most {@link #MAX_INDEXED_FILES} files are indexed to bound the memory used, and files found
+ * after that are not searched.
+ *
+ * A search is a linear scan of the names in the index, which is bounded by
+ * {@link #MAX_INDEXED_FILES} and does not need more memory for a token or prefix structure,
+ * since names are matched anywhere and not only at their start.
+ */
+public class TermuxFileNameIndex {
+
+    /** The max number of directories that are observed for changes. */
+    static final int MAX_OBSERVED_DIRECTORIES = 4096;
+
+    /** The max number of files that are indexed. */
+    static final int MAX_INDEXED_FILES = 100000;
+
+    /** The min interval in milliseconds between refreshes of directories that are not observed. */
+    static final long REFRESH_INTERVAL = 30 * 1000;
+
+    /** The delay in milliseconds after a change before the index is saved. */
+    private static final long SAVE_DELAY = 10 * 1000;
+
+    /**
+     * The interval in milliseconds before a directory was listed within which a modification
+     * time is not trusted, since later changes in the same timestamp granularity would not
+     * change it.
+     */
+    private static final long MODIFIED_TIME_GRANULARITY = 2 * 1000;
+
+    private static final int INDEX_FILE_MAGIC = 0x544e4958; // "TNIX"
+    private static final int INDEX_FILE_VERSION = 1;
+
+    private static final int OBSERVER_EVENTS = FileObserver.CREATE | FileObserver.DELETE |
+        FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static final String LOG_TAG = "TermuxFileNameIndex";
+
+    private final String mRootPath;
+    private final File mIndexFile;
+    private final Runnable mReadyListener;
+    private final int mMaxIndexedFiles;
+
+    private final Object mLock = new Object();
+    private final DirectoryNode mRoot = new DirectoryNode("", null);
+    private ScheduledExecutorService mExecutor;
+    private DirectoryWalker.Batch mBatch;
+
+    private volatile boolean mReady;
+    private boolean mRefreshScheduled;
+    private boolean mSaveScheduled;
+    private volatile long mLastRefreshTime;
+    private int mObservedDirectories;
+    private int mIndexedFiles;
+    /** Whether some files are not indexed because of {@link #mMaxIndexedFiles}. */
+    private boolean mFileLimitReached;
+    /** Whether some directories are not observed because of {@link #MAX_OBSERVED_DIRECTORIES}. */
+    private volatile boolean mObserverLimitReached;
+
+    /** A file in the index. */
+    static class Node {
+        final String name;
+        final String lowerName;
+        DirectoryNode parent;
+
+        Node(@NonNull String name, @Nullable DirectoryNode parent) {
+            this.name = name;
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            this.lowerName = lowerName.equals(name) ? name : lowerName;
+            this.parent = parent;
+        }
+    }
+
+    /** A directory in the index. */
+    static class DirectoryNode extends Node {
+        final HashMap<String, Node> children = new HashMap<>();
+        /** The modification time of the directory when it was listed, or -1 if it was not listed. */
+        long modifiedTime = -1;
+        /** The time when the directory was listed. */
+        long listedTime;
+        DirectoryObserver observer;
+
+        DirectoryNode(@NonNull String name, @Nullable DirectoryNode parent) {
+            super(name, parent);
+        }
+    }
+
+    /** A search match ranked by {@link #compareMatches(Match, Match)}. */
+    private static class Match {
+        final Node node;
+        final int rank;
+        final int depth;
+
+        Match(Node node, int rank, int depth) {
+            this.node = node;
+            this.rank = rank;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Create a {@link TermuxFileNameIndex}. It is not loaded or built until {@link #start()} is called.
+     *
+     * @param rootPath The path of the root directory to index.
+     * @param indexFile The file to save the index to.
+     * @param readyListener The optional listener that is called on the index thread once the index
+     *                      has been loaded or built for the first time.
+     */
+    public TermuxFileNameIndex(@NonNull String rootPath, @NonNull File indexFile, @Nullable Runnable readyListener) {
+        this(rootPath, indexFile, readyListener, MAX_INDEXED_FILES);
+    }
+
+    TermuxFileNameIndex(@NonNull String rootPath, @NonNull File indexFile, @Nullable Runnable readyListener, int maxIndexedFiles) {
+        mRootPath = rootPath;
+        mIndexFile = indexFile;
+        mReadyListener = readyListener;
+        mMaxIndexedFiles = maxIndexedFiles;
+    }
+
+    /** Load the saved index and refresh it in the background. This does nothing if already started. */
+    public synchronized void start() {
+        if (mExecutor != null) return;
+        mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, LOG_TAG));
+        execute(() -> {
+            if (load()) onReady();
+            refresh(mRoot);
+            if (!mReady) onReady();
+        });
+    }
+
+    /** Stop observing directories and stop the index thread. */
+    public synchronized void stop() {
+        if (mExecutor == null) return;
+        mExecutor.shutdownNow();
+        mExecutor = null;
+        synchronized (mLock) {
+            stopObservers(mRoot);
+        }
+    }
+
+    /** Whether the index has been loaded or built, so that searches return all matches. */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /** Get the path of the root directory. */
+    @NonNull
+    public String getRootPath() {
+        return mRootPath;
+    }
+
+    /**
+     * Search the names of the files in the index. Names that are equal to the query are ranked
+     * first, followed by names that start with it, names that contain it at the start of a word
+     * and names that contain it anywhere. Matches of the same rank are ordered by depth and then
+     * by name length.
+     *
+     * @param query The query to search for, which is not case sensitive.
+     * @param limit The max number of matches to return.
+     * @return Returns the paths of the matches in order of their ranks.
+     */
+    @NonNull
+    public List<String> search(@NonNull String query, int limit) {
+        if (mReady && mObserverLimitReached && System.currentTimeMillis() - mLastRefreshTime >= REFRESH_INTERVAL)
+            scheduleRefresh();
+
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        if (lowerQuery.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        // The worst match is at the head so that it can be replaced by better ones
+        PriorityQueue<Match> matches = new PriorityQueue<>(limit, (a, b) -> compareMatches(b, a));
+        List<String> paths = new ArrayList<>();
+        synchronized (mLock) {
+            ArrayDeque<DirectoryNode> pending = new ArrayDeque<>();
+            pending.add(mRoot);
+            DirectoryNode directory;
+            while ((directory = pending.poll()) != null) {
+                for (Node node : directory.children.values()) {
+                    if (node instanceof DirectoryNode)
+                        pending.add((DirectoryNode) node);
+
+                    int rank = getMatchRank(node.lowerName, lowerQuery);
+                    if (rank < 0) continue;
+                    Match match = new Match(node, rank, getDepth(node));
+                    if (matches.size() < limit) {
+                        matches.add(match);
+                    } else if (compareMatches(match, matches.peek()) < 0) {
+                        matches.poll();
+                        matches.add(match);
+                    }
+                }
+            }
+
+            while (!matches.isEmpty())
+                paths.add(getPath(matches.poll().node));
+        }
+
+        Collections.reverse(paths);
+        return paths;
+    }
+
+    /**
+     * Get the rank of a name for a query, where lower is better.
+     *
+     * @return Returns {@code 0} if the name is equal to the query, {@code 1} if it starts with
+     * it, {@code 2} if it contains it at the start of a word, {@code 3} if it contains it and
+     * {@code -1} if it does not match.
+     */
+    static int getMatchRank(@NonNull String name, @NonNull String query) {
+        int index = name.indexOf(query);
+        if (index < 0) return -1;
+        if (index == 0) return name.length() == query.length() ? 0 : 1;
+        for (; index > 0; index = name.indexOf(query, index + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(index - 1)))
+                return 2;
+        }
+        return 3;
+    }
+
+    private static int compareMatches(@NonNull Match a, @NonNull Match b) {
+        if (a.rank != b.rank) return Integer.compare(a.rank, b.rank);
+        if (a.depth != b.depth) return Integer.compare(a.depth, b.depth);
+        if (a.node.name.length() != b.node.name.length()) return Integer.compare(a.node.name.length(), b.node.name.length());
+        return a.node.name.compareTo(b.node.name);
+    }
+
+
+
+    /**
+     * Add a file to the index, like for files that are created. Any missing parent directories
+     * are added too and an existing file of a different type is replaced.
+     *
+     * @param path The path of the file under the root directory.
+     * @param isDirectory Whether the file is a directory.
+     */
+    void add(@NonNull String path, boolean isDirectory) {
+        synchronized (mLock) {
+            DirectoryNode parent = mRoot;
+            String[] names = getRelativePath(path).split("/");
+            for (int i = 0; i < names.length - 1; i++) {
+                if (names[i].isEmpty()) continue;
+                parent = (DirectoryNode) putChild(parent, names[i], true);
+                if (parent == null) return;
+            }
+            putChild(parent, names[names.length - 1], isDirectory);
+        }
+    }
+
+    /**
+     * Remove a file and, if it is a directory, all files under it from the index.
+     *
+     * @param path The path of the file under the root directory.
+     */
+    void remove(@NonNull String path) {
+        synchronized (mLock) {
+            Node node = mRoot;
+            for (String name : getRelativePath(path).split("/")) {
+                if (name.isEmpty()) continue;
+                node = node instanceof DirectoryNode ? ((DirectoryNode) node).children.get(name) : null;
+                if (node == null) return;
+            }
+            if (node != mRoot)
+                removeChild(node.parent, node.name);
+        }
+    }
+
+    /** Get the number of files in the index. */
+    int size() {
+        synchronized (mLock) {
+            return mIndexedFiles;
+        }
+    }
+
+    /** Get the number of files under a directory. Must be called with {@link #mLock} held. */
+    private static int countFiles(@NonNull DirectoryNode directory) {
+        int count = 0;
+        ArrayDeque<DirectoryNode> pending = new ArrayDeque<>();
+        pending.add(directory);
+        DirectoryNode current;
+        while ((current = pending.poll()) != null) {
+            count += current.children.size();
+            for (Node node : current.children.values()) {
+                if (node instanceof DirectoryNode)
+                    pending.add((DirectoryNode) node);
+            }
+        }
+        return count;
+    }
+
+    @NonNull
+    private String getRelativePath(@NonNull String path) {
+        if (path.startsWith(mRootPath + "/")) return path.substring(mRootPath.length() + 1);
+        return path;
+    }
+
+    /** Get the path of a node. Must be called with {@link #mLock} held. */
+    @NonNull
+    private String getPath(@NonNull Node node) {
+        if (node == mRoot) return mRootPath;
+        ArrayList<String> names = new ArrayList<>();
+        for (Node current = node; current != mRoot && current != null; current = current.parent)
+            names.add(current.name);
+
+        StringBuilder path = new StringBuilder(mRootPath);
+        for (int i = names.size() - 1; i >= 0; i--)
+            path.append('/').append(names.get(i));
+        return path.toString();
+    }
+
+    private static int getDepth(@NonNull Node node) {
+        int depth = 0;
+        for (Node current = node.parent; current != null; current = current.parent)
+            depth++;
+        return depth;
+    }
+
+    /** Whether a node is still in the index. Must be called with {@link #mLock} held. */
+    private boolean isAttached(@NonNull Node node) {
+        Node current = node;
+        while (current.parent != null)
+            current = current.parent;
+        return current == mRoot;
+    }
+
+    /**
+     * Add a child to a directory, keeping an existing child of the same type. Must be called with
+     * {@link #mLock} held.
+     *
+     * @return Returns the child, or {@code null} if it was not added because the index already
+     * has {@link #mMaxIndexedFiles} files.
+     */
+    @Nullable
+    private Node putChild(@NonNull DirectoryNode parent, @NonNull String name, boolean isDirectory) {
+        Node child = parent.children.get(name);
+        if (child != null && (child instanceof DirectoryNode) == isDirectory) return child;
+        if (child != null) removeChild(parent, name);
+
+        if (mIndexedFiles >= mMaxIndexedFiles) {
+            if (!mFileLimitReached)
+                Logger.logInfo(LOG_TAG, "Not indexing more than " + mMaxIndexedFiles + " files of \"" + mRootPath + "\"");
+            mFileLimitReached = true;
+            return null;
+        }
+
+        child = isDirectory ? new DirectoryNode(name, parent) : new Node(name, parent);
+        parent.children.put(name, child);
+        mIndexedFiles++;
+        return child;
+    }
+
+    /** Remove a child of a directory and stop observing it. Must be called with {@link #mLock} held. */
+    private void removeChild(@NonNull DirectoryNode parent, @NonNull String name) {
+        Node child = parent.children.remove(name);
+        if (child == null) return;
+        child.parent = null;
+        mIndexedFiles--;
+        if (child instanceof DirectoryNode) {
+            mIndexedFiles -= countFiles((DirectoryNode) child);
+            stopObservers((DirectoryNode) child);
+        }
+    }
+
+    /** Stop observing a directory and all directories under it. Must be called with {@link #mLock} held. */
+    private void stopObservers(@NonNull DirectoryNode directory) {
+        ArrayDeque<DirectoryNode> pending = new ArrayDeque<>();
+        pending.add(directory);
+        DirectoryNode current;
+        while ((current = pending.poll()) != null) {
+            if (current.observer != null) {
+                current.observer.stopWatching();
+                current.observer = null;
+                mObservedDirectories--;
+            }
+            for (Node node : current.children.values()) {
+                if (node instanceof DirectoryNode)
+                    pending.add((DirectoryNode) node);
+            }
+        }
+    }
+
+
+
+    private void execute(@NonNull Runnable runnable) {
+        execute(runnable, 0);
+    }
+
+    private synchronized void execute(@NonNull Runnable runnable, long delay) {
+        if (mExecutor == null) return;
+        try {
+            mExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Stopped
+        }
+    }
+
+    private void onReady() {
+        mReady = true;
+        if (mReadyListener != null)
+            mReadyListener.run();
+    }
+
+    private void scheduleRefresh() {
+        synchronized (mLock) {
+            if (mRefreshScheduled) return;
+            mRefreshScheduled = true;
+        }
+        execute(() -> refresh(mRoot));
+    }
+
+    private void scheduleSave() {
+        synchronized (mLock) {
+            if (mSaveScheduled) return;
+            mSaveScheduled = true;
+        }
+        execute(this::save, SAVE_DELAY);
+    }
+
+    /**
+     * Refresh a directory and all directories under it. Directories whose modification time did
+     * not change since they were listed are not listed again. Must be called on the index thread.
+     */
+    private void refresh(@NonNull DirectoryNode directory) {
+        long startTime = System.currentTimeMillis();
+        synchronized (mLock) {
+            if (directory == mRoot) {
+                mRefreshScheduled = false;
+                mObserverLimitReached = false;
+                mFileLimitReached = false;
+            }
+        }
+
+        int listedDirectories = 0;
+        ArrayDeque<DirectoryNode> pending = new ArrayDeque<>();
+        pending.add(directory);
+        DirectoryNode current;
+        while ((current = pending.poll()) != null) {
+            if (Thread.currentThread().isInterrupted()) return;
+            if (refreshDirectory(current)) listedDirectories++;
+            synchronized (mLock) {
+                for (Node node : current.children.values()) {
+                    if (node instanceof DirectoryNode)
+                        pending.add((DirectoryNode) node);
+                }
+            }
+        }
+
+        if (directory == mRoot) {
+            mLastRefreshTime = startTime;
+            Logger.logVerbose(LOG_TAG, "Refreshed index of \"" + mRootPath + "\" in " +
+                (System.currentTimeMillis() - startTime) + "ms, listed " + listedDirectories + " directories");
+        }
+        if (listedDirectories > 0)
+            scheduleSave();
+    }
+
+    /**
+     * Observe a directory and list it again if it changed.
+     *
+     * @return Returns {@code true} if the directory was listed.
+     */
+    private boolean refreshDirectory(@NonNull DirectoryNode directory) {
+        String path;
+        synchronized (mLock) {
+            if (!isAttached(directory)) return false;
+            path = getPath(directory);
+            // Start observing before listing so that no changes are missed
+            if (directory.observer == null && mObservedDirectories < MAX_OBSERVED_DIRECTORIES) {
+                directory.observer = new DirectoryObserver(path, directory);
+                directory.observer.startWatching();
+                mObservedDirectories++;
+            } else if (directory.observer == null) {
+                mObserverLimitReached = true;
+            }
+        }
+
+        long listedTime = System.currentTimeMillis();
+        long modifiedTime;
+        try {
+            FileAttributes fileAttributes = FileAttributes.get(path, false);
+            if (!fileAttributes.isDirectory()) throw new IOException("Not a directory");
+            modifiedTime = fileAttributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            synchronized (mLock) {
+                if (directory == mRoot) {
+                    for (String name : new ArrayList<>(mRoot.children.keySet()))
+                        removeChild(mRoot, name);
+                } else if (isAttached(directory)) {
+                    removeChild(directory.parent, directory.name);
+                }
+            }
+            return false;
+        }
+
+        synchronized (mLock) {
+            if (directory.modifiedTime == modifiedTime && modifiedTime < directory.listedTime - MODIFIED_TIME_GRANULARITY)
+                return false;
+        }
+
+        List<String> names = new ArrayList<>();
+        Set<String> directoryNames = new HashSet<>();
+        if (mBatch == null) mBatch = new DirectoryWalker.Batch(256);
+        try (DirectoryWalker directoryWalker = DirectoryWalker.open(path, null)) {
+            while (directoryWalker.next(mBatch) > 0) {
+                for (int i = 0; i < mBatch.size(); i++) {
+                    String name = mBatch.getName(i);
+                    names.add(name);
+                    if (mBatch.isDirectory(i)) directoryNames.add(name);
+                }
+            }
+        } catch (IOException e) {
+            Logger.logVerbose(LOG_TAG, "Failed to list directory for index: " + e.getMessage());
+            names.clear();
+            modifiedTime = -1;
+        }
+
+        synchronized (mLock) {
+            if (!isAttached(directory)) return false;
+            Set<String> nameSet = new HashSet<>(names);
+            for (String name : new ArrayList<>(directory.children.keySet())) {
+                if (!nameSet.contains(name))
+                    removeChild(directory, name);
+            }
+            for (String name : names) {
+                // List the directory again on the next refresh if it could not be indexed completely
+                if (putChild(directory, name, directoryNames.contains(name)) == null)
+                    modifiedTime = -1;
+            }
+            directory.modifiedTime = modifiedTime;
+            directory.listedTime = listedTime;
+        }
+        return true;
+    }
+
+    /** Handle an event of a {@link DirectoryObserver}. Must be called on the index thread. */
+    private void onDirectoryEvent(@NonNull DirectoryNode directory, int event, @Nullable String name) {
+        if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+            // Directories under the root are removed by the events of their parents
+            if (directory == mRoot) scheduleRefresh();
+            return;
+        }
+        if (name == null) return;
+
+        String path;
+        synchronized (mLock) {
+            if (!isAttached(directory)) return;
+            path = getPath(directory) + "/" + name;
+        }
+
+        if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) {
+            synchronized (mLock) {
+                removeChild(directory, name);
+            }
+        } else if ((event & (FileObserver.CREATE | FileObserver.MOVED_TO)) != 0) {
+            Node child;
+            try {
+                boolean isDirectory = FileAttributes.get(path, false).isDirectory();
+                synchronized (mLock) {
+                    if (!isAttached(directory)) return;
+                    child = putChild(directory, name, isDirectory);
+                }
+            } catch (IOException e) {
+                // Already deleted again
+                synchronized (mLock) {
+                    removeChild(directory, name);
+                }
+                return;
+            }
+            if (child == null) return;
+            if (child instanceof DirectoryNode)
+                refresh((DirectoryNode) child);
+        } else {
+            return;
+        }
+
+        scheduleSave();
+    }
+
+    /** A {@link FileObserver} for a directory in the index. */
+    private class DirectoryObserver extends FileObserver {
+
+        private final DirectoryNode mDirectory;
+
+        @SuppressWarnings("deprecation")
+        DirectoryObserver(@NonNull String path, @NonNull DirectoryNode directory) {
+            super(path, OBSERVER_EVENTS);
+            mDirectory = directory;
+        }
+
+        @Override
+        public void onEvent(int event, @Nullable String path) {
+            final int eventType = event & FileObserver.ALL_EVENTS;
+            execute(() -> onDirectoryEvent(mDirectory, eventType, path));
+        }
+
+    }
+
+
+
+    /**
+     * Load the index from {@link #mIndexFile}. Must be called on the index thread.
+     *
+     * @return Returns {@code true} if the index was loaded.
+     */
+    private boolean load() {
+        if (!mIndexFile.isFile()) return false;
+
+        long startTime = System.currentTimeMillis();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)))) {
+            if (input.readInt() != INDEX_FILE_MAGIC || input.readInt() != INDEX_FILE_VERSION ||
+                !mRootPath.equals(input.readUTF()))
+                throw new IOException("Invalid or outdated index file");
+
+            DirectoryNode root = new DirectoryNode("", null);
+            readDirectory(input, root);
+            if (countFiles(root) > mMaxIndexedFiles)
+                throw new IOException("Index file has more than " + mMaxIndexedFiles + " files");
+            synchronized (mLock) {
+                stopObservers(mRoot);
+                mRoot.children.clear();
+                for (Node node : root.children.values()) {
+                    node.parent = mRoot;
+                    mRoot.children.put(node.name, node);
+                }
+                mRoot.modifiedTime = root.modifiedTime;
+                mRoot.listedTime = root.listedTime;
+                mIndexedFiles = countFiles(mRoot);
+            }
+            Logger.logVerbose(LOG_TAG, "Loaded index of \"" + mRootPath + "\" with " + size() + " files in " +
+                (System.currentTimeMillis() - startTime) + "ms");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Logger.logError(LOG_TAG, "Failed to load index file at path \"" + mIndexFile.getAbsolutePath() + "\": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            mIndexFile.delete();
+            return false;
+        }
+    }
+
+    private static void readDirectory(@NonNull DataInputStream input, @NonNull DirectoryNode directory) throws IOException {
+        directory.modifiedTime = input.readLong();
+        directory.listedTime = input.readLong();
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = input.readUTF();
+            if (input.readBoolean()) {
+                DirectoryNode child = new DirectoryNode(name, directory);
+                directory.children.put(name, child);
+                readDirectory(input, child);
+            } else {
+                directory.children.put(name, new Node(name, directory));
+            }
+        }
+    }
+
+    /** Save the index to {@link #mIndexFile}. Must be called on the index thread. */
+    private void save() {
+        synchronized (mLock) {
+            mSaveScheduled = false;
+        }
+
+        File tmpFile = new File(mIndexFile.getAbsolutePath() + ".tmp");
+        try {
+            File parent = mIndexFile.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Failed to create directory \"" + parent.getAbsolutePath() + "\"");
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                output.writeInt(INDEX_FILE_MAGIC);
+                output.writeInt(INDEX_FILE_VERSION);
+                output.writeUTF(mRootPath);
+                synchronized (mLock) {
+                    writeDirectory(output, mRoot);
+                }
+            }
+
+            if (!tmpFile.renameTo(mIndexFile))
+                throw new IOException("Failed to rename \"" + tmpFile.getAbsolutePath() + "\"");
+        } catch (IOException e) {
+            Logger.logError(LOG_TAG, "Failed to save index file at path \"" + mIndexFile.getAbsolutePath() + "\": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+        }
+    }
+
+    private static void writeDirectory(@NonNull DataOutputStream output, @NonNull DirectoryNode directory) throws IOException {
+        output.writeLong(directory.modifiedTime);
+        output.writeLong(directory.listedTime);
+        output.writeInt(directory.children.size());
+        for (Node node : directory.children.values()) {
+            output.writeUTF(node.name);
+            output.writeBoolean(node instanceof DirectoryNode);
+            if (node instanceof DirectoryNode)
+                writeDirectory(output, (DirectoryNode) node);
+        }
+    }
+
+}
@@ -0,0 +1,442 @@
+package com.termux.app;
+
+import com.termux.shared.logger.Logger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class TermuxBootstrapExtractorTest {
+
+    private static final int DIRECTORIES = 40;
+    private static final int FILES_PER_DIRECTORY = 50;
+
+    private static final int BENCHMARK_WARMUP_RUNS = 1;
+    private static final int BENCHMARK_RUNS = 3;
+
+    /**
+     * The extractor must not be more than this many times slower than the {@link ZipInputStream}
+     * extraction it replaced. It is usually faster, but the bound is kept loose so that the test
+     * only fails for real regressions and not for a busy or single core host.
+     */
+    private static final int MAX_EXTRACT_SLOWDOWN = 2;
+
+    /**
+     * Repairing a prefix with a few corrupted files must be at least this many times faster than
+     * extracting the whole zip again, since the intact files are only read and not inflated and
+     * written.
+     */
+    private static final int MIN_REPAIR_SPEEDUP = 2;
+
+    private static final String LOG_TAG = "TermuxBootstrapExtractorTest";
+
+    private File mTempDirectory;
+    private File mZipFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mTempDirectory = Files.createTempDirectory("bootstrap-extractor-test").toFile();
+        mZipFile = new File(mTempDirectory, "bootstrap.zip");
+        createTestZip(mZipFile);
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(mTempDirectory);
+    }
+
+    @Test
+    public void testExtract() throws IOException {
+        File prefix = createDirectory("prefix");
+        TermuxBootstrapExtractor extractor = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath());
+        TermuxBootstrapExtractor.Stats stats = extractor.extract(4, null);
+
+        Assert.assertEquals(DIRECTORIES * FILES_PER_DIRECTORY + 2, stats.files);
+        assertExtractedLikeZipInputStream(prefix);
+
+        Assert.assertTrue(new File(prefix, "bin/login").canExecute());
+        Assert.assertFalse(new File(prefix, "etc/dir0/file0").canExecute());
+
+        List<String[]> symlinks = extractor.getSymlinks();
+        Assert.assertEquals(1, symlinks.size());
+        Assert.assertEquals("login", symlinks.get(0)[0]);
+        Assert.assertEquals(prefix.getAbsolutePath() + "/bin/links/sh", symlinks.get(0)[1]);
+        Assert.assertTrue(new File(prefix, "bin/links").isDirectory());
+    }
+
+    @Test
+    public void testExtractProgress() throws IOException {
+        File prefix = createDirectory("prefix");
+        final int[] lastPercent = {0};
+        new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).extract(4, percent -> {
+            synchronized (lastPercent) {
+                lastPercent[0] = Math.max(lastPercent[0], percent);
+            }
+        });
+        Assert.assertEquals(100, lastPercent[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testExtractCorruptedZip() throws IOException {
+        ByteBuffer zip = mapZipFile();
+        ByteBuffer truncatedZip = ByteBuffer.allocate(zip.capacity() / 2);
+        zip.limit(truncatedZip.capacity());
+        truncatedZip.put(zip);
+        truncatedZip.flip();
+        new TermuxBootstrapExtractor(truncatedZip, createDirectory("prefix").getAbsolutePath());
+    }
+
+    @Test
+    public void testExtractWithSingleThread() throws IOException {
+        File prefix = createDirectory("prefix");
+        TermuxBootstrapExtractor.Stats stats = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).extract(1, null);
+        Assert.assertEquals(1, stats.threads);
+        assertExtractedLikeZipInputStream(prefix);
+    }
+
+    @Test
+    public void testExtractBenchmark() throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long zipInputStreamNanos = Long.MAX_VALUE;
+        long singleThreadNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+
+        // Take the fastest of a few runs after a warmup, so that the JIT and page cache do not
+        // favour whichever extraction runs last.
+        for (int run = 0; run < BENCHMARK_WARMUP_RUNS + BENCHMARK_RUNS; run++) {
+            boolean measure = run >= BENCHMARK_WARMUP_RUNS;
+
+            File prefix = createDirectory("zip-input-stream-" + run);
+            long startTime = System.nanoTime();
+            extractWithZipInputStream(prefix);
+            if (measure) zipInputStreamNanos = Math.min(zipInputStreamNanos, System.nanoTime() - startTime);
+            deleteRecursively(prefix);
+
+            prefix = createDirectory("single-thread-" + run);
+            startTime = System.nanoTime();
+            new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).extract(1, null);
+            if (measure) singleThreadNanos = Math.min(singleThreadNanos, System.nanoTime() - startTime);
+            deleteRecursively(prefix);
+
+            prefix = createDirectory("parallel-" + run);
+            startTime = System.nanoTime();
+            new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).extract(threads, null);
+            if (measure) parallelNanos = Math.min(parallelNanos, System.nanoTime() - startTime);
+            deleteRecursively(prefix);
+        }
+
+        String times = "Bootstrap install wall-clock time: ZipInputStream=" + zipInputStreamNanos / 1000000 +
+            "ms, extractor with 1 thread=" + singleThreadNanos / 1000000 + "ms, extractor with " + threads +
+            " threads=" + parallelNanos / 1000000 + "ms";
+        Logger.logInfo(LOG_TAG, times);
+        Assert.assertTrue(times, singleThreadNanos <= MAX_EXTRACT_SLOWDOWN * zipInputStreamNanos);
+        Assert.assertTrue(times, parallelNanos <= MAX_EXTRACT_SLOWDOWN * zipInputStreamNanos);
+    }
+
+    @Test
+    public void testManifest() throws IOException {
+        File prefix = createDirectory("prefix");
+        TermuxBootstrapExtractor extractor = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath());
+        extractor.extract(4, null);
+        File manifestFile = extractor.writeManifest();
+
+        Assert.assertEquals(new File(prefix, TermuxBootstrapExtractor.MANIFEST_FILE_PATH), manifestFile);
+        List<String> lines = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(extractor.getManifest(), String.join("\n", lines) + "\n");
+        Assert.assertTrue(lines.contains("D\t0700\tbin/links"));
+        Assert.assertTrue(lines.contains("F\t0600\t0\t00000000\tlib/empty"));
+        Assert.assertTrue(lines.contains("L\tlogin\tbin/links/sh"));
+
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(new File(prefix, "bin/login").toPath()));
+        Assert.assertTrue(lines.contains(String.format("F\t0700\t%d\t%08x\tbin/login", 1024 * 1024, crc.getValue())));
+    }
+
+    @Test
+    public void testRepair() throws IOException {
+        File prefix = createDirectory("prefix");
+        new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).extract(4, null);
+        int corruptedFiles = corruptPrefix(prefix);
+
+        TermuxBootstrapExtractor.Stats stats = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).repair(4, null);
+        Assert.assertEquals(DIRECTORIES * FILES_PER_DIRECTORY + 2, stats.files);
+        Assert.assertEquals(corruptedFiles, stats.repairedFiles);
+        assertExtractedLikeZipInputStream(prefix);
+        Assert.assertTrue(new File(prefix, "bin/login").canExecute());
+
+        stats = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).repair(4, null);
+        Assert.assertEquals(0, stats.repairedFiles);
+    }
+
+    @Test
+    public void testRepairWithManifest() throws IOException {
+        File prefix = createDirectory("prefix");
+        TermuxBootstrapExtractor extractor = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath());
+        extractor.extract(4, null);
+        File manifestFile = extractor.writeManifest();
+
+        // A file that was extracted from another bootstrap zip matches the manifest but not the zip
+        byte[] content = "other bootstrap\n".getBytes(StandardCharsets.UTF_8);
+        Files.write(new File(prefix, "etc/dir1/file1").toPath(), content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        String manifest = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8)
+            .replaceAll("(?m)^F\t.*\tetc/dir1/file1$", String.format("F\t0600\t%d\t%08x\tetc/dir1/file1", content.length, crc.getValue()));
+        Files.write(manifestFile.toPath(), manifest.getBytes(StandardCharsets.UTF_8));
+        int corruptedFiles = corruptPrefix(prefix);
+
+        extractor = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath());
+        TermuxBootstrapExtractor.Stats stats = extractor.repair(4, null);
+        Assert.assertTrue(stats.manifest);
+        Assert.assertEquals(corruptedFiles, stats.repairedFiles);
+        Assert.assertArrayEquals(content, Files.readAllBytes(new File(prefix, "etc/dir1/file1").toPath()));
+        Assert.assertEquals(manifest, extractor.getManifest());
+
+        // Once the file is corrupted it is extracted from the zip and the manifest is updated
+        Assert.assertTrue(new File(prefix, "etc/dir1/file1").delete());
+        extractor.writeManifest();
+        stats = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).repair(4, null);
+        Assert.assertEquals(1, stats.repairedFiles);
+        Assert.assertTrue(new File(prefix, TermuxBootstrapExtractor.MANIFEST_FILE_PATH).delete());
+        assertExtractedLikeZipInputStream(prefix);
+    }
+
+    @Test
+    public void testRepairBenchmark() throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long extractNanos = Long.MAX_VALUE;
+        long repairNanos = Long.MAX_VALUE;
+        int corruptedFiles = 0;
+        TermuxBootstrapExtractor.Stats stats = null;
+
+        for (int run = 0; run < BENCHMARK_WARMUP_RUNS + BENCHMARK_RUNS; run++) {
+            boolean measure = run >= BENCHMARK_WARMUP_RUNS;
+
+            File prefix = createDirectory("prefix-" + run);
+            long startTime = System.nanoTime();
+            TermuxBootstrapExtractor extractor = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath());
+            extractor.extract(threads, null);
+            extractor.writeManifest();
+            if (measure) extractNanos = Math.min(extractNanos, System.nanoTime() - startTime);
+
+            corruptedFiles = corruptPrefix(prefix);
+            startTime = System.nanoTime();
+            stats = new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).repair(threads, null);
+            if (measure) repairNanos = Math.min(repairNanos, System.nanoTime() - startTime);
+            Assert.assertEquals(corruptedFiles, stats.repairedFiles);
+            deleteRecursively(prefix);
+        }
+
+        String times = "Bootstrap prefix repair wall-clock time with " + threads + " threads: full extract=" +
+            extractNanos / 1000000 + "ms, repair of " + corruptedFiles + " corrupted files=" + repairNanos / 1000000 + "ms";
+        Logger.logInfo(LOG_TAG, times);
+        Logger.logInfo(LOG_TAG, stats.toString());
+        Assert.assertTrue(stats.manifest);
+        Assert.assertTrue(times, repairNanos * MIN_REPAIR_SPEEDUP <= extractNanos);
+    }
+
+    @Test
+    public void testRepairProgress() throws IOException {
+        final File prefix = createDirectory("prefix");
+        new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).extract(4, null);
+        deleteRecursively(new File(prefix, "etc"));
+
+        // Each file must only be counted once, when it has been verified and extracted, so 100% is
+        // reported after the last file is extracted and not halfway through. The files are repaired
+        // from largest to smallest, so only the empty files may still be missing at 100%.
+        final int[] lastPercent = {0};
+        final int[] filesAtLastPercent = {0};
+        new TermuxBootstrapExtractor(mapZipFile(), prefix.getAbsolutePath()).repair(1, percent -> {
+            lastPercent[0] = percent;
+            filesAtLastPercent[0] = countFiles(prefix);
+        });
+        Assert.assertEquals(100, lastPercent[0]);
+        Assert.assertEquals(DIRECTORIES * FILES_PER_DIRECTORY + 2 - countEmptyFiles(new File(prefix, "etc")), filesAtLastPercent[0]);
+    }
+
+
+
+    /**
+     * Corrupt an extracted prefix by deleting files and a directory, truncating files, changing
+     * bytes without changing the size and removing the executable permission.
+     *
+     * @return Returns the number of files that were corrupted.
+     */
+    private static int corruptPrefix(File prefix) throws IOException {
+        int corruptedFiles = 0;
+        for (int i = 0; i < DIRECTORIES; i += 4) {
+            File file = new File(prefix, "etc/dir" + i + "/file" + i);
+            switch (i % 3) {
+                case 0:
+                    Assert.assertTrue(file.delete());
+                    break;
+                case 1:
+                    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                        if (randomAccessFile.length() == 0) randomAccessFile.write('x');
+                        else randomAccessFile.setLength(randomAccessFile.length() / 2);
+                    }
+                    break;
+                default:
+                    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                        if (randomAccessFile.length() == 0) randomAccessFile.write('x');
+                        randomAccessFile.seek(randomAccessFile.length() / 2);
+                        int value = randomAccessFile.read();
+                        randomAccessFile.seek(randomAccessFile.length() / 2);
+                        randomAccessFile.write(value ^ 0xFF);
+                    }
+            }
+            corruptedFiles++;
+        }
+
+        File directory = new File(prefix, "etc/dir" + (DIRECTORIES - 1));
+        corruptedFiles += FILES_PER_DIRECTORY;
+        deleteRecursively(directory);
+        Assert.assertFalse(directory.exists());
+
+        Assert.assertTrue(new File(prefix, "bin/login").setExecutable(false, false));
+        corruptedFiles++;
+        return corruptedFiles;
+    }
+
+    /** Create a zip like the bootstrap zip with compressible and stored files, a SYMLINKS.txt and executables. */
+    private static void createTestZip(File zipFile) throws IOException {
+        Random random = new Random(0);
+        try (ZipOutputStream zipOutput = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (int i = 0; i < DIRECTORIES; i++) {
+                for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+                    StringBuilder content = new StringBuilder();
+                    int lines = random.nextInt(2000);
+                    for (int k = 0; k < lines; k++)
+                        content.append("line ").append(k).append(' ').append(random.nextInt()).append('\n');
+                    putEntry(zipOutput, "etc/dir" + i + "/file" + j, content.toString().getBytes(StandardCharsets.UTF_8), j % 10 == 0);
+                }
+            }
+
+            byte[] binary = new byte[1024 * 1024];
+            random.nextBytes(binary);
+            putEntry(zipOutput, "bin/login", binary, false);
+            putEntry(zipOutput, "lib/empty", new byte[0], false);
+            putEntry(zipOutput, TermuxBootstrapExtractor.SYMLINKS_FILE_NAME, "login←bin/links/sh\n".getBytes(StandardCharsets.UTF_8), false);
+        }
+    }
+
+    private static void putEntry(ZipOutputStream zipOutput, String name, byte[] content, boolean stored) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(content.length);
+            zipEntry.setCompressedSize(content.length);
+            zipEntry.setCrc(crc.getValue());
+        }
+        zipOutput.putNextEntry(zipEntry);
+        zipOutput.write(content);
+        zipOutput.closeEntry();
+    }
+
+    private ByteBuffer mapZipFile() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mZipFile, "r")) {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+    }
+
+    /** Extract the zip the way {@link TermuxInstaller} did before the {@link TermuxBootstrapExtractor}. */
+    private void extractWithZipInputStream(File directory) throws IOException {
+        byte[] buffer = new byte[8096];
+        try (ZipInputStream zipInput = new ZipInputStream(Files.newInputStream(mZipFile.toPath()))) {
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInput.getNextEntry()) != null) {
+                if (zipEntry.getName().equals(TermuxBootstrapExtractor.SYMLINKS_FILE_NAME)) continue;
+                File targetFile = new File(directory, zipEntry.getName());
+                File parent = zipEntry.isDirectory() ? targetFile : targetFile.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs())
+                    throw new IOException("Failed to create directory " + parent);
+                if (zipEntry.isDirectory()) continue;
+
+                try (FileOutputStream outStream = new FileOutputStream(targetFile)) {
+                    int readBytes;
+                    while ((readBytes = zipInput.read(buffer)) != -1)
+                        outStream.write(buffer, 0, readBytes);
+                }
+                if (TermuxBootstrapExtractor.isExecutable(zipEntry.getName()) && !targetFile.setExecutable(true, true))
+                    throw new IOException("Failed to set executable permission for " + targetFile);
+            }
+        }
+    }
+
+    private void assertExtractedLikeZipInputStream(File prefix) throws IOException {
+        File expected = createDirectory("expected");
+        extractWithZipInputStream(expected);
+        assertDirectoriesEqual(expected, prefix);
+    }
+
+    private static void assertDirectoriesEqual(File expected, File actual) throws IOException {
+        String[] expectedNames = expected.list();
+        Assert.assertNotNull(expectedNames);
+        for (String name : expectedNames) {
+            File expectedFile = new File(expected, name);
+            File actualFile = new File(actual, name);
+            if (expectedFile.isDirectory()) {
+                Assert.assertTrue(actualFile.isDirectory());
+                assertDirectoriesEqual(expectedFile, actualFile);
+            } else {
+                Assert.assertArrayEquals(actualFile.getPath(), Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(actualFile.toPath()));
+            }
+        }
+    }
+
+    private File createDirectory(String name) throws IOException {
+        File directory = new File(mTempDirectory, name);
+        if (!directory.mkdir())
+            throw new IOException("Failed to create directory " + directory);
+        return directory;
+    }
+
+    private static int countFiles(File directory) {
+        int count = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                count += file.isDirectory() ? countFiles(file) : 1;
+        }
+        return count;
+    }
+
+    private static int countEmptyFiles(File directory) {
+        int count = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                count += file.isDirectory() ? countEmptyFiles(file) : (file.length() == 0 ? 1 : 0);
+        }
+        return count;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files)
+                deleteRecursively(child);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+}
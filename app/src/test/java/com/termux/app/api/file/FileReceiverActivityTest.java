@@ -3,16 +3,26 @@ package com.termux.app.api.file;
 import com.termux.app.api.file.FileReceiverActivity;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @RunWith(RobolectricTestRunner.class)
 public class FileReceiverActivityTest {
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     @Test
     public void testIsSharedTextAnUrl() {
         List<String> validUrls = new ArrayList<>();
@@ -33,4 +43,61 @@ public class FileReceiverActivityTest {
         }
     }
 
+    @Test
+    public void testGetUniqueFileName() throws IOException {
+        File directory = mTemporaryFolder.getRoot();
+        Set<String> usedFileNames = new HashSet<>();
+
+        Assert.assertEquals("video.mp4", FileReceiverActivity.getUniqueFileName(directory, "video.mp4", usedFileNames));
+
+        Assert.assertTrue(new File(directory, "video.mp4").createNewFile());
+        Assert.assertEquals("video (1).mp4", FileReceiverActivity.getUniqueFileName(directory, "video.mp4", usedFileNames));
+
+        usedFileNames.add("video (1).mp4");
+        Assert.assertEquals("video (2).mp4", FileReceiverActivity.getUniqueFileName(directory, "video.mp4", usedFileNames));
+
+        usedFileNames.add("archive");
+        Assert.assertEquals("archive (1)", FileReceiverActivity.getUniqueFileName(directory, "archive", usedFileNames));
+        usedFileNames.add(".bashrc");
+        Assert.assertEquals(".bashrc (1)", FileReceiverActivity.getUniqueFileName(directory, ".bashrc", usedFileNames));
+    }
+
+    @Test
+    public void testGetReceivedFileNameWithHostileDisplayName() throws IOException {
+        File directory = mTemporaryFolder.newFolder("downloads");
+
+        // A DISPLAY_NAME of a content uri that tries to escape the receive directory
+        String fileName = FileReceiverActivity.getReceivedFileName("../../files/home/.bashrc");
+        Assert.assertEquals(".bashrc", fileName);
+        File outFile = new File(directory, fileName);
+        Assert.assertTrue(FileReceiverActivity.isFileInDirectory(directory, outFile));
+        Assert.assertEquals(directory.getCanonicalPath(), outFile.getCanonicalFile().getParent());
+
+        Assert.assertEquals("evil.sh", FileReceiverActivity.getReceivedFileName("/data/data/com.termux/files/usr/bin/evil.sh"));
+        Assert.assertEquals("video.mp4", FileReceiverActivity.getReceivedFileName("video.mp4"));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName(null));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName(""));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName("/"));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName("."));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName(".."));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName("foo/.."));
+        Assert.assertNull(FileReceiverActivity.getReceivedFileName("evil\0.sh"));
+    }
+
+    @Test
+    public void testIsFileInDirectory() throws IOException {
+        File directory = mTemporaryFolder.newFolder("downloads");
+        File outsideDirectory = mTemporaryFolder.newFolder("home");
+
+        Assert.assertTrue(FileReceiverActivity.isFileInDirectory(directory, new File(directory, "video.mp4")));
+        Assert.assertFalse(FileReceiverActivity.isFileInDirectory(directory, directory));
+        Assert.assertFalse(FileReceiverActivity.isFileInDirectory(directory, new File(directory, "../home/.bashrc")));
+        Assert.assertFalse(FileReceiverActivity.isFileInDirectory(directory, new File(directory, "../downloads2/video.mp4")));
+
+        // A symlink in the directory that points outside of it
+        File link = new File(directory, "link");
+        Files.createSymbolicLink(link.toPath(), outsideDirectory.toPath());
+        Assert.assertFalse(FileReceiverActivity.isFileInDirectory(directory, new File(link, ".bashrc")));
+    }
+
 }
@@ -0,0 +1,121 @@
+package com.termux.filepicker;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class TermuxFileNameIndexTest {
+
+    private static final String ROOT_PATH = "/data/data/com.termux/files/home";
+
+    private TermuxFileNameIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new TermuxFileNameIndex(ROOT_PATH, new File("unused"), null);
+    }
+
+    @Test
+    public void testGetMatchRank() {
+        Assert.assertEquals(0, TermuxFileNameIndex.getMatchRank("notes", "notes"));
+        Assert.assertEquals(1, TermuxFileNameIndex.getMatchRank("notes.txt", "notes"));
+        Assert.assertEquals(2, TermuxFileNameIndex.getMatchRank("my-notes.txt", "notes"));
+        Assert.assertEquals(2, TermuxFileNameIndex.getMatchRank("keynotes-old_notes", "notes"));
+        Assert.assertEquals(3, TermuxFileNameIndex.getMatchRank("keynotes", "notes"));
+        Assert.assertEquals(-1, TermuxFileNameIndex.getMatchRank("note", "notes"));
+    }
+
+    @Test
+    public void testSearchRanking() {
+        mIndex.add(ROOT_PATH + "/projects/keynotes", false);
+        mIndex.add(ROOT_PATH + "/projects/a/b/notes", false);
+        mIndex.add(ROOT_PATH + "/notes.txt", false);
+        mIndex.add(ROOT_PATH + "/docs/notes", true);
+        mIndex.add(ROOT_PATH + "/docs/my-notes.md", false);
+        mIndex.add(ROOT_PATH + "/docs/unrelated", false);
+
+        List<String> expected = Arrays.asList(
+            ROOT_PATH + "/docs/notes",
+            ROOT_PATH + "/projects/a/b/notes",
+            ROOT_PATH + "/notes.txt",
+            ROOT_PATH + "/docs/my-notes.md",
+            ROOT_PATH + "/projects/keynotes");
+        Assert.assertEquals(expected, mIndex.search("Notes", 10));
+        Assert.assertEquals(expected.subList(0, 2), mIndex.search("notes", 2));
+        Assert.assertTrue(mIndex.search("", 10).isEmpty());
+        Assert.assertTrue(mIndex.search("missing", 10).isEmpty());
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        mIndex.add(ROOT_PATH + "/dir/sub/file1", false);
+        mIndex.add(ROOT_PATH + "/dir/sub/file2", false);
+        mIndex.add(ROOT_PATH + "/dir/file3", false);
+        Assert.assertEquals(5, mIndex.size());
+
+        mIndex.remove(ROOT_PATH + "/dir/sub");
+        Assert.assertEquals(2, mIndex.size());
+        Assert.assertTrue(mIndex.search("file1", 10).isEmpty());
+        Assert.assertEquals(1, mIndex.search("file3", 10).size());
+
+        // A file replaced by a directory loses its children
+        mIndex.add(ROOT_PATH + "/dir/file3/inner", false);
+        Assert.assertEquals(3, mIndex.size());
+        mIndex.add(ROOT_PATH + "/dir/file3", false);
+        Assert.assertEquals(2, mIndex.size());
+
+        mIndex.remove(ROOT_PATH + "/missing/file");
+        Assert.assertEquals(2, mIndex.size());
+    }
+
+    @Test
+    public void testSearchWithTurkishLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            // The Turkish lower case of "I" is a dotless "ı"
+            Locale.setDefault(new Locale("tr", "TR"));
+            mIndex.add(ROOT_PATH + "/INFO.TXT", false);
+            Assert.assertEquals(Arrays.asList(ROOT_PATH + "/INFO.TXT"), mIndex.search("info", 10));
+            Assert.assertEquals(Arrays.asList(ROOT_PATH + "/INFO.TXT"), mIndex.search("INFO", 10));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testMaxIndexedFiles() {
+        mIndex = new TermuxFileNameIndex(ROOT_PATH, new File("unused"), null, 4);
+        mIndex.add(ROOT_PATH + "/dir/file1", false);
+        mIndex.add(ROOT_PATH + "/dir/file2", false);
+        mIndex.add(ROOT_PATH + "/dir/file3", false);
+        mIndex.add(ROOT_PATH + "/dir/file4", false);
+        mIndex.add(ROOT_PATH + "/other/file5", false);
+        Assert.assertEquals(4, mIndex.size());
+        Assert.assertTrue(mIndex.search("file4", 10).isEmpty());
+
+        mIndex.remove(ROOT_PATH + "/dir");
+        Assert.assertEquals(0, mIndex.size());
+        mIndex.add(ROOT_PATH + "/other/file5", false);
+        Assert.assertEquals(1, mIndex.search("file5", 10).size());
+    }
+
+    @Test
+    public void testSearchLargeIndex() {
+        // Fill the index up to close to its max size, which bounds the time of a search
+        for (int i = 0; i < 199; i++) {
+            for (int j = 0; j < 500; j++)
+                mIndex.add(ROOT_PATH + "/dir" + i + "/file-" + j + (j % 100 == 0 ? "-report.txt" : ".dat"), false);
+        }
+        Assert.assertEquals(199 * 501, mIndex.size());
+
+        List<String> results = mIndex.search("report", 50);
+        Assert.assertEquals(50, results.size());
+        Assert.assertTrue(results.get(0).endsWith("-report.txt"));
+    }
+
+}
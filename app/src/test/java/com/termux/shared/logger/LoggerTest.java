@@ -0,0 +1,169 @@
+package com.termux.shared.logger;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+public class LoggerTest {
+
+    private static final int BENCHMARK_CALLS = 200000;
+    /** The number of runs before the calls are measured, so that they are compiled. */
+    private static final int BENCHMARK_WARMUP_RUNS = 3;
+    /** The number of measured runs, of which the fastest is used. */
+    private static final int BENCHMARK_RUNS = 5;
+
+    /**
+     * A disabled log call with a supplier or format arguments must be at least this many times
+     * faster than one with an eagerly concatenated message. It is usually much faster, since
+     * nothing is formatted, but the bound is kept loose so that it does not depend on the host.
+     */
+    private static final int MIN_DISABLED_LOG_SPEEDUP = 4;
+
+    private static final String LOG_TAG = "LoggerTest";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Logger.setAsyncLogWriter(null);
+        Logger.setLogLevel(null, Logger.DEFAULT_LOG_LEVEL);
+    }
+
+    @Test
+    public void testIsLoggable() {
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_NORMAL);
+        Assert.assertTrue(Logger.isLoggable(Log.ERROR));
+        Assert.assertTrue(Logger.isLoggable(Log.INFO));
+        Assert.assertFalse(Logger.isLoggable(Log.DEBUG));
+        Assert.assertFalse(Logger.isLoggable(Log.VERBOSE));
+
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_VERBOSE);
+        Assert.assertTrue(Logger.isLoggable(Log.DEBUG));
+        Assert.assertTrue(Logger.isLoggable(Log.VERBOSE));
+
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_OFF);
+        Assert.assertFalse(Logger.isLoggable(Log.ERROR));
+    }
+
+    @Test
+    public void testSupplierOnlyCalledIfLoggable() {
+        AtomicInteger calls = new AtomicInteger();
+
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_NORMAL);
+        Logger.logDebug("Test", () -> "debug " + calls.incrementAndGet());
+        Logger.logVerbose("Test", () -> "verbose " + calls.incrementAndGet());
+        Logger.logDebugExtended("Test", () -> "debug " + calls.incrementAndGet());
+        Logger.logVerboseExtended("Test", () -> "verbose " + calls.incrementAndGet());
+        Assert.assertEquals(0, calls.get());
+
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_DEBUG);
+        Logger.logDebug("Test", () -> "debug " + calls.incrementAndGet());
+        Logger.logVerbose("Test", () -> "verbose " + calls.incrementAndGet());
+        Logger.logDebugExtended("Test", () -> "debug " + calls.incrementAndGet());
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDisabledLevelBenchmark() {
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_NORMAL);
+        final String label = "\"test-command\"";
+        // Like the arguments logged by ExecutionCommand.getArgumentsLogString()
+        final String[] arguments = new String[20];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = "--argument-" + i;
+
+        long eagerNanos = Long.MAX_VALUE;
+        long supplierNanos = Long.MAX_VALUE;
+        long formatNanos = Long.MAX_VALUE;
+        for (int run = 0; run < BENCHMARK_WARMUP_RUNS + BENCHMARK_RUNS; run++) {
+            boolean measure = run >= BENCHMARK_WARMUP_RUNS;
+
+            long startTime = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_CALLS; i++)
+                Logger.logDebug("Test", "Running " + label + " with index " + i + " and arguments " + Arrays.toString(arguments));
+            if (measure) eagerNanos = Math.min(eagerNanos, System.nanoTime() - startTime);
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_CALLS; i++) {
+                final int index = i;
+                Logger.logDebug("Test", () -> "Running " + label + " with index " + index + " and arguments " + Arrays.toString(arguments));
+            }
+            if (measure) supplierNanos = Math.min(supplierNanos, System.nanoTime() - startTime);
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_CALLS; i++)
+                Logger.logDebug("Test", "Running %s with index %d and arguments %s", label, i, arguments);
+            if (measure) formatNanos = Math.min(formatNanos, System.nanoTime() - startTime);
+        }
+
+        String times = "Disabled debug log: eager concatenation " + (eagerNanos / BENCHMARK_CALLS) + "ns/call, supplier " +
+            (supplierNanos / BENCHMARK_CALLS) + "ns/call, format arguments " + (formatNanos / BENCHMARK_CALLS) + "ns/call";
+        Logger.logInfo(LOG_TAG, times);
+        Assert.assertTrue(times, supplierNanos * MIN_DISABLED_LOG_SPEEDUP <= eagerNanos);
+        Assert.assertTrue(times, formatNanos * MIN_DISABLED_LOG_SPEEDUP <= eagerNanos);
+    }
+
+    @Test
+    public void testSplitExtendedMessage() {
+        String fullTag = Logger.getFullTag("Test");
+        Assert.assertEquals(1, Logger.splitExtendedMessage(fullTag, "short").size());
+        Assert.assertEquals("short", Logger.splitExtendedMessage(fullTag, "short").get(0));
+
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            message.append("line ").append(i).append("\n");
+        List<String> entries = Logger.splitExtendedMessage(fullTag, message.toString());
+        Assert.assertTrue(entries.size() > 1);
+
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < entries.size(); i++) {
+            String prefix = "(" + (i + 1) + "/" + entries.size() + ")\n";
+            Assert.assertTrue(entries.get(i).startsWith(prefix));
+            Assert.assertTrue(entries.get(i).length() <= Logger.LOGGER_ENTRY_MAX_PAYLOAD - fullTag.length() - 4);
+            // Entries are split at newlines
+            Assert.assertTrue(entries.get(i).endsWith("\n"));
+            joined.append(entries.get(i).substring(prefix.length()));
+        }
+        Assert.assertEquals(message.toString(), joined.toString());
+    }
+
+    @Test
+    public void testAsyncLogWriterRotatesLogFile() throws IOException {
+        File logFile = new File(mTemporaryFolder.getRoot(), "logs/termux.log");
+        AsyncLogWriter asyncLogWriter = new AsyncLogWriter(AsyncLogWriter.DEFAULT_CAPACITY, false, logFile, 4096);
+        Logger.setAsyncLogWriter(asyncLogWriter);
+        Logger.setLogLevel(null, Logger.LOG_LEVEL_DEBUG);
+
+        for (int i = 0; i < 200; i++)
+            Logger.logDebug("Test", "message %d", i);
+        Logger.logVerbose("Test", "ignored");
+        Assert.assertTrue(asyncLogWriter.flush(5000));
+
+        File rotatedLogFile = new File(logFile.getAbsolutePath() + AsyncLogWriter.ROTATED_LOG_FILE_SUFFIX);
+        Assert.assertTrue(rotatedLogFile.isFile());
+        Assert.assertTrue(logFile.length() <= 4096);
+        Assert.assertTrue(rotatedLogFile.length() <= 4096);
+
+        List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+        Assert.assertTrue(lines.get(lines.size() - 1).endsWith(" D/" + Logger.getFullTag("Test") + ": message 199"));
+        for (String line : lines)
+            Assert.assertFalse(line.endsWith("ignored"));
+    }
+
+}
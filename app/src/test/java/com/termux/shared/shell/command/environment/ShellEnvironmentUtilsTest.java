@@ -0,0 +1,110 @@
+package com.termux.shared.shell.command.environment;
+
+import android.content.Context;
+
+import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.command.ExecutionCommand;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.HashMap;
+
+@RunWith(RobolectricTestRunner.class)
+public class ShellEnvironmentUtilsTest {
+
+    private static final int BENCHMARK_WARMUP_SPAWNS = 2000;
+    private static final int BENCHMARK_SPAWNS = 20000;
+
+    /**
+     * The min times the template path must be faster than building the whole environment for each
+     * spawn. It is about 5 times faster, so this only fails if the template stops being used.
+     */
+    private static final double MIN_TEMPLATE_SPEEDUP = 2;
+
+    private static final String LOG_TAG = "ShellEnvironmentUtilsTest";
+
+    @Test
+    public void testMergeEnvironmentIntoEnviron() {
+        HashMap<String, String> templateEnvironment = new HashMap<>();
+        templateEnvironment.put("HOME", "/home");
+        templateEnvironment.put("PATH", "/bin");
+        templateEnvironment.put("A", "a");
+        templateEnvironment.put("A1", "a1");
+        templateEnvironment.put("TMPDIR", "/tmp");
+        String[] environTemplate = ShellEnvironmentUtils.convertEnvironmentToSortedEnviron(templateEnvironment);
+
+        HashMap<String, String> environment = new HashMap<>();
+        environment.put("PATH", "/usr/bin");
+        environment.put("PWD", "/home");
+        environment.put("A_", "a_");
+        environment.put("TMPDIR", null);
+        environment.put("1INVALID", "invalid");
+
+        HashMap<String, String> expectedEnvironment = new HashMap<>(templateEnvironment);
+        expectedEnvironment.putAll(environment);
+
+        Assert.assertArrayEquals(ShellEnvironmentUtils.convertEnvironmentToSortedEnviron(expectedEnvironment),
+            ShellEnvironmentUtils.mergeEnvironmentIntoEnviron(environTemplate, environment));
+        Assert.assertArrayEquals(environTemplate,
+            ShellEnvironmentUtils.mergeEnvironmentIntoEnviron(environTemplate, new HashMap<>()));
+    }
+
+    @Test
+    public void testSetupShellCommandEnvironBenchmark() {
+        Context context = RuntimeEnvironment.getApplication();
+        AndroidShellEnvironment shellEnvironment = new AndroidShellEnvironment();
+
+        ExecutionCommand executionCommand = new ExecutionCommand(1);
+        executionCommand.runner = ExecutionCommand.Runner.TERMINAL_SESSION.getName();
+        executionCommand.workingDirectory = "/";
+        executionCommand.setShellCommandShellEnvironment = true;
+
+        HashMap<String, String> additionalEnvironment = new HashMap<>();
+        additionalEnvironment.put("TERM", "screen");
+
+        String[] environTemplate = shellEnvironment.getEnvironTemplate(context, false);
+
+        long buildNanos = 0;
+        long templateNanos = 0;
+        for (int i = 0; i < BENCHMARK_WARMUP_SPAWNS + BENCHMARK_SPAWNS; i++) {
+            executionCommand.id = i;
+
+            long startTime = System.nanoTime();
+            HashMap<String, String> environment = shellEnvironment.setupShellCommandEnvironment(context, executionCommand);
+            environment.putAll(additionalEnvironment);
+            String[] builtEnviron = ShellEnvironmentUtils.convertEnvironmentToSortedEnviron(environment);
+            long buildTime = System.nanoTime() - startTime;
+
+            // The template is reused for each spawn, with only the shell command variables that
+            // depend on the command merged into it
+            startTime = System.nanoTime();
+            String[] mergedEnviron = ShellEnvironmentUtils.mergeEnvironmentIntoEnviron(environTemplate,
+                getShellCommandEnvironment(shellEnvironment, context, executionCommand, additionalEnvironment));
+            long templateTime = System.nanoTime() - startTime;
+
+            Assert.assertArrayEquals(builtEnviron, mergedEnviron);
+            if (i >= BENCHMARK_WARMUP_SPAWNS) {
+                buildNanos += buildTime;
+                templateNanos += templateTime;
+            }
+        }
+
+        Logger.logInfo(LOG_TAG, "Environment build cost per spawn: full " + (buildNanos / BENCHMARK_SPAWNS) +
+            "ns, template " + (templateNanos / BENCHMARK_SPAWNS) + "ns");
+        Assert.assertTrue("Template path is only " + ((double) buildNanos / templateNanos) + " times faster than a full build",
+            templateNanos * MIN_TEMPLATE_SPEEDUP <= buildNanos);
+    }
+
+    private static HashMap<String, String> getShellCommandEnvironment(AndroidShellEnvironment shellEnvironment, Context context,
+                                                                      ExecutionCommand executionCommand,
+                                                                      HashMap<String, String> additionalEnvironment) {
+        HashMap<String, String> environment = shellEnvironment.getShellCommandOnlyEnvironment(context, executionCommand);
+        environment.putAll(additionalEnvironment);
+        return environment;
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.termux.shared.shell.command.runner.app;
+
+import android.content.Context;
+
+import com.termux.shared.shell.command.ExecutionCommand;
+import com.termux.shared.shell.command.environment.AndroidShellEnvironment;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppShellBatchTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private static final class BatchClient implements AppShellBatch.AppShellBatchClient {
+
+        final CountDownLatch mExited = new CountDownLatch(1);
+
+        @Override
+        public void onAppShellBatchCommandStarted(AppShellBatch appShellBatch, AppShell appShell) {
+        }
+
+        @Override
+        public void onAppShellBatchCommandExited(AppShellBatch appShellBatch, AppShell appShell) {
+        }
+
+        @Override
+        public void onAppShellBatchExited(AppShellBatch appShellBatch) {
+            mExited.countDown();
+        }
+    }
+
+    private static ExecutionCommand newCommand(int id, String executable, String... arguments) {
+        ExecutionCommand executionCommand = new ExecutionCommand(id);
+        executionCommand.executable = executable;
+        executionCommand.arguments = arguments;
+        executionCommand.workingDirectory = "/";
+        executionCommand.commandLabel = "command" + id;
+        return executionCommand;
+    }
+
+    /** Read the pid the shell of the command wrote to the file before it exec'd. */
+    private static int awaitPid(File pidFile) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            String pid = pidFile.exists() ? new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.UTF_8).trim() : "";
+            if (!pid.isEmpty()) return Integer.parseInt(pid);
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Timed out waiting for the pid of the command");
+    }
+
+    /** Whether the process is gone, which it also is once it is a zombie waiting to be reaped. */
+    private static boolean isProcessGone(int pid) throws Exception {
+        File statFile = new File("/proc/" + pid + "/stat");
+        if (!statFile.exists()) return true;
+        String stat;
+        try {
+            stat = new String(Files.readAllBytes(statFile.toPath()), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            return true;
+        }
+        // The state follows the parenthesized command name
+        return stat.substring(stat.lastIndexOf(')') + 2).startsWith("Z");
+    }
+
+    @Test
+    public void testKillIfExecutingKillsRunningCommands() throws Exception {
+        Assume.assumeTrue(new File("/proc/self/stat").exists() && new File("/bin/sh").canExecute());
+
+        Context context = RuntimeEnvironment.getApplication();
+        File pidFile = File.createTempFile("AppShellBatchTest", ".pid");
+        try {
+            BatchClient client = new BatchClient();
+            ExecutionCommand batchCommand = new ExecutionCommand(1);
+            AppShellBatch appShellBatch = AppShellBatch.execute(context, batchCommand,
+                Arrays.asList(newCommand(2, "/bin/sh", "-c", "echo $$ > '" + pidFile.getAbsolutePath() + "'; exec sleep 30")),
+                true, true, client, new AndroidShellEnvironment(), null);
+            Assert.assertNotNull(appShellBatch);
+
+            int pid = awaitPid(pidFile);
+            appShellBatch.killIfExecuting(context, true);
+            Assert.assertTrue(client.mExited.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(batchCommand.isStateFailed());
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!isProcessGone(pid) && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            Assert.assertTrue("The process " + pid + " of the killed command is still running", isProcessGone(pid));
+        } finally {
+            pidFile.delete();
+        }
+    }
+
+    @Test
+    public void testCommandsThatFailedToStartAreNotRun() throws Exception {
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+
+        Context context = RuntimeEnvironment.getApplication();
+        BatchClient client = new BatchClient();
+        ExecutionCommand batchCommand = new ExecutionCommand(1);
+        AppShellBatch appShellBatch = AppShellBatch.execute(context, batchCommand,
+            Arrays.asList(newCommand(2, "/nonexistent/executable"), newCommand(3, "/bin/sh", "-c", "exit 3")),
+            true, false, client, new AndroidShellEnvironment(), null);
+        Assert.assertNotNull(appShellBatch);
+        Assert.assertTrue(client.mExited.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        Assert.assertArrayEquals(new int[]{AppShellBatch.BATCH_EXIT_CODE_NOT_RUN, 3}, batchCommand.resultData.batchExitCodes);
+        String stdout = batchCommand.resultData.stdout.toString();
+        Assert.assertTrue(stdout, stdout.contains(String.format(AppShellBatch.BATCH_OUTPUT_HEADER_FORMAT, 0, "command2", "-")));
+        Assert.assertTrue(stdout, stdout.contains(String.format(AppShellBatch.BATCH_OUTPUT_HEADER_FORMAT, 1, "command3", "3")));
+    }
+
+}
@@ -7,11 +7,31 @@ final class ByteQueue {
     private int mHead;
     private int mStoredBytes;
     private boolean mOpen = true;
+    private int mMaxStoredBytes;
+    private long mWriteStalls;
 
     public ByteQueue(int size) {
         mBuffer = new byte[size];
     }
 
+    public int getCapacity() {
+        return mBuffer.length;
+    }
+
+    public synchronized int getStoredBytes() {
+        return mStoredBytes;
+    }
+
+    /** The max number of bytes that have been stored at once. */
+    public synchronized int getMaxStoredBytes() {
+        return mMaxStoredBytes;
+    }
+
+    /** The number of times a write had to wait for the queue to be read since it was full. */
+    public synchronized long getWriteStalls() {
+        return mWriteStalls;
+    }
+
     public synchronized void close() {
         mOpen = false;
         notify();
@@ -67,6 +87,7 @@ final class ByteQueue {
 
         synchronized (this) {
             while (lengthToWrite > 0) {
+                if (bufferLength == mStoredBytes && mOpen) mWriteStalls++;
                 while (bufferLength == mStoredBytes && mOpen) {
                     try {
                         wait();
@@ -100,6 +121,7 @@ final class ByteQueue {
                     bytesToWriteBeforeWaiting -= bytesToCopy;
                     mStoredBytes += bytesToCopy;
                 }
+                if (mStoredBytes > mMaxStoredBytes) mMaxStoredBytes = mStoredBytes;
                 if (wasEmpty) notify();
             }
         }
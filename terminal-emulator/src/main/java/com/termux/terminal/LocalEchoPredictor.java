@@ -0,0 +1,353 @@
+package com.termux.terminal;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Predicts the echo of input typed at the end of a line, like mosh does, so that it can be shown
+ * before the echo of the process arrives over a slow connection.
+ * <p>
+ * Each printable character written to the session is predicted to be drawn at the cursor, which
+ * moves one column right, and each backspace to erase the cell left of the cursor. Predictions are
+ * checked in order against the screen after each output of the process and are removed once the
+ * screen shows them. If the screen shows anything else in a predicted cell, all predictions are
+ * dropped.
+ * <p>
+ * Predictions are grouped in epochs and are only shown once one prediction of the epoch has been
+ * confirmed, so that nothing is shown when the process does not echo input, like at a password
+ * prompt. A new epoch starts on any input that is not predicted, like Enter, control keys or
+ * escape sequences. No predictions are made while the alternate screen buffer is active, since
+ * full screen programs draw input wherever they like, and none are made for
+ * {@link #FAILURE_BACKOFF_MILLIS} after {@link #MAX_FAILURES} shown predictions failed within
+ * {@link #FAILURE_WINDOW_MILLIS}.
+ * <p>
+ * This must only be used from the main thread.
+ */
+public final class LocalEchoPredictor {
+
+    /** The max number of predictions pending at once. */
+    static final int MAX_PREDICTIONS = 256;
+
+    /** The time after which pending predictions are dropped if the screen has not shown them. */
+    static final long PREDICTION_TIMEOUT_MILLIS = 5000;
+
+    /** The number of shown predictions that can fail within {@link #FAILURE_WINDOW_MILLIS} before predicting is paused. */
+    static final int MAX_FAILURES = 3;
+
+    /** The time within which failures of shown predictions are counted towards {@link #MAX_FAILURES}. */
+    static final long FAILURE_WINDOW_MILLIS = 30_000;
+
+    /** The time predicting is paused for after {@link #MAX_FAILURES}. */
+    static final long FAILURE_BACKOFF_MILLIS = 60_000;
+
+    private static final int NO_CODE_POINT = -1;
+
+    private static final int RESULT_PENDING = 0;
+    private static final int RESULT_CONFIRMED = 1;
+    private static final int RESULT_FAILED = 2;
+
+    // The pending predictions in the order they were made, kept in arrays so that predicting a
+    // typed character does not allocate.
+    private final int[] mRows = new int[MAX_PREDICTIONS];
+    private final int[] mColumns = new int[MAX_PREDICTIONS];
+    /** The code point predicted to be drawn in the cell, which is a space for an erased cell. */
+    private final int[] mCodePoints = new int[MAX_PREDICTIONS];
+    /** The code point in the cell when the prediction was made. */
+    private final int[] mOriginalCodePoints = new int[MAX_PREDICTIONS];
+    /** The code point of an earlier prediction of the same cell that was replaced, if any. */
+    private final int[] mReplacedCodePoints = new int[MAX_PREDICTIONS];
+    /** The column of the cursor after the input, which is left of the cell for an erased cell. */
+    private final int[] mCursorColumns = new int[MAX_PREDICTIONS];
+    private final long[] mTimes = new long[MAX_PREDICTIONS];
+    private int mCount;
+
+    private boolean mEpochConfirmed;
+    /** The cell the first prediction of the epoch was made at, before which nothing is erased. */
+    private int mEpochStartRow;
+    private int mEpochStartColumn = -1;
+    private int mFailures;
+    private long mLastFailureTime;
+    private long mBackoffEndTime = Long.MIN_VALUE;
+
+    private long mConfirmedCount;
+    private long mFailedCount;
+
+    /** Called when input is written to the session, before it is written to the process. */
+    public void onInput(TerminalEmulator emulator, byte[] data, int offset, int count) {
+        onInput(emulator, data, offset, count, System.nanoTime() / 1_000_000);
+    }
+
+    void onInput(TerminalEmulator emulator, byte[] data, int offset, int count, long now) {
+        if (emulator == null || count <= 0) return;
+        if (now < mBackoffEndTime || emulator.isAlternateBufferActive()) {
+            startEpoch();
+            return;
+        }
+        dropExpiredPredictions(now);
+
+        if (count == 1 && (data[offset] == 127 || data[offset] == 8)) {
+            if (!predictBackspace(emulator, now)) startEpoch();
+            return;
+        }
+
+        boolean ascii = true;
+        for (int i = offset; i < offset + count; i++) {
+            if (data[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+
+        if (ascii) {
+            for (int i = offset; i < offset + count; i++) {
+                if (!predictCodePoint(emulator, data[i], now)) {
+                    startEpoch();
+                    return;
+                }
+            }
+        } else {
+            String text = new String(data, offset, count, StandardCharsets.UTF_8);
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                if (!predictCodePoint(emulator, codePoint, now)) {
+                    startEpoch();
+                    return;
+                }
+                i += Character.charCount(codePoint);
+            }
+        }
+    }
+
+    /** Called after output of the process has been appended to the emulator. */
+    public void onOutput(TerminalEmulator emulator) {
+        onOutput(emulator, System.nanoTime() / 1_000_000);
+    }
+
+    void onOutput(TerminalEmulator emulator, long now) {
+        if (mCount == 0) return;
+        if (emulator == null || emulator.isAlternateBufferActive()) {
+            startEpoch();
+            return;
+        }
+
+        int confirmed = 0;
+        for (int i = 0; i < mCount; i++) {
+            int result = checkPrediction(emulator, i);
+            if (result == RESULT_PENDING) break;
+            if (result == RESULT_FAILED) {
+                onFailure(now);
+                return;
+            }
+            confirmed++;
+        }
+
+        if (confirmed > 0) {
+            mEpochConfirmed = true;
+            mConfirmedCount += confirmed;
+            removePredictions(confirmed);
+        }
+
+        dropExpiredPredictions(now);
+    }
+
+    /** Drop all predictions and start a new epoch whose predictions are not shown until confirmed. */
+    public void reset() {
+        startEpoch();
+    }
+
+    /** Get if there are predictions that should be drawn over the screen. */
+    public boolean hasDisplayedPredictions() {
+        return mEpochConfirmed && mCount > 0 && !isExpired(System.nanoTime() / 1_000_000);
+    }
+
+    /** Get the number of pending predictions. */
+    public int getPredictionCount() {
+        return mCount;
+    }
+
+    /** Get the screen row of the cell of the prediction at the index. */
+    public int getPredictionRow(int index) {
+        return mRows[index];
+    }
+
+    /** Get the column of the cell of the prediction at the index. */
+    public int getPredictionColumn(int index) {
+        return mColumns[index];
+    }
+
+    /** Get the code point predicted for the cell of the prediction at the index. */
+    public int getPredictionCodePoint(int index) {
+        return mCodePoints[index];
+    }
+
+    /** Get the screen row the cursor is predicted to be at, which is only valid if there are predictions. */
+    public int getCursorRow() {
+        return mRows[mCount - 1];
+    }
+
+    /** Get the column the cursor is predicted to be at, which is only valid if there are predictions. */
+    public int getCursorCol() {
+        return mCursorColumns[mCount - 1];
+    }
+
+    /** Get if predicting has been paused since shown predictions kept failing. */
+    public boolean isBackingOff() {
+        return System.nanoTime() / 1_000_000 < mBackoffEndTime;
+    }
+
+    /** Get the number of predictions that were confirmed by the screen. */
+    public long getConfirmedCount() {
+        return mConfirmedCount;
+    }
+
+    /** Get the number of times predictions failed. */
+    public long getFailedCount() {
+        return mFailedCount;
+    }
+
+    private boolean predictCodePoint(TerminalEmulator emulator, int codePoint, long now) {
+        // Control characters and characters that do not take a single column are not predicted
+        if (codePoint < 32 || (codePoint >= 127 && codePoint < 160) || WcWidth.width(codePoint) != 1)
+            return false;
+
+        int row = (mCount == 0) ? emulator.getCursorRow() : getCursorRow();
+        int column = (mCount == 0) ? emulator.getCursorCol() : getCursorCol();
+        // Do not predict wrapping to the next line
+        if (column >= emulator.mColumns - 1) return false;
+        if (mCount == 0 && !isBlankFrom(emulator, row, column)) return false;
+
+        if (mEpochStartColumn < 0) {
+            mEpochStartRow = row;
+            mEpochStartColumn = column;
+        }
+        return addPrediction(emulator, row, column, codePoint, column + 1, now);
+    }
+
+    private boolean predictBackspace(TerminalEmulator emulator, long now) {
+        int row = (mCount == 0) ? emulator.getCursorRow() : getCursorRow();
+        int column = (mCount == 0) ? emulator.getCursorCol() : getCursorCol();
+        // Only predict erasing input typed in this epoch, not the prompt before it
+        if (mEpochStartColumn < 0 || row != mEpochStartRow || column <= mEpochStartColumn) return false;
+        if (mCount == 0 && !isBlankFrom(emulator, row, column)) return false;
+
+        return addPrediction(emulator, row, column - 1, ' ', column - 1, now);
+    }
+
+    private boolean addPrediction(TerminalEmulator emulator, int row, int column, int codePoint, int cursorColumn, long now) {
+        int originalCodePoint = getCodePointAt(emulator, row, column);
+        int replacedCodePoint = NO_CODE_POINT;
+
+        // A cell is only predicted once, so a prediction of a cell that is already predicted
+        // replaces it, keeping what the screen may show in between
+        for (int i = 0; i < mCount; i++) {
+            if (mRows[i] != row || mColumns[i] != column) continue;
+            originalCodePoint = mOriginalCodePoints[i];
+            replacedCodePoint = mReplacedCodePoints[i];
+            if (mCodePoints[i] != originalCodePoint && mCodePoints[i] != replacedCodePoint) {
+                // Only one code point in between is kept, which is enough to correct a typo
+                if (replacedCodePoint != NO_CODE_POINT) return false;
+                replacedCodePoint = mCodePoints[i];
+            }
+            removePrediction(i);
+            break;
+        }
+
+        if (mCount == MAX_PREDICTIONS) return false;
+
+        mRows[mCount] = row;
+        mColumns[mCount] = column;
+        mCodePoints[mCount] = codePoint;
+        mOriginalCodePoints[mCount] = originalCodePoint;
+        mReplacedCodePoints[mCount] = replacedCodePoint;
+        mCursorColumns[mCount] = cursorColumn;
+        mTimes[mCount] = now;
+        mCount++;
+        return true;
+    }
+
+    private int checkPrediction(TerminalEmulator emulator, int index) {
+        int row = mRows[index];
+        int codePoint = getCodePointAt(emulator, row, mColumns[index]);
+        int cursorRow = emulator.getCursorRow();
+        int cursorCol = emulator.getCursorCol();
+
+        if (codePoint == mCodePoints[index]) {
+            if (codePoint != mOriginalCodePoints[index] && codePoint != mReplacedCodePoints[index])
+                return RESULT_CONFIRMED;
+            // The cell did not change, so the cursor has to show that the input was handled
+            boolean erase = mCursorColumns[index] == mColumns[index];
+            if (cursorRow == row && (erase ? cursorCol <= mCursorColumns[index] : cursorCol >= mCursorColumns[index]))
+                return RESULT_CONFIRMED;
+        } else if (codePoint != mOriginalCodePoints[index] && codePoint != mReplacedCodePoints[index]) {
+            return RESULT_FAILED;
+        }
+
+        return cursorRow == row ? RESULT_PENDING : RESULT_FAILED;
+    }
+
+    private boolean isExpired(long now) {
+        return mCount > 0 && now - mTimes[0] > PREDICTION_TIMEOUT_MILLIS;
+    }
+
+    private void dropExpiredPredictions(long now) {
+        // The process did not echo the input in time, so it may have turned echo off
+        if (isExpired(now)) startEpoch();
+    }
+
+    private void onFailure(long now) {
+        mFailedCount++;
+        if (mEpochConfirmed) {
+            if (now - mLastFailureTime > FAILURE_WINDOW_MILLIS) mFailures = 0;
+            mLastFailureTime = now;
+            if (++mFailures >= MAX_FAILURES) {
+                mFailures = 0;
+                mBackoffEndTime = now + FAILURE_BACKOFF_MILLIS;
+            }
+        }
+        startEpoch();
+    }
+
+    private void startEpoch() {
+        mCount = 0;
+        mEpochConfirmed = false;
+        mEpochStartColumn = -1;
+    }
+
+    private void removePrediction(int index) {
+        int moved = mCount - index - 1;
+        System.arraycopy(mRows, index + 1, mRows, index, moved);
+        System.arraycopy(mColumns, index + 1, mColumns, index, moved);
+        System.arraycopy(mCodePoints, index + 1, mCodePoints, index, moved);
+        System.arraycopy(mOriginalCodePoints, index + 1, mOriginalCodePoints, index, moved);
+        System.arraycopy(mReplacedCodePoints, index + 1, mReplacedCodePoints, index, moved);
+        System.arraycopy(mCursorColumns, index + 1, mCursorColumns, index, moved);
+        System.arraycopy(mTimes, index + 1, mTimes, index, moved);
+        mCount--;
+    }
+
+    private void removePredictions(int count) {
+        int moved = mCount - count;
+        System.arraycopy(mRows, count, mRows, 0, moved);
+        System.arraycopy(mColumns, count, mColumns, 0, moved);
+        System.arraycopy(mCodePoints, count, mCodePoints, 0, moved);
+        System.arraycopy(mOriginalCodePoints, count, mOriginalCodePoints, 0, moved);
+        System.arraycopy(mReplacedCodePoints, count, mReplacedCodePoints, 0, moved);
+        System.arraycopy(mCursorColumns, count, mCursorColumns, 0, moved);
+        System.arraycopy(mTimes, count, mTimes, 0, moved);
+        mCount = moved;
+    }
+
+    private static boolean isBlankFrom(TerminalEmulator emulator, int row, int column) {
+        TerminalRow terminalRow = emulator.getScreen().getRow(row);
+        for (int i = terminalRow.findStartOfColumn(column); i < terminalRow.getSpaceUsed(); i++)
+            if (terminalRow.mText[i] != ' ') return false;
+        return true;
+    }
+
+    private static int getCodePointAt(TerminalEmulator emulator, int row, int column) {
+        TerminalRow terminalRow = emulator.getScreen().getRow(row);
+        int index = terminalRow.findStartOfColumn(column);
+        char c = terminalRow.mText[index];
+        return Character.isHighSurrogate(c) ? Character.toCodePoint(c, terminalRow.mText[index + 1]) : c;
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.termux.terminal;
+
+import java.io.InputStream;
+
+/**
+ * Streams pasted text as the UTF-8 bytes to write to the terminal, sanitizing and encoding it in a
+ * single pass over the text without copying it.
+ * <p>
+ * The escape character and C1 control characters [0x80,0x9F] are removed, so that the text cannot
+ * end a bracketed paste or start an escape sequence, and newlines (\n) and CRLF (\r\n) are replaced
+ * with carriage returns (\r). If bracketed paste mode is enabled, the text is prefixed with
+ * "\033[200~" and suffixed with "\033[201~".
+ */
+final class PasteEncoder extends InputStream {
+
+    /** The number of bytes pasted text is written to the terminal in. */
+    static final int CHUNK_SIZE = 4096;
+
+    private static final byte[] BRACKETED_PASTE_START = {27, '[', '2', '0', '0', '~'};
+    private static final byte[] BRACKETED_PASTE_END = {27, '[', '2', '0', '1', '~'};
+    private static final byte[] EMPTY = {};
+
+    private final CharSequence mText;
+    private final boolean mBracketed;
+    private int mTextIndex;
+
+    /** The bytes that are read before more of the text is encoded. */
+    private byte[] mPending;
+    private int mPendingIndex;
+    private int mPendingLength;
+    private final byte[] mCodePointBytes = new byte[4];
+
+    PasteEncoder(CharSequence text, boolean bracketed) {
+        mText = text;
+        mBracketed = bracketed;
+        mPending = bracketed ? BRACKETED_PASTE_START : EMPTY;
+        mPendingLength = mPending.length;
+    }
+
+    @Override
+    public int read() {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) return 0;
+
+        int written = 0;
+        while (written < length) {
+            if (mPendingIndex < mPendingLength) {
+                int bytesToCopy = Math.min(length - written, mPendingLength - mPendingIndex);
+                System.arraycopy(mPending, mPendingIndex, buffer, offset + written, bytesToCopy);
+                mPendingIndex += bytesToCopy;
+                written += bytesToCopy;
+                continue;
+            }
+
+            if (mTextIndex >= mText.length()) {
+                if (mPending == BRACKETED_PASTE_END || !mBracketed) break;
+                setPending(BRACKETED_PASTE_END, BRACKETED_PASTE_END.length);
+                continue;
+            }
+
+            int codePoint = nextCodePoint();
+            if (codePoint == -1) continue;
+
+            if (codePoint <= 0x7F) {
+                // Fast path for ASCII, which most pasted text is
+                buffer[offset + written++] = (byte) codePoint;
+            } else {
+                setPending(mCodePointBytes, encode(codePoint, mCodePointBytes));
+            }
+        }
+        return (written == 0) ? -1 : written;
+    }
+
+    /** Get the next code point of the text to write, or -1 if the char at the index is removed. */
+    private int nextCodePoint() {
+        char c = mText.charAt(mTextIndex++);
+        if (c == 27 || (c >= 0x80 && c <= 0x9F)) return -1;
+        if (c == '\n') return '\r';
+        if (c == '\r') {
+            if (mTextIndex < mText.length() && mText.charAt(mTextIndex) == '\n') mTextIndex++;
+            return '\r';
+        }
+        if (Character.isHighSurrogate(c)) {
+            if (mTextIndex < mText.length() && Character.isLowSurrogate(mText.charAt(mTextIndex)))
+                return Character.toCodePoint(c, mText.charAt(mTextIndex++));
+            return TerminalEmulator.UNICODE_REPLACEMENT_CHAR;
+        }
+        if (Character.isLowSurrogate(c)) return TerminalEmulator.UNICODE_REPLACEMENT_CHAR;
+        return c;
+    }
+
+    private void setPending(byte[] bytes, int length) {
+        mPending = bytes;
+        mPendingIndex = 0;
+        mPendingLength = length;
+    }
+
+    /** Encode a code point in UTF-8, returning the number of bytes. */
+    static int encode(int codePoint, byte[] bytes) {
+        if (codePoint <= /* 7 bits */0b1111111) {
+            bytes[0] = (byte) codePoint;
+            return 1;
+        } else if (codePoint <= /* 11 bits */0b11111111111) {
+            bytes[0] = (byte) (0b11000000 | (codePoint >> 6));
+            bytes[1] = (byte) (0b10000000 | (codePoint & 0b111111));
+            return 2;
+        } else if (codePoint <= /* 16 bits */0b1111111111111111) {
+            bytes[0] = (byte) (0b11100000 | (codePoint >> 12));
+            bytes[1] = (byte) (0b10000000 | ((codePoint >> 6) & 0b111111));
+            bytes[2] = (byte) (0b10000000 | (codePoint & 0b111111));
+            return 3;
+        } else {
+            bytes[0] = (byte) (0b11110000 | (codePoint >> 18));
+            bytes[1] = (byte) (0b10000000 | ((codePoint >> 12) & 0b111111));
+            bytes[2] = (byte) (0b10000000 | ((codePoint >> 6) & 0b111111));
+            bytes[3] = (byte) (0b10000000 | (codePoint & 0b111111));
+            return 4;
+        }
+    }
+
+}
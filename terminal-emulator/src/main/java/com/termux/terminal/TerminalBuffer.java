@@ -19,6 +19,8 @@ public final class TerminalBuffer {
     private int mActiveTranscriptRows = 0;
     /** The index in the circular buffer where the visible screen starts. */
     private int mScreenFirstRow = 0;
+    /** The optional disk backed scrollback that rows evicted from {@link #mLines} are appended to. */
+    private TerminalScrollback mScrollback;
 
     /**
      * Create a transcript screen.
@@ -73,7 +75,7 @@ public final class TerminalBuffer {
             } else {
                 x2 = columns;
             }
-            TerminalRow lineObject = mLines[externalToInternalRow(row)];
+            TerminalRow lineObject = getRow(row);
             int x1Index = lineObject.findStartOfColumn(x1);
             int x2Index = (x2 < mColumns) ? lineObject.findStartOfColumn(x2) : lineObject.getSpaceUsed();
             if (x2Index == x1Index) {
@@ -83,7 +85,7 @@ public final class TerminalBuffer {
             char[] line = lineObject.mText;
             int lastPrintingCharIndex = -1;
             int i;
-            boolean rowLineWrap = getLineWrap(row);
+            boolean rowLineWrap = lineObject.mLineWrap;
             if (rowLineWrap && x2 == columns) {
                 // If the line was wrapped, we shouldn't lose trailing space:
                 lastPrintingCharIndex = x2Index - 1;
@@ -144,12 +146,66 @@ public final class TerminalBuffer {
         return text.substring(x1 + 1, x2);
     }
 
+    /** Get the number of rows in history, including the rows in {@link #mScrollback}. */
     public int getActiveTranscriptRows() {
-        return mActiveTranscriptRows;
+        return mActiveTranscriptRows + (mScrollback != null ? mScrollback.getRowCount() : 0);
     }
 
     public int getActiveRows() {
-        return mActiveTranscriptRows + mScreenRows;
+        return getActiveTranscriptRows() + mScreenRows;
+    }
+
+    /** Get an estimate of the number of bytes of heap used by the rows of this buffer. */
+    public long getMemoryUsage() {
+        long usage = 16 + 4L * mLines.length;
+        for (TerminalRow row : mLines)
+            if (row != null) usage += row.getMemoryUsage();
+        return usage;
+    }
+
+    /**
+     * Remove the oldest rows of the transcript from memory so that at most maxRows rows are kept.
+     * The removed rows are appended to the {@link #mScrollback} if one is set, otherwise they are
+     * dropped.
+     *
+     * @param maxRows The max number of transcript rows to keep in memory.
+     * @return Returns the number of rows removed.
+     */
+    public int trimTranscript(int maxRows) {
+        int rowsToRemove = mActiveTranscriptRows - Math.max(0, maxRows);
+        if (rowsToRemove <= 0) return 0;
+
+        for (int i = 0; i < rowsToRemove; i++) {
+            int internalRow = externalToInternalRow(-mActiveTranscriptRows + i);
+            if (mScrollback != null) mScrollback.appendRow(mLines[internalRow], mColumns);
+            mLines[internalRow] = null;
+        }
+        mActiveTranscriptRows -= rowsToRemove;
+        return rowsToRemove;
+    }
+
+    /** Get the disk backed scrollback rows evicted from the transcript are appended to, if any. */
+    public TerminalScrollback getScrollback() {
+        return mScrollback;
+    }
+
+    /**
+     * Set the disk backed scrollback that rows evicted from the transcript should be appended to.
+     * Rows in the scrollback are before the rows of the transcript in the external coordinate system,
+     * so {@link #getRow(int)} should be used to get rows instead of {@link #externalToInternalRow(int)}.
+     */
+    public void setScrollback(TerminalScrollback scrollback) {
+        mScrollback = scrollback;
+    }
+
+    /**
+     * Get a row in the external coordinate system, from -{@link #getActiveTranscriptRows()} to
+     * mScreenRows-1. Rows in the scrollback are read from disk and should not be modified.
+     */
+    public TerminalRow getRow(int externalRow) {
+        if (mScrollback != null && externalRow < -mActiveTranscriptRows)
+            return mScrollback.getRow(mScrollback.getRowCount() + mActiveTranscriptRows + externalRow, mColumns);
+        return allocateFullLineIfNecessary(externalToInternalRow(externalRow));
     }
 
     /**
@@ -385,6 +441,10 @@ public final class TerminalBuffer {
         if (topMargin > bottomMargin - 1 || topMargin < 0 || bottomMargin > mScreenRows)
             throw new IllegalArgumentException("topMargin=" + topMargin + ", bottomMargin=" + bottomMargin + ", mScreenRows=" + mScreenRows);
 
+        // If the history is full, the oldest row is overwritten below, so append it to the scrollback:
+        if (mScrollback != null && mTotalRows > mScreenRows && mActiveTranscriptRows == mTotalRows - mScreenRows)
+            mScrollback.appendRow(mLines[(mScreenFirstRow + mScreenRows) % mTotalRows], mColumns);
+
         // Copy the fixed topMargin lines one line down so that they remain on screen in same position:
         blockCopyLinesDown(mScreenFirstRow, topMargin);
         // Copy the fixed mScreenRows-bottomMargin lines one line down so that they remain on screen in same
@@ -492,6 +552,7 @@ public final class TerminalBuffer {
             Arrays.fill(mLines, mScreenFirstRow - mActiveTranscriptRows, mScreenFirstRow, null);
         }
         mActiveTranscriptRows = 0;
+        if (mScrollback != null) mScrollback.clear();
     }
 
 }
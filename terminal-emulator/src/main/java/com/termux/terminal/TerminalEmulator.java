@@ -231,6 +231,12 @@ public final class TerminalEmulator {
      */
     private boolean mAboutToAutoWrap;
 
+    /** The buffer mouse reports are encoded into, which is grown if needed. */
+    private byte[] mMouseReportBuffer = new byte[32];
+
+    /** The 1-based cell of the last mouse report, so that motion within a cell is not reported. */
+    private int mLastMouseColumn, mLastMouseRow;
+
     /**
      * If the cursor blinking is enabled. It requires cursor itself to be enabled, which is controlled
      * byt whether {@link #DECSET_BIT_CURSOR_ENABLED} bit is set or not.
@@ -352,6 +358,31 @@ public final class TerminalEmulator {
         return mScreen == mAltBuffer;
     }
 
+    /**
+     * Set the disk backed {@link TerminalScrollback} that rows evicted from the transcript of the
+     * main buffer should be appended to. The alternate buffer has no transcript.
+     */
+    public void setScrollback(TerminalScrollback scrollback) {
+        mMainBuffer.setScrollback(scrollback);
+    }
+
+    public TerminalScrollback getScrollback() {
+        return mMainBuffer.getScrollback();
+    }
+
+    /** Get an estimate of the number of bytes of heap used by the main and alternate buffers. */
+    public long getMemoryUsage() {
+        return mMainBuffer.getMemoryUsage() + mAltBuffer.getMemoryUsage();
+    }
+
+    /**
+     * Remove the oldest rows of the transcript of the main buffer from memory, like on memory
+     * pressure. See {@link TerminalBuffer#trimTranscript(int)}.
+     */
+    public int trimTranscript(int maxRows) {
+        return mMainBuffer.trimTranscript(maxRows);
+    }
+
     private int getTerminalTranscriptRows(Integer transcriptRows) {
         if (transcriptRows == null || transcriptRows < TERMINAL_TRANSCRIPT_ROWS_MIN || transcriptRows > TERMINAL_TRANSCRIPT_ROWS_MAX)
             return DEFAULT_TERMINAL_TRANSCRIPT_ROWS;
@@ -363,24 +394,75 @@ public final class TerminalEmulator {
      * @param mouseButton one of the MOUSE_* constants of this class.
      */
     public void sendMouseEvent(int mouseButton, int column, int row, boolean pressed) {
+        sendMouseEvents(mouseButton, column, row, pressed, 1);
+    }
+
+    /**
+     * Send a mouse event a number of times in a single write, like a mouse wheel scrolled by
+     * multiple rows. Motion to the same cell as the last mouse event is not sent.
+     *
+     * @param mouseButton one of the MOUSE_* constants of this class.
+     * @param count The number of times to send the event.
+     */
+    public void sendMouseEvents(int mouseButton, int column, int row, boolean pressed, int count) {
+        if (count <= 0) return;
         if (column < 1) column = 1;
         if (column > mColumns) column = mColumns;
         if (row < 1) row = 1;
         if (row > mRows) row = mRows;
 
-        if (mouseButton == MOUSE_LEFT_BUTTON_MOVED && !isDecsetInternalBitSet(DECSET_BIT_MOUSE_TRACKING_BUTTON_EVENT)) {
-            // Do not send tracking.
-        } else if (isDecsetInternalBitSet(DECSET_BIT_MOUSE_PROTOCOL_SGR)) {
-            mSession.write(String.format("\033[<%d;%d;%d" + (pressed ? 'M' : 'm'), mouseButton, column, row));
-        } else {
+        if (mouseButton == MOUSE_LEFT_BUTTON_MOVED) {
+            if (!isDecsetInternalBitSet(DECSET_BIT_MOUSE_TRACKING_BUTTON_EVENT)) return; // Do not send tracking.
+            if (column == mLastMouseColumn && row == mLastMouseRow) return;
+        }
+        mLastMouseColumn = column;
+        mLastMouseRow = row;
+
+        final boolean sgr = isDecsetInternalBitSet(DECSET_BIT_MOUSE_PROTOCOL_SGR);
+        if (!sgr) {
             mouseButton = pressed ? mouseButton : 3; // 3 for release of all buttons.
             // Clip to screen, and clip to the limits of 8-bit data.
             boolean out_of_bounds = column > 255 - 32 || row > 255 - 32;
-            if (!out_of_bounds) {
-                byte[] data = {'\033', '[', 'M', (byte) (32 + mouseButton), (byte) (32 + column), (byte) (32 + row)};
-                mSession.write(data, 0, data.length);
+            if (out_of_bounds) return;
+        }
+
+        // An SGR report is at most "\033[<" + 3 + ";" + 10 + ";" + 10 + "M" bytes
+        final int maxReportLength = 28;
+        if (mMouseReportBuffer.length < maxReportLength * count)
+            mMouseReportBuffer = new byte[maxReportLength * count];
+        final byte[] buffer = mMouseReportBuffer;
+
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            buffer[length++] = '\033';
+            buffer[length++] = '[';
+            if (sgr) {
+                buffer[length++] = '<';
+                length = appendDecimal(buffer, length, mouseButton);
+                buffer[length++] = ';';
+                length = appendDecimal(buffer, length, column);
+                buffer[length++] = ';';
+                length = appendDecimal(buffer, length, row);
+                buffer[length++] = (byte) (pressed ? 'M' : 'm');
+            } else {
+                buffer[length++] = 'M';
+                buffer[length++] = (byte) (32 + mouseButton);
+                buffer[length++] = (byte) (32 + column);
+                buffer[length++] = (byte) (32 + row);
             }
         }
+        mSession.write(buffer, 0, length);
+    }
+
+    /** Append the decimal digits of a non-negative value to the buffer, returning the new length. */
+    private static int appendDecimal(byte[] buffer, int length, int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) digits++;
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return length + digits;
     }
 
     public void resize(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
@@ -2587,16 +2669,9 @@ public final class TerminalEmulator {
 
     /** If DECSET 2004 is set, prefix paste with "\033[200~" and suffix with "\033[201~". */
     public void paste(String text) {
-        // First: Always remove escape key and C1 control characters [0x80,0x9F]:
-        text = text.replaceAll("(\u001B|[\u0080-\u009F])", "");
-        // Second: Replace all newlines (\n) or CRLF (\r\n) with carriage returns (\r).
-        text = text.replaceAll("\r?\n", "\r");
-
-        // Then: Implement bracketed paste mode if enabled:
-        boolean bracketed = isDecsetInternalBitSet(DECSET_BIT_BRACKETED_PASTE_MODE);
-        if (bracketed) mSession.write("\033[200~");
-        mSession.write(text);
-        if (bracketed) mSession.write("\033[201~");
+        // The escape key and C1 control characters are removed and newlines replaced with carriage
+        // returns while the text is encoded, see PasteEncoder.
+        mSession.writePaste(text, isDecsetInternalBitSet(DECSET_BIT_BRACKETED_PASTE_MODE));
     }
 
     /** http://www.vt100.net/docs/vt510-rm/DECSC */
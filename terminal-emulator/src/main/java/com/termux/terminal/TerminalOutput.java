@@ -15,6 +15,22 @@ public abstract class TerminalOutput {
     /** Write bytes to the terminal client. */
     public abstract void write(byte[] data, int offset, int count);
 
+    /**
+     * Write text pasted into the terminal to the terminal client, sanitized as described in
+     * {@link PasteEncoder}. This writes the text in chunks of {@link PasteEncoder#CHUNK_SIZE}
+     * bytes and can be overridden to write them in the background.
+     *
+     * @param text The text to paste.
+     * @param bracketed If bracketed paste mode is enabled.
+     */
+    public void writePaste(CharSequence text, boolean bracketed) {
+        PasteEncoder encoder = new PasteEncoder(text, bracketed);
+        byte[] buffer = new byte[PasteEncoder.CHUNK_SIZE];
+        int length;
+        while ((length = encoder.read(buffer, 0, buffer.length)) != -1)
+            write(buffer, 0, length);
+    }
+
     /** Notify the terminal client that the terminal title has changed. */
     public abstract void titleChanged(String oldTitle, String newTitle);
 
@@ -0,0 +1,382 @@
+package com.termux.terminal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * Records the output of the process of a {@link TerminalSession} and its resizes with timestamps
+ * to a file in the asciicast v2 format (https://docs.asciinema.org/manual/asciicast/v2/), which
+ * can be replayed with {@link TerminalReplay} or asciinema.
+ * <p>
+ * The reader thread of the session only copies the output it read into a pool of reused chunks,
+ * and a writer thread decodes it as UTF-8 and writes it through a buffer, so that recording does
+ * not slow down the session. A UTF-8 sequence split over two reads is decoded as a whole.
+ * <p>
+ * If the writer thread cannot keep up, then the output is merged into the last queued chunk while
+ * it has room, and after that the reader thread waits for the writer thread to free a chunk, so
+ * that the memory used stays bounded and the recording is complete. Only if the writer thread does
+ * not free a chunk within {@link #MAX_OUTPUT_WAIT_MILLIS}, like if the storage stalls, is the
+ * output dropped instead of blocking the session any longer, and a {@link #LOST_OUTPUT_MARKER}
+ * event with the number of dropped bytes is written in its place, which {@link TerminalReplay}
+ * rejects. Resizes are never dropped or merged, since the emulator reflows its screen on each one.
+ */
+public final class TerminalRecorder {
+
+    /** The size of the buffer the recording is written through. */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /** The size of each chunk, which is larger than a read of the session. */
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    /** The default number of chunks, which buffers up to 512 KB of output. */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /** The maximum time the reader thread of the session waits for the writer thread to free a chunk. */
+    static final long MAX_OUTPUT_WAIT_MILLIS = 1000;
+
+    /**
+     * The label of the asciicast marker event written where output was dropped, which is followed
+     * by the number of dropped bytes.
+     */
+    static final String LOST_OUTPUT_MARKER = "lost output bytes: ";
+
+    private static final String LOG_TAG = "TerminalRecorder";
+
+    /** An output, resize or lost output event. */
+    private static final class Event {
+        long time;
+        /** The output of an output event, which is reused for other output events. */
+        final byte[] chunk;
+        /** The length of the output of an output event, or -1 for other events. */
+        int length = -1;
+        int columns;
+        int rows;
+        /** The number of bytes of output dropped for a lost output event. */
+        long lostBytes;
+
+        Event(byte[] chunk) {
+            this.chunk = chunk;
+        }
+    }
+
+    private final File mFile;
+    private final TerminalSessionClient mClient;
+    private final long mStartTime = System.nanoTime();
+    private final Thread mWriterThread;
+    private volatile boolean mClosed;
+
+    /** The lock for the events below. */
+    private final Object mLock = new Object();
+    private final int mCapacity;
+    private final ArrayDeque<Event> mEvents = new ArrayDeque<>();
+    /** The output events that are not queued, which are reused. */
+    private final ArrayDeque<Event> mFreeOutputEvents = new ArrayDeque<>();
+    /** The number of output events allocated, which is at most {@link #mCapacity}. */
+    private int mOutputEventCount;
+
+    /**
+     * Create a recorder that writes to a file, which is replaced if it exists.
+     *
+     * @param file The file to write the recording to.
+     * @param columns The number of columns of the terminal.
+     * @param rows The number of rows of the terminal.
+     * @param client The client to log errors to.
+     */
+    public TerminalRecorder(File file, int columns, int rows, TerminalSessionClient client) throws IOException {
+        this(file, new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE),
+            columns, rows, DEFAULT_CAPACITY, client);
+    }
+
+    TerminalRecorder(File file, final Writer writer, int columns, int rows, int capacity, TerminalSessionClient client) throws IOException {
+        mFile = file;
+        mClient = client;
+        mCapacity = capacity;
+
+        writer.write("{\"version\": 2, \"width\": " + columns + ", \"height\": " + rows +
+            ", \"timestamp\": " + (System.currentTimeMillis() / 1000) + ", \"env\": {\"TERM\": \"xterm-256color\"}}\n");
+
+        mWriterThread = new Thread("TerminalRecorder[" + file.getName() + "]") {
+            @Override
+            public void run() {
+                writeEvents(writer);
+            }
+        };
+        mWriterThread.start();
+    }
+
+    /** Get the file the recording is written to. */
+    public File getFile() {
+        return mFile;
+    }
+
+    /** Called from the reader thread of the session with the output read from the process. */
+    void onOutput(byte[] buffer, int offset, int count) {
+        if (mClosed || count <= 0) return;
+        long time = System.nanoTime();
+        synchronized (mLock) {
+            long waitDeadline = 0;
+            while (count > 0) {
+                if (mClosed) return;
+                int length;
+                Event event = obtainOutputEvent();
+                if (event != null) {
+                    length = Math.min(count, CHUNK_SIZE);
+                    System.arraycopy(buffer, offset, event.chunk, 0, length);
+                    event.time = time;
+                    event.length = length;
+                    queue(event);
+                } else {
+                    // Merge into the last event if it is output with room, and wait for a chunk after that
+                    Event last = mEvents.peekLast();
+                    length = (last == null || last.length < 0) ? 0 : Math.min(count, CHUNK_SIZE - last.length);
+                    if (length == 0) {
+                        long now = System.nanoTime();
+                        if (waitDeadline == 0) waitDeadline = now + MAX_OUTPUT_WAIT_MILLIS * 1_000_000;
+                        if (now - waitDeadline >= 0) {
+                            onOutputLost(time, count);
+                            return;
+                        }
+                        try {
+                            mLock.wait(Math.max(1, (waitDeadline - now) / 1_000_000));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            onOutputLost(time, count);
+                            return;
+                        }
+                        continue;
+                    }
+                    System.arraycopy(buffer, offset, last.chunk, last.length, length);
+                    last.length += length;
+                }
+                offset += length;
+                count -= length;
+            }
+        }
+    }
+
+    /** Called when the terminal is resized. */
+    void onResize(int columns, int rows) {
+        if (mClosed) return;
+        long time = System.nanoTime();
+        synchronized (mLock) {
+            // Resizes are small and rare, so they are always queued even if the output is not
+            Event event = new Event(null);
+            event.time = time;
+            event.columns = columns;
+            event.rows = rows;
+            queue(event);
+        }
+    }
+
+    /** Stop recording and write the rest of the recording to the file in the background. */
+    public void close() {
+        synchronized (mLock) {
+            mClosed = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /** Wait for the rest of the recording to be written after {@link #close()}. */
+    public void awaitClose() throws InterruptedException {
+        mWriterThread.join();
+    }
+
+    /** Get a free output event, or {@code null} if all {@link #mCapacity} of them are queued. Must hold {@link #mLock}. */
+    private Event obtainOutputEvent() {
+        Event event = mFreeOutputEvents.pollFirst();
+        if (event == null && mOutputEventCount < mCapacity) {
+            event = new Event(new byte[CHUNK_SIZE]);
+            mOutputEventCount++;
+        }
+        return event;
+    }
+
+    /** Must hold {@link #mLock}. */
+    private void queue(Event event) {
+        mEvents.addLast(event);
+        if (mEvents.size() == 1) mLock.notifyAll();
+    }
+
+    /** Record that output was dropped, in the last event if it is lost output too. Must hold {@link #mLock}. */
+    private void onOutputLost(long time, int count) {
+        Event last = mEvents.peekLast();
+        if (last == null || last.lostBytes == 0) {
+            last = new Event(null);
+            last.time = time;
+            queue(last);
+        }
+        last.lostBytes += count;
+    }
+
+    private void writeEvents(Writer writer) {
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // The bytes of a UTF-8 sequence split over two reads, which are decoded with the next read
+        final byte[] remainder = new byte[4];
+        int remainderLength = 0;
+        long lastTime = mStartTime;
+        final ByteBuffer input = ByteBuffer.allocate(remainder.length + CHUNK_SIZE);
+        final CharBuffer output = CharBuffer.allocate(remainder.length + CHUNK_SIZE);
+        final StringBuilder line = new StringBuilder(256);
+
+        try {
+            while (true) {
+                long time;
+                int length, columns = 0, rows = 0;
+                long lostBytes = 0;
+                synchronized (mLock) {
+                    while (mEvents.isEmpty() && !mClosed) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            // Ignore.
+                        }
+                    }
+                    Event event = mEvents.pollFirst();
+                    if (event == null) break;
+
+                    time = event.time;
+                    length = event.length;
+                    if (length >= 0) {
+                        // Copy the output so that the chunk can be reused while it is decoded
+                        input.clear();
+                        input.put(remainder, 0, remainderLength).put(event.chunk, 0, length).flip();
+                        mFreeOutputEvents.addLast(event);
+                        // The reader thread may be waiting for a free chunk
+                        mLock.notifyAll();
+                    } else if (event.lostBytes > 0) {
+                        lostBytes = event.lostBytes;
+                    } else {
+                        columns = event.columns;
+                        rows = event.rows;
+                    }
+                }
+
+                if (lostBytes > 0) {
+                    Logger.logWarn(mClient, LOG_TAG, "Dropped " + lostBytes + " bytes of output from the recording to \"" + mFile + "\" since writing it could not keep up");
+                    // The output after the dropped output does not continue a split UTF-8 sequence
+                    writeRemainder(writer, line, lastTime, decoder, remainder, remainderLength, input, output);
+                    remainderLength = 0;
+                    decoder.reset();
+                    line.setLength(0);
+                    line.append('[');
+                    appendTime(line, time - mStartTime);
+                    line.append(", \"m\", \"").append(LOST_OUTPUT_MARKER).append(lostBytes).append("\"]\n");
+                    writer.append(line);
+                    lastTime = time;
+                    continue;
+                }
+
+                line.setLength(0);
+                line.append('[');
+                appendTime(line, time - mStartTime);
+                if (length < 0) {
+                    line.append(", \"r\", \"").append(columns).append('x').append(rows).append("\"]\n");
+                } else {
+                    output.clear();
+                    decoder.decode(input, output, false);
+                    remainderLength = input.remaining();
+                    input.get(remainder, 0, remainderLength);
+                    output.flip();
+
+                    line.append(", \"o\", \"");
+                    appendJsonEscaped(line, output);
+                    line.append("\"]\n");
+                }
+                writer.append(line);
+                lastTime = time;
+            }
+
+            // Flush a trailing partial UTF-8 sequence, which is decoded as a replacement character
+            writeRemainder(writer, line, lastTime, decoder, remainder, remainderLength, input, output);
+        } catch (IOException e) {
+            Logger.logStackTraceWithMessage(mClient, LOG_TAG, "Failed to write recording to \"" + mFile + "\"", e);
+        } finally {
+            synchronized (mLock) {
+                mClosed = true;
+                mEvents.clear();
+                // The reader thread may be waiting for a free chunk
+                mLock.notifyAll();
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // Ignore.
+            }
+        }
+    }
+
+    /**
+     * Decode the remainder of a UTF-8 sequence as the end of the input and write it as an output
+     * event at the time of the last event, if there is any.
+     */
+    private void writeRemainder(Writer writer, StringBuilder line, long time, CharsetDecoder decoder, byte[] remainder,
+                                int remainderLength, ByteBuffer input, CharBuffer output) throws IOException {
+        if (remainderLength == 0) return;
+        input.clear();
+        input.put(remainder, 0, remainderLength).flip();
+        output.clear();
+        decoder.decode(input, output, true);
+        decoder.flush(output);
+        output.flip();
+        if (output.remaining() == 0) return;
+
+        line.setLength(0);
+        line.append('[');
+        appendTime(line, time - mStartTime);
+        line.append(", \"o\", \"");
+        appendJsonEscaped(line, output);
+        line.append("\"]\n");
+        writer.append(line);
+    }
+
+    /** Append a time in nanoseconds as seconds with microsecond precision. */
+    static void appendTime(StringBuilder builder, long nanos) {
+        long micros = nanos / 1000;
+        builder.append(micros / 1_000_000).append('.');
+        String fraction = Long.toString(micros % 1_000_000);
+        for (int i = fraction.length(); i < 6; i++) builder.append('0');
+        builder.append(fraction);
+    }
+
+    static void appendJsonEscaped(StringBuilder builder, CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 32 || c == 127) {
+                        builder.append("\\u00");
+                        builder.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.termux.terminal;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Replays a recording in the asciicast v2 format, like one written by {@link TerminalRecorder},
+ * through a {@link TerminalEmulator}, so that recorded sessions can be used as benchmarks of the
+ * emulator and renderer and as fixtures of its output.
+ * <p>
+ * The output events are appended to the emulator and the resize events resize it, either as fast
+ * as possible or at the pace they were recorded at. Input events and other events are ignored,
+ * except for the marker {@link TerminalRecorder} writes where it dropped output, which is rejected
+ * since the emulator state after it would not match the recorded session. A {@link Listener} is
+ * notified after each event, like to render the emulator offscreen.
+ */
+public final class TerminalReplay implements Closeable {
+
+    /** The cell size in pixels the emulator is created with. */
+    private static final int CELL_WIDTH_PIXELS = 12;
+    private static final int CELL_HEIGHT_PIXELS = 24;
+
+    /** Notified after each replayed event. */
+    public interface Listener {
+        /**
+         * @param emulator The emulator the event was replayed through.
+         * @param timeNanos The time of the event in the recording.
+         */
+        void onEvent(TerminalEmulator emulator, long timeNanos);
+    }
+
+    /** Discards the responses of the emulator, since there is no process to write them to. */
+    private static final class DiscardingOutput extends TerminalOutput {
+        @Override
+        public void write(byte[] data, int offset, int count) {
+        }
+
+        @Override
+        public void titleChanged(String oldTitle, String newTitle) {
+        }
+
+        @Override
+        public void onCopyTextToClipboard(String text) {
+        }
+
+        @Override
+        public void onPasteTextFromClipboard() {
+        }
+
+        @Override
+        public void onBell() {
+        }
+
+        @Override
+        public void onColorsChanged() {
+        }
+    }
+
+    private final BufferedReader mReader;
+    private final Integer mTranscriptRows;
+
+    private long mEventCount;
+    private long mOutputBytes;
+    private long mAppendTimeNanos;
+    private long mReplayTimeNanos;
+
+    /** The position in the line being parsed. */
+    private int mPosition;
+
+    /**
+     * @param reader The reader of the recording.
+     * @param transcriptRows The transcript rows of the emulator, or {@code null} for the default.
+     */
+    public TerminalReplay(Reader reader, Integer transcriptRows) {
+        mReader = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+        mTranscriptRows = transcriptRows;
+    }
+
+    /** Open a recording file for replay with the default transcript rows. */
+    public static TerminalReplay open(File file) throws IOException {
+        return new TerminalReplay(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Replay the recording. This can only be called once.
+     *
+     * @param realTime If the events should be replayed at the pace they were recorded at instead of
+     *                 as fast as possible.
+     * @param listener The optional listener to notify after each event.
+     * @return Returns the emulator the recording was replayed through.
+     */
+    public TerminalEmulator replay(boolean realTime, Listener listener) throws IOException {
+        String header = mReader.readLine();
+        if (header == null) throw new IOException("Empty recording");
+        int columns = parseHeaderInt(header, "width");
+        int rows = parseHeaderInt(header, "height");
+
+        TerminalEmulator emulator = new TerminalEmulator(new DiscardingOutput(), columns, rows,
+            CELL_WIDTH_PIXELS, CELL_HEIGHT_PIXELS, mTranscriptRows, null);
+        final long startTime = System.nanoTime();
+        byte[] data = new byte[0];
+
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+
+            mPosition = 0;
+            expect(line, '[');
+            long timeNanos = (long) (parseNumber(line) * 1_000_000_000d);
+            expect(line, ',');
+            String type = parseString(line);
+            expect(line, ',');
+            String value = parseString(line);
+
+            if (realTime) {
+                long delay = timeNanos - (System.nanoTime() - startTime);
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                    } catch (InterruptedException e) {
+                        throw new IOException("Replay interrupted");
+                    }
+                }
+            }
+
+            if ("o".equals(type)) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (data.length < bytes.length) data = new byte[bytes.length];
+                System.arraycopy(bytes, 0, data, 0, bytes.length);
+                long appendStartTime = System.nanoTime();
+                emulator.append(data, bytes.length);
+                mAppendTimeNanos += System.nanoTime() - appendStartTime;
+                mOutputBytes += bytes.length;
+            } else if ("r".equals(type)) {
+                int separator = value.indexOf('x');
+                if (separator < 0) throw new IOException("Invalid resize event: " + line);
+                try {
+                    emulator.resize(Integer.parseInt(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)),
+                        CELL_WIDTH_PIXELS, CELL_HEIGHT_PIXELS);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid resize event: " + line);
+                }
+            } else if ("m".equals(type) && value.startsWith(TerminalRecorder.LOST_OUTPUT_MARKER)) {
+                throw new IOException("The recording dropped " + value.substring(TerminalRecorder.LOST_OUTPUT_MARKER.length()) +
+                    " bytes of output at " + line.substring(1, line.indexOf(',')) + "s and cannot be replayed");
+            } else {
+                continue;
+            }
+
+            mEventCount++;
+            if (listener != null) listener.onEvent(emulator, timeNanos);
+        }
+
+        mReplayTimeNanos = System.nanoTime() - startTime;
+        return emulator;
+    }
+
+    /** Get the number of output and resize events replayed. */
+    public long getEventCount() {
+        return mEventCount;
+    }
+
+    /** Get the number of bytes of output appended to the emulator. */
+    public long getOutputBytes() {
+        return mOutputBytes;
+    }
+
+    /** Get the time in nanoseconds the emulator took to append the output. */
+    public long getAppendTimeNanos() {
+        return mAppendTimeNanos;
+    }
+
+    /** Get the time in nanoseconds the replay took, including the listener and waiting in real time. */
+    public long getReplayTimeNanos() {
+        return mReplayTimeNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    private static int parseHeaderInt(String header, String key) throws IOException {
+        String quotedKey = "\"" + key + "\"";
+        int index = header.indexOf(quotedKey);
+        if (index < 0) throw new IOException("No " + key + " in header: " + header);
+        index = header.indexOf(':', index + quotedKey.length()) + 1;
+        if (index == 0) throw new IOException("Invalid header: " + header);
+        while (index < header.length() && header.charAt(index) == ' ') index++;
+        int end = index;
+        while (end < header.length() && Character.isDigit(header.charAt(end))) end++;
+        try {
+            return Integer.parseInt(header.substring(index, end));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid " + key + " in header: " + header);
+        }
+    }
+
+    private void skipWhitespace(String line) {
+        while (mPosition < line.length() && line.charAt(mPosition) == ' ') mPosition++;
+    }
+
+    private void expect(String line, char c) throws IOException {
+        skipWhitespace(line);
+        if (mPosition >= line.length() || line.charAt(mPosition) != c)
+            throw new IOException("Expected '" + c + "' at " + mPosition + ": " + line);
+        mPosition++;
+    }
+
+    private double parseNumber(String line) throws IOException {
+        skipWhitespace(line);
+        int start = mPosition;
+        while (mPosition < line.length() && ",] ".indexOf(line.charAt(mPosition)) < 0) mPosition++;
+        try {
+            return Double.parseDouble(line.substring(start, mPosition));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid time at " + start + ": " + line);
+        }
+    }
+
+    private String parseString(String line) throws IOException {
+        expect(line, '"');
+        StringBuilder builder = new StringBuilder();
+        while (mPosition < line.length()) {
+            char c = line.charAt(mPosition++);
+            if (c == '"') return builder.toString();
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (mPosition >= line.length()) break;
+            char escaped = line.charAt(mPosition++);
+            switch (escaped) {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    if (mPosition + 4 > line.length()) throw new IOException("Invalid escape at " + mPosition + ": " + line);
+                    try {
+                        builder.append((char) Integer.parseInt(line.substring(mPosition, mPosition + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid escape at " + mPosition + ": " + line);
+                    }
+                    mPosition += 4;
+                    break;
+                default: builder.append(escaped); break;
+            }
+        }
+        throw new IOException("Unterminated string: " + line);
+    }
+
+}
@@ -88,6 +88,18 @@ public final class TerminalRow {
         return mSpaceUsed;
     }
 
+    /** Get an estimate of the number of bytes of heap used by this row and its arrays. */
+    public long getMemoryUsage() {
+        // The object and the two arrays with their headers
+        return 40 + (16 + 2L * mText.length) + (16 + 8L * mStyle.length);
+    }
+
+    /** Set the text of this row, used when decoding a row read from a {@link TerminalScrollback}. */
+    void setText(char[] text, int spaceUsed) {
+        mText = text;
+        mSpaceUsed = (short) spaceUsed;
+    }
+
     /** Note that the column may end of second half of wide character. */
     public int findStartOfColumn(int column) {
         if (column == mColumns) return getSpaceUsed();
@@ -0,0 +1,474 @@
+package com.termux.terminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A disk backed tier of the transcript of a {@link TerminalBuffer}. Rows evicted from the in-memory
+ * ring of the buffer are appended to it in a compact encoding, so that the history can be much
+ * larger than the rows kept on the Java heap.
+ * <p>
+ * Rows are written to segment files in a per-session directory. The last segment is written through
+ * a buffer and its row offsets are kept in memory. Once it is full, its row offsets are appended to
+ * the end of the file and it is sealed. Sealed segments are memory-mapped read-only on demand when
+ * their rows are read, like when the user scrolls, selects or exports the transcript, and only a
+ * few of them are kept mapped. Recently read rows are cached as decoded {@link TerminalRow}:s.
+ * <p>
+ * Rows are stored with the number of columns they had when they were evicted and are not reflowed
+ * on resize. They are cut or padded to the current number of columns when read.
+ * <p>
+ * The rows are numbered from {@code 0}, the oldest row kept, to {@link #getRowCount()} - 1, the
+ * last appended row. If an I/O error occurs, the rows are dropped and the scrollback stops
+ * accepting rows. Call {@link #close()} to delete the segment files when the session ends.
+ */
+public final class TerminalScrollback {
+
+    /** The max size of the row data of a segment file before it is sealed. */
+    static final int MAX_SEGMENT_DATA_SIZE = 4 * 1024 * 1024; // 4MB
+    /** The max number of rows in a segment file before it is sealed. */
+    static final int MAX_SEGMENT_ROWS = 65536;
+
+    /** The size of the buffer rows of the last segment are written through. */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    /** The max number of sealed segments kept memory-mapped. */
+    private static final int MAX_MAPPED_SEGMENTS = 8;
+    /** The max number of decoded rows cached. */
+    private static final int MAX_CACHED_ROWS = 256;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".bin";
+    /** The magic number at the end of a sealed segment file. */
+    private static final int SEGMENT_FILE_MAGIC = 0x54525342; // "TRSB"
+
+    private static final int FLAG_LINE_WRAP = 1;
+    private static final int FLAG_HAS_NON_ONE_WIDTH_OR_SURROGATE_CHARS = 1 << 1;
+
+    private static final String LOG_TAG = "TerminalScrollback";
+
+    private final File mDirectory;
+    private final int mMaxRows;
+    private final TerminalSessionClient mClient;
+
+    /** The segments in the order they were written. Only the last one may be unsealed. */
+    private final ArrayList<Segment> mSegments = new ArrayList<>();
+    /** The absolute number of the oldest row kept. */
+    private long mFirstRow;
+    /** The absolute number of the next row to be appended. */
+    private long mEndRow;
+    private int mNextSegmentId;
+
+    /** The buffer rows of the last segment are written through. */
+    private final ByteBuffer mWriteBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    /** The buffer a row is encoded into before it is written. */
+    private byte[] mEncodeBuffer = new byte[1024];
+    private int mEncodePosition;
+
+    /** The sealed segments currently mapped, in least recently used order. */
+    private final LinkedHashMap<Segment, MappedByteBuffer> mMappedSegments = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The recently read rows mapped by their absolute row number, in least recently used order. */
+    private final LinkedHashMap<Long, TerminalRow> mRowCache = new LinkedHashMap<Long, TerminalRow>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TerminalRow> eldest) {
+            return size() > MAX_CACHED_ROWS;
+        }
+    };
+
+    private boolean mClosed;
+
+    /**
+     * Create a scrollback. Any segment files left in the directory by a previous process are
+     * deleted.
+     *
+     * @param directory The directory segment files should be written to. It should not be shared
+     *                  with other sessions.
+     * @param maxRows The max number of rows to keep. The oldest rows are dropped after this.
+     * @param client The {@link TerminalSessionClient} used for logging.
+     */
+    public TerminalScrollback(File directory, int maxRows, TerminalSessionClient client) {
+        mDirectory = directory;
+        mMaxRows = Math.max(1, maxRows);
+        mClient = client;
+        deleteSegmentFiles();
+    }
+
+    /** Get the directory segment files are written to. */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /** Get the max number of rows to keep. */
+    public int getMaxRows() {
+        return mMaxRows;
+    }
+
+    /** Get the number of rows kept. */
+    public int getRowCount() {
+        return (int) (mEndRow - mFirstRow);
+    }
+
+    /** Get the number of bytes of row data written to segment files. */
+    public long getDataSize() {
+        long size = 0;
+        for (Segment segment : mSegments)
+            size += segment.dataSize;
+        return size;
+    }
+
+    /**
+     * Append a row evicted from the in-memory transcript.
+     *
+     * @param row The row, or {@code null} for a blank row that was never allocated.
+     * @param columns The number of columns of the buffer the row was evicted from.
+     */
+    public void appendRow(TerminalRow row, int columns) {
+        if (mClosed) return;
+
+        try {
+            encodeRow(row, columns);
+
+            Segment segment = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+            if (segment != null && (segment.rowCount == MAX_SEGMENT_ROWS || segment.dataSize + mEncodePosition > MAX_SEGMENT_DATA_SIZE)) {
+                sealSegment(segment);
+                segment = null;
+            }
+            if (segment == null) {
+                segment = new Segment(new File(mDirectory, SEGMENT_FILE_PREFIX + (mNextSegmentId++) + SEGMENT_FILE_SUFFIX), mEndRow);
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+                    throw new IOException("Failed to create scrollback directory at path \"" + mDirectory.getAbsolutePath() + "\"");
+                segment.channel = new RandomAccessFile(segment.file, "rw").getChannel();
+                segment.offsets = new int[1024];
+                mSegments.add(segment);
+            }
+
+            if (segment.rowCount == segment.offsets.length)
+                segment.offsets = Arrays.copyOf(segment.offsets, segment.offsets.length * 2);
+            segment.offsets[segment.rowCount++] = (int) segment.dataSize;
+            write(segment, mEncodeBuffer, mEncodePosition);
+            segment.dataSize += mEncodePosition;
+            mEndRow++;
+
+            if (mEndRow - mFirstRow > mMaxRows)
+                dropRowsBefore(mEndRow - mMaxRows);
+        } catch (IOException e) {
+            fail("Failed to append row to scrollback", e);
+        }
+    }
+
+    /**
+     * Get a row.
+     *
+     * @param index The number of the row, from {@code 0} for the oldest row.
+     * @param columns The number of columns the returned row should have.
+     * @return Returns the row. A blank row is returned if the row could not be read. The row is
+     * cached and should not be modified.
+     */
+    public TerminalRow getRow(int index, int columns) {
+        if (index < 0 || index >= getRowCount()) return new TerminalRow(columns, TextStyle.NORMAL);
+
+        long absoluteRow = mFirstRow + index;
+        TerminalRow row = mRowCache.get(absoluteRow);
+        if (row != null && row.mStyle.length == columns) return row;
+
+        try {
+            row = readRow(absoluteRow);
+        } catch (IOException | RuntimeException e) {
+            fail("Failed to read row from scrollback", e);
+            return new TerminalRow(columns, TextStyle.NORMAL);
+        }
+
+        if (row.mStyle.length != columns) {
+            // Rows are not reflowed, so cut or pad them to the current number of columns
+            TerminalRow resizedRow = new TerminalRow(columns, TextStyle.NORMAL);
+            resizedRow.copyInterval(row, 0, Math.min(columns, row.mStyle.length), 0);
+            resizedRow.mLineWrap = row.mLineWrap;
+            row = resizedRow;
+        }
+        mRowCache.put(absoluteRow, row);
+        return row;
+    }
+
+    /** Drop all rows and delete the segment files. The scrollback will continue accepting rows. */
+    public void clear() {
+        closeSegments();
+        deleteSegmentFiles();
+        mFirstRow = mEndRow;
+    }
+
+    /** Drop all rows, delete the segment files and stop accepting rows. */
+    public void close() {
+        clear();
+        mClosed = true;
+        if (mDirectory.isDirectory() && !mDirectory.delete())
+            Logger.logWarn(mClient, LOG_TAG, "Failed to delete scrollback directory at path \"" + mDirectory.getAbsolutePath() + "\"");
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    private void fail(String message, Exception e) {
+        Logger.logStackTraceWithMessage(mClient, LOG_TAG, message + " in directory \"" + mDirectory.getAbsolutePath() + "\"", e);
+        close();
+    }
+
+    /** Encode a row into {@link #mEncodeBuffer}. */
+    private void encodeRow(TerminalRow row, int columns) {
+        mEncodePosition = 0;
+        if (row == null) {
+            writeVarLong(columns);
+            writeByte(0);
+            writeVarLong(0);
+            writeVarLong(0);
+            return;
+        }
+
+        columns = row.mStyle.length;
+        writeVarLong(columns);
+        writeByte((row.mLineWrap ? FLAG_LINE_WRAP : 0) | (row.mHasNonOneWidthOrSurrogateChars ? FLAG_HAS_NON_ONE_WIDTH_OR_SURROGATE_CHARS : 0));
+
+        int spaceUsed = row.getSpaceUsed();
+        writeVarLong(spaceUsed);
+        char[] text = row.mText;
+        for (int i = 0; i < spaceUsed; i++)
+            writeVarLong(text[i]);
+
+        // Styles are mostly the same for long runs of cells, so store them as (length, style) pairs
+        long[] styles = row.mStyle;
+        int runCount = 0;
+        for (int i = 0; i < columns; i++)
+            if (i == 0 || styles[i] != styles[i - 1]) runCount++;
+        writeVarLong(runCount);
+        int runStart = 0;
+        for (int i = 1; i <= columns; i++) {
+            if (i == columns || styles[i] != styles[runStart]) {
+                writeVarLong(i - runStart);
+                writeVarLong(styles[runStart]);
+                runStart = i;
+            }
+        }
+    }
+
+    /** Decode a row encoded by {@link #encodeRow(TerminalRow, int)}. */
+    private static TerminalRow decodeRow(ByteBuffer buffer) throws IOException {
+        int columns = (int) readVarLong(buffer);
+        int flags = buffer.get();
+
+        int spaceUsed = (int) readVarLong(buffer);
+        if (columns <= 0 || spaceUsed < 0 || spaceUsed > buffer.remaining())
+            throw new IOException("Invalid scrollback row with " + columns + " columns and " + spaceUsed + " chars");
+
+        TerminalRow row = new TerminalRow(columns, TextStyle.NORMAL);
+        if (spaceUsed > 0) {
+            char[] text = spaceUsed > row.mText.length ? new char[spaceUsed] : row.mText;
+            for (int i = 0; i < spaceUsed; i++)
+                text[i] = (char) readVarLong(buffer);
+            row.setText(text, spaceUsed);
+        }
+        row.mLineWrap = (flags & FLAG_LINE_WRAP) != 0;
+        row.mHasNonOneWidthOrSurrogateChars = (flags & FLAG_HAS_NON_ONE_WIDTH_OR_SURROGATE_CHARS) != 0;
+
+        int runCount = (int) readVarLong(buffer);
+        int column = 0;
+        for (int i = 0; i < runCount; i++) {
+            int length = (int) readVarLong(buffer);
+            long style = readVarLong(buffer);
+            if (length < 0 || column + length > columns)
+                throw new IOException("Invalid scrollback row style run of length " + length + " at column " + column);
+            Arrays.fill(row.mStyle, column, column + length, style);
+            column += length;
+        }
+        return row;
+    }
+
+    private void writeByte(int value) {
+        if (mEncodePosition == mEncodeBuffer.length)
+            mEncodeBuffer = Arrays.copyOf(mEncodeBuffer, mEncodeBuffer.length * 2);
+        mEncodeBuffer[mEncodePosition++] = (byte) value;
+    }
+
+    /** Write an unsigned LEB128 encoded value. Values below 128, like ASCII chars, take one byte. */
+    private void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid scrollback varint");
+    }
+
+    private void write(Segment segment, byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!mWriteBuffer.hasRemaining()) flushWriteBuffer(segment);
+            int count = Math.min(length - offset, mWriteBuffer.remaining());
+            mWriteBuffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    private void flushWriteBuffer(Segment segment) throws IOException {
+        mWriteBuffer.flip();
+        while (mWriteBuffer.hasRemaining())
+            segment.channel.write(mWriteBuffer);
+        mWriteBuffer.clear();
+    }
+
+    /** Write the row offsets of a segment to the end of its file and close it. */
+    private void sealSegment(Segment segment) throws IOException {
+        flushWriteBuffer(segment);
+
+        ByteBuffer index = ByteBuffer.allocate(segment.rowCount * 4 + 8);
+        for (int i = 0; i < segment.rowCount; i++)
+            index.putInt(segment.offsets[i]);
+        index.putInt(segment.rowCount);
+        index.putInt(SEGMENT_FILE_MAGIC);
+        index.flip();
+        while (index.hasRemaining())
+            segment.channel.write(index);
+
+        segment.channel.close();
+        segment.channel = null;
+        segment.offsets = null;
+    }
+
+    private TerminalRow readRow(long absoluteRow) throws IOException {
+        Segment segment = findSegment(absoluteRow);
+        int index = (int) (absoluteRow - segment.firstRow);
+
+        if (!segment.isSealed()) {
+            // Read the last segment from its file since it is still growing
+            flushWriteBuffer(segment);
+            int start = segment.offsets[index];
+            int end = (index + 1 < segment.rowCount) ? segment.offsets[index + 1] : (int) segment.dataSize;
+            ByteBuffer buffer = ByteBuffer.allocate(end - start);
+            while (buffer.hasRemaining()) {
+                if (segment.channel.read(buffer, start + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of scrollback segment file \"" + segment.file.getAbsolutePath() + "\"");
+            }
+            buffer.flip();
+            return decodeRow(buffer);
+        }
+
+        ByteBuffer mapped = mapSegment(segment).duplicate();
+        int indexPosition = mapped.limit() - 8 - segment.rowCount * 4;
+        int start = mapped.getInt(indexPosition + index * 4);
+        int end = (index + 1 < segment.rowCount) ? mapped.getInt(indexPosition + (index + 1) * 4) : indexPosition;
+        mapped.limit(end).position(start);
+        return decodeRow(mapped);
+    }
+
+    private Segment findSegment(long absoluteRow) {
+        // Binary search since there may be many segments for a large scrollback
+        int low = 0;
+        int high = mSegments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mSegments.get(middle).firstRow <= absoluteRow) low = middle;
+            else high = middle - 1;
+        }
+        return mSegments.get(low);
+    }
+
+    private MappedByteBuffer mapSegment(Segment segment) throws IOException {
+        MappedByteBuffer mapped = mMappedSegments.get(segment);
+        if (mapped != null) return mapped;
+
+        try (RandomAccessFile file = new RandomAccessFile(segment.file, "r")) {
+            // The mapping stays valid after the file is closed
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        if (mapped.limit() < 8 || mapped.getInt(mapped.limit() - 4) != SEGMENT_FILE_MAGIC ||
+            mapped.getInt(mapped.limit() - 8) != segment.rowCount)
+            throw new IOException("Invalid scrollback segment file \"" + segment.file.getAbsolutePath() + "\"");
+
+        mMappedSegments.put(segment, mapped);
+        if (mMappedSegments.size() > MAX_MAPPED_SEGMENTS) {
+            // Unmapped when garbage collected
+            Iterator<Segment> iterator = mMappedSegments.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+        return mapped;
+    }
+
+    /** Drop the rows before an absolute row and delete the segments that only contain dropped rows. */
+    private void dropRowsBefore(long absoluteRow) {
+        mFirstRow = absoluteRow;
+        while (mSegments.size() > 1 && mSegments.get(1).firstRow <= mFirstRow) {
+            Segment segment = mSegments.remove(0);
+            mMappedSegments.remove(segment);
+            if (!segment.file.delete())
+                Logger.logWarn(mClient, LOG_TAG, "Failed to delete scrollback segment file \"" + segment.file.getAbsolutePath() + "\"");
+        }
+    }
+
+    private void closeSegments() {
+        for (Segment segment : mSegments) {
+            if (segment.channel != null) {
+                try {
+                    segment.channel.close();
+                } catch (IOException e) {
+                    // Ignore, the file is deleted anyway.
+                }
+                segment.channel = null;
+            }
+        }
+        mSegments.clear();
+        mMappedSegments.clear();
+        mRowCache.clear();
+        mWriteBuffer.clear();
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().startsWith(SEGMENT_FILE_PREFIX) && !file.delete())
+                Logger.logWarn(mClient, LOG_TAG, "Failed to delete scrollback segment file \"" + file.getAbsolutePath() + "\"");
+        }
+    }
+
+    private static final class Segment {
+
+        final File file;
+        /** The absolute number of the first row in the segment. */
+        final long firstRow;
+        int rowCount;
+        /** The number of bytes of row data written, including the ones not flushed yet. */
+        long dataSize;
+        /** The channel the segment is written through, or {@code null} if it is sealed. */
+        FileChannel channel;
+        /** The offsets of the rows in the segment, or {@code null} if it is sealed. */
+        int[] offsets;
+
+        Segment(File file, long firstRow) {
+            this.file = file;
+            this.firstRow = firstRow;
+        }
+
+        boolean isSealed() {
+            return channel == null;
+        }
+
+    }
+
+}
@@ -1,12 +1,13 @@
 package com.termux.terminal;
 
-import android.annotation.SuppressLint;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.system.ErrnoException;
 import android.system.Os;
 import android.system.OsConstants;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileInputStream;
@@ -15,14 +16,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 /**
  * A terminal session, consisting of a process coupled to a terminal interface.
  * <p>
  * The subprocess will be executed by the constructor, and when the size is made known by a call to
  * {@link #updateSize(int, int, int, int)} terminal emulation will begin and threads will be spawned to handle the subprocess I/O.
- * All terminal emulation and callback methods will be performed on the main thread.
+ * All terminal emulation and callback methods will be performed on the main thread, or on the
+ * {@link Executor} set with {@link #setMainThreadExecutor(Executor)}.
  * <p>
  * The child process may be exited forcefully by using the {@link #finishIfRunning()} method.
  * <p>
@@ -30,9 +35,6 @@ import java.util.UUID;
  */
 public final class TerminalSession extends TerminalOutput {
 
-    private static final int MSG_NEW_INPUT = 1;
-    private static final int MSG_PROCESS_EXITED = 4;
-
     public final String mHandle = UUID.randomUUID().toString();
 
     TerminalEmulator mEmulator;
@@ -50,6 +52,19 @@ public final class TerminalSession extends TerminalOutput {
     /** Buffer to write translate code points into utf8 before writing to mTerminalToProcessIOQueue */
     private final byte[] mUtf8InputBuffer = new byte[5];
 
+    /** The utf8 of code points written between {@link #startInputBatch()} and {@link #finishInputBatch()}. */
+    private byte[] mInputBatch = new byte[64];
+    private int mInputBatchLength;
+    private int mInputBatchDepth;
+
+    /**
+     * The pastes and input waiting to be written by the paste writer thread, which writes all input
+     * while it runs so that input is written in order. Guarded by itself.
+     */
+    private final ArrayDeque<InputStream> mPendingInput = new ArrayDeque<>();
+    /** If the paste writer thread is running. Guarded by {@link #mPendingInput}. */
+    private boolean mPasteWriterRunning;
+
     /** Callback which gets notified when a session finishes or changes title. */
     TerminalSessionClient mClient;
 
@@ -61,14 +76,30 @@ public final class TerminalSession extends TerminalOutput {
 
     /**
      * The file descriptor referencing the master half of a pseudo-terminal pair, resulting from calling
-     * {@link JNI#createSubprocess(String, String, String[], String[], int[], int, int, int, int)}.
+     * {@link JNI#createSubprocess(String, String, String[], String[], int[], int, int, int, int)},
+     * or of an already started subprocess passed to the constructor.
      */
     private int mTerminalFileDescriptor;
 
     /** Set by the application for user identification of session, not by terminal. */
     public String mSessionName;
 
-    final Handler mMainThreadHandler = new MainThreadHandler();
+    /**
+     * The executor the output and exit of the process are dispatched to by the I/O threads, which is
+     * the main thread unless set with {@link #setMainThreadExecutor(Executor)}.
+     */
+    private Executor mMainThreadExecutor;
+
+    /** Appends the output queued by the reader thread to the emulator on the {@link #mMainThreadExecutor}. */
+    private final Runnable mProcessOutputRunnable = new Runnable() {
+        @Override
+        public void run() {
+            processOutput();
+        }
+    };
+
+    /** Buffer the output of the process is read into from {@link #mProcessToTerminalIOQueue}. */
+    private final byte[] mReceiveBuffer = new byte[4 * 1024];
 
     private final String mShellPath;
     private final String mCwd;
@@ -76,6 +107,27 @@ public final class TerminalSession extends TerminalOutput {
     private final String[] mEnv;
     private final Integer mTranscriptRows;
 
+    /**
+     * The {@link SystemClock#elapsedRealtime()} time of the last output of the process or input
+     * written to it, used to find sessions that have not been used recently on memory pressure.
+     */
+    private volatile long mLastActivityTime = SystemClock.elapsedRealtime();
+
+    private final TerminalSessionMetrics mMetrics = new TerminalSessionMetrics(this);
+
+    /** The predictor of the echo of input, if enabled with {@link #setLocalEchoEnabled(boolean)}. */
+    private LocalEchoPredictor mLocalEchoPredictor;
+
+    /** The directory of the disk backed {@link TerminalScrollback}, if enabled. */
+    private File mScrollbackDirectory;
+    private int mScrollbackMaxRows;
+
+    /** The recorder of the output of the process, if started with {@link #startRecording(File)}. */
+    private volatile TerminalRecorder mRecorder;
+
+
+    /** The max time to wait for the output of the process to be read after it exits. */
+    private static final long PROCESS_OUTPUT_DRAIN_TIMEOUT_MILLIS = 1000;
 
     private static final String LOG_TAG = "TerminalSession";
 
@@ -88,6 +140,41 @@ public final class TerminalSession extends TerminalOutput {
         this.mClient = client;
     }
 
+    /**
+     * Create a session for an already started subprocess, like a pre-started shell, instead of
+     * starting a new one when the emulator is initialized. The pseudo-terminal window size of the
+     * subprocess is set when the emulator is initialized.
+     *
+     * @param terminalFileDescriptor The file descriptor of the master half of the pseudo-terminal
+     *                               of the subprocess.
+     * @param shellPid The pid of the subprocess.
+     */
+    public TerminalSession(int terminalFileDescriptor, int shellPid, String cwd, Integer transcriptRows, TerminalSessionClient client) {
+        this(null, cwd, null, null, transcriptRows, client);
+        this.mTerminalFileDescriptor = terminalFileDescriptor;
+        this.mShellPid = shellPid;
+    }
+
+    /**
+     * Kill a subprocess that was started for a session but was never passed to one, close its
+     * pseudo-terminal and wait for it to exit so that it does not remain a zombie. This will block
+     * the calling thread until the subprocess has exited.
+     *
+     * @param terminalFileDescriptor The file descriptor of the master half of the pseudo-terminal
+     *                               of the subprocess.
+     * @param shellPid The pid of the subprocess.
+     * @return Returns the exit status of the subprocess.
+     */
+    public static int killSubprocess(int terminalFileDescriptor, int shellPid) {
+        try {
+            Os.kill(shellPid, OsConstants.SIGKILL);
+        } catch (ErrnoException e) {
+            // Already exited
+        }
+        JNI.close(terminalFileDescriptor);
+        return JNI.waitFor(shellPid);
+    }
+
     /**
      * @param client The {@link TerminalSessionClient} interface implementation to allow
      *               for communication between {@link TerminalSession} and its client.
@@ -99,6 +186,94 @@ public final class TerminalSession extends TerminalOutput {
             mEmulator.updateTerminalSessionClient(client);
     }
 
+    /**
+     * Set the {@link Executor} the output and exit of the process are dispatched to, on which
+     * terminal emulation and the {@link TerminalSessionClient} callbacks are then performed instead
+     * of the main thread. This allows driving a session without an Android {@link Looper}, like in
+     * host tests. This must be called before the emulator is initialized.
+     */
+    public void setMainThreadExecutor(Executor executor) {
+        if (mEmulator != null) throw new IllegalStateException("Emulator already initialized");
+        mMainThreadExecutor = executor;
+    }
+
+    /**
+     * Enable a disk backed {@link TerminalScrollback} that rows evicted from the transcript are
+     * appended to. This must be called before the emulator is initialized. Call
+     * {@link #closeDiskScrollback()} to delete its files when the session is removed.
+     *
+     * @param directory The directory to write segment files to, which is not shared with other sessions.
+     * @param maxRows The max number of rows to keep in the scrollback.
+     */
+    public void setDiskScrollback(File directory, int maxRows) {
+        mScrollbackDirectory = directory;
+        mScrollbackMaxRows = maxRows;
+    }
+
+    /** Close the disk backed {@link TerminalScrollback} of the emulator, if any, and delete its files. */
+    public void closeDiskScrollback() {
+        TerminalScrollback scrollback = (mEmulator == null) ? null : mEmulator.getScrollback();
+        if (scrollback != null) scrollback.close();
+        mScrollbackDirectory = null;
+    }
+
+    /** Get the {@link SystemClock#elapsedRealtime()} time the session was last written to or had output. */
+    public long getLastActivityTime() {
+        return mLastActivityTime;
+    }
+
+    /** Get the {@link TerminalSessionMetrics} of the I/O and rendering of the session. */
+    public TerminalSessionMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Enable or disable showing a prediction of the echo of typed input before the process echoes
+     * it, which hides the latency of slow connections like ssh over a mobile network. See
+     * {@link LocalEchoPredictor}. This must be called from the main thread.
+     */
+    public void setLocalEchoEnabled(boolean enabled) {
+        if (enabled == (mLocalEchoPredictor != null)) return;
+        mLocalEchoPredictor = enabled ? new LocalEchoPredictor() : null;
+    }
+
+    /** Get the {@link LocalEchoPredictor} of the session, or {@code null} if local echo is not enabled. */
+    public LocalEchoPredictor getLocalEchoPredictor() {
+        return mLocalEchoPredictor;
+    }
+
+    /**
+     * Start recording the output of the process and the resizes of the terminal to a file in the
+     * asciicast v2 format, replacing a recording already started. See {@link TerminalRecorder}.
+     * This must be called from the main thread after the emulator is initialized.
+     *
+     * @param file The file to write the recording to.
+     * @return Returns the {@link TerminalRecorder} that was started.
+     */
+    public TerminalRecorder startRecording(File file) throws IOException {
+        if (mEmulator == null) throw new IllegalStateException("Emulator not initialized");
+        stopRecording();
+        mRecorder = new TerminalRecorder(file, mEmulator.mColumns, mEmulator.mRows, mClient);
+        return mRecorder;
+    }
+
+    /**
+     * Stop recording the output of the process, if it is being recorded.
+     *
+     * @return Returns the {@link TerminalRecorder} that was stopped, or {@code null} if none.
+     */
+    public TerminalRecorder stopRecording() {
+        TerminalRecorder recorder = mRecorder;
+        mRecorder = null;
+        if (recorder != null) recorder.close();
+        return recorder;
+    }
+
+    /** Check if the output of the process is being recorded. */
+    public boolean isRecording() {
+        return mRecorder != null;
+    }
+
     /** Inform the attached pty of the new size and reflow or initialize the emulator. */
     public void updateSize(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
         if (mEmulator == null) {
@@ -106,6 +281,9 @@ public final class TerminalSession extends TerminalOutput {
         } else {
             JNI.setPtyWindowSize(mTerminalFileDescriptor, rows, columns, cellWidthPixels, cellHeightPixels);
             mEmulator.resize(columns, rows, cellWidthPixels, cellHeightPixels);
+            if (mLocalEchoPredictor != null) mLocalEchoPredictor.reset();
+            TerminalRecorder recorder = mRecorder;
+            if (recorder != null) recorder.onResize(columns, rows);
         }
     }
 
@@ -122,15 +300,24 @@ public final class TerminalSession extends TerminalOutput {
      */
     public void initializeEmulator(int columns, int rows, int cellWidthPixels, int cellHeightPixels) {
         mEmulator = new TerminalEmulator(this, columns, rows, cellWidthPixels, cellHeightPixels, mTranscriptRows, mClient);
+        if (mScrollbackDirectory != null && mScrollbackMaxRows > 0)
+            mEmulator.setScrollback(new TerminalScrollback(mScrollbackDirectory, mScrollbackMaxRows, mClient));
 
-        int[] processId = new int[1];
-        mTerminalFileDescriptor = JNI.createSubprocess(mShellPath, mCwd, mArgs, mEnv, processId, rows, columns, cellWidthPixels, cellHeightPixels);
-        mShellPid = processId[0];
+        if (mShellPath == null && mShellPid > 0) {
+            // Subprocess was already started, so only inform it of the window size
+            JNI.setPtyWindowSize(mTerminalFileDescriptor, rows, columns, cellWidthPixels, cellHeightPixels);
+        } else {
+            int[] processId = new int[1];
+            mTerminalFileDescriptor = JNI.createSubprocess(mShellPath, mCwd, mArgs, mEnv, processId, rows, columns, cellWidthPixels, cellHeightPixels);
+            mShellPid = processId[0];
+        }
         mClient.setTerminalShellPid(this, mShellPid);
 
         final FileDescriptor terminalFileDescriptorWrapped = wrapFileDescriptor(mTerminalFileDescriptor, mClient);
+        if (mMainThreadExecutor == null) mMainThreadExecutor = new MainThreadExecutor();
+        final Executor mainThreadExecutor = mMainThreadExecutor;
 
-        new Thread("TermSessionInputReader[pid=" + mShellPid + "]") {
+        final Thread readerThread = new Thread("TermSessionInputReader[pid=" + mShellPid + "]") {
             @Override
             public void run() {
                 try (InputStream termIn = new FileInputStream(terminalFileDescriptorWrapped)) {
@@ -138,14 +325,18 @@ public final class TerminalSession extends TerminalOutput {
                     while (true) {
                         int read = termIn.read(buffer);
                         if (read == -1) return;
+                        mMetrics.onBytesRead(read);
+                        TerminalRecorder recorder = mRecorder;
+                        if (recorder != null) recorder.onOutput(buffer, 0, read);
                         if (!mProcessToTerminalIOQueue.write(buffer, 0, read)) return;
-                        mMainThreadHandler.sendEmptyMessage(MSG_NEW_INPUT);
+                        mainThreadExecutor.execute(mProcessOutputRunnable);
                     }
                 } catch (Exception e) {
                     // Ignore, just shutting down.
                 }
             }
-        }.start();
+        };
+        readerThread.start();
 
         new Thread("TermSessionOutputWriter[pid=" + mShellPid + "]") {
             @Override
@@ -156,6 +347,7 @@ public final class TerminalSession extends TerminalOutput {
                         int bytesToWrite = mTerminalToProcessIOQueue.read(buffer, true);
                         if (bytesToWrite == -1) return;
                         termOut.write(buffer, 0, bytesToWrite);
+                        mMetrics.onBytesWritten(bytesToWrite);
                     }
                 } catch (IOException e) {
                     // Ignore.
@@ -166,8 +358,21 @@ public final class TerminalSession extends TerminalOutput {
         new Thread("TermSessionWaiter[pid=" + mShellPid + "]") {
             @Override
             public void run() {
-                int processExitCode = JNI.waitFor(mShellPid);
-                mMainThreadHandler.sendMessage(mMainThreadHandler.obtainMessage(MSG_PROCESS_EXITED, processExitCode));
+                final int processExitCode = JNI.waitFor(mShellPid);
+                try {
+                    // Wait for the reader thread to read the output the process wrote before it exited,
+                    // which would otherwise be lost, unless the pseudoterminal is still open in another process
+                    readerThread.join(PROCESS_OUTPUT_DRAIN_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    // Ignore.
+                }
+                mainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        processOutput();
+                        onProcessExited(processExitCode);
+                    }
+                });
             }
         }.start();
 
@@ -176,7 +381,102 @@ public final class TerminalSession extends TerminalOutput {
     /** Write data to the shell process. */
     @Override
     public void write(byte[] data, int offset, int count) {
-        if (mShellPid > 0) mTerminalToProcessIOQueue.write(data, offset, count);
+        flushInputBatch();
+        writeInput(data, offset, count);
+    }
+
+    private void writeInput(byte[] data, int offset, int count) {
+        if (mShellPid > 0) {
+            mLastActivityTime = SystemClock.elapsedRealtime();
+            LocalEchoPredictor localEchoPredictor = mLocalEchoPredictor;
+            synchronized (mPendingInput) {
+                if (mPasteWriterRunning) {
+                    // Writing now could block until the paste is written, and would mix the input into it
+                    if (localEchoPredictor != null) localEchoPredictor.reset();
+                    mPendingInput.add(new ByteArrayInputStream(Arrays.copyOfRange(data, offset, offset + count)));
+                    return;
+                }
+            }
+            if (localEchoPredictor != null) localEchoPredictor.onInput(mEmulator, data, offset, count);
+            mTerminalToProcessIOQueue.write(data, offset, count);
+        }
+    }
+
+    /**
+     * Write pasted text to the shell process from a paste writer thread, so that the main thread
+     * does not block while the process reads a large paste. Input written while the paste is being
+     * written is written after it.
+     */
+    @Override
+    public void writePaste(CharSequence text, boolean bracketed) {
+        flushInputBatch();
+        if (mShellPid <= 0) return;
+        mLastActivityTime = SystemClock.elapsedRealtime();
+        if (mLocalEchoPredictor != null) mLocalEchoPredictor.reset();
+
+        // The text is encoded on the paste writer thread, so it must not be changed while it is
+        PasteEncoder pasteEncoder = new PasteEncoder(text.toString(), bracketed);
+        synchronized (mPendingInput) {
+            mPendingInput.add(pasteEncoder);
+            if (mPasteWriterRunning) return;
+            mPasteWriterRunning = true;
+        }
+
+        new Thread("TermSessionPasteWriter[pid=" + mShellPid + "]") {
+            @Override
+            public void run() {
+                final byte[] buffer = new byte[PasteEncoder.CHUNK_SIZE];
+                while (true) {
+                    InputStream input;
+                    synchronized (mPendingInput) {
+                        input = mPendingInput.poll();
+                        if (input == null) {
+                            mPasteWriterRunning = false;
+                            return;
+                        }
+                    }
+
+                    try {
+                        int length;
+                        while ((length = input.read(buffer, 0, buffer.length)) != -1) {
+                            // Blocks while the queue is full until the process reads its input
+                            if (!mTerminalToProcessIOQueue.write(buffer, 0, length)) {
+                                // The process has exited
+                                synchronized (mPendingInput) {
+                                    mPendingInput.clear();
+                                    mPasteWriterRunning = false;
+                                }
+                                return;
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Ignore, the input streams do not throw.
+                    }
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Start collecting the code points written with {@link #writeCodePoint(boolean, int)} to write
+     * them to the process in a single write on {@link #finishInputBatch()}, like the text committed
+     * by an input method. Batches can be nested. This must be called from the main thread.
+     */
+    public void startInputBatch() {
+        mInputBatchDepth++;
+    }
+
+    /** Finish a batch started with {@link #startInputBatch()} and write its code points. */
+    public void finishInputBatch() {
+        if (mInputBatchDepth > 0 && --mInputBatchDepth == 0)
+            flushInputBatch();
+    }
+
+    private void flushInputBatch() {
+        if (mInputBatchLength == 0) return;
+        int length = mInputBatchLength;
+        mInputBatchLength = 0;
+        writeInput(mInputBatch, 0, length);
     }
 
     /** Write the Unicode code point to the terminal encoded in UTF-8. */
@@ -213,7 +513,14 @@ public final class TerminalSession extends TerminalOutput {
             /* 10xxxxxx continuation byte with following 6 bits */
             mUtf8InputBuffer[bufferPosition++] = (byte) (0b10000000 | (codePoint & 0b111111));
         }
-        write(mUtf8InputBuffer, 0, bufferPosition);
+        if (mInputBatchDepth > 0) {
+            if (mInputBatchLength + bufferPosition > mInputBatch.length)
+                mInputBatch = Arrays.copyOf(mInputBatch, Math.max(mInputBatch.length * 2, mInputBatchLength + bufferPosition));
+            System.arraycopy(mUtf8InputBuffer, 0, mInputBatch, mInputBatchLength, bufferPosition);
+            mInputBatchLength += bufferPosition;
+        } else {
+            write(mUtf8InputBuffer, 0, bufferPosition);
+        }
     }
 
     public TerminalEmulator getEmulator() {
@@ -222,12 +529,14 @@ public final class TerminalSession extends TerminalOutput {
 
     /** Notify the {@link #mClient} that the screen has changed. */
     protected void notifyScreenUpdate() {
+        mMetrics.onScreenUpdate();
         mClient.onTextChanged(this);
     }
 
     /** Reset state for terminal emulator state. */
     public void reset() {
         mEmulator.reset();
+        if (mLocalEchoPredictor != null) mLocalEchoPredictor.reset();
         notifyScreenUpdate();
     }
 
@@ -253,6 +562,7 @@ public final class TerminalSession extends TerminalOutput {
         mTerminalToProcessIOQueue.close();
         mProcessToTerminalIOQueue.close();
         JNI.close(mTerminalFileDescriptor);
+        stopRecording();
     }
 
     @Override
@@ -333,39 +643,48 @@ public final class TerminalSession extends TerminalOutput {
         return result;
     }
 
-    @SuppressLint("HandlerLeak")
-    class MainThreadHandler extends Handler {
+    /** Append the output of the process queued by the reader thread to the emulator. */
+    private void processOutput() {
+        int bytesRead = mProcessToTerminalIOQueue.read(mReceiveBuffer, false);
+        if (bytesRead > 0) {
+            mLastActivityTime = SystemClock.elapsedRealtime();
+            long startTime = System.nanoTime();
+            mEmulator.append(mReceiveBuffer, bytesRead);
+            mMetrics.onBytesParsed(bytesRead, System.nanoTime() - startTime);
+            if (mLocalEchoPredictor != null) mLocalEchoPredictor.onOutput(mEmulator);
+            notifyScreenUpdate();
+        }
+    }
 
-        final byte[] mReceiveBuffer = new byte[4 * 1024];
+    private void onProcessExited(int exitCode) {
+        cleanupResources(exitCode);
+        mLocalEchoPredictor = null;
+
+        String exitDescription = "\r\n[Process completed";
+        if (exitCode > 0) {
+            // Non-zero process exit.
+            exitDescription += " (code " + exitCode + ")";
+        } else if (exitCode < 0) {
+            // Negated signal.
+            exitDescription += " (signal " + (-exitCode) + ")";
+        }
+        exitDescription += " - press Enter]";
 
-        @Override
-        public void handleMessage(Message msg) {
-            int bytesRead = mProcessToTerminalIOQueue.read(mReceiveBuffer, false);
-            if (bytesRead > 0) {
-                mEmulator.append(mReceiveBuffer, bytesRead);
-                notifyScreenUpdate();
-            }
+        byte[] bytesToWrite = exitDescription.getBytes(StandardCharsets.UTF_8);
+        mEmulator.append(bytesToWrite, bytesToWrite.length);
+        notifyScreenUpdate();
 
-            if (msg.what == MSG_PROCESS_EXITED) {
-                int exitCode = (Integer) msg.obj;
-                cleanupResources(exitCode);
-
-                String exitDescription = "\r\n[Process completed";
-                if (exitCode > 0) {
-                    // Non-zero process exit.
-                    exitDescription += " (code " + exitCode + ")";
-                } else if (exitCode < 0) {
-                    // Negated signal.
-                    exitDescription += " (signal " + (-exitCode) + ")";
-                }
-                exitDescription += " - press Enter]";
+        mClient.onSessionFinished(this);
+    }
 
-                byte[] bytesToWrite = exitDescription.getBytes(StandardCharsets.UTF_8);
-                mEmulator.append(bytesToWrite, bytesToWrite.length);
-                notifyScreenUpdate();
+    /** The default {@link #mMainThreadExecutor}, which posts to the main thread. */
+    private static final class MainThreadExecutor implements Executor {
 
-                mClient.onSessionFinished(TerminalSession.this);
-            }
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable runnable) {
+            mHandler.post(runnable);
         }
 
     }
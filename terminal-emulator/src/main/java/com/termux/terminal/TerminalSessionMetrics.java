@@ -0,0 +1,184 @@
+package com.termux.terminal;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counters and timings of the I/O and rendering of a {@link TerminalSession}.
+ * <p>
+ * Each value is only updated by a single thread, the reader or writer thread of the session or the
+ * main thread, so that recording it is a plain field update that is cheap enough to always be
+ * done. The values can be read from any thread, but are not synchronized with each other.
+ */
+public final class TerminalSessionMetrics {
+
+    /** The number of most recent frames whose render times are kept for percentiles. */
+    static final int FRAME_TIMES_SIZE = 256;
+
+    private final TerminalSession mSession;
+
+    private volatile long mBytesRead;
+    private volatile long mBytesWritten;
+    private volatile long mParsedBytes;
+    private volatile long mParseTimeNanos;
+    private volatile long mScreenUpdates;
+
+    private final long[] mFrameTimes = new long[FRAME_TIMES_SIZE];
+    private volatile long mFrameCount;
+    private volatile long mMaxFrameTime;
+
+    TerminalSessionMetrics(TerminalSession session) {
+        mSession = session;
+    }
+
+    /** Called from the reader thread after bytes have been read from the pty. */
+    void onBytesRead(int count) {
+        mBytesRead += count;
+    }
+
+    /** Called from the writer thread after bytes have been written to the pty. */
+    void onBytesWritten(int count) {
+        mBytesWritten += count;
+    }
+
+    /** Called from the main thread after bytes have been passed to {@link TerminalEmulator#append(byte[], int)}. */
+    void onBytesParsed(int count, long nanos) {
+        mParsedBytes += count;
+        mParseTimeNanos += nanos;
+    }
+
+    /** Called from the main thread when the client is notified of a screen update. */
+    void onScreenUpdate() {
+        mScreenUpdates++;
+    }
+
+    /**
+     * Record the time taken to render a frame of the session. This must only be called from the
+     * main thread.
+     *
+     * @param nanos The render time in nanoseconds.
+     */
+    public void onFrameRendered(long nanos) {
+        long frameCount = mFrameCount;
+        mFrameTimes[(int) (frameCount % FRAME_TIMES_SIZE)] = nanos;
+        if (nanos > mMaxFrameTime) mMaxFrameTime = nanos;
+        mFrameCount = frameCount + 1;
+    }
+
+    /** Get the number of bytes read from the pty. */
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /** Get the number of bytes written to the pty. */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /** Get the number of bytes parsed by the emulator. */
+    public long getParsedBytes() {
+        return mParsedBytes;
+    }
+
+    /** Get the total time in nanoseconds the emulator took to parse {@link #getParsedBytes()}. */
+    public long getParseTimeNanos() {
+        return mParseTimeNanos;
+    }
+
+    /** Get the number of bytes the emulator parses per second, or 0 if nothing has been parsed yet. */
+    public long getParseBytesPerSecond() {
+        long parseTimeNanos = mParseTimeNanos;
+        return parseTimeNanos == 0 ? 0 : (long) (mParsedBytes * 1_000_000_000d / parseTimeNanos);
+    }
+
+    /** Get the number of times the client was notified of a screen update. */
+    public long getScreenUpdates() {
+        return mScreenUpdates;
+    }
+
+    /** Get the number of frames rendered. */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /** Get the longest render time in nanoseconds of any frame. */
+    public long getMaxFrameTime() {
+        return mMaxFrameTime;
+    }
+
+    /**
+     * Get percentiles of the render times of the last {@link #FRAME_TIMES_SIZE} frames.
+     *
+     * @param percentiles The percentiles to get, between 0 and 100.
+     * @return Returns the render time in nanoseconds for each percentile, which are all 0 if no
+     * frame has been rendered yet.
+     */
+    public long[] getFrameTimePercentiles(double... percentiles) {
+        int count = (int) Math.min(mFrameCount, FRAME_TIMES_SIZE);
+        long[] result = new long[percentiles.length];
+        if (count == 0) return result;
+
+        long[] frameTimes = Arrays.copyOf(mFrameTimes, count);
+        Arrays.sort(frameTimes);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100 * count) - 1;
+            result[i] = frameTimes[Math.max(0, Math.min(count - 1, index))];
+        }
+        return result;
+    }
+
+    /** Get the number of bytes currently queued from the pty to the emulator. */
+    public int getOutputQueueBytes() {
+        return mSession.mProcessToTerminalIOQueue.getStoredBytes();
+    }
+
+    /** Get the max number of bytes that were queued from the pty to the emulator. */
+    public int getOutputQueueMaxBytes() {
+        return mSession.mProcessToTerminalIOQueue.getMaxStoredBytes();
+    }
+
+    /** Get the number of times reading from the pty waited since the emulator did not keep up. */
+    public long getOutputQueueStalls() {
+        return mSession.mProcessToTerminalIOQueue.getWriteStalls();
+    }
+
+    /** Get the number of bytes currently queued from the terminal to the pty. */
+    public int getInputQueueBytes() {
+        return mSession.mTerminalToProcessIOQueue.getStoredBytes();
+    }
+
+    /** Get the max number of bytes that were queued from the terminal to the pty. */
+    public int getInputQueueMaxBytes() {
+        return mSession.mTerminalToProcessIOQueue.getMaxStoredBytes();
+    }
+
+    /** Get the number of times writing to the session waited since the process did not read its input. */
+    public long getInputQueueStalls() {
+        return mSession.mTerminalToProcessIOQueue.getWriteStalls();
+    }
+
+    /**
+     * Get the estimated number of bytes of heap used by the buffers of the emulator. This must
+     * only be called from the main thread, since it reads the rows of the buffers.
+     */
+    public long getTranscriptMemoryUsage() {
+        TerminalEmulator emulator = mSession.getEmulator();
+        return emulator == null ? 0 : emulator.getMemoryUsage();
+    }
+
+    /** Get the metrics as a string. This must only be called from the main thread, see {@link #getTranscriptMemoryUsage()}. */
+    @Override
+    public String toString() {
+        long[] frameTimes = getFrameTimePercentiles(50, 90, 99);
+        return String.format(Locale.US,
+            "read=%d written=%d parsed=%d parseTime=%.1fms parseRate=%dKB/s screenUpdates=%d" +
+                " outputQueue=%d/%d(max %d, %d stalls) inputQueue=%d/%d(max %d, %d stalls)" +
+                " frames=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms transcriptMemory=%dKB",
+            mBytesRead, mBytesWritten, mParsedBytes, mParseTimeNanos / 1e6, getParseBytesPerSecond() / 1024, mScreenUpdates,
+            getOutputQueueBytes(), mSession.mProcessToTerminalIOQueue.getCapacity(), getOutputQueueMaxBytes(), getOutputQueueStalls(),
+            getInputQueueBytes(), mSession.mTerminalToProcessIOQueue.getCapacity(), getInputQueueMaxBytes(), getInputQueueStalls(),
+            mFrameCount, frameTimes[0] / 1e6, frameTimes[1] / 1e6, frameTimes[2] / 1e6, mMaxFrameTime / 1e6,
+            getTranscriptMemoryUsage() / 1024);
+    }
+
+}
@@ -51,4 +51,28 @@ public class ByteQueueTest extends TestCase {
 		assertEquals(0, q.read(new byte[128], false));
 	}
 
+	public void testStoredBytesAndWriteStalls() throws Exception {
+		final ByteQueue q = new ByteQueue(4);
+		assertTrue(q.write(new byte[]{1, 2, 3}, 0, 3));
+		assertEquals(3, q.getStoredBytes());
+		assertEquals(0, q.getWriteStalls());
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				byte[] arr = new byte[2];
+				int total = 0;
+				while (total < 8) total += q.read(arr, true);
+			}
+		};
+		reader.start();
+		// Does not fit in the queue, so has to wait for the reader
+		assertTrue(q.write(new byte[]{4, 5, 6, 7, 8}, 0, 5));
+		reader.join();
+
+		assertEquals(0, q.getStoredBytes());
+		assertEquals(4, q.getMaxStoredBytes());
+		assertTrue(q.getWriteStalls() >= 1);
+	}
+
 }
@@ -0,0 +1,215 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Allocation and throughput budgets of the hot paths of the emulator, like
+ * {@link TerminalEmulator#append(byte[], int)}, for canonical workloads, so that per-byte
+ * allocations or slowdowns reintroduced into them fail the tests.
+ * <p>
+ * The bytes allocated are measured with the allocated bytes counter of the current thread of
+ * {@link com.sun.management.ThreadMXBean}, and the throughput is measured relative to a loop that
+ * decodes the same input as UTF-8, so that the budget does not depend on the speed of the host.
+ */
+public class EmulatorBudgetTest extends TestCase {
+
+	private static final int COLUMNS = 80;
+	private static final int ROWS = 24;
+
+	/** The size of the input of each workload. */
+	private static final int INPUT_SIZE = 1024 * 1024;
+
+	/** The size of the chunks the input is appended in, which is the read size of the session. */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * The number of runs of a workload before it is measured, so that it is compiled and the rows
+	 * of the transcript, which are allocated as it fills, are allocated.
+	 */
+	private static final int WARMUP_RUNS = 5;
+	/** The number of measured runs of a workload, of which the fastest is used. */
+	private static final int MEASURED_RUNS = 5;
+
+	/**
+	 * The bytes that may be allocated for each MB of input that does not resize the emulator, which
+	 * allocates nothing once the transcript is filled, with slack for incidental allocations. A
+	 * single object allocated for each code point or line exceeds it.
+	 */
+	private static final long MAX_ALLOCATED_BYTES_PER_MEGABYTE = 64 * 1024;
+
+	private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = getThreadMXBean();
+
+	/** A workload that appends its input to an emulator. */
+	private interface Workload {
+		void run(TerminalEmulator emulator, byte[] input, byte[] chunk);
+	}
+
+	/** Append the input to the emulator in chunks, like {@link TerminalSession} does. */
+	private static final Workload APPEND = new Workload() {
+		@Override
+		public void run(TerminalEmulator emulator, byte[] input, byte[] chunk) {
+			for (int offset = 0; offset < input.length; offset += CHUNK_SIZE) {
+				int length = Math.min(CHUNK_SIZE, input.length - offset);
+				System.arraycopy(input, offset, chunk, 0, length);
+				emulator.append(chunk, length);
+			}
+		}
+	};
+
+	private static final class Result {
+		long allocatedBytes = Long.MAX_VALUE;
+		long nanos = Long.MAX_VALUE;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) return null;
+		com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+		if (!sunThreadMXBean.isThreadAllocatedMemorySupported()) return null;
+		sunThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+		return sunThreadMXBean;
+	}
+
+	private static long getAllocatedBytes() {
+		return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/** Repeat the text until the input is {@link #INPUT_SIZE} bytes. */
+	private static byte[] repeat(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(INPUT_SIZE + bytes.length);
+		while (output.size() < INPUT_SIZE) output.write(bytes, 0, bytes.length);
+		return output.toByteArray();
+	}
+
+	/** Decode the input as UTF-8, which is the least work that has to be done for each byte. */
+	private static int decodeUtf8(byte[] input) {
+		int sum = 0;
+		int codePoint = 0;
+		int remaining = 0;
+		for (byte b : input) {
+			if (remaining > 0) {
+				codePoint = (codePoint << 6) | (b & 0b111111);
+				if (--remaining == 0) sum += codePoint;
+			} else if ((b & 0b10000000) == 0) {
+				sum += b;
+			} else if ((b & 0b11100000) == 0b11000000) {
+				codePoint = b & 0b11111;
+				remaining = 1;
+			} else if ((b & 0b11110000) == 0b11100000) {
+				codePoint = b & 0b1111;
+				remaining = 2;
+			} else {
+				codePoint = b & 0b111;
+				remaining = 3;
+			}
+		}
+		return sum;
+	}
+
+	private static long measureDecodeNanos(byte[] input) {
+		// The results are asserted so that the decoding is not optimized away
+		int expectedSum = decodeUtf8(input);
+		for (int i = 0; i < WARMUP_RUNS; i++) assertEquals(expectedSum, decodeUtf8(input));
+		long nanos = Long.MAX_VALUE;
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			long startTime = System.nanoTime();
+			int sum = decodeUtf8(input);
+			nanos = Math.min(nanos, System.nanoTime() - startTime);
+			assertEquals(expectedSum, sum);
+		}
+		return nanos;
+	}
+
+	private static Result measure(Workload workload, byte[] input) {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		Result result = new Result();
+		TerminalEmulator emulator = new TerminalEmulator(new TerminalTestCase.MockTerminalOutput(), COLUMNS, ROWS,
+			TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS,
+			TerminalEmulator.DEFAULT_TERMINAL_TRANSCRIPT_ROWS, null);
+		for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+			long allocatedBytes = getAllocatedBytes();
+			long startTime = System.nanoTime();
+			workload.run(emulator, input, chunk);
+			long nanos = System.nanoTime() - startTime;
+			allocatedBytes = getAllocatedBytes() - allocatedBytes;
+			if (i >= WARMUP_RUNS) {
+				result.nanos = Math.min(result.nanos, nanos);
+				result.allocatedBytes = Math.min(result.allocatedBytes, allocatedBytes);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Run the workload and assert its budget.
+	 *
+	 * @param maxAllocatedBytesPerMegabyte The max bytes allocated for each MB of input.
+	 * @param minRelativeThroughput The min throughput relative to decoding the input as UTF-8.
+	 */
+	private static void assertBudget(String name, Workload workload, byte[] input,
+									 long maxAllocatedBytesPerMegabyte, double minRelativeThroughput) {
+		if (THREAD_MX_BEAN == null) return;
+
+		Result result = measure(workload, input);
+		long decodeNanos = measureDecodeNanos(input);
+		double megabytes = input.length / (1024d * 1024d);
+		long allocatedBytesPerMegabyte = (long) (result.allocatedBytes / megabytes);
+		double relativeThroughput = (double) decodeNanos / result.nanos;
+
+		assertTrue(name + ": " + allocatedBytesPerMegabyte + " bytes allocated per MB, budget is " + maxAllocatedBytesPerMegabyte,
+			allocatedBytesPerMegabyte <= maxAllocatedBytesPerMegabyte);
+		assertTrue(String.format(Locale.US, "%s: %.4f of UTF-8 decoding throughput, budget is %.4f", name,
+			relativeThroughput, minRelativeThroughput), relativeThroughput >= minRelativeThroughput);
+	}
+
+	public void testPlainScrolling() {
+		assertBudget("plain scrolling", APPEND, repeat("The quick brown fox jumps over the lazy dog 0123456789\r\n"), MAX_ALLOCATED_BYTES_PER_MEGABYTE, 0.004);
+	}
+
+	public void testSgrColoredOutput() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 16; i++)
+			text.append("\033[1;38;5;").append(i * 16).append(";48;2;").append(i).append(";20;40mword").append(i).append("\033[0m ");
+		text.append("\r\n");
+		assertBudget("SGR colored output", APPEND, repeat(text.toString()), MAX_ALLOCATED_BYTES_PER_MEGABYTE, 0.01);
+	}
+
+	public void testCjkText() {
+		assertBudget("CJK text", APPEND, repeat("終端エミュレータの性能試験、中文字符和한국어 텍스트。\r\n"), MAX_ALLOCATED_BYTES_PER_MEGABYTE, 0.0003);
+	}
+
+	public void testAltScreenRedraws() {
+		StringBuilder text = new StringBuilder("\033[?1049h");
+		for (int row = 1; row <= ROWS; row++)
+			text.append("\033[").append(row).append(";1H\033[2K\033[7m").append(row).append("\033[27m ~ status line of a full screen redraw");
+		text.append("\033[H\033[2J\033[?1049l");
+		assertBudget("alt-screen redraws", APPEND, repeat(text.toString()), MAX_ALLOCATED_BYTES_PER_MEGABYTE, 0.0015);
+	}
+
+	public void testResizeStorm() {
+		final Workload resizeStorm = new Workload() {
+			@Override
+			public void run(TerminalEmulator emulator, byte[] input, byte[] chunk) {
+				for (int offset = 0, i = 0; offset < input.length; offset += CHUNK_SIZE, i++) {
+					int length = Math.min(CHUNK_SIZE, input.length - offset);
+					System.arraycopy(input, offset, chunk, 0, length);
+					emulator.append(chunk, length);
+					// Resize for every 64 KB of input, like when rotating or showing the keyboard
+					if (i % 16 == 15)
+						emulator.resize((i % 32 == 15) ? COLUMNS / 2 : COLUMNS, (i % 32 == 15) ? ROWS / 2 : ROWS,
+							TerminalTestCase.INITIAL_CELL_WIDTH_PIXELS, TerminalTestCase.INITIAL_CELL_HEIGHT_PIXELS);
+				}
+			}
+		};
+		// Each of the 16 resizes for each MB reflows the transcript into a new buffer, of about 1.5 MB
+		assertBudget("resize storm", resizeStorm, repeat("The quick brown fox jumps over the lazy dog 0123456789\r\n"),
+			16 * 2 * 1024 * 1024 + MAX_ALLOCATED_BYTES_PER_MEGABYTE, 0.002);
+	}
+
+}
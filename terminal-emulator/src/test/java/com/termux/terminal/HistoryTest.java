@@ -30,4 +30,23 @@ public class HistoryTest extends TerminalTestCase {
 		enterString("LMN").assertLinesAre("111", "IJK", "LMN", "444").assertHistoryStartsWith("FGH", "CDE");
 	}
 
+	public void testTrimTranscript() {
+		withTerminalSized(3, 3).enterString("111222333444555666777888999");
+		long memoryUsage = mTerminal.getMemoryUsage();
+		assertEquals(6, mTerminal.getScreen().getActiveTranscriptRows());
+
+		assertEquals(4, mTerminal.trimTranscript(2));
+		assertEquals(2, mTerminal.getScreen().getActiveTranscriptRows());
+		assertTrue(mTerminal.getMemoryUsage() < memoryUsage);
+		assertLinesAre("777", "888", "999");
+		assertHistoryStartsWith("666", "555");
+		assertEquals(0, mTerminal.trimTranscript(2));
+
+		// Trimmed rows are reused when the transcript grows again
+		enterString("\r\nAAA\r\nBBB\r\nCCC");
+		assertLinesAre("AAA", "BBB", "CCC");
+		assertHistoryStartsWith("999", "888", "777", "666", "555");
+		assertEquals(5, mTerminal.getScreen().getActiveTranscriptRows());
+	}
+
 }
@@ -0,0 +1,149 @@
+package com.termux.terminal;
+
+import java.nio.charset.StandardCharsets;
+
+public class LocalEchoPredictorTest extends TerminalTestCase {
+
+	private LocalEchoPredictor mPredictor;
+	private long mTime;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mPredictor = new LocalEchoPredictor();
+		mTime = System.nanoTime() / 1_000_000;
+	}
+
+	private void type(String input) {
+		byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+		mPredictor.onInput(mTerminal, bytes, 0, bytes.length, mTime);
+	}
+
+	private void echo(String output) {
+		enterString(output);
+		mPredictor.onOutput(mTerminal, mTime);
+	}
+
+	public void testPredictionsAreShownOnceEchoIsConfirmed() {
+		withTerminalSized(10, 3);
+		enterString("$ ");
+
+		type("a");
+		assertEquals(1, mPredictor.getPredictionCount());
+		assertFalse(mPredictor.hasDisplayedPredictions());
+		echo("a");
+		assertEquals(0, mPredictor.getPredictionCount());
+		assertEquals(1, mPredictor.getConfirmedCount());
+
+		type("bc");
+		assertTrue(mPredictor.hasDisplayedPredictions());
+		assertEquals(2, mPredictor.getPredictionCount());
+		assertEquals(3, mPredictor.getPredictionColumn(0));
+		assertEquals('b', mPredictor.getPredictionCodePoint(0));
+		assertEquals('c', mPredictor.getPredictionCodePoint(1));
+		assertEquals(0, mPredictor.getCursorRow());
+		assertEquals(5, mPredictor.getCursorCol());
+
+		echo("b");
+		assertEquals(1, mPredictor.getPredictionCount());
+		assertTrue(mPredictor.hasDisplayedPredictions());
+		echo("c");
+		assertEquals(0, mPredictor.getPredictionCount());
+		assertEquals(0, mPredictor.getFailedCount());
+	}
+
+	public void testBackspace() {
+		withTerminalSized(10, 3);
+		enterString("$ ");
+		type("a");
+		echo("a");
+
+		type("b");
+		type("\u007f");
+		assertEquals(1, mPredictor.getPredictionCount());
+		assertEquals(' ', mPredictor.getPredictionCodePoint(0));
+		assertEquals(3, mPredictor.getCursorCol());
+		type("c");
+		assertEquals(1, mPredictor.getPredictionCount());
+		assertEquals('c', mPredictor.getPredictionCodePoint(0));
+		assertEquals(4, mPredictor.getCursorCol());
+
+		// The screen shows the replaced prediction before it is erased
+		echo("b");
+		assertEquals(1, mPredictor.getPredictionCount());
+		echo("\b \b");
+		assertEquals(1, mPredictor.getPredictionCount());
+		echo("c");
+		assertEquals(0, mPredictor.getPredictionCount());
+		assertEquals(0, mPredictor.getFailedCount());
+
+		// The prompt is not erased
+		type("\u007f\u007f");
+		assertEquals(0, mPredictor.getPredictionCount());
+	}
+
+	public void testNoEchoIsNotShown() {
+		withTerminalSized(20, 3);
+		enterString("$ ");
+		type("a");
+		echo("a");
+		type("\r");
+		assertEquals(0, mPredictor.getPredictionCount());
+		echo("\r\nPassword: ");
+
+		type("secret");
+		assertEquals(6, mPredictor.getPredictionCount());
+		assertFalse(mPredictor.hasDisplayedPredictions());
+		mTime += LocalEchoPredictor.PREDICTION_TIMEOUT_MILLIS + 1;
+		echo("");
+		assertEquals(0, mPredictor.getPredictionCount());
+		assertEquals(0, mPredictor.getFailedCount());
+	}
+
+	public void testNotPredicted() {
+		withTerminalSized(5, 3);
+		// Inside of a line
+		enterString("$ xy\033[2D");
+		type("a");
+		assertEquals(0, mPredictor.getPredictionCount());
+
+		// At the end of a line
+		enterString("\033[K");
+		type("ab");
+		assertEquals(2, mPredictor.getPredictionCount());
+		type("c");
+		assertEquals(0, mPredictor.getPredictionCount());
+
+		// Wide characters and escape sequences
+		type("果");
+		assertEquals(0, mPredictor.getPredictionCount());
+		type("a\033[A");
+		assertEquals(0, mPredictor.getPredictionCount());
+
+		// The alternate screen buffer
+		enterString("\033[?1049h");
+		type("a");
+		assertEquals(0, mPredictor.getPredictionCount());
+	}
+
+	public void testBackoffAfterFailures() {
+		withTerminalSized(20, 3);
+		enterString("$ ");
+		for (int i = 0; i < LocalEchoPredictor.MAX_FAILURES; i++) {
+			type("a");
+			echo("a");
+			type("b");
+			assertTrue(mPredictor.hasDisplayedPredictions());
+			echo("x");
+			assertEquals(0, mPredictor.getPredictionCount());
+			assertEquals(i + 1, mPredictor.getFailedCount());
+		}
+
+		type("a");
+		assertEquals(0, mPredictor.getPredictionCount());
+		mTime += LocalEchoPredictor.FAILURE_BACKOFF_MILLIS;
+		type("a");
+		assertEquals(1, mPredictor.getPredictionCount());
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class PasteEncoderTest extends TestCase {
+
+	private static String encode(String text, boolean bracketed, int chunkSize) {
+		PasteEncoder encoder = new PasteEncoder(text, bracketed);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[chunkSize];
+		int length;
+		while ((length = encoder.read(buffer, 0, buffer.length)) != -1) {
+			assertTrue(length > 0 && length <= chunkSize);
+			output.write(buffer, 0, length);
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public void testSanitize() {
+		assertEquals("hi", encode("hi", false, 4096));
+		assertEquals("", encode("", false, 4096));
+		assertEquals("a\rb\rc\r\rd", encode("a\nb\r\nc\r\rd", false, 4096));
+		assertEquals("[201~ab", encode("\033[201~a\u0085b", false, 4096));
+	}
+
+	public void testBracketed() {
+		assertEquals("\033[200~hi\033[201~", encode("hi", true, 4096));
+		assertEquals("\033[200~\033[201~", encode("", true, 4096));
+		assertEquals("\033[200~a\r[201~\033[201~", encode("a\n\033[201~", true, 1));
+	}
+
+	public void testChunks() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			text.append("line ").append(i).append(" é果😀\r\n");
+		String expected = "\033[200~" + text.toString().replace("\r\n", "\r") + "\033[201~";
+
+		for (int chunkSize : new int[]{1, 2, 3, 5, 4096})
+			assertEquals(expected, encode(text.toString(), true, chunkSize));
+	}
+
+	public void testUnpairedSurrogates() {
+		assertEquals("a�b�", encode("a\uD83Db\uDE00", false, 4096));
+	}
+
+}
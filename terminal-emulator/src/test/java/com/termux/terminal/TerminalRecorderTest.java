@@ -0,0 +1,229 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TerminalRecorderTest extends TestCase {
+
+	private File mFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mFile = File.createTempFile("recording", ".cast");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mFile.delete();
+		super.tearDown();
+	}
+
+	private static void output(TerminalRecorder recorder, byte[] bytes, int from, int to) {
+		byte[] buffer = new byte[4096];
+		System.arraycopy(bytes, from, buffer, 0, to - from);
+		recorder.onOutput(buffer, 0, to - from);
+	}
+
+	public void testAppendTime() {
+		StringBuilder builder = new StringBuilder();
+		TerminalRecorder.appendTime(builder, 1_234_567_890L);
+		assertEquals("1.234567", builder.toString());
+		builder.setLength(0);
+		TerminalRecorder.appendTime(builder, 5_000L);
+		assertEquals("0.000005", builder.toString());
+	}
+
+	public void testRecordAndReplay() throws Exception {
+		TerminalRecorder recorder = new TerminalRecorder(mFile, 10, 3, null);
+		byte[] bytes = "a\"\\é\r\n\033[1mb果".getBytes(StandardCharsets.UTF_8);
+		// Split the UTF-8 sequence of é over two reads
+		output(recorder, bytes, 0, 4);
+		output(recorder, bytes, 4, bytes.length);
+		recorder.onResize(12, 4);
+		output(recorder, "c".getBytes(StandardCharsets.UTF_8), 0, 1);
+		recorder.close();
+		recorder.awaitClose();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+			assertTrue(reader.readLine().startsWith("{\"version\": 2, \"width\": 10, \"height\": 3"));
+			assertTrue(reader.readLine().endsWith(", \"o\", \"a\\\"\\\\\"]"));
+			assertTrue(reader.readLine().endsWith(", \"o\", \"é\\r\\n\\u001b[1mb果\"]"));
+			assertTrue(reader.readLine().endsWith(", \"r\", \"12x4\"]"));
+			assertTrue(reader.readLine().endsWith(", \"o\", \"c\"]"));
+			assertNull(reader.readLine());
+		}
+
+		try (TerminalReplay replay = TerminalReplay.open(mFile)) {
+			TerminalEmulator emulator = replay.replay(false, null);
+			assertEquals(4, replay.getEventCount());
+			assertEquals(bytes.length + 1, replay.getOutputBytes());
+			assertEquals(12, emulator.mColumns);
+			assertEquals(4, emulator.mRows);
+			assertEquals("a\"\\é\nb果c", emulator.getScreen().getTranscriptText());
+		}
+	}
+
+	/** A writer that blocks writing the events after the header until it is released. */
+	private static final class BlockingWriter extends Writer {
+		final StringBuilder mText = new StringBuilder();
+		final CountDownLatch mBlocked = new CountDownLatch(1);
+		final CountDownLatch mReleased = new CountDownLatch(1);
+		private boolean mHeaderWritten;
+
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException {
+			if (mHeaderWritten) {
+				mBlocked.countDown();
+				try {
+					mReleased.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			mHeaderWritten = true;
+			synchronized (mText) {
+				mText.append(chars, offset, length);
+			}
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/** Start a thread that outputs the reads to the recorder, like the reader thread of a session. */
+	private static Thread startOutput(final TerminalRecorder recorder, final int reads) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				byte[] buffer = new byte[4096];
+				for (int i = 0; i < reads; i++) {
+					Arrays.fill(buffer, (byte) ('a' + i % 26));
+					recorder.onOutput(buffer, 0, buffer.length);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	/** Wait for the thread to wait in {@link TerminalRecorder#onOutput}. */
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (thread.getState() != Thread.State.TIMED_WAITING) {
+			assertTrue(thread.isAlive());
+			assertTrue(System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	public void testOutputWaitsWhenWriterFallsBehind() throws Exception {
+		BlockingWriter writer = new BlockingWriter();
+		TerminalRecorder recorder = new TerminalRecorder(mFile, writer, 10, 3, 4, null);
+		byte[] line = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+		// The writer thread takes the first event and then blocks writing it
+		recorder.onOutput(line, 0, line.length);
+		assertTrue(writer.mBlocked.await(10, TimeUnit.SECONDS));
+		// The first 4 reads fill the chunks, the 5th is merged into the last chunk and the 6th waits
+		Thread reader = startOutput(recorder, 16);
+		awaitWaiting(reader);
+		// The resize is queued after the output before it even though the chunks are full
+		recorder.onResize(12, 4);
+		writer.mReleased.countDown();
+		reader.join();
+		recorder.close();
+		recorder.awaitClose();
+
+		String text = writer.mText.toString();
+		assertFalse(text, text.contains("\"m\""));
+		try (TerminalReplay replay = new TerminalReplay(new StringReader(text), null)) {
+			TerminalEmulator emulator = replay.replay(false, null);
+			assertEquals(line.length + 16 * 4096, replay.getOutputBytes());
+			assertEquals(12, emulator.mColumns);
+			assertEquals(4, emulator.mRows);
+		}
+		// The resize comes after the 5th read of e and before the 6th read of f
+		int resizeIndex = text.indexOf(", \"r\", \"12x4\"]");
+		assertTrue(text, text.lastIndexOf("eeee", resizeIndex) >= 0);
+		assertEquals(-1, text.indexOf("eeee", resizeIndex));
+		assertEquals(-1, text.lastIndexOf("ffff", resizeIndex));
+		assertTrue(text, text.indexOf("ffff", resizeIndex) >= 0);
+	}
+
+	public void testOutputIsDroppedWithMarkerWhenWriterStalls() throws Exception {
+		BlockingWriter writer = new BlockingWriter();
+		TerminalRecorder recorder = new TerminalRecorder(mFile, writer, 10, 3, 4, null);
+		byte[] line = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+		recorder.onOutput(line, 0, line.length);
+		assertTrue(writer.mBlocked.await(10, TimeUnit.SECONDS));
+		// The 6th read gives up waiting for a chunk after MAX_OUTPUT_WAIT_MILLIS
+		long startTime = System.nanoTime();
+		startOutput(recorder, 6).join();
+		assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(TerminalRecorder.MAX_OUTPUT_WAIT_MILLIS));
+		recorder.onResize(12, 4);
+		writer.mReleased.countDown();
+		recorder.close();
+		recorder.awaitClose();
+
+		String text = writer.mText.toString();
+		assertTrue(text, text.contains(", \"m\", \"" + TerminalRecorder.LOST_OUTPUT_MARKER + "4096\"]\n"));
+		assertTrue(text, text.endsWith(", \"r\", \"12x4\"]\n"));
+		try (TerminalReplay replay = new TerminalReplay(new StringReader(text), null)) {
+			replay.replay(false, null);
+			fail("Replaying a recording with dropped output must fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("dropped 4096 bytes"));
+		}
+	}
+
+	public void testTrailingPartialSequenceIsFlushedOnClose() throws Exception {
+		TerminalRecorder recorder = new TerminalRecorder(mFile, 10, 3, null);
+		byte[] bytes = "aé".getBytes(StandardCharsets.UTF_8);
+		// Close before the second byte of é is read
+		output(recorder, bytes, 0, 2);
+		recorder.close();
+		recorder.awaitClose();
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+			reader.readLine();
+			assertTrue(reader.readLine().endsWith(", \"o\", \"a\"]"));
+			assertTrue(reader.readLine().endsWith(", \"o\", \"\uFFFD\"]"));
+			assertNull(reader.readLine());
+		}
+	}
+
+	public void testReplayIgnoresInputEvents() throws Exception {
+		String recording = "{\"version\": 2, \"width\": 5, \"height\": 2}\n" +
+			"[0.1, \"i\", \"x\"]\n" +
+			"[0.2, \"o\", \"\\u0041b\"]\n";
+		final int[] events = new int[1];
+		TerminalReplay replay = new TerminalReplay(new StringReader(recording), null);
+		TerminalEmulator emulator = replay.replay(true, new TerminalReplay.Listener() {
+			@Override
+			public void onEvent(TerminalEmulator emulator, long timeNanos) {
+				assertEquals(200_000_000L, timeNanos);
+				events[0]++;
+			}
+		});
+		assertEquals(1, events[0]);
+		assertTrue(replay.getReplayTimeNanos() >= 200_000_000L);
+		assertEquals("Ab", emulator.getScreen().getTranscriptText());
+	}
+
+}
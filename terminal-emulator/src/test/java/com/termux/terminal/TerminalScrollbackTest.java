@@ -0,0 +1,164 @@
+package com.termux.terminal;
+
+import java.io.File;
+
+public class TerminalScrollbackTest extends TerminalTestCase {
+
+	private File mDirectory;
+	private TerminalScrollback mScrollback;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mDirectory = new File(System.getProperty("java.io.tmpdir"), "terminal-scrollback-test-" + System.nanoTime());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (mScrollback != null) mScrollback.close();
+		super.tearDown();
+	}
+
+	/** Create a terminal that keeps {@link TerminalEmulator#TERMINAL_TRANSCRIPT_ROWS_MIN} rows in memory. */
+	private TerminalTestCase withScrollback(int columns, int rows, int maxRows) {
+		mTerminal = new TerminalEmulator(mOutput, columns, rows, INITIAL_CELL_WIDTH_PIXELS, INITIAL_CELL_HEIGHT_PIXELS, TerminalEmulator.TERMINAL_TRANSCRIPT_ROWS_MIN, null);
+		mScrollback = new TerminalScrollback(mDirectory, maxRows, null);
+		mTerminal.setScrollback(mScrollback);
+		return this;
+	}
+
+	public void testEvictedRowsAreKept() {
+		withScrollback(5, 3, 1000);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			enterString((i == 0 ? "" : "\r\n") + i);
+			expected.append(i == 0 ? "" : "\n").append(i);
+		}
+
+		assertEquals(300 - 3 - 97, mScrollback.getRowCount());
+		assertEquals(300 - 3, mTerminal.getScreen().getActiveTranscriptRows());
+		assertLinesAre("297  ", "298  ", "299  ");
+		assertHistoryStartsWith("296  ", "295  ");
+		assertLineIs(-97, "200  ");
+		assertLineIs(-98, "199  ");
+		assertLineIs(-297, "0    ");
+		assertEquals(expected.toString(), mTerminal.getScreen().getTranscriptText());
+		assertEquals("1\n2", mTerminal.getScreen().getSelectedText(0, -296, 5, -295));
+		assertEquals("199\n200", mTerminal.getScreen().getSelectedText(0, -98, 5, -97));
+	}
+
+	public void testStyleAndLineWrapAreKept() {
+		withScrollback(3, 3, 1000);
+		enterString("\033[31mAB\033[0mC果X");
+		for (int i = 0; i < 100; i++)
+			enterString("\r\n");
+		assertEquals(2, mScrollback.getRowCount());
+
+		TerminalRow row = mTerminal.getScreen().getRow(-mTerminal.getScreen().getActiveTranscriptRows());
+		assertTrue(row.mLineWrap);
+		assertEquals(TextStyle.encode(1, TextStyle.COLOR_INDEX_BACKGROUND, 0), row.getStyle(0));
+		assertEquals(TextStyle.encode(1, TextStyle.COLOR_INDEX_BACKGROUND, 0), row.getStyle(1));
+		assertEquals(TextStyle.NORMAL, row.getStyle(2));
+		assertEquals("ABC果X", mTerminal.getScreen().getSelectedText(0, -mTerminal.getScreen().getActiveTranscriptRows(), 3, -mTerminal.getScreen().getActiveTranscriptRows() + 1));
+	}
+
+	public void testMaxRows() {
+		withScrollback(5, 3, 10);
+		for (int i = 0; i < 300; i++)
+			enterString((i == 0 ? "" : "\r\n") + i);
+
+		assertEquals(10, mScrollback.getRowCount());
+		assertEquals(10 + 97, mTerminal.getScreen().getActiveTranscriptRows());
+		assertLineIs(-107, "190  ");
+	}
+
+	public void testClearTranscript() {
+		withScrollback(5, 3, 1000);
+		for (int i = 0; i < 300; i++)
+			enterString((i == 0 ? "" : "\r\n") + i);
+		assertTrue(mScrollback.getRowCount() > 0);
+
+		// "CSI 3 J" - Erase saved lines
+		enterString("\033[3J");
+		assertEquals(0, mScrollback.getRowCount());
+		assertEquals(0, mTerminal.getScreen().getActiveTranscriptRows());
+
+		for (int i = 300; i <= 400; i++)
+			enterString("\r\n" + i);
+		assertEquals(4, mScrollback.getRowCount());
+		assertLineIs(-101, "297  ");
+	}
+
+	public void testTrimTranscriptSpillsRows() {
+		withScrollback(5, 3, 1000);
+		for (int i = 0; i < 50; i++)
+			enterString((i == 0 ? "" : "\r\n") + i);
+		assertEquals(0, mScrollback.getRowCount());
+
+		assertEquals(47 - 10, mTerminal.trimTranscript(10));
+		assertEquals(37, mScrollback.getRowCount());
+		assertEquals(47, mTerminal.getScreen().getActiveTranscriptRows());
+		assertLineIs(-47, "0    ");
+		assertLineIs(-11, "36   ");
+		assertLineIs(-10, "37   ");
+
+		for (int i = 50; i < 200; i++)
+			enterString("\r\n" + i);
+		assertEquals(197, mTerminal.getScreen().getActiveTranscriptRows());
+		assertEquals(100, mScrollback.getRowCount());
+		assertLineIs(-197, "0    ");
+		assertLineIs(-98, "99   ");
+	}
+
+	public void testRowsAreResizedToColumns() {
+		withScrollback(5, 3, 1000);
+		for (int i = 0; i < 110; i++)
+			enterString((i == 0 ? "" : "\r\n") + "abcd" + (i % 10));
+		assertEquals(10, mScrollback.getRowCount());
+
+		TerminalRow row = mScrollback.getRow(0, 3);
+		assertEquals(3, row.mStyle.length);
+		assertEquals("abc", new String(row.mText, 0, row.getSpaceUsed()));
+
+		row = mScrollback.getRow(0, 8);
+		assertEquals(8, row.mStyle.length);
+		assertEquals("abcd0   ", new String(row.mText, 0, row.getSpaceUsed()));
+	}
+
+	public void testSealedSegments() {
+		int rowCount = TerminalScrollback.MAX_SEGMENT_ROWS * 2 + 100;
+		mScrollback = new TerminalScrollback(mDirectory, rowCount, null);
+		TerminalRow row = new TerminalRow(10, TextStyle.NORMAL);
+		for (int i = 0; i < rowCount; i++) {
+			String text = Integer.toString(i);
+			row.clear(TextStyle.NORMAL);
+			for (int j = 0; j < text.length(); j++)
+				row.setChar(j, text.charAt(j), TextStyle.encode(i % 256, TextStyle.COLOR_INDEX_BACKGROUND, 0));
+			mScrollback.appendRow(row, 10);
+		}
+		mScrollback.appendRow(null, 10);
+
+		assertEquals(rowCount, mScrollback.getRowCount());
+		File[] files = mDirectory.listFiles();
+		assertNotNull(files);
+		assertEquals(3, files.length);
+		// Rows take less space than the 10 chars and 10 styles of a TerminalRow without object overhead
+		assertTrue(mScrollback.getDataSize() < (long) rowCount * 10 * (2 + 8) / 2);
+
+		// The first row was dropped when the null row was appended
+		for (int i : new int[]{0, 1, TerminalScrollback.MAX_SEGMENT_ROWS - 2, TerminalScrollback.MAX_SEGMENT_ROWS - 1, rowCount - 2}) {
+			TerminalRow readRow = mScrollback.getRow(i, 10);
+			assertEquals(Integer.toString(i + 1), new String(readRow.mText, 0, readRow.getSpaceUsed()).trim());
+			assertEquals(TextStyle.encode((i + 1) % 256, TextStyle.COLOR_INDEX_BACKGROUND, 0), readRow.getStyle(0));
+			assertEquals(TextStyle.NORMAL, readRow.getStyle(9));
+		}
+		assertTrue(mScrollback.getRow(rowCount - 1, 10).isBlank());
+
+		mScrollback.close();
+		assertFalse(mDirectory.exists());
+		assertEquals(0, mScrollback.getRowCount());
+		mScrollback.appendRow(row, 10);
+		assertEquals(0, mScrollback.getRowCount());
+	}
+
+}
@@ -0,0 +1,233 @@
+package com.termux.terminal;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end tests of {@link TerminalSession} with real processes on a pseudoterminal of the host,
+ * covering the whole pipeline from the reader thread through the {@link ByteQueue} to the emulator.
+ * They only run with the JNI built for the host, with `./gradlew test -PhostPty`, and are skipped
+ * otherwise.
+ * <p>
+ * The throughput of the output tests and the echo round-trip latency are asserted against loose
+ * bounds that only catch gross regressions, like the reader thread stalling, and are reported in
+ * the assertion messages.
+ */
+public class TerminalSessionHostTest {
+
+	private static final boolean HOST_PTY = Boolean.getBoolean("termux.hostPty");
+
+	private static final long TIMEOUT_MILLIS = 60_000;
+
+	/** The min throughput from starting the process until it has exited and its output was appended. */
+	private static final double MIN_MEGABYTES_PER_SECOND = 1;
+
+	/** The max median and 99th percentile time from writing a line until it was echoed back. */
+	private static final long MAX_ECHO_LATENCY_MEDIAN_MILLIS = 50;
+	private static final long MAX_ECHO_LATENCY_P99_MILLIS = 500;
+
+	/** Runs the output and exit of a session dispatched to it on the test thread. */
+	static final class HostSessionDriver implements Executor, TerminalSessionClient {
+
+		private final LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<>();
+		final TerminalSession mSession;
+		boolean mFinished;
+
+		HostSessionDriver(String... command) {
+			mSession = new TerminalSession(command[0], System.getProperty("java.io.tmpdir"), command,
+				new String[]{"TERM=xterm-256color", "PATH=/usr/local/bin:/usr/bin:/bin"}, 1000, this);
+			mSession.setMainThreadExecutor(this);
+			mSession.updateSize(80, 24, 10, 20);
+		}
+
+		@Override
+		public void execute(Runnable runnable) {
+			mQueue.add(runnable);
+		}
+
+		/** Run the dispatched runnables until the process has exited. */
+		void runUntilFinished() throws InterruptedException {
+			long startTime = System.nanoTime();
+			while (!mFinished) runNext(startTime);
+		}
+
+		/** Run the dispatched runnables until the transcript ends with the text. */
+		void runUntilTranscriptEndsWith(String text) throws InterruptedException {
+			long startTime = System.nanoTime();
+			while (!mSession.getEmulator().getScreen().getTranscriptText().endsWith(text)) runNext(startTime);
+		}
+
+		private void runNext(long startTime) throws InterruptedException {
+			long remainingMillis = TIMEOUT_MILLIS - (System.nanoTime() - startTime) / 1_000_000;
+			Runnable runnable = mQueue.poll(Math.max(0, remainingMillis), TimeUnit.MILLISECONDS);
+			if (runnable == null) Assert.fail("Timed out after " + TIMEOUT_MILLIS + " ms");
+			runnable.run();
+		}
+
+		@Override
+		public void onTextChanged(TerminalSession changedSession) {
+		}
+
+		@Override
+		public void onTitleChanged(TerminalSession changedSession) {
+		}
+
+		@Override
+		public void onSessionFinished(TerminalSession finishedSession) {
+			mFinished = true;
+		}
+
+		@Override
+		public void onCopyTextToClipboard(TerminalSession session, String text) {
+		}
+
+		@Override
+		public void onPasteTextFromClipboard(TerminalSession session) {
+		}
+
+		@Override
+		public void onBell(TerminalSession session) {
+		}
+
+		@Override
+		public void onColorsChanged(TerminalSession session) {
+		}
+
+		@Override
+		public void onTerminalCursorStateChange(boolean state) {
+		}
+
+		@Override
+		public void setTerminalShellPid(TerminalSession session, int pid) {
+		}
+
+		@Override
+		public Integer getTerminalCursorStyle() {
+			return null;
+		}
+
+		@Override
+		public void logError(String tag, String message) {
+		}
+
+		@Override
+		public void logWarn(String tag, String message) {
+		}
+
+		@Override
+		public void logInfo(String tag, String message) {
+		}
+
+		@Override
+		public void logDebug(String tag, String message) {
+		}
+
+		@Override
+		public void logVerbose(String tag, String message) {
+		}
+
+		@Override
+		public void logStackTraceWithMessage(String tag, String message, Exception e) {
+		}
+
+		@Override
+		public void logStackTrace(String tag, Exception e) {
+		}
+	}
+
+	private static void assertFinished(HostSessionDriver driver, String lastLine) {
+		Assert.assertFalse(driver.mSession.isRunning());
+		Assert.assertEquals(0, driver.mSession.getExitStatus());
+		String transcript = driver.mSession.getEmulator().getScreen().getTranscriptText();
+		Assert.assertTrue(transcript.endsWith("[Process completed - press Enter]"));
+		Assert.assertTrue(transcript.substring(transcript.length() - 200), transcript.contains(lastLine + "\n"));
+	}
+
+	/** Run the session until it has finished and assert the throughput of its output since the start time. */
+	private static void runAndAssertThroughput(String name, HostSessionDriver driver, long startTime) throws InterruptedException {
+		driver.runUntilFinished();
+		long nanos = System.nanoTime() - startTime;
+		long bytesRead = driver.mSession.getMetrics().getBytesRead();
+		double megabytesPerSecond = bytesRead / (1024d * 1024d) / (nanos / 1_000_000_000d);
+		Assert.assertTrue(String.format(Locale.US, "%s: %.1f MB/s, %d bytes in %d ms, min is %.1f MB/s", name,
+			megabytesPerSecond, bytesRead, nanos / 1_000_000, MIN_MEGABYTES_PER_SECOND), megabytesPerSecond >= MIN_MEGABYTES_PER_SECOND);
+	}
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue("Host pseudoterminal tests are only run with -PhostPty", HOST_PTY);
+	}
+
+	@Test
+	public void testSeq() throws Exception {
+		long startTime = System.nanoTime();
+		HostSessionDriver driver = new HostSessionDriver("seq", "1", "500000");
+		runAndAssertThroughput("seq", driver, startTime);
+		assertFinished(driver, "499999\n500000");
+	}
+
+	@Test
+	public void testYes() throws Exception {
+		long startTime = System.nanoTime();
+		HostSessionDriver driver = new HostSessionDriver("sh", "-c", "yes | head -n 1000000");
+		runAndAssertThroughput("yes", driver, startTime);
+		assertFinished(driver, "y\ny");
+	}
+
+	@Test
+	public void testCat() throws Exception {
+		File file = File.createTempFile("cat", ".txt");
+		try {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < 79; i++) line.append((char) ('!' + i % 90));
+			byte[] lineBytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+			try (FileOutputStream output = new FileOutputStream(file)) {
+				for (int i = 0; i < 100_000; i++) output.write(lineBytes);
+			}
+
+			long startTime = System.nanoTime();
+			HostSessionDriver driver = new HostSessionDriver("cat", file.getAbsolutePath());
+			runAndAssertThroughput("cat", driver, startTime);
+			assertFinished(driver, line.toString());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testEcho() throws Exception {
+		HostSessionDriver driver = new HostSessionDriver("cat");
+		long[] latencies = new long[100];
+		for (int i = 0; i < latencies.length; i++) {
+			String text = "line" + i;
+			long startTime = System.nanoTime();
+			driver.mSession.write(text + "\r");
+			// The line is echoed by the pseudoterminal and then written by cat
+			driver.runUntilTranscriptEndsWith(text + "\n" + text);
+			latencies[i] = System.nanoTime() - startTime;
+		}
+		driver.mSession.write("\u0004");
+		driver.runUntilFinished();
+		Assert.assertEquals(0, driver.mSession.getExitStatus());
+
+		Arrays.sort(latencies);
+		double medianMillis = latencies[latencies.length / 2] / 1_000_000d;
+		double p99Millis = latencies[(int) Math.ceil(latencies.length * 0.99) - 1] / 1_000_000d;
+		String message = String.format(Locale.US, "echo round-trip latency: median %.2f ms, 99th percentile %.2f ms, max is %d and %d ms",
+			medianMillis, p99Millis, MAX_ECHO_LATENCY_MEDIAN_MILLIS, MAX_ECHO_LATENCY_P99_MILLIS);
+		Assert.assertTrue(message, medianMillis <= MAX_ECHO_LATENCY_MEDIAN_MILLIS);
+		Assert.assertTrue(message, p99Millis <= MAX_ECHO_LATENCY_P99_MILLIS);
+	}
+
+}
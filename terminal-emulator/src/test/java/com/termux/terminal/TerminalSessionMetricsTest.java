@@ -0,0 +1,43 @@
+package com.termux.terminal;
+
+import junit.framework.TestCase;
+
+public class TerminalSessionMetricsTest extends TestCase {
+
+	public void testFrameTimePercentiles() {
+		TerminalSessionMetrics metrics = new TerminalSessionMetrics(null);
+		long[] percentiles = metrics.getFrameTimePercentiles(50, 99);
+		assertEquals(0, percentiles[0]);
+		assertEquals(0, percentiles[1]);
+
+		for (int i = 1; i <= 100; i++)
+			metrics.onFrameRendered(i);
+		percentiles = metrics.getFrameTimePercentiles(0, 50, 90, 99, 100);
+		assertEquals(1, percentiles[0]);
+		assertEquals(50, percentiles[1]);
+		assertEquals(90, percentiles[2]);
+		assertEquals(99, percentiles[3]);
+		assertEquals(100, percentiles[4]);
+		assertEquals(100, metrics.getFrameCount());
+		assertEquals(100, metrics.getMaxFrameTime());
+	}
+
+	public void testOnlyRecentFramesAreKept() {
+		TerminalSessionMetrics metrics = new TerminalSessionMetrics(null);
+		metrics.onFrameRendered(1000);
+		for (int i = 0; i < TerminalSessionMetrics.FRAME_TIMES_SIZE; i++)
+			metrics.onFrameRendered(10);
+		assertEquals(10, metrics.getFrameTimePercentiles(100)[0]);
+		assertEquals(1000, metrics.getMaxFrameTime());
+	}
+
+	public void testParseBytesPerSecond() {
+		TerminalSessionMetrics metrics = new TerminalSessionMetrics(null);
+		assertEquals(0, metrics.getParseBytesPerSecond());
+		metrics.onBytesParsed(1000, 500_000_000);
+		metrics.onBytesParsed(1000, 500_000_000);
+		assertEquals(2000, metrics.getParsedBytes());
+		assertEquals(2000, metrics.getParseBytesPerSecond());
+	}
+
+}
@@ -65,6 +65,31 @@ public class TerminalTest extends TerminalTestCase {
 		assertEquals("\033[<0;10;10m", mOutput.getOutputAndClear());
 	}
 
+	public void testMouseMotionAndWheel() {
+		withTerminalSized(300, 300);
+		enterString("\033[?1002h\033[?1006h");
+		mTerminal.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON, 3, 4, true);
+		assertEquals("\033[<0;3;4M", mOutput.getOutputAndClear());
+		// Motion within the cell of the last event is not reported
+		mTerminal.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED, 3, 4, true);
+		assertEquals("", mOutput.getOutputAndClear());
+		mTerminal.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED, 120, 250, true);
+		mTerminal.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED, 120, 250, true);
+		assertEquals("\033[<32;120;250M", mOutput.getOutputAndClear());
+
+		mTerminal.sendMouseEvents(TerminalEmulator.MOUSE_WHEELDOWN_BUTTON, 5, 6, true, 3);
+		assertEquals("\033[<65;5;6M\033[<65;5;6M\033[<65;5;6M", mOutput.getOutputAndClear());
+		mTerminal.sendMouseEvents(TerminalEmulator.MOUSE_WHEELUP_BUTTON, 5, 6, true, 40);
+		assertEquals(40 * "\033[<64;5;6M".length(), mOutput.getOutputAndClear().length());
+
+		// Without SGR the cells are encoded as bytes and cells out of 8-bit range are not reported
+		enterString("\033[?1006l");
+		mTerminal.sendMouseEvents(TerminalEmulator.MOUSE_WHEELUP_BUTTON, 1, 2, true, 2);
+		assertEquals("\033[M`!\"\033[M`!\"", mOutput.getOutputAndClear());
+		mTerminal.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED, 250, 2, true);
+		assertEquals("", mOutput.getOutputAndClear());
+	}
+
 	public void testNormalization() throws UnsupportedEncodingException {
 		// int lowerCaseN = 0x006E;
 		// int combiningTilde = 0x0303;
@@ -181,7 +181,7 @@ public abstract class TerminalTestCase extends TestCase {
 	}
 
 	protected void assertLineIs(int line, String expected) {
-		TerminalRow l = mTerminal.getScreen().allocateFullLineIfNecessary(mTerminal.getScreen().externalToInternalRow(line));
+		TerminalRow l = mTerminal.getScreen().getRow(line);
 		char[] chars = l.mText;
 		int textLen = l.getSpaceUsed();
 		if (textLen != expected.length()) fail("Expected '" + expected + "' (len=" + expected.length() + "), was='"
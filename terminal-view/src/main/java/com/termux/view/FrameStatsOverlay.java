@@ -0,0 +1,117 @@
+package com.termux.view;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+
+import com.termux.terminal.TerminalSession;
+import com.termux.terminal.TerminalSessionMetrics;
+
+import java.util.Locale;
+
+/**
+ * A debug overlay drawn over the {@link TerminalView} that shows the render time of each frame and
+ * a sparkline of the recent render times, the number of rows of the screen, the rate the emulator
+ * parses output at and the number of bytes of output queued for the main thread. The
+ * {@link TerminalRenderer} draws every row of the screen for each frame, so the number of rows is
+ * also the number of rows drawn.
+ *
+ * It is only created while enabled with {@link TerminalView#setFrameStatsOverlayEnabled(boolean)}.
+ */
+final class FrameStatsOverlay {
+
+    /** The number of frames shown in the sparkline. */
+    private static final int SPARKLINE_FRAMES = 60;
+
+    /** The render time shown as a full height bar in the sparkline, which is a 60 fps frame. */
+    private static final float SPARKLINE_MAX_FRAME_TIME_MS = 16.6f;
+
+    /** The interval at which the parse rate is sampled. */
+    private static final long PARSE_RATE_SAMPLE_INTERVAL = 500;
+
+    private final float[] mFrameTimes = new float[SPARKLINE_FRAMES];
+    private int mFrameIndex;
+
+    private long mSampleTime;
+    private long mSampleParsedBytes;
+    private long mParseBytesPerSecond;
+
+    private final Paint mBackgroundPaint = new Paint();
+    private final Paint mTextPaint = new Paint();
+    private final Paint mBarPaint = new Paint();
+    private final Paint mSlowBarPaint = new Paint();
+
+    FrameStatsOverlay(float textSize) {
+        mBackgroundPaint.setColor(0xB0000000);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTypeface(Typeface.MONOSPACE);
+        mTextPaint.setAntiAlias(true);
+        mTextPaint.setTextSize(textSize);
+        mBarPaint.setColor(0xFF4CAF50);
+        mSlowBarPaint.setColor(0xFFF44336);
+    }
+
+    /**
+     * Record a rendered frame and draw the overlay.
+     *
+     * @param canvas The canvas to draw on.
+     * @param session The session of the view, if any.
+     * @param rows The number of rows of the screen.
+     * @param frameTimeNanos The time taken to render the frame in nanoseconds.
+     */
+    void draw(Canvas canvas, TerminalSession session, int rows, long frameTimeNanos) {
+        float frameTimeMs = frameTimeNanos / 1e6f;
+        mFrameTimes[mFrameIndex] = frameTimeMs;
+        mFrameIndex = (mFrameIndex + 1) % SPARKLINE_FRAMES;
+
+        int queuedBytes = 0;
+        if (session != null) {
+            TerminalSessionMetrics metrics = session.getMetrics();
+            queuedBytes = metrics.getOutputQueueBytes();
+            long now = SystemClock.uptimeMillis();
+            long elapsed = now - mSampleTime;
+            if (elapsed >= PARSE_RATE_SAMPLE_INTERVAL) {
+                long parsedBytes = metrics.getParsedBytes();
+                if (mSampleTime != 0)
+                    mParseBytesPerSecond = (parsedBytes - mSampleParsedBytes) * 1000 / elapsed;
+                mSampleTime = now;
+                mSampleParsedBytes = parsedBytes;
+            }
+        }
+
+        String[] lines = {
+            String.format(Locale.US, "frame %6.2fms", frameTimeMs),
+            String.format(Locale.US, "rows  %6d", rows),
+            String.format(Locale.US, "parse %6dKB/s", mParseBytesPerSecond / 1024),
+            String.format(Locale.US, "queue %6dB", queuedBytes)
+        };
+
+        float lineHeight = mTextPaint.getFontSpacing();
+        float padding = lineHeight / 4;
+        float width = mTextPaint.measureText("parse 000000KB/s") + 2 * padding;
+        float sparklineHeight = 2 * lineHeight;
+        float height = lines.length * lineHeight + sparklineHeight + 3 * padding;
+        float left = canvas.getWidth() - width;
+
+        canvas.drawRect(left, 0, left + width, height, mBackgroundPaint);
+        float baseline = padding - mTextPaint.ascent();
+        for (String line : lines) {
+            canvas.drawText(line, left + padding, baseline, mTextPaint);
+            baseline += lineHeight;
+        }
+
+        // Oldest frame on the left, bars over the height of a 60 fps frame are red and cut off
+        float sparklineBottom = height - padding;
+        float barWidth = (width - 2 * padding) / SPARKLINE_FRAMES;
+        for (int i = 0; i < SPARKLINE_FRAMES; i++) {
+            float time = mFrameTimes[(mFrameIndex + i) % SPARKLINE_FRAMES];
+            float barHeight = Math.min(1f, time / SPARKLINE_MAX_FRAME_TIME_MS) * sparklineHeight;
+            float barLeft = left + padding + i * barWidth;
+            canvas.drawRect(barLeft, sparklineBottom - barHeight, barLeft + barWidth, sparklineBottom,
+                time > SPARKLINE_MAX_FRAME_TIME_MS ? mSlowBarPaint : mBarPaint);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.termux.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Typeface;
+
+import com.termux.terminal.TerminalEmulator;
+import com.termux.terminal.TerminalReplay;
+
+/**
+ * A {@link TerminalReplay.Listener} that renders the emulator with a {@link TerminalRenderer} into
+ * an offscreen {@link Bitmap} after each replayed event, so that a recording can be used to
+ * benchmark rendering without a {@link TerminalView}.
+ */
+public final class OffscreenReplayRenderer implements TerminalReplay.Listener {
+
+    private final TerminalRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    private long mFrameCount;
+    private long mRenderTimeNanos;
+
+    public OffscreenReplayRenderer(int textSize, Typeface typeface) {
+        mRenderer = new TerminalRenderer(textSize, typeface);
+    }
+
+    @Override
+    public void onEvent(TerminalEmulator emulator, long timeNanos) {
+        int width = Math.max(1, (int) Math.ceil(emulator.mColumns * mRenderer.getFontWidth()));
+        int height = Math.max(1, emulator.mRows * mRenderer.getFontLineSpacing());
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            if (mBitmap != null) mBitmap.recycle();
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+        }
+
+        long startTime = System.nanoTime();
+        mRenderer.render(emulator, mCanvas, 0, -1, -1, -1, -1);
+        mRenderTimeNanos += System.nanoTime() - startTime;
+        mFrameCount++;
+    }
+
+    /** Get the bitmap the last event was rendered into, or {@code null} if none was rendered. */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /** Get the number of frames rendered. */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /** Get the time in nanoseconds the frames took to render. */
+    public long getRenderTimeNanos() {
+        return mRenderTimeNanos;
+    }
+
+    /** Release the bitmap. */
+    public void release() {
+        if (mBitmap != null) mBitmap.recycle();
+        mBitmap = null;
+        mCanvas = null;
+    }
+
+}
@@ -5,6 +5,7 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.Typeface;
 
+import com.termux.terminal.LocalEchoPredictor;
 import com.termux.terminal.TerminalBuffer;
 import com.termux.terminal.TerminalEmulator;
 import com.termux.terminal.TerminalRow;
@@ -33,6 +34,9 @@ public final class TerminalRenderer {
 
     private final float[] asciiMeasures = new float[127];
 
+    /** The chars of a single code point drawn by {@link #renderPredictions}. */
+    private final char[] mPredictionChars = new char[2];
+
     public TerminalRenderer(int textSize, Typeface typeface) {
         mTextSize = textSize;
         mTypeface = typeface;
@@ -56,12 +60,25 @@ public final class TerminalRenderer {
     /** Render the terminal to a canvas with at a specified row scroll, and an optional rectangular selection. */
     public final void render(TerminalEmulator mEmulator, Canvas canvas, int topRow,
                              int selectionY1, int selectionY2, int selectionX1, int selectionX2) {
+        render(mEmulator, canvas, topRow, selectionY1, selectionY2, selectionX1, selectionX2, null);
+    }
+
+    /**
+     * Render the terminal like {@link #render(TerminalEmulator, Canvas, int, int, int, int, int)}
+     * with the predictions of the optional {@link LocalEchoPredictor} drawn underlined over the
+     * screen, and the cursor where it is predicted to be.
+     */
+    public final void render(TerminalEmulator mEmulator, Canvas canvas, int topRow,
+                             int selectionY1, int selectionY2, int selectionX1, int selectionX2,
+                             LocalEchoPredictor localEchoPredictor) {
         final boolean reverseVideo = mEmulator.isReverseVideo();
         final int endRow = topRow + mEmulator.mRows;
         final int columns = mEmulator.mColumns;
         final int cursorCol = mEmulator.getCursorCol();
         final int cursorRow = mEmulator.getCursorRow();
-        final boolean cursorVisible = mEmulator.shouldCursorBeVisible();
+        final boolean predicting = localEchoPredictor != null && localEchoPredictor.hasDisplayedPredictions();
+        // The cursor is drawn with the predictions instead
+        final boolean cursorVisible = mEmulator.shouldCursorBeVisible() && !predicting;
         final TerminalBuffer screen = mEmulator.getScreen();
         final int[] palette = mEmulator.mColors.mCurrentColors;
         final int cursorShape = mEmulator.getCursorStyle();
@@ -80,7 +97,7 @@ public final class TerminalRenderer {
                 selx2 = (row == selectionY2) ? selectionX2 : mEmulator.mColumns;
             }
 
-            TerminalRow lineObject = screen.allocateFullLineIfNecessary(screen.externalToInternalRow(row));
+            TerminalRow lineObject = screen.getRow(row);
             final char[] line = lineObject.mText;
             final int charsUsedInLine = lineObject.getSpaceUsed();
 
@@ -154,6 +171,53 @@ public final class TerminalRenderer {
             drawTextRun(canvas, line, palette, heightOffset, lastRunStartColumn, columnWidthSinceLastRun, lastRunStartIndex, charsSinceLastRun,
                 measuredWidthForRun, cursorColor, cursorShape, lastRunStyle, reverseVideo || invertCursorTextColor || lastRunInsideSelection);
         }
+
+        if (predicting)
+            renderPredictions(mEmulator, localEchoPredictor, canvas, topRow, mEmulator.shouldCursorBeVisible());
+    }
+
+    /** Draw the predicted cells of the {@link LocalEchoPredictor} underlined, and the cursor where it is predicted to be. */
+    private void renderPredictions(TerminalEmulator mEmulator, LocalEchoPredictor localEchoPredictor, Canvas canvas,
+                                   int topRow, boolean cursorVisible) {
+        final boolean reverseVideo = mEmulator.isReverseVideo();
+        final TerminalBuffer screen = mEmulator.getScreen();
+        final int[] palette = mEmulator.mColors.mCurrentColors;
+        final int cursorShape = mEmulator.getCursorStyle();
+        final int cursorColor = mEmulator.mColors.mCurrentColors[TextStyle.COLOR_INDEX_CURSOR];
+        final int cursorRow = localEchoPredictor.getCursorRow();
+        final int cursorCol = localEchoPredictor.getCursorCol();
+        boolean cursorDrawn = !cursorVisible;
+
+        for (int i = 0; i < localEchoPredictor.getPredictionCount(); i++) {
+            final int row = localEchoPredictor.getPredictionRow(i);
+            final int column = localEchoPredictor.getPredictionColumn(i);
+            if (row < topRow || row >= topRow + mEmulator.mRows) continue;
+
+            final boolean insideCursor = cursorVisible && row == cursorRow && column == cursorCol;
+            // The effect bits are the lowest bits of the style
+            final long predictionStyle = screen.getRow(row).getStyle(column) | TextStyle.CHARACTER_ATTRIBUTE_UNDERLINE;
+            final int chars = Character.toChars(localEchoPredictor.getPredictionCodePoint(i), mPredictionChars, 0);
+            final float y = mFontLineSpacingAndAscent + (row - topRow + 1) * mFontLineSpacing;
+
+            // Clear what the screen shows in the cell, since the cell is not always blank
+            mTextPaint.setColor(palette[reverseVideo ? TextStyle.COLOR_INDEX_FOREGROUND : TextStyle.COLOR_INDEX_BACKGROUND]);
+            canvas.drawRect(column * mFontWidth, y - mFontLineSpacingAndAscent + mFontAscent, (column + 1) * mFontWidth, y, mTextPaint);
+            drawTextRun(canvas, mPredictionChars, palette, y, column, 1, 0, chars, mTextPaint.measureText(mPredictionChars, 0, chars),
+                insideCursor ? cursorColor : 0, cursorShape, predictionStyle,
+                reverseVideo || (insideCursor && cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK));
+            if (insideCursor) cursorDrawn = true;
+        }
+
+        if (!cursorDrawn && cursorRow >= topRow && cursorRow < topRow + mEmulator.mRows && cursorCol < mEmulator.mColumns) {
+            // The predicted cursor is after the predicted cells, so draw it over what the screen shows there
+            final TerminalRow lineObject = screen.getRow(cursorRow);
+            final int startIndex = lineObject.findStartOfColumn(cursorCol);
+            final int chars = Character.isHighSurrogate(lineObject.mText[startIndex]) ? 2 : 1;
+            final float y = mFontLineSpacingAndAscent + (cursorRow - topRow + 1) * mFontLineSpacing;
+            drawTextRun(canvas, lineObject.mText, palette, y, cursorCol, 1, startIndex, chars,
+                mTextPaint.measureText(lineObject.mText, startIndex, chars), cursorColor, cursorShape, lineObject.getStyle(cursorCol),
+                reverseVideo || cursorShape == TerminalEmulator.TERMINAL_CURSOR_STYLE_BLOCK);
+        }
     }
 
     private void drawTextRun(Canvas canvas, char[] text, int[] palette, float y, int startColumn, int runWidthColumns,
@@ -63,6 +63,12 @@ public final class TerminalView extends View {
     private TerminalCursorBlinkerRunnable mTerminalCursorBlinkerRunnable;
     private int mTerminalCursorBlinkerRate;
     private boolean mCursorInvisibleIgnoreOnce;
+
+    /** The debug overlay of frame stats, or {@code null} if disabled. */
+    private FrameStatsOverlay mFrameStatsOverlay;
+
+    /** If the echo of typed input is predicted for sessions attached to the view. */
+    private boolean mLocalEchoEnabled;
     public static final int TERMINAL_CURSOR_BLINK_RATE_MIN = 100;
     public static final int TERMINAL_CURSOR_BLINK_RATE_MAX = 2000;
 
@@ -78,6 +84,16 @@ public final class TerminalView extends View {
     /** Keep track of the time when a touch event leading to sending mouse scroll events started. */
     private long mMouseStartDownTime = -1;
 
+    /** The 1-based cell of mouse motion to report on the next frame, or -1 if none. */
+    private int mPendingMouseMotionX = -1, mPendingMouseMotionY = -1;
+    /** Reports the latest mouse motion once per frame instead of for every motion event. */
+    private final Runnable mSendPendingMouseMotion = new Runnable() {
+        @Override
+        public void run() {
+            sendPendingMouseMotion();
+        }
+    };
+
     final Scroller mScroller;
 
     /** What was left in from scrolling movement. */
@@ -294,6 +310,8 @@ public final class TerminalView extends View {
         mTermSession = session;
         mEmulator = null;
         mCombiningAccent = 0;
+        mPendingMouseMotionX = -1;
+        session.setLocalEchoEnabled(mLocalEchoEnabled);
 
         updateSize();
 
@@ -378,6 +396,19 @@ public final class TerminalView extends View {
 
             void sendTextToTerminal(CharSequence text) {
                 stopTextSelectionMode();
+                final TerminalSession session = mTermSession;
+                if (session == null) return;
+
+                // Write the committed text to the process in a single write instead of one for each code point
+                session.startInputBatch();
+                try {
+                    sendCodePointsToTerminal(text);
+                } finally {
+                    session.finishInputBatch();
+                }
+            }
+
+            void sendCodePointsToTerminal(CharSequence text) {
                 final int textLengthInChars = text.length();
                 for (int i = 0; i < textLengthInChars; i++) {
                     char firstChar = text.charAt(i);
@@ -554,9 +585,16 @@ public final class TerminalView extends View {
 
     /** Send a single mouse event code to the terminal. */
     void sendMouseEventCode(MotionEvent e, int button, boolean pressed) {
-        int[] columnAndRow = getColumnAndRow(e, false);
-        int x = columnAndRow[0] + 1;
-        int y = columnAndRow[1] + 1;
+        sendMouseEventCodes(e, button, pressed, 1);
+    }
+
+    /**
+     * Send a mouse event code to the terminal a number of times in a single write. Motion is
+     * coalesced and only the latest motion is reported once per frame.
+     */
+    void sendMouseEventCodes(MotionEvent e, int button, boolean pressed, int count) {
+        int x = (int) (e.getX() / mRenderer.mFontWidth) + 1;
+        int y = (int) ((e.getY() - mRenderer.mFontLineSpacingAndAscent) / mRenderer.mFontLineSpacing) + 1;
         if (pressed && (button == TerminalEmulator.MOUSE_WHEELDOWN_BUTTON || button == TerminalEmulator.MOUSE_WHEELUP_BUTTON)) {
             if (mMouseStartDownTime == e.getDownTime()) {
                 x = mMouseScrollStartX;
@@ -567,24 +605,50 @@ public final class TerminalView extends View {
                 mMouseScrollStartY = y;
             }
         }
-        mEmulator.sendMouseEvent(button, x, y, pressed);
+
+        if (button == TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED) {
+            if (mPendingMouseMotionX == -1) postOnAnimation(mSendPendingMouseMotion);
+            mPendingMouseMotionX = x;
+            mPendingMouseMotionY = y;
+            return;
+        }
+
+        // Report pending motion before the event so that the events are in order
+        sendPendingMouseMotion();
+        mEmulator.sendMouseEvents(button, x, y, pressed, count);
+    }
+
+    private void sendPendingMouseMotion() {
+        if (mPendingMouseMotionX == -1) return;
+        removeCallbacks(mSendPendingMouseMotion);
+        int x = mPendingMouseMotionX;
+        int y = mPendingMouseMotionY;
+        mPendingMouseMotionX = -1;
+        if (mEmulator != null)
+            mEmulator.sendMouseEvent(TerminalEmulator.MOUSE_LEFT_BUTTON_MOVED, x, y, true);
     }
 
     /** Perform a scroll, either from dragging the screen or by scrolling a mouse wheel. */
     void doScroll(MotionEvent event, int rowsDown) {
+        if (rowsDown == 0) return;
         boolean up = rowsDown < 0;
         int amount = Math.abs(rowsDown);
-        for (int i = 0; i < amount; i++) {
-            if (mEmulator.isMouseTrackingActive()) {
-                sendMouseEventCode(event, up ? TerminalEmulator.MOUSE_WHEELUP_BUTTON : TerminalEmulator.MOUSE_WHEELDOWN_BUTTON, true);
-            } else if (mEmulator.isAlternateBufferActive()) {
-                // Send up and down key events for scrolling, which is what some terminals do to make scroll work in
-                // e.g. less, which shifts to the alt screen without mouse handling.
-                handleKeyCode(up ? KeyEvent.KEYCODE_DPAD_UP : KeyEvent.KEYCODE_DPAD_DOWN, 0);
-            } else {
-                mTopRow = Math.min(0, Math.max(-(mEmulator.getScreen().getActiveTranscriptRows()), mTopRow + (up ? -1 : 1)));
-                if (!awakenScrollBars()) invalidate();
-            }
+        if (mEmulator.isMouseTrackingActive()) {
+            sendMouseEventCodes(event, up ? TerminalEmulator.MOUSE_WHEELUP_BUTTON : TerminalEmulator.MOUSE_WHEELDOWN_BUTTON, true, amount);
+        } else if (mEmulator.isAlternateBufferActive()) {
+            // Send up and down key events for scrolling, which is what some terminals do to make scroll work in
+            // e.g. less, which shifts to the alt screen without mouse handling.
+            int keyCode = up ? KeyEvent.KEYCODE_DPAD_UP : KeyEvent.KEYCODE_DPAD_DOWN;
+            mEmulator.setCursorBlinkState(true);
+            if (handleKeyCodeAction(keyCode, 0)) return;
+            String code = KeyHandler.getCode(keyCode, 0, mEmulator.isCursorKeysApplicationMode(), mEmulator.isKeypadApplicationMode());
+            if (code == null) return;
+            StringBuilder codes = new StringBuilder(code.length() * amount);
+            for (int i = 0; i < amount; i++) codes.append(code);
+            mTermSession.write(codes.toString());
+        } else {
+            mTopRow = Math.min(0, Math.max(-(mEmulator.getScreen().getActiveTranscriptRows()), mTopRow + rowsDown));
+            if (!awakenScrollBars()) invalidate();
         }
     }
 
@@ -1014,10 +1078,17 @@ public final class TerminalView extends View {
                 mTextSelectionCursorController.getSelectors(sel);
             }
 
-            mRenderer.render(mEmulator, canvas, mTopRow, sel[0], sel[1], sel[2], sel[3]);
+            long startTime = System.nanoTime();
+            mRenderer.render(mEmulator, canvas, mTopRow, sel[0], sel[1], sel[2], sel[3],
+                mTermSession != null ? mTermSession.getLocalEchoPredictor() : null);
+            long frameTime = System.nanoTime() - startTime;
+            if (mTermSession != null) mTermSession.getMetrics().onFrameRendered(frameTime);
 
             // render the text selection handles
             renderTextSelection();
+
+            if (mFrameStatsOverlay != null)
+                mFrameStatsOverlay.draw(canvas, mTermSession, mEmulator.mRows, frameTime);
         }
     }
 
@@ -1180,6 +1251,38 @@ public final class TerminalView extends View {
 
 
 
+    /**
+     * Sets whether the debug overlay with the render time of each frame, the number of rows drawn,
+     * the emulator parse rate and the output queued for the main thread is drawn over the terminal.
+     *
+     * @param enabled The boolean value that defines the state.
+     */
+    public void setFrameStatsOverlayEnabled(boolean enabled) {
+        if (enabled == isFrameStatsOverlayEnabled()) return;
+        mFrameStatsOverlay = enabled ? new FrameStatsOverlay(12 * getResources().getDisplayMetrics().scaledDensity) : null;
+        invalidate();
+    }
+
+    public boolean isFrameStatsOverlayEnabled() {
+        return mFrameStatsOverlay != null;
+    }
+
+    /**
+     * Sets whether the echo of input typed into the sessions attached to the view is predicted
+     * and shown before the process echoes it. See {@link TerminalSession#setLocalEchoEnabled(boolean)}.
+     *
+     * @param enabled The boolean value that defines the state.
+     */
+    public void setLocalEchoEnabled(boolean enabled) {
+        mLocalEchoEnabled = enabled;
+        if (mTermSession != null) mTermSession.setLocalEchoEnabled(enabled);
+        invalidate();
+    }
+
+    public boolean isLocalEchoEnabled() {
+        return mLocalEchoEnabled;
+    }
+
     /**
      * Set terminal cursor blinker rate. It must be between {@link #TERMINAL_CURSOR_BLINK_RATE_MIN}
      * and {@link #TERMINAL_CURSOR_BLINK_RATE_MAX}, otherwise it will be disabled.
@@ -1441,6 +1544,9 @@ public final class TerminalView extends View {
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
+        removeCallbacks(mSendPendingMouseMotion);
+        mPendingMouseMotionX = -1;
+
         if (mTextSelectionCursorController != null) {
             // Might solve the following exception
             // android.view.WindowLeaked: Activity com.termux.app.TermuxActivity has leaked window android.widget.PopupWindow
@@ -4,3 +4,8 @@ LOCAL_LDLIBS := -llog
 LOCAL_MODULE := local-socket
 LOCAL_SRC_FILES := local-socket.cpp
 include $(BUILD_SHARED_LIBRARY)
+
+include $(CLEAR_VARS)
+LOCAL_MODULE := directory-walker
+LOCAL_SRC_FILES := directory-walker.cpp
+include $(BUILD_SHARED_LIBRARY)
@@ -0,0 +1,220 @@
+#include <cerrno>
+#include <climits>
+#include <cstdint>
+#include <cstring>
+#include <jni.h>
+#include <unistd.h>
+
+#include <dirent.h>
+#include <fcntl.h>
+#include <sys/stat.h>
+#include <sys/syscall.h>
+
+/*
+ * Native side of com.termux.shared.file.filesystem.DirectoryWalker.
+ *
+ * Directory entries are read in bulk with getdents64() and, only if required for filtering or
+ * if requested, stat-ed with fstatat() relative to the directory fd, so that paths do not need to
+ * be resolved again for every entry. The entries are written into the primitive arrays of the
+ * java DirectoryWalker.Batch so that no java objects are created per entry.
+ */
+
+// Keep in sync with com.termux.shared.file.filesystem.FileType
+#define FILE_TYPE_REGULAR 1
+#define FILE_TYPE_DIRECTORY 2
+#define FILE_TYPE_SYMLINK 4
+#define FILE_TYPE_SOCKET 8
+#define FILE_TYPE_CHARACTER 16
+#define FILE_TYPE_FIFO 32
+#define FILE_TYPE_BLOCK 64
+#define FILE_TYPE_UNKNOWN 128
+
+// Keep in sync with com.termux.shared.file.filesystem.DirectoryWalker#STAT_FIELDS
+#define STAT_FIELDS 16
+
+#define DIRENT_BUFFER_SIZE 32768
+
+struct linux_dirent64 {
+    uint64_t d_ino;
+    int64_t d_off;
+    unsigned short d_reclen;
+    unsigned char d_type;
+    char d_name[];
+};
+
+/* Get the FileType flag for a st_mode. */
+static int mode_to_file_type(mode_t mode) {
+    switch (mode & S_IFMT) {
+        case S_IFREG: return FILE_TYPE_REGULAR;
+        case S_IFDIR: return FILE_TYPE_DIRECTORY;
+        case S_IFLNK: return FILE_TYPE_SYMLINK;
+        case S_IFSOCK: return FILE_TYPE_SOCKET;
+        case S_IFCHR: return FILE_TYPE_CHARACTER;
+        case S_IFIFO: return FILE_TYPE_FIFO;
+        case S_IFBLK: return FILE_TYPE_BLOCK;
+        default: return FILE_TYPE_UNKNOWN;
+    }
+}
+
+/* Get the st_mode file type bits for a d_type, or 0 if the filesystem did not return the type. */
+static mode_t dirent_type_to_mode(unsigned char d_type) {
+    return d_type == DT_UNKNOWN ? 0 : DTTOIF(d_type);
+}
+
+/* Get the time in milliseconds for a timespec. */
+static int64_t timespec_to_milliseconds(const struct timespec* const time) {
+    return (((int64_t)time->tv_sec) * 1000) + (((int64_t)time->tv_nsec)/1000000);
+}
+
+/* Write the stat fields in the order of FileAttributes#loadFromStatArray(). */
+static void store_stat(jlong* stats, const struct stat* st) {
+    stats[0] = st->st_mode;
+    stats[1] = st->st_ino;
+    stats[2] = st->st_dev;
+    stats[3] = st->st_rdev;
+    stats[4] = st->st_nlink;
+    stats[5] = st->st_uid;
+    stats[6] = st->st_gid;
+    stats[7] = st->st_size;
+    stats[8] = st->st_blksize;
+    stats[9] = st->st_blocks;
+    stats[10] = st->st_atim.tv_sec;
+    stats[11] = st->st_atim.tv_nsec;
+    stats[12] = st->st_mtim.tv_sec;
+    stats[13] = st->st_mtim.tv_nsec;
+    stats[14] = st->st_ctim.tv_sec;
+    stats[15] = st->st_ctim.tv_nsec;
+}
+
+
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_termux_shared_file_filesystem_DirectoryWalker_openNative(JNIEnv *env, jclass clazz, jbyteArray path) {
+    jsize length = env->GetArrayLength(path);
+    char pathString[PATH_MAX];
+    if (length >= PATH_MAX)
+        return -ENAMETOOLONG;
+    env->GetByteArrayRegion(path, 0, length, (jbyte*) pathString);
+    pathString[length] = '\0';
+
+    int fd = open(pathString, O_RDONLY | O_DIRECTORY | O_NOFOLLOW | O_CLOEXEC);
+    return fd < 0 ? -errno : fd;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_termux_shared_file_filesystem_DirectoryWalker_closeNative(JNIEnv *env, jclass clazz, jint fd) {
+    return close(fd) < 0 ? -errno : 0;
+}
+
+/*
+ * Read the next entries of the directory into the arrays. Entries whose type is not in
+ * fileTypeFlags are skipped, and entries whose type is in modifiedTimeFileTypeFlags and whose
+ * modification time in milliseconds is not in [minModifiedTime, maxModifiedTime) are skipped.
+ * Only the st_mode file type bits and st_ino are set for entries that did not need to be stat-ed.
+ *
+ * Returns the number of entries read, 0 at the end of the directory or -errno on failure.
+ */
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_termux_shared_file_filesystem_DirectoryWalker_readNative(JNIEnv *env, jclass clazz, jint fd,
+                                                                   jbyteArray names, jintArray nameOffsets, jlongArray stats,
+                                                                   jint fileTypeFlags, jint modifiedTimeFileTypeFlags,
+                                                                   jlong minModifiedTime, jlong maxModifiedTime, jboolean statAll) {
+    const jsize capacity = env->GetArrayLength(nameOffsets) - 1;
+    const jsize namesCapacity = env->GetArrayLength(names);
+    const bool filterModifiedTime = minModifiedTime != LLONG_MIN || maxModifiedTime != LLONG_MAX;
+
+    jbyte* namesArray = env->GetByteArrayElements(names, nullptr);
+    jint* nameOffsetsArray = env->GetIntArrayElements(nameOffsets, nullptr);
+    jlong* statsArray = env->GetLongArrayElements(stats, nullptr);
+
+    char buffer[DIRENT_BUFFER_SIZE];
+    jint count = 0;
+    jint namesLength = 0;
+    jint result = 0;
+    nameOffsetsArray[0] = 0;
+
+    while (count < capacity) {
+        // The offset to seek back to if the entries read do not fit in the arrays
+        off_t resumeOffset = lseek(fd, 0, SEEK_CUR);
+        long bytes = syscall(SYS_getdents64, fd, buffer, sizeof(buffer));
+        if (bytes < 0) {
+            result = -errno;
+            break;
+        } else if (bytes == 0) {
+            break;
+        }
+
+        bool full = false;
+        for (long position = 0; position < bytes;) {
+            struct linux_dirent64* entry = (struct linux_dirent64*) (buffer + position);
+            position += entry->d_reclen;
+
+            const char* name = entry->d_name;
+            if (name[0] == '.' && (name[1] == '\0' || (name[1] == '.' && name[2] == '\0'))) {
+                resumeOffset = entry->d_off;
+                continue;
+            }
+
+            jint nameLength = (jint) strlen(name);
+            if (count == capacity || namesLength + nameLength > namesCapacity) {
+                lseek(fd, resumeOffset, SEEK_SET);
+                full = true;
+                break;
+            }
+
+            jlong* entryStats = statsArray + (count * STAT_FIELDS);
+            mode_t mode = dirent_type_to_mode(entry->d_type);
+            int fileType = mode != 0 ? mode_to_file_type(mode) : 0;
+            if (mode != 0 && !(fileType & fileTypeFlags)) {
+                resumeOffset = entry->d_off;
+                continue;
+            }
+
+            if (statAll || mode == 0 || (filterModifiedTime && (fileType & modifiedTimeFileTypeFlags))) {
+                struct stat st = {};
+                if (fstatat(fd, name, &st, AT_SYMLINK_NOFOLLOW) < 0) {
+                    // The entry was deleted after it was read
+                    if (errno == ENOENT) {
+                        resumeOffset = entry->d_off;
+                        continue;
+                    }
+                    result = -errno;
+                    lseek(fd, resumeOffset, SEEK_SET);
+                    full = true;
+                    break;
+                }
+
+                fileType = mode_to_file_type(st.st_mode);
+                int64_t modifiedTime = timespec_to_milliseconds(&st.st_mtim);
+                if (!(fileType & fileTypeFlags) || (filterModifiedTime && (fileType & modifiedTimeFileTypeFlags) &&
+                    (modifiedTime < minModifiedTime || modifiedTime >= maxModifiedTime))) {
+                    resumeOffset = entry->d_off;
+                    continue;
+                }
+
+                store_stat(entryStats, &st);
+            } else {
+                memset(entryStats, 0, STAT_FIELDS * sizeof(jlong));
+                entryStats[0] = mode;
+                entryStats[1] = (jlong) entry->d_ino;
+            }
+
+            memcpy(namesArray + namesLength, name, nameLength);
+            namesLength += nameLength;
+            count++;
+            nameOffsetsArray[count] = namesLength;
+            resumeOffset = entry->d_off;
+        }
+
+        if (full) break;
+    }
+
+    env->ReleaseByteArrayElements(names, namesArray, 0);
+    env->ReleaseIntArrayElements(nameOffsets, nameOffsetsArray, 0);
+    env->ReleaseLongArrayElements(stats, statsArray, 0);
+
+    return result < 0 && count == 0 ? result : count;
+}
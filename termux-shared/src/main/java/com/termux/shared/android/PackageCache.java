@@ -0,0 +1,155 @@
+package com.termux.shared.android;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.util.HashMap;
+
+/**
+ * A process wide cache for the results of {@link android.content.pm.PackageManager} queries done
+ * by {@link PackageUtils}, like {@link PackageInfo}, {@link ApplicationInfo} and signing
+ * certificate digests, and of other values derived from them, like uids and SELinux info.
+ * Each query is a binder call to the system server, and they are done repeatedly for plugin
+ * command validation and shell environment building.
+ *
+ * The cache is disabled by default, since it can only be used while the app is notified of package
+ * changes so that it can call {@link #invalidate(String)}. Results that are {@code null}, like for
+ * packages that are not installed, are cached as well.
+ */
+public class PackageCache {
+
+    /** The value stored for cached {@code null} results. */
+    private static final Object NULL_VALUE = new Object();
+
+    /** The map of package names to the map of cached values for the package. */
+    private static final HashMap<String, HashMap<String, Object>> sCache = new HashMap<>();
+
+    private static boolean sEnabled;
+    /** Incremented every time the cache is invalidated so that stale values loaded during it are not cached. */
+    private static long sGeneration;
+
+    private static long sHits;
+    private static long sMisses;
+
+    private static final String LOG_TAG = "PackageCache";
+
+    /** The type of cached values for {@link PackageInfo}. */
+    public static final String TYPE_PACKAGE_INFO = "package_info";
+    /** The type of cached values for {@link ApplicationInfo}. */
+    public static final String TYPE_APPLICATION_INFO = "application_info";
+    /** The type of cached values for signing certificate SHA-256 digests. */
+    public static final String TYPE_SIGNING_CERTIFICATE_SHA256_DIGEST = "signing_certificate_sha256_digest";
+
+
+
+    /** Loader for a value that is not cached. */
+    public interface Loader<T> {
+        @Nullable
+        T load();
+    }
+
+
+
+    /**
+     * Enable or disable the cache. The cache is cleared when disabled.
+     *
+     * @param enabled Set to {@code true} if the caller will call {@link #invalidate(String)} on
+     *                package changes, like by listening to {@link android.content.Intent#ACTION_PACKAGE_ADDED},
+     *                {@link android.content.Intent#ACTION_PACKAGE_REMOVED}, {@link android.content.Intent#ACTION_PACKAGE_REPLACED}
+     *                and {@link android.content.Intent#ACTION_PACKAGE_CHANGED} broadcasts.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        if (sEnabled == enabled) return;
+        Logger.logDebug(LOG_TAG, (enabled ? "Enabling" : "Disabling") + " package cache");
+        sEnabled = enabled;
+        invalidateAll();
+    }
+
+    public static synchronized boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Get a value from the cache, or load it with {@code loader} and cache it if its not already cached.
+     * If the cache is disabled, then value will always be loaded.
+     *
+     * @param type The type of the value, like {@link #TYPE_PACKAGE_INFO}.
+     * @param packageName The package name the value is for.
+     * @param key The key for the value for the type, like the query flags. This can be {@code null}.
+     * @param loader The {@link Loader} to load the value.
+     * @return Returns the value.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public static <T> T get(@NonNull String type, @NonNull String packageName, @Nullable String key, @NonNull Loader<T> loader) {
+        String valueKey = key != null ? type + ":" + key : type;
+        long generation = -1;
+        synchronized (PackageCache.class) {
+            if (sEnabled) {
+                HashMap<String, Object> packageCache = sCache.get(packageName);
+                Object value = packageCache != null ? packageCache.get(valueKey) : null;
+                if (value != null) {
+                    sHits++;
+                    return value == NULL_VALUE ? null : (T) value;
+                }
+
+                sMisses++;
+                generation = sGeneration;
+            }
+        }
+
+        // Load outside the lock since it will block on binder calls
+        T value = loader.load();
+        if (generation < 0) return value;
+
+        synchronized (PackageCache.class) {
+            if (sEnabled && generation == sGeneration) {
+                HashMap<String, Object> packageCache = sCache.get(packageName);
+                if (packageCache == null) {
+                    packageCache = new HashMap<>();
+                    sCache.put(packageName, packageCache);
+                }
+                packageCache.put(valueKey, value != null ? value : NULL_VALUE);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Invalidate the cached values for a package. This must be called whenever a package is
+     * installed, updated, removed or its enabled state is changed.
+     *
+     * @param packageName The package name to invalidate.
+     */
+    public static synchronized void invalidate(@NonNull String packageName) {
+        sGeneration++;
+        if (sCache.remove(packageName) != null)
+            Logger.logVerbose(LOG_TAG, "Invalidated cache for \"" + packageName + "\" package");
+    }
+
+    /** Invalidate the cached values for all packages. */
+    public static synchronized void invalidateAll() {
+        sGeneration++;
+        sCache.clear();
+    }
+
+    public static synchronized long getHits() {
+        return sHits;
+    }
+
+    public static synchronized long getMisses() {
+        return sMisses;
+    }
+
+    @NonNull
+    public static synchronized String getStatsLogString() {
+        return "Package cache enabled: " + sEnabled + ", packages: " + sCache.size() + ", hits: " + sHits + ", misses: " + sMisses;
+    }
+
+}
@@ -130,6 +130,8 @@ public class PackageUtils {
      * Also check {@link #isAppInstalled(Context, String, String) if targetting targeting sdk
      * `30` (android `11`) since {@link PackageManager.NameNotFoundException} may be thrown.
      *
+     * The result is cached by {@link PackageCache} if its enabled.
+     *
      * @param context The {@link Context} for operations.
      * @param packageName The package name of the package.
      * @param flags The flags to pass to {@link PackageManager#getPackageInfo(String, int)}.
@@ -137,11 +139,13 @@ public class PackageUtils {
      */
     @Nullable
     public static PackageInfo getPackageInfoForPackage(@NonNull final Context context, @NonNull final String packageName, final int flags) {
-        try {
-            return context.getPackageManager().getPackageInfo(packageName, flags);
-        } catch (final Exception e) {
-            return null;
-        }
+        return PackageCache.get(PackageCache.TYPE_PACKAGE_INFO, packageName, String.valueOf(flags), () -> {
+            try {
+                return context.getPackageManager().getPackageInfo(packageName, flags);
+            } catch (final Exception e) {
+                return null;
+            }
+        });
     }
 
 
@@ -164,6 +168,8 @@ public class PackageUtils {
      * Also check {@link #isAppInstalled(Context, String, String) if targetting targeting sdk
      * `30` (android `11`) since {@link PackageManager.NameNotFoundException} may be thrown.
      *
+     * The result is cached by {@link PackageCache} if its enabled.
+     *
      * @param context The {@link Context} for operations.
      * @param packageName The package name of the package.
      * @param flags The flags to pass to {@link PackageManager#getApplicationInfo(String, int)}.
@@ -171,11 +177,13 @@ public class PackageUtils {
      */
     @Nullable
     public static ApplicationInfo getApplicationInfoForPackage(@NonNull final Context context, @NonNull final String packageName, final int flags) {
-        try {
-            return context.getPackageManager().getApplicationInfo(packageName, flags);
-        } catch (final Exception e) {
-            return null;
-        }
+        return PackageCache.get(PackageCache.TYPE_APPLICATION_INFO, packageName, String.valueOf(flags), () -> {
+            try {
+                return context.getPackageManager().getApplicationInfo(packageName, flags);
+            } catch (final Exception e) {
+                return null;
+            }
+        });
     }
 
     /**
@@ -568,6 +576,12 @@ public class PackageUtils {
      */
     @Nullable
     public static String getSigningCertificateSHA256DigestForPackage(@NonNull final Context context, @NonNull final String packageName) {
+        return PackageCache.get(PackageCache.TYPE_SIGNING_CERTIFICATE_SHA256_DIGEST, packageName, null,
+            () -> getSigningCertificateSHA256DigestForPackageUncached(context, packageName));
+    }
+
+    @Nullable
+    private static String getSigningCertificateSHA256DigestForPackageUncached(@NonNull final Context context, @NonNull final String packageName) {
         try {
             /*
              * Todo: We may need AndroidManifest queries entries if package is installed but with a different signature on android 11
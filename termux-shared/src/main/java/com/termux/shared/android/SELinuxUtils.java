@@ -14,16 +14,30 @@ public class SELinuxUtils {
 
     public static final String ANDROID_OS_SELINUX_CLASS = "android.os.SELinux";
 
+    /** The cached security context of the current process, which does not change while its running. */
+    private static volatile String sContext;
+
     private static final String LOG_TAG = "SELinuxUtils";
 
     /**
-     * Gets the security context of the current process.
+     * Gets the security context of the current process. The context is cached after the first
+     * successful call.
      *
      * @return Returns a {@link String} representing the security context of the current process.
      * This will be {@code null} if an exception is raised.
      */
     @Nullable
     public static String getContext() {
+        String context = sContext;
+        if (context == null) {
+            context = getContextUncached();
+            sContext = context;
+        }
+        return context;
+    }
+
+    @Nullable
+    private static String getContextUncached() {
         ReflectionUtils.bypassHiddenAPIReflectionRestrictions();
         String methodName = "getContext";
         try {
@@ -5,6 +5,7 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 
 import com.termux.shared.file.FileUtils;
+import com.termux.shared.logger.AsyncLogWriter;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.markdown.MarkdownUtils;
 import com.termux.shared.errors.Error;
@@ -36,6 +37,11 @@ public class CrashHandler implements Thread.UncaughtExceptionHandler {
         Logger.logInfo(LOG_TAG, "uncaughtException() for " + thread +  ": " + throwable.getMessage());
         logCrash(thread, throwable);
 
+        // Write the queued log entries before the app is stopped
+        AsyncLogWriter asyncLogWriter = Logger.getAsyncLogWriter();
+        if (asyncLogWriter != null)
+            asyncLogWriter.flush(1000);
+
         // Don't stop the app if not on the main thread
         if (mIsDefaultHandler)
             mDefaultUEH.uncaughtException(thread, throwable);
@@ -0,0 +1,509 @@
+package com.termux.shared.file;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * File operations on regular files and directory trees that are used by {@link FileUtils}.
+ *
+ * Regular files are copied with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * which is done with `sendfile()` in the kernel instead of copying the data through java buffers.
+ * Directory trees are copied and deleted by a bounded {@link ForkJoinPool}, where each directory
+ * is a task and large directories are split into batches of files, so that large trees like
+ * `$TMPDIR` or backups are not processed one file at a time.
+ *
+ * Symlinks are never followed. Symlinks found under a directory are copied as symlinks with the
+ * same target and deleted without deleting their targets. The walks are path based and are not
+ * safe against files being replaced by symlinks by other processes while they run, so
+ * {@link FileUtils} only uses them to delete trees on Android < 8, where the
+ * {@link java.nio.file.SecureDirectoryStream} based deletion is not available.
+ *
+ * Failures of single files do not stop the operation. All failures are thrown at the end as an
+ * {@link IOException} for the first failure, with the rest added as suppressed exceptions.
+ */
+public class FileOperations {
+
+    /** The maximum number of threads used for a directory tree operation. */
+    public static final int MAX_PARALLELISM = 4;
+
+    /** The number of files in a directory that are processed by one task. */
+    private static final int FILES_PER_TASK = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The number of bytes copied between progress and cancellation checks. */
+    private static final long COPY_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static ForkJoinPool sPool;
+
+    /**
+     * Copy a regular file. The destination file is overwritten if it exists, and the permissions
+     * and modification time of the source file are set on it.
+     *
+     * @param srcFile The source regular file.
+     * @param destFile The destination file.
+     */
+    public static void copyRegularFile(@NonNull File srcFile, @NonNull File destFile) throws IOException {
+        copyRegularFile(srcFile, destFile, lstat(srcFile));
+    }
+
+    /**
+     * Copy a directory tree. The destination directory is created if it does not exist and
+     * existing files under it are overwritten. If the destination directory is under the source
+     * directory, then it is not copied into itself.
+     *
+     * @param srcDirectory The source directory.
+     * @param destDirectory The destination directory.
+     */
+    public static void copyDirectory(@NonNull File srcDirectory, @NonNull File destDirectory) throws IOException {
+        StructStat srcStat = lstat(srcDirectory);
+        if (!OsConstants.S_ISDIR(srcStat.st_mode))
+            throw new IOException("Source \"" + srcDirectory.getAbsolutePath() + "\" is not a directory");
+
+        // Walk the canonical source directory so that the paths of its files can be compared with
+        // the canonical destination path, since the directories it contains are never symlinks
+        Failures failures = new Failures();
+        getPool().invoke(new CopyDirectoryTask(srcDirectory.getCanonicalFile(), destDirectory, srcStat,
+            destDirectory.getCanonicalPath(), failures));
+        failures.throwIfAny("Failed to copy directory \"" + srcDirectory.getAbsolutePath() + "\"");
+    }
+
+    /**
+     * Delete a file. If it is a directory, then its contents are deleted first.
+     *
+     * @param file The file to delete.
+     */
+    public static void deleteRecursively(@NonNull File file) throws IOException {
+        StructStat stat = lstatOrNull(file);
+        if (stat == null) return;
+
+        if (!OsConstants.S_ISDIR(stat.st_mode)) {
+            remove(file);
+            return;
+        }
+
+        Failures failures = new Failures();
+        getPool().invoke(new DeleteDirectoryTask(file, true, failures));
+        failures.throwIfAny("Failed to delete directory \"" + file.getAbsolutePath() + "\"");
+    }
+
+    /**
+     * Delete the contents of a directory without deleting the directory itself.
+     *
+     * @param directory The directory to clear.
+     */
+    public static void deleteDirectoryContents(@NonNull File directory) throws IOException {
+        Failures failures = new Failures();
+        getPool().invoke(new DeleteDirectoryTask(directory, false, failures));
+        failures.throwIfAny("Failed to delete contents of directory \"" + directory.getAbsolutePath() + "\"");
+    }
+
+
+
+    /** The listener for the progress of {@link #copyFromFileDescriptor(FileDescriptor, File, CopyProgressListener, CancellationSignal)}. */
+    public interface CopyProgressListener {
+
+        /**
+         * Called after each chunk is copied.
+         *
+         * @param bytesCopied The total number of bytes copied so far.
+         */
+        void onProgress(long bytesCopied);
+
+    }
+
+    /**
+     * Copy the data that can be read from a file descriptor to a file, like of a
+     * {@link android.os.ParcelFileDescriptor} opened for a content uri. The destination file is
+     * overwritten if it exists. The file descriptor is not closed.
+     *
+     * If the file descriptor is for a regular file, then the data after its current offset is
+     * copied with `sendfile()` in chunks. Otherwise, like for pipes and sockets, it is read into a
+     * reused direct buffer until end of stream.
+     *
+     * @param srcFd The source file descriptor.
+     * @param destFile The destination file.
+     * @param progressListener The optional {@link CopyProgressListener} called after each chunk.
+     * @param cancellationSignal The optional {@link CancellationSignal} checked after each chunk.
+     *                           If it is canceled, then {@link OperationCanceledException} is thrown.
+     * @return Returns the number of bytes copied.
+     */
+    public static long copyFromFileDescriptor(@NonNull FileDescriptor srcFd, @NonNull File destFile,
+                                              @Nullable CopyProgressListener progressListener,
+                                              @Nullable CancellationSignal cancellationSignal) throws IOException {
+        boolean isRegularFile;
+        long size;
+        try {
+            StructStat stat = Os.fstat(srcFd);
+            isRegularFile = OsConstants.S_ISREG(stat.st_mode);
+            size = stat.st_size;
+        } catch (ErrnoException e) {
+            throw new IOException("Failed to get file status of source file descriptor: " + e.getMessage(), e);
+        }
+
+        // The stream is not closed since that would close srcFd, which is owned by the caller
+        FileChannel srcChannel = new FileInputStream(srcFd).getChannel();
+        long bytesCopied = 0;
+        try (FileOutputStream outputStream = new FileOutputStream(destFile)) {
+            FileChannel destChannel = outputStream.getChannel();
+
+            if (isRegularFile) {
+                long position = srcChannel.position();
+                while (position < size) {
+                    long count = srcChannel.transferTo(position, Math.min(COPY_CHUNK_SIZE, size - position), destChannel);
+                    if (count <= 0) break;
+                    position += count;
+                    bytesCopied += count;
+                    if (cancellationSignal != null) cancellationSignal.throwIfCanceled();
+                    if (progressListener != null) progressListener.onProgress(bytesCopied);
+                }
+                srcChannel.position(position);
+            }
+
+            // Copy anything that transferTo() did not, like if the file grew or is a pipe
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long chunkBytes = 0;
+            int count;
+            while ((count = srcChannel.read(buffer)) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    destChannel.write(buffer);
+                buffer.clear();
+
+                bytesCopied += count;
+                chunkBytes += count;
+                if (chunkBytes >= COPY_CHUNK_SIZE) {
+                    chunkBytes = 0;
+                    if (cancellationSignal != null) cancellationSignal.throwIfCanceled();
+                    if (progressListener != null) progressListener.onProgress(bytesCopied);
+                }
+            }
+        }
+
+        if (progressListener != null) progressListener.onProgress(bytesCopied);
+        return bytesCopied;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (sPool == null)
+            sPool = new ForkJoinPool(Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+        return sPool;
+    }
+
+    private static void copyRegularFile(@NonNull File srcFile, @NonNull File destFile, @NonNull StructStat srcStat) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(srcFile);
+             FileOutputStream outputStream = new FileOutputStream(destFile)) {
+            FileChannel srcChannel = inputStream.getChannel();
+            FileChannel destChannel = outputStream.getChannel();
+            long size = srcChannel.size();
+            long position = 0;
+            while (position < size) {
+                long count = srcChannel.transferTo(position, size - position, destChannel);
+                if (count <= 0) break;
+                position += count;
+            }
+
+            // Copy anything that transferTo() did not, like if the file grew while being copied
+            srcChannel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (srcChannel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    destChannel.write(buffer);
+                buffer.clear();
+            }
+
+            Os.fchmod(outputStream.getFD(), srcStat.st_mode & 07777);
+        } catch (ErrnoException e) {
+            throw new IOException("Failed to set permissions of \"" + destFile.getAbsolutePath() + "\"", e);
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        destFile.setLastModified(srcFile.lastModified());
+    }
+
+    @NonNull
+    private static StructStat lstat(@NonNull File file) throws IOException {
+        try {
+            return Os.lstat(file.getAbsolutePath());
+        } catch (ErrnoException e) {
+            throw new IOException("Failed to get file status of \"" + file.getAbsolutePath() + "\": " + e.getMessage(), e);
+        }
+    }
+
+    @Nullable
+    private static StructStat lstatOrNull(@NonNull File file) throws IOException {
+        try {
+            return Os.lstat(file.getAbsolutePath());
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.ENOENT) return null;
+            throw new IOException("Failed to get file status of \"" + file.getAbsolutePath() + "\": " + e.getMessage(), e);
+        }
+    }
+
+    private static void remove(@NonNull File file) throws IOException {
+        try {
+            Os.remove(file.getAbsolutePath());
+        } catch (ErrnoException e) {
+            if (e.errno != OsConstants.ENOENT)
+                throw new IOException("Failed to delete \"" + file.getAbsolutePath() + "\": " + e.getMessage(), e);
+        }
+    }
+
+
+
+    /** The failures of a tree operation that are collected by its tasks. */
+    private static final class Failures {
+
+        private final ConcurrentLinkedQueue<IOException> mExceptions = new ConcurrentLinkedQueue<>();
+
+        void add(@NonNull IOException exception) {
+            mExceptions.add(exception);
+        }
+
+        void throwIfAny(@NonNull String message) throws IOException {
+            IOException first = mExceptions.poll();
+            if (first == null) return;
+
+            IOException exception = new IOException(message + ": " + first.getMessage(), first);
+            IOException suppressed;
+            while ((suppressed = mExceptions.poll()) != null)
+                exception.addSuppressed(suppressed);
+            throw exception;
+        }
+
+    }
+
+    /** Copies a directory, forking a task for each sub directory and for each batch of regular files. */
+    private static final class CopyDirectoryTask extends RecursiveAction {
+
+        private final File mSrcDirectory;
+        private final File mDestDirectory;
+        private final StructStat mSrcStat;
+        private final String mExcludedPath;
+        private final Failures mFailures;
+
+        CopyDirectoryTask(File srcDirectory, File destDirectory, StructStat srcStat, String excludedPath, Failures failures) {
+            mSrcDirectory = srcDirectory;
+            mDestDirectory = destDirectory;
+            mSrcStat = srcStat;
+            mExcludedPath = excludedPath;
+            mFailures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            if (!mDestDirectory.mkdir() && !mDestDirectory.isDirectory()) {
+                mFailures.add(new IOException("Failed to create directory \"" + mDestDirectory.getAbsolutePath() + "\""));
+                return;
+            }
+
+            String[] names = mSrcDirectory.list();
+            if (names == null) {
+                mFailures.add(new IOException("Failed to list directory \"" + mSrcDirectory.getAbsolutePath() + "\""));
+                return;
+            }
+
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            List<StructStat> fileStats = new ArrayList<>();
+            for (String name : names) {
+                File srcFile = new File(mSrcDirectory, name);
+                File destFile = new File(mDestDirectory, name);
+                try {
+                    if (srcFile.getAbsolutePath().equals(mExcludedPath)) continue;
+
+                    StructStat stat = lstat(srcFile);
+                    if (OsConstants.S_ISDIR(stat.st_mode)) {
+                        tasks.add(new CopyDirectoryTask(srcFile, destFile, stat, mExcludedPath, mFailures));
+                    } else if (OsConstants.S_ISREG(stat.st_mode)) {
+                        files.add(srcFile);
+                        fileStats.add(stat);
+                        if (files.size() == FILES_PER_TASK) {
+                            tasks.add(new CopyFilesTask(files, fileStats, mDestDirectory, mFailures));
+                            files = new ArrayList<>();
+                            fileStats = new ArrayList<>();
+                        }
+                    } else if (OsConstants.S_ISLNK(stat.st_mode)) {
+                        remove(destFile);
+                        Os.symlink(Os.readlink(srcFile.getAbsolutePath()), destFile.getAbsolutePath());
+                    } else {
+                        throw new IOException("Cannot copy special file \"" + srcFile.getAbsolutePath() + "\"");
+                    }
+                } catch (IOException e) {
+                    mFailures.add(e);
+                } catch (ErrnoException e) {
+                    mFailures.add(new IOException("Failed to copy symlink \"" + srcFile.getAbsolutePath() + "\": " + e.getMessage(), e));
+                }
+            }
+
+            for (RecursiveAction task : tasks)
+                task.fork();
+            new CopyFilesTask(files, fileStats, mDestDirectory, mFailures).compute();
+            for (RecursiveAction task : tasks)
+                task.join();
+
+            // Set after the contents have been copied, since that changes the modification time and may need write permission
+            try {
+                Os.chmod(mDestDirectory.getAbsolutePath(), mSrcStat.st_mode & 07777);
+            } catch (ErrnoException e) {
+                mFailures.add(new IOException("Failed to set permissions of \"" + mDestDirectory.getAbsolutePath() + "\": " + e.getMessage(), e));
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mDestDirectory.setLastModified(mSrcDirectory.lastModified());
+        }
+
+    }
+
+    /** Copies a batch of regular files in the same directory. */
+    private static final class CopyFilesTask extends RecursiveAction {
+
+        private final List<File> mSrcFiles;
+        private final List<StructStat> mSrcStats;
+        private final File mDestDirectory;
+        private final Failures mFailures;
+
+        CopyFilesTask(List<File> srcFiles, List<StructStat> srcStats, File destDirectory, Failures failures) {
+            mSrcFiles = srcFiles;
+            mSrcStats = srcStats;
+            mDestDirectory = destDirectory;
+            mFailures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < mSrcFiles.size(); i++) {
+                File srcFile = mSrcFiles.get(i);
+                File destFile = new File(mDestDirectory, srcFile.getName());
+                try {
+                    // Do not write through a symlink or fail on a directory at the destination
+                    StructStat destStat = lstatOrNull(destFile);
+                    if (destStat != null && !OsConstants.S_ISREG(destStat.st_mode))
+                        deleteRecursively(destFile);
+                    copyRegularFile(srcFile, destFile, mSrcStats.get(i));
+                } catch (IOException e) {
+                    mFailures.add(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Deletes a directory, forking a task for each sub directory and for each batch of other files.
+     * Returns whether everything under the directory was deleted, since the directory itself can
+     * only be deleted if it is empty.
+     */
+    private static final class DeleteDirectoryTask extends RecursiveTask<Boolean> {
+
+        private final File mDirectory;
+        private final boolean mDeleteDirectory;
+        private final Failures mFailures;
+
+        DeleteDirectoryTask(File directory, boolean deleteDirectory, Failures failures) {
+            mDirectory = directory;
+            mDeleteDirectory = deleteDirectory;
+            mFailures = failures;
+        }
+
+        @Override
+        protected Boolean compute() {
+            String[] names = mDirectory.list();
+            if (names == null) {
+                mFailures.add(new IOException("Failed to list directory \"" + mDirectory.getAbsolutePath() + "\""));
+                return false;
+            }
+
+            boolean deleted = true;
+            List<RecursiveTask<Boolean>> tasks = new ArrayList<>();
+            List<File> files = new ArrayList<>();
+            for (String name : names) {
+                File file = new File(mDirectory, name);
+                try {
+                    StructStat stat = lstatOrNull(file);
+                    if (stat == null) continue;
+
+                    if (OsConstants.S_ISDIR(stat.st_mode)) {
+                        tasks.add(new DeleteDirectoryTask(file, true, mFailures));
+                    } else {
+                        files.add(file);
+                        if (files.size() == FILES_PER_TASK) {
+                            tasks.add(new DeleteFilesTask(files, mFailures));
+                            files = new ArrayList<>();
+                        }
+                    }
+                } catch (IOException e) {
+                    mFailures.add(e);
+                    deleted = false;
+                }
+            }
+
+            for (RecursiveTask<Boolean> task : tasks)
+                task.fork();
+            deleted &= new DeleteFilesTask(files, mFailures).compute();
+            for (RecursiveTask<Boolean> task : tasks)
+                deleted &= task.join();
+
+            // Only failures under this directory, and not in other subtrees, prevent deleting it
+            if (mDeleteDirectory && deleted) {
+                try {
+                    remove(mDirectory);
+                } catch (IOException e) {
+                    mFailures.add(e);
+                    deleted = false;
+                }
+            }
+            return deleted;
+        }
+
+    }
+
+    /** Deletes a batch of non directory files with {@link Os#remove(String)} and returns whether all were deleted. */
+    private static final class DeleteFilesTask extends RecursiveTask<Boolean> {
+
+        private final List<File> mFiles;
+        private final Failures mFailures;
+
+        DeleteFilesTask(List<File> files, Failures failures) {
+            mFiles = files;
+            mFailures = failures;
+        }
+
+        @Override
+        protected Boolean compute() {
+            boolean deleted = true;
+            for (File file : mFiles) {
+                try {
+                    remove(file);
+                } catch (IOException e) {
+                    mFailures.add(e);
+                    deleted = false;
+                }
+            }
+            return deleted;
+        }
+
+    }
+
+}
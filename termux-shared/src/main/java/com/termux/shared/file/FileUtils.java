@@ -1,12 +1,16 @@
 package com.termux.shared.file;
 
 import android.os.Build;
+import android.system.ErrnoException;
 import android.system.Os;
+import android.system.OsConstants;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.common.io.RecursiveDeleteOption;
+import com.termux.shared.file.filesystem.DirectoryWalker;
+import com.termux.shared.file.filesystem.FileAttributes;
 import com.termux.shared.file.filesystem.FileType;
 import com.termux.shared.file.filesystem.FileTypes;
 import com.termux.shared.data.DataUtils;
@@ -15,7 +19,6 @@ import com.termux.shared.errors.Errno;
 import com.termux.shared.errors.Error;
 import com.termux.shared.errors.FunctionErrno;
 
-import org.apache.commons.io.filefilter.AgeFileFilter;
 import org.apache.commons.io.filefilter.IOFileFilter;
 
 import java.io.BufferedReader;
@@ -33,10 +36,10 @@ import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.nio.file.LinkOption;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -230,16 +233,15 @@ public class FileUtils {
                 }
             }
 
-            File[] subFiles = file.listFiles();
-            if (subFiles == null || subFiles.length == 0)
-                return null;
-
             // If sub files exists but no file should be ignored
-            if (ignoredSubFilePaths == null || ignoredSubFilePaths.size() == 0)
-                return FileUtilsErrno.ERRNO_NON_EMPTY_DIRECTORY_FILE.getError(label, filePath);
+            if (ignoredSubFilePaths == null || ignoredSubFilePaths.size() == 0) {
+                if (!isDirectoryFileEmpty(file.getAbsolutePath()))
+                    return FileUtilsErrno.ERRNO_NON_EMPTY_DIRECTORY_FILE.getError(label, filePath);
+                return null;
+            }
 
             // If a sub file does not exist in ignored file path
-            if (nonIgnoredSubFileExists(subFiles, ignoredSubFilePaths)) {
+            if (nonIgnoredSubFileExists(file.getAbsolutePath(), ignoredSubFilePaths)) {
                 return FileUtilsErrno.ERRNO_NON_EMPTY_DIRECTORY_FILE.getError(label, filePath);
             }
 
@@ -296,6 +298,62 @@ public class FileUtils {
         return false;
     }
 
+    /**
+     * Check if directory at {@code directoryPath} contains a file not in {@code ignoredSubFilePaths}.
+     *
+     * This is the same as {@link #nonIgnoredSubFileExists(File[], List)}, but the directories are
+     * read with a {@link DirectoryWalker} so that the sub files do not need to be stat-ed separately
+     * to check if they are directories.
+     *
+     * @param directoryPath The absolute {@code path} for directory to check.
+     * @param ignoredSubFilePaths The list of absolute file paths under {@code directoryPath} dir.
+     *                            Validation is done for the paths.
+     * @return Returns {@code true} if a file was found that did not exist in the {@code ignoredSubFilePaths},
+     * otherwise  {@code false}.
+     */
+    public static boolean nonIgnoredSubFileExists(@NonNull String directoryPath, @NonNull List<String> ignoredSubFilePaths) throws IOException {
+        DirectoryWalker.Batch batch = new DirectoryWalker.Batch(256);
+        try (DirectoryWalker directoryWalker = DirectoryWalker.open(directoryPath, null)) {
+            while (directoryWalker.next(batch) > 0) {
+                for (int i = 0; i < batch.size(); i++) {
+                    String subFilePath = directoryPath + "/" + batch.getName(i);
+                    // If sub file does not exist in ignored sub file paths
+                    if (!ignoredSubFilePaths.contains(subFilePath)) {
+                        boolean isParentPath = false;
+                        for (String ignoredSubFilePath : ignoredSubFilePaths) {
+                            if (ignoredSubFilePath.startsWith(subFilePath + "/") && fileExists(ignoredSubFilePath, false)) {
+                                isParentPath = true;
+                                break;
+                            }
+                        }
+                        // If sub file is not a parent of any existing ignored sub file paths
+                        if (!isParentPath) {
+                            return true;
+                        }
+                    }
+
+                    // If non ignored sub file found, then early exit, otherwise continue looking
+                    if (batch.isDirectory(i) && nonIgnoredSubFileExists(subFilePath, ignoredSubFilePaths))
+                        return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if directory at {@code directoryPath} is empty. Only the first entry is read.
+     *
+     * @param directoryPath The {@code path} for directory to check.
+     * @return Returns {@code true} if directory is empty, otherwise {@code false}.
+     */
+    public static boolean isDirectoryFileEmpty(@NonNull String directoryPath) throws IOException {
+        try (DirectoryWalker directoryWalker = DirectoryWalker.open(directoryPath, null)) {
+            return directoryWalker.next(new DirectoryWalker.Batch(1)) == 0;
+        }
+    }
+
 
 
     /**
@@ -1143,8 +1201,8 @@ public class FileUtils {
                     return error;
 
                 if (srcFileType == FileType.DIRECTORY) {
-                    // Will give runtime exceptions on android < 8 due to missing classes like java.nio.file.Path if org.apache.commons.io version > 2.5
-                    org.apache.commons.io.FileUtils.copyDirectory(srcFile, destFile, true);
+                    // Copies in parallel and excludes the destination directory if its under the source directory
+                    FileOperations.copyDirectory(srcFile, destFile);
                 } else if (srcFileType == FileType.SYMLINK) {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                         java.nio.file.Files.copy(srcFile.toPath(), destFile.toPath(), LinkOption.NOFOLLOW_LINKS, StandardCopyOption.REPLACE_EXISTING);
@@ -1156,12 +1214,8 @@ public class FileUtils {
                             return error;
                     }
                 } else {
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                        java.nio.file.Files.copy(srcFile.toPath(), destFile.toPath(), LinkOption.NOFOLLOW_LINKS, StandardCopyOption.REPLACE_EXISTING);
-                    } else {
-                        // Will give runtime exceptions on android < 8 due to missing classes like java.nio.file.Path if org.apache.commons.io version > 2.5
-                        org.apache.commons.io.FileUtils.copyFile(srcFile, destFile, true);
-                    }
+                    // Copies with sendfile() and preserves permissions and modification time
+                    FileOperations.copyRegularFile(srcFile, destFile);
                 }
             }
 
@@ -1339,9 +1393,9 @@ public class FileUtils {
                 com.google.common.io.MoreFiles.deleteRecursively(file.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
             } else {
                 if (fileType == FileType.DIRECTORY) {
-                    // deleteDirectory() instead of forceDelete() gets the files list first instead of walking directory tree, so seems safer
-                    // Will give runtime exceptions on android < 8 due to missing classes like java.nio.file.Path if org.apache.commons.io version > 2.5
-                    org.apache.commons.io.FileUtils.deleteDirectory(file);
+                    // Deletes the directory tree in parallel without following symlinks. Like the
+                    // commons-io walk it replaces, it is path based since SecureDirectoryStream is not available
+                    FileOperations.deleteRecursively(file);
                 } else {
                     // Will give runtime exceptions on android < 8 due to missing classes like java.nio.file.Path if org.apache.commons.io version > 2.5
                     org.apache.commons.io.FileUtils.forceDelete(file);
@@ -1412,8 +1466,8 @@ public class FileUtils {
                     //noinspection UnstableApiUsage
                     com.google.common.io.MoreFiles.deleteDirectoryContents(file.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
                 } else {
-                    // Will give runtime exceptions on android < 8 due to missing classes like java.nio.file.Path if org.apache.commons.io version > 2.5
-                    org.apache.commons.io.FileUtils.cleanDirectory(new File(filePath));
+                    // Deletes in parallel without following symlinks, but path based like deleteFile()
+                    FileOperations.deleteDirectoryContents(file);
                 }
             }
             // Else create it
@@ -1480,22 +1534,12 @@ public class FileUtils {
                 }
             }
 
-            // TODO: Use FileAttributes with support for atime (default), mtime, ctime. Add regex for ignoring file and dir absolute paths.
-            // FIXME: iterateFiles() does not return subdirectories even with TrueFileFilter for file and dir.
-            // FIXME: Empty directories remain
-
             // If directory exists, delete its contents
             Calendar calendar = Calendar.getInstance();
             calendar.add(Calendar.DATE, -(days));
-            // AgeFileFilter seems to apply to symlink destination timestamp instead of symlink file itself
-            Iterator<File> filesToDelete =
-                org.apache.commons.io.FileUtils.iterateFiles(file, new AgeFileFilter(calendar.getTime()), dirFilter);
-            while (filesToDelete.hasNext()) {
-                File subFile = filesToDelete.next();
-                error = deleteFile(label + " directory sub", subFile.getAbsolutePath(), true, true, allowedFileTypeFlags);
-                if (error != null)
-                    return error;
-            }
+            error = deleteFilesOlderThan(label, file.getAbsolutePath(), dirFilter, calendar.getTimeInMillis(), allowedFileTypeFlags);
+            if (error != null)
+                return error;
         } catch (Exception e) {
             return FileUtilsErrno.ERRNO_DELETING_FILES_OLDER_THAN_X_DAYS_FAILED_WITH_EXCEPTION.getError(e, label + "directory", filePath, days, e.getMessage());
         }
@@ -1504,6 +1548,71 @@ public class FileUtils {
 
     }
 
+    /**
+     * Delete files under a directory that were last modified before {@code time}. The modification
+     * time of symlinks themselves is used and not of their targets. The directory is read with a
+     * {@link DirectoryWalker} that filters on the file type and modification time while reading,
+     * so files that should not be deleted are not returned. Sub directories are deleted if they
+     * were last modified before {@code time} and are empty after their files have been deleted.
+     *
+     * This function should ideally not be called by itself but through
+     * {@link #deleteFilesOlderThanXDays(String, String, IOFileFilter, int, boolean, int)}.
+     */
+    private static Error deleteFilesOlderThan(@NonNull String label, @NonNull final String directoryPath, final IOFileFilter dirFilter,
+                                              long time, int allowedFileTypeFlags) throws IOException {
+        boolean deleteDirectories = (allowedFileTypeFlags & FileType.DIRECTORY.getValue()) > 0;
+
+        DirectoryWalker.Options options = new DirectoryWalker.Options();
+        options.fileTypeFlags = allowedFileTypeFlags | (dirFilter != null ? FileType.DIRECTORY.getValue() : 0);
+        // Directories are checked after their files have been deleted
+        options.modifiedTimeFileTypeFlags = allowedFileTypeFlags & ~FileType.DIRECTORY.getValue();
+        options.maxModifiedTime = time;
+
+        // Sub directories are walked after the directory has been closed so that only one fd is open at a time
+        List<String> subDirectoryPaths = new ArrayList<>();
+        DirectoryWalker.Batch batch = new DirectoryWalker.Batch(1024);
+        try (DirectoryWalker directoryWalker = DirectoryWalker.open(directoryPath, options)) {
+            while (directoryWalker.next(batch) > 0) {
+                for (int i = 0; i < batch.size(); i++) {
+                    String subFilePath = directoryPath + "/" + batch.getName(i);
+                    if (batch.isDirectory(i)) {
+                        if (dirFilter != null && dirFilter.accept(new File(subFilePath)))
+                            subDirectoryPaths.add(subFilePath);
+                        continue;
+                    }
+
+                    try {
+                        Os.remove(subFilePath);
+                    } catch (ErrnoException e) {
+                        if (e.errno != OsConstants.ENOENT)
+                            return FileUtilsErrno.ERRNO_DELETING_FILE_FAILED_WITH_EXCEPTION.getError(e, label + "directory sub file", subFilePath, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        for (String subDirectoryPath : subDirectoryPaths) {
+            // Get the modification time before it is changed by deleting files under it
+            boolean isSubDirectoryOld = deleteDirectories &&
+                FileAttributes.get(subDirectoryPath, false).lastModifiedTime().toMillis() < time;
+
+            Error error = deleteFilesOlderThan(label, subDirectoryPath, dirFilter, time, allowedFileTypeFlags);
+            if (error != null)
+                return error;
+
+            if (isSubDirectoryOld && isDirectoryFileEmpty(subDirectoryPath)) {
+                try {
+                    Os.remove(subDirectoryPath);
+                } catch (ErrnoException e) {
+                    if (e.errno != OsConstants.ENOENT && e.errno != OsConstants.ENOTEMPTY)
+                        return FileUtilsErrno.ERRNO_DELETING_FILE_FAILED_WITH_EXCEPTION.getError(e, label + "directory sub directory", subDirectoryPath, e.getMessage());
+                }
+            }
+        }
+
+        return null;
+    }
+
 
 
 
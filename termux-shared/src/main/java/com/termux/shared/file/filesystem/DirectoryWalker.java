@@ -0,0 +1,276 @@
+package com.termux.shared.file.filesystem;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the entries of a directory in batches, like for walking directories with hundreds of
+ * thousands of files, instead of creating a {@link File} for every entry with {@link File#listFiles()}
+ * and then stat-ing each of them separately with {@link FileAttributes#get(String, boolean)}.
+ *
+ * The entries are read with `getdents64()` by the native `directory-walker` library. The type of
+ * an entry is returned by the filesystem, so entries are only stat-ed with `fstatat()` relative to
+ * the directory fd if {@link Options#stat} is enabled, a modification time filter applies to them
+ * or the filesystem does not return the type. Entries are filtered on type and modification time
+ * before they are returned. The names and stats are written into the primitive arrays of a
+ * reusable {@link Batch}, so no objects are created per entry unless requested. If the library
+ * cannot be loaded, then {@link File#list()} and {@link Os#lstat(String)} are used instead.
+ *
+ * Symlinks are never followed, including for the directory itself.
+ */
+public class DirectoryWalker implements Closeable {
+
+    /** The native JNI directory walker library. */
+    public static final String DIRECTORY_WALKER_LIBRARY = "directory-walker";
+
+    /** The number of stat fields stored per entry in {@link Batch#stats}. */
+    static final int STAT_FIELDS = 16;
+
+    private static final String LOG_TAG = "DirectoryWalker";
+
+    private static boolean directoryWalkerLibraryLoaded;
+
+    static {
+        try {
+            System.loadLibrary(DIRECTORY_WALKER_LIBRARY);
+            directoryWalkerLibraryLoaded = true;
+        } catch (Throwable t) {
+            Logger.logWarn(LOG_TAG, "Failed to load \"" + DIRECTORY_WALKER_LIBRARY + "\" library, falling back to java directory listing: " + t.getMessage());
+        }
+    }
+
+    private final String mDirectoryPath;
+    private final Options mOptions;
+    private int mFd = -1;
+
+    /** The names for the fallback if the native library is not loaded. */
+    private String[] mListedNames;
+    private int mListedIndex;
+
+    /** The filters and flags for a {@link DirectoryWalker}. */
+    public static class Options {
+        /** The flags of the {@link FileType}s to return. */
+        public int fileTypeFlags = FileTypes.FILE_TYPE_ANY_FLAGS;
+        /** The flags of the {@link FileType}s that the modification time filter applies to. */
+        public int modifiedTimeFileTypeFlags = FileTypes.FILE_TYPE_ANY_FLAGS;
+        /** The minimum modification time in milliseconds, inclusive. */
+        public long minModifiedTime = Long.MIN_VALUE;
+        /** The maximum modification time in milliseconds, exclusive. */
+        public long maxModifiedTime = Long.MAX_VALUE;
+        /** Whether all stat fields should be loaded for all entries. */
+        public boolean stat;
+    }
+
+    private DirectoryWalker(@NonNull String directoryPath, @NonNull Options options) {
+        mDirectoryPath = directoryPath;
+        mOptions = options;
+    }
+
+    /**
+     * Open a {@link DirectoryWalker} for a directory. It must be closed after use.
+     *
+     * @param directoryPath The path of the directory. If it is a symlink, then it will not be followed.
+     * @param options The optional {@link Options}.
+     * @return Returns the {@link DirectoryWalker}.
+     */
+    @NonNull
+    public static DirectoryWalker open(@NonNull String directoryPath, @Nullable Options options) throws IOException {
+        DirectoryWalker directoryWalker = new DirectoryWalker(directoryPath, options != null ? options : new Options());
+        if (directoryWalkerLibraryLoaded) {
+            int result = openNative(directoryPath.getBytes(StandardCharsets.UTF_8));
+            if (result < 0)
+                throw new IOException("Failed to open directory at path \"" + directoryPath + "\": " + OsConstants.errnoName(-result));
+            directoryWalker.mFd = result;
+        } else {
+            try {
+                if (!OsConstants.S_ISDIR(Os.lstat(directoryPath).st_mode))
+                    throw new IOException("Failed to open directory at path \"" + directoryPath + "\": ENOTDIR");
+            } catch (ErrnoException e) {
+                throw new IOException("Failed to open directory at path \"" + directoryPath + "\": " + e.getMessage());
+            }
+            directoryWalker.mListedNames = new File(directoryPath).list();
+            if (directoryWalker.mListedNames == null)
+                throw new IOException("Failed to list directory at path \"" + directoryPath + "\"");
+        }
+        return directoryWalker;
+    }
+
+    /** Get the path of the directory. */
+    @NonNull
+    public String getDirectoryPath() {
+        return mDirectoryPath;
+    }
+
+    /**
+     * Read the next entries into a {@link Batch}, replacing its previous entries.
+     *
+     * @param batch The {@link Batch} to read into.
+     * @return Returns the number of entries read, which is {@code 0} at the end of the directory.
+     */
+    public int next(@NonNull Batch batch) throws IOException {
+        batch.count = 0;
+        if (mListedNames != null)
+            return nextListed(batch);
+        if (mFd < 0)
+            throw new IOException("Directory walker for \"" + mDirectoryPath + "\" is closed");
+
+        int result = readNative(mFd, batch.names, batch.nameOffsets, batch.stats, mOptions.fileTypeFlags,
+            mOptions.modifiedTimeFileTypeFlags, mOptions.minModifiedTime, mOptions.maxModifiedTime, mOptions.stat);
+        if (result < 0)
+            throw new IOException("Failed to read directory at path \"" + mDirectoryPath + "\": " + OsConstants.errnoName(-result));
+        batch.count = result;
+        return result;
+    }
+
+    private int nextListed(@NonNull Batch batch) throws IOException {
+        int namesLength = 0;
+        while (mListedIndex < mListedNames.length && batch.count < batch.capacity) {
+            String name = mListedNames[mListedIndex];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (namesLength + nameBytes.length > batch.names.length) break;
+            mListedIndex++;
+
+            String filePath = mDirectoryPath + "/" + name;
+            StructStat stat;
+            try {
+                stat = Os.lstat(filePath);
+            } catch (ErrnoException e) {
+                // The entry was deleted after it was listed
+                if (e.errno == OsConstants.ENOENT) continue;
+                throw new IOException("Failed to stat file at path \"" + filePath + "\": " + e.getMessage());
+            }
+
+            // Store in the next slot first, which is overwritten if the entry is filtered
+            FileAttributes.get(filePath, stat).storeToStatArray(batch.stats, batch.count * STAT_FIELDS);
+            int fileType = batch.getFileType(batch.count).getValue();
+            if ((fileType & mOptions.fileTypeFlags) == 0) continue;
+            long modifiedTime = batch.getModifiedTime(batch.count);
+            if ((fileType & mOptions.modifiedTimeFileTypeFlags) != 0 &&
+                (modifiedTime < mOptions.minModifiedTime || modifiedTime >= mOptions.maxModifiedTime))
+                continue;
+
+            System.arraycopy(nameBytes, 0, batch.names, namesLength, nameBytes.length);
+            namesLength += nameBytes.length;
+            batch.count++;
+            batch.nameOffsets[batch.count] = namesLength;
+        }
+        return batch.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mListedNames = null;
+        if (mFd < 0) return;
+        int result = closeNative(mFd);
+        mFd = -1;
+        if (result < 0)
+            throw new IOException("Failed to close directory at path \"" + mDirectoryPath + "\": " + OsConstants.errnoName(-result));
+    }
+
+    public static boolean isNativeLibraryLoaded() {
+        return directoryWalkerLibraryLoaded;
+    }
+
+
+
+    /**
+     * A reusable batch of directory entries read by {@link #next(Batch)}. The entries are only
+     * valid until the next call to {@link #next(Batch)} with the batch.
+     */
+    public static class Batch {
+
+        private final int capacity;
+        private int count;
+        /** The UTF-8 bytes of the names of all entries, which are delimited by {@link #nameOffsets}. */
+        private final byte[] names;
+        private final int[] nameOffsets;
+        /** The {@link #STAT_FIELDS} stat fields for each entry in the order of {@link FileAttributes#loadFromStatArray(long[], int)}. */
+        private final long[] stats;
+
+        /**
+         * Create a {@link Batch}.
+         *
+         * @param capacity The maximum number of entries in the batch.
+         */
+        public Batch(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            // NAME_MAX is 255 bytes, so at least one name must always fit
+            this.names = new byte[Math.max(256, this.capacity * 32)];
+            this.nameOffsets = new int[this.capacity + 1];
+            this.stats = new long[this.capacity * STAT_FIELDS];
+        }
+
+        /** Get the number of entries in the batch. */
+        public int size() {
+            return count;
+        }
+
+        /** Get the name of an entry. */
+        @NonNull
+        public String getName(int index) {
+            return new String(names, nameOffsets[index], nameOffsets[index + 1] - nameOffsets[index], StandardCharsets.UTF_8);
+        }
+
+        /** Get the {@link FileType} of an entry. Symlinks are not followed. */
+        @NonNull
+        public FileType getFileType(int index) {
+            return FileTypes.getFileType((int) stats[index * STAT_FIELDS]);
+        }
+
+        /** Check if an entry is a directory. This is cheaper than {@link #getFileType(int)}. */
+        public boolean isDirectory(int index) {
+            return (stats[index * STAT_FIELDS] & UnixConstants.S_IFMT) == UnixConstants.S_IFDIR;
+        }
+
+        /**
+         * Get the modification time in milliseconds of an entry. This is only valid if the
+         * entry was stat-ed because of {@link Options#stat} or a modification time filter.
+         */
+        public long getModifiedTime(int index) {
+            int offset = index * STAT_FIELDS;
+            return stats[offset + 12] * 1000 + stats[offset + 13] / 1000000;
+        }
+
+        /**
+         * Get the size of an entry. This is only valid if the entry was stat-ed because of
+         * {@link Options#stat} or a modification time filter.
+         */
+        public long getSize(int index) {
+            return stats[index * STAT_FIELDS + 7];
+        }
+
+        /**
+         * Get the {@link FileAttributes} of an entry. This is only valid if the entry was stat-ed
+         * because of {@link Options#stat} or a modification time filter.
+         *
+         * @param directoryPath The path of the directory of the entry.
+         * @param index The index of the entry.
+         */
+        @NonNull
+        public FileAttributes getFileAttributes(@NonNull String directoryPath, int index) {
+            return FileAttributes.get(directoryPath + "/" + getName(index), stats, index * STAT_FIELDS);
+        }
+
+    }
+
+    private static native int openNative(@NonNull byte[] path);
+
+    private static native int closeNative(int fd);
+
+    private static native int readNative(int fd, @NonNull byte[] names, @NonNull int[] nameOffsets, @NonNull long[] stats,
+                                         int fileTypeFlags, int modifiedTimeFileTypeFlags,
+                                         long minModifiedTime, long maxModifiedTime, boolean stat);
+
+}
@@ -96,6 +96,20 @@ public class FileAttributes {
         return fileAttributes;
     }
 
+    // get the FileAttributes for a file from its StructStat
+    static FileAttributes get(String filePath, StructStat structStat) {
+        FileAttributes fileAttributes = new FileAttributes(filePath);
+        fileAttributes.loadFromStructStat(structStat);
+        return fileAttributes;
+    }
+
+    // get the FileAttributes for a file from the stat fields stored by DirectoryWalker
+    static FileAttributes get(String filePath, long[] stats, int offset) {
+        FileAttributes fileAttributes = new FileAttributes(filePath);
+        fileAttributes.loadFromStatArray(stats, offset);
+        return fileAttributes;
+    }
+
     // get the FileAttributes for an open file
     public static FileAttributes get(FileDescriptor fileDescriptor) throws IOException {
         FileAttributes fileAttributes = new FileAttributes(fileDescriptor);
@@ -318,6 +332,46 @@ public class FileAttributes {
         }
     }
 
+    /** Load the {@link DirectoryWalker#STAT_FIELDS} stat fields stored at {@code offset} in {@code stats}. */
+    void loadFromStatArray(long[] stats, int offset) {
+        this.st_mode = (int) stats[offset];
+        this.st_ino = stats[offset + 1];
+        this.st_dev = stats[offset + 2];
+        this.st_rdev = stats[offset + 3];
+        this.st_nlink = stats[offset + 4];
+        this.st_uid = (int) stats[offset + 5];
+        this.st_gid = (int) stats[offset + 6];
+        this.st_size = stats[offset + 7];
+        this.st_blksize = stats[offset + 8];
+        this.st_blocks = stats[offset + 9];
+        this.st_atime_sec = stats[offset + 10];
+        this.st_atime_nsec = stats[offset + 11];
+        this.st_mtime_sec = stats[offset + 12];
+        this.st_mtime_nsec = stats[offset + 13];
+        this.st_ctime_sec = stats[offset + 14];
+        this.st_ctime_nsec = stats[offset + 15];
+    }
+
+    /** Store the {@link DirectoryWalker#STAT_FIELDS} stat fields at {@code offset} in {@code stats}. */
+    void storeToStatArray(long[] stats, int offset) {
+        stats[offset] = st_mode;
+        stats[offset + 1] = st_ino;
+        stats[offset + 2] = st_dev;
+        stats[offset + 3] = st_rdev;
+        stats[offset + 4] = st_nlink;
+        stats[offset + 5] = st_uid;
+        stats[offset + 6] = st_gid;
+        stats[offset + 7] = st_size;
+        stats[offset + 8] = st_blksize;
+        stats[offset + 9] = st_blocks;
+        stats[offset + 10] = st_atime_sec;
+        stats[offset + 11] = st_atime_nsec;
+        stats[offset + 12] = st_mtime_sec;
+        stats[offset + 13] = st_mtime_nsec;
+        stats[offset + 14] = st_ctime_sec;
+        stats[offset + 15] = st_ctime_nsec;
+    }
+
     public String getFileString() {
         return "File: `" + file() + "`";
     }
@@ -357,6 +357,89 @@ public class FileUtilsTests {
         FileUtils.getFileType("/dev/null", false);
     }
 
+    /**
+     * Run benchmarks for copying, moving and deleting generated directory trees with {@link FileUtils}
+     * against the commons-io walks it used before {@link com.termux.shared.file.FileOperations}.
+     *
+     * Run at app startup like in an activity
+     * FileUtilsTests.runBenchmarks(this, TermuxConstants.TERMUX_HOME_DIR_PATH + "/FileUtilsBenchmarks");
+     *
+     * @param context The {@link Context} for operations.
+     */
+    public static void runBenchmarks(@NonNull final Context context, @NonNull final String testRootDirectoryPath) {
+        try {
+            Logger.logInfo(LOG_TAG, "Running benchmarks");
+            // Many small files like $TMPDIR and few large files like backups
+            runBenchmark(testRootDirectoryPath, 20, 500, 4 * 1024);
+            runBenchmark(testRootDirectoryPath, 4, 8, 8 * 1024 * 1024);
+            Logger.logInfo(LOG_TAG, "All benchmarks successful");
+        } catch (Exception e) {
+            Logger.logErrorExtended(LOG_TAG, e.getMessage());
+            Logger.showToast(context, e.getMessage() != null ? e.getMessage().replaceAll("(?s)\nFull Error:\n.*", "") : null, true);
+        }
+    }
+
+    private static void runBenchmark(@NonNull final String testRootDirectoryPath, int directories, int filesPerDirectory, int fileSize) throws Exception {
+        Error error;
+        String treeLabel = directories + "x" + filesPerDirectory + " files of " + fileSize + " bytes";
+
+        error = FileUtils.clearDirectory("testRootDirectoryPath", testRootDirectoryPath);
+        assertEqual("Failed to create testRootDirectoryPath directory file", null, error);
+
+        String srcPath = testRootDirectoryPath + "/src";
+        createTree(srcPath, directories, filesPerDirectory, fileSize);
+
+        long startTime = System.currentTimeMillis();
+        org.apache.commons.io.FileUtils.copyDirectory(new File(srcPath), new File(testRootDirectoryPath + "/commons_copy"), true);
+        long commonsCopyTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        error = FileUtils.copyDirectoryFile("src", srcPath, testRootDirectoryPath + "/copy", false);
+        long copyTime = System.currentTimeMillis() - startTime;
+        assertEqual("Failed to copy src directory file", null, error);
+
+        // Different filesystems are not available, so move by copy is benchmarked by copy
+        startTime = System.currentTimeMillis();
+        error = FileUtils.moveDirectoryFile("copy", testRootDirectoryPath + "/copy", testRootDirectoryPath + "/move", false);
+        long moveTime = System.currentTimeMillis() - startTime;
+        assertEqual("Failed to move copy directory file", null, error);
+
+        startTime = System.currentTimeMillis();
+        org.apache.commons.io.FileUtils.deleteDirectory(new File(testRootDirectoryPath + "/commons_copy"));
+        long commonsDeleteTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        error = FileUtils.deleteDirectoryFile("move", testRootDirectoryPath + "/move", false);
+        long deleteTime = System.currentTimeMillis() - startTime;
+        assertEqual("Failed to delete move directory file", null, error);
+
+        startTime = System.currentTimeMillis();
+        error = FileUtils.clearDirectory("src", srcPath);
+        long clearTime = System.currentTimeMillis() - startTime;
+        assertEqual("Failed to clear src directory file", null, error);
+
+        Logger.logInfo(LOG_TAG, "Benchmark for " + treeLabel + ":\n" +
+            "copy: commons-io=" + commonsCopyTime + "ms, FileUtils=" + copyTime + "ms\n" +
+            "move: FileUtils=" + moveTime + "ms\n" +
+            "delete: commons-io=" + commonsDeleteTime + "ms, FileUtils=" + deleteTime + "ms\n" +
+            "clear: FileUtils=" + clearTime + "ms");
+    }
+
+    private static void createTree(@NonNull final String path, int directories, int filesPerDirectory, int fileSize) throws Exception {
+        byte[] data = new byte[fileSize];
+        new java.util.Random(0).nextBytes(data);
+        for (int i = 0; i < directories; i++) {
+            String directoryPath = path + "/dir" + i;
+            Error error = FileUtils.createDirectoryFile(directoryPath);
+            assertEqual("Failed to create " + directoryPath + " directory file", null, error);
+            for (int j = 0; j < filesPerDirectory; j++) {
+                try (java.io.FileOutputStream outputStream = new java.io.FileOutputStream(directoryPath + "/file" + j)) {
+                    outputStream.write(data);
+                }
+            }
+        }
+    }
+
 
 
     public static void assertEqual(@NonNull final String message, final String expected, final Error actual) throws Exception {
@@ -0,0 +1,348 @@
+package com.termux.shared.logger;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes log entries queued by {@link Logger} on a background thread, so that callers do not
+ * block on logcat or split extended messages on their own thread. Set it with
+ * {@link Logger#setAsyncLogWriter(AsyncLogWriter)}.
+ *
+ * Entries are queued in a fixed size ring buffer. If the writer thread cannot keep up, then the
+ * oldest entries are overwritten instead of blocking the caller, and the number of dropped entries
+ * is logged once the writer catches up. Entries can be written to logcat and/or to a log file,
+ * which is rotated to a file with the ".1" suffix when it would grow larger than the max size.
+ */
+public class AsyncLogWriter {
+
+    /** The default number of entries that can be queued before the oldest are dropped. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** The default max size of the log file before it is rotated. */
+    public static final long DEFAULT_MAX_LOG_FILE_SIZE = 1024 * 1024; // 1MB
+
+    /** The suffix of the rotated log file. */
+    public static final String ROTATED_LOG_FILE_SUFFIX = ".1";
+
+    private static final String LOG_TAG = "AsyncLogWriter";
+
+    private final int mCapacity;
+    private final boolean mLogcatEnabled;
+    private final File mLogFile;
+    private final long mMaxLogFileSize;
+
+    private final Object mLock = new Object();
+
+    // The ring buffer of the queued entries, guarded by mLock
+    private final int[] mPriorities;
+    private final String[] mTags;
+    private final String[] mMessages;
+    private final boolean[] mExtended;
+    private final long[] mTimes;
+    private int mHead;
+    private int mCount;
+    private long mDroppedCount;
+    /** The number of entries queued and the number written or dropped, used by {@link #flush(long)}. */
+    private long mQueuedSequence;
+    private long mWrittenSequence;
+
+    private Thread mThread;
+    private boolean mStopped;
+
+    /** The log file writer, only accessed by the writer thread. */
+    private Writer mLogFileWriter;
+    private long mLogFileSize;
+    private SimpleDateFormat mDateFormat;
+
+    /**
+     * Create an {@link AsyncLogWriter}.
+     *
+     * @param capacity The number of entries that can be queued before the oldest are dropped.
+     * @param logcatEnabled Whether entries should be written to logcat.
+     * @param logFile The optional log file entries should be appended to.
+     * @param maxLogFileSize The max size of the log file before it is rotated.
+     */
+    public AsyncLogWriter(int capacity, boolean logcatEnabled, @Nullable File logFile, long maxLogFileSize) {
+        mCapacity = Math.max(1, capacity);
+        mLogcatEnabled = logcatEnabled;
+        mLogFile = logFile;
+        mMaxLogFileSize = maxLogFileSize;
+
+        mPriorities = new int[mCapacity];
+        mTags = new String[mCapacity];
+        mMessages = new String[mCapacity];
+        mExtended = new boolean[mCapacity];
+        mTimes = new long[mCapacity];
+    }
+
+    /** Create an {@link AsyncLogWriter} that only writes to logcat. */
+    public AsyncLogWriter() {
+        this(DEFAULT_CAPACITY, true, null, DEFAULT_MAX_LOG_FILE_SIZE);
+    }
+
+    /** Get the optional log file entries are appended to. */
+    @Nullable
+    public File getLogFile() {
+        return mLogFile;
+    }
+
+    /** Get the number of entries dropped because the queue was full. */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /** Start the writer thread. This is called by {@link Logger#setAsyncLogWriter(AsyncLogWriter)}. */
+    void start() {
+        synchronized (mLock) {
+            if (mThread != null) return;
+            mStopped = false;
+            mThread = new Thread(this::run, LOG_TAG);
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Write the remaining entries and stop the writer thread. This is called by
+     * {@link Logger#setAsyncLogWriter(AsyncLogWriter)}.
+     */
+    void stop() {
+        Thread thread;
+        synchronized (mLock) {
+            thread = mThread;
+            if (thread == null) return;
+            mStopped = true;
+            mLock.notifyAll();
+        }
+
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (mLock) {
+            mThread = null;
+        }
+    }
+
+    /**
+     * Queue an entry. If the queue is full, then the oldest entry is dropped.
+     *
+     * @param logPriority The {@link Log} priority of the entry.
+     * @param fullTag The full log tag returned by {@link Logger#getFullTag(String)}.
+     * @param message The message of the entry.
+     * @param extended Whether the message should be split with
+     *                 {@link Logger#splitExtendedMessage(String, String)} for logcat.
+     */
+    public void write(int logPriority, String fullTag, String message, boolean extended) {
+        long time = System.currentTimeMillis();
+        synchronized (mLock) {
+            int index;
+            if (mCount == mCapacity) {
+                // Overwrite the oldest entry
+                index = mHead;
+                mHead = (mHead + 1) % mCapacity;
+                mDroppedCount++;
+                mWrittenSequence++;
+            } else {
+                index = (mHead + mCount) % mCapacity;
+                mCount++;
+            }
+
+            mPriorities[index] = logPriority;
+            mTags[index] = fullTag;
+            mMessages[index] = message;
+            mExtended[index] = extended;
+            mTimes[index] = time;
+            mQueuedSequence++;
+
+            if (mCount == 1) mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait until all entries queued before this call have been written.
+     *
+     * @param timeoutMillis The max time to wait in milliseconds.
+     * @return Returns {@code true} if the entries were written before the timeout.
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (mLock) {
+            long sequence = mQueuedSequence;
+            while (mWrittenSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || mThread == null) return false;
+                try {
+                    mLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void run() {
+        int[] priorities = new int[mCapacity];
+        String[] tags = new String[mCapacity];
+        String[] messages = new String[mCapacity];
+        boolean[] extended = new boolean[mCapacity];
+        long[] times = new long[mCapacity];
+
+        while (true) {
+            int count;
+            long droppedCount;
+            synchronized (mLock) {
+                while (mCount == 0 && !mStopped) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        mStopped = true;
+                    }
+                }
+                if (mCount == 0 && mStopped) break;
+
+                // Take all queued entries so that callers are not blocked while they are written
+                count = mCount;
+                for (int i = 0; i < count; i++) {
+                    int index = (mHead + i) % mCapacity;
+                    priorities[i] = mPriorities[index];
+                    tags[i] = mTags[index];
+                    messages[i] = mMessages[index];
+                    extended[i] = mExtended[index];
+                    times[i] = mTimes[index];
+                    mTags[index] = null;
+                    mMessages[index] = null;
+                }
+                mHead = (mHead + count) % mCapacity;
+                mCount = 0;
+                droppedCount = mDroppedCount;
+                mDroppedCount = 0;
+            }
+
+            if (droppedCount > 0)
+                writeEntry(Log.WARN, Logger.getFullTag(LOG_TAG), "Dropped " + droppedCount + " log entries", false, System.currentTimeMillis());
+            for (int i = 0; i < count; i++) {
+                writeEntry(priorities[i], tags[i], messages[i], extended[i], times[i]);
+                tags[i] = null;
+                messages[i] = null;
+            }
+            flushLogFile();
+
+            synchronized (mLock) {
+                mWrittenSequence += count;
+                mLock.notifyAll();
+            }
+        }
+
+        closeLogFile();
+        synchronized (mLock) {
+            mLock.notifyAll();
+        }
+    }
+
+    private void writeEntry(int logPriority, String fullTag, String message, boolean extended, long time) {
+        if (message == null) message = "null";
+
+        if (mLogcatEnabled) {
+            if (extended) {
+                for (String entry : Logger.splitExtendedMessage(fullTag, message))
+                    Log.println(logPriority, fullTag, entry);
+            } else {
+                Log.println(logPriority, fullTag, message);
+            }
+        }
+
+        if (mLogFile != null)
+            writeLogFileEntry(logPriority, fullTag, message, time);
+    }
+
+    private void writeLogFileEntry(int logPriority, String fullTag, String message, long time) {
+        if (mDateFormat == null)
+            mDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+
+        String entry = mDateFormat.format(new Date(time)) + " " + getPriorityChar(logPriority) + "/" + fullTag + ": " + message + "\n";
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+
+        try {
+            if (mLogFileWriter != null && mLogFileSize > 0 && mLogFileSize + bytes.length > mMaxLogFileSize)
+                rotateLogFile();
+            if (mLogFileWriter == null) {
+                File parent = mLogFile.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                    throw new IOException("Failed to create log file directory at path \"" + parent.getAbsolutePath() + "\"");
+                mLogFileSize = mLogFile.length();
+                if (mLogFileSize > 0 && mLogFileSize + bytes.length > mMaxLogFileSize)
+                    rotateLogFile();
+                mLogFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mLogFile, true), StandardCharsets.UTF_8));
+            }
+
+            mLogFileWriter.write(entry);
+            mLogFileSize += bytes.length;
+        } catch (IOException e) {
+            // Do not log with Logger since it would queue to this writer again
+            Log.e(Logger.getFullTag(LOG_TAG), "Failed to write to log file at path \"" + mLogFile.getAbsolutePath() + "\": " + e.getMessage());
+            closeLogFile();
+        }
+    }
+
+    private void rotateLogFile() throws IOException {
+        closeLogFile();
+        File rotatedLogFile = new File(mLogFile.getAbsolutePath() + ROTATED_LOG_FILE_SUFFIX);
+        if (rotatedLogFile.exists() && !rotatedLogFile.delete())
+            throw new IOException("Failed to delete rotated log file at path \"" + rotatedLogFile.getAbsolutePath() + "\"");
+        if (!mLogFile.renameTo(rotatedLogFile))
+            throw new IOException("Failed to rotate log file to path \"" + rotatedLogFile.getAbsolutePath() + "\"");
+        mLogFileSize = 0;
+    }
+
+    private void flushLogFile() {
+        if (mLogFileWriter == null) return;
+        try {
+            mLogFileWriter.flush();
+        } catch (IOException e) {
+            Log.e(Logger.getFullTag(LOG_TAG), "Failed to flush log file at path \"" + mLogFile.getAbsolutePath() + "\": " + e.getMessage());
+            closeLogFile();
+        }
+    }
+
+    private void closeLogFile() {
+        if (mLogFileWriter == null) return;
+        try {
+            mLogFileWriter.close();
+        } catch (IOException ignored) {
+        }
+        mLogFileWriter = null;
+    }
+
+    @NonNull
+    private static String getPriorityChar(int logPriority) {
+        switch (logPriority) {
+            case Log.ERROR: return "E";
+            case Log.WARN: return "W";
+            case Log.INFO: return "I";
+            case Log.DEBUG: return "D";
+            case Log.VERBOSE: return "V";
+            default: return "?";
+        }
+    }
+
+}
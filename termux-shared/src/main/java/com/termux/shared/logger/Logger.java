@@ -17,6 +17,7 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class Logger {
 
@@ -53,28 +54,98 @@ public class Logger {
 
 
 
+    /**
+     * The optional {@link AsyncLogWriter} that log entries are queued to instead of being written
+     * to logcat on the caller thread. This will be {@code null} if it is disabled, which is the
+     * default.
+     */
+    private static volatile AsyncLogWriter sAsyncLogWriter;
+
+
+
+    /**
+     * Check if messages with a log priority will be logged for the {@link #CURRENT_LOG_LEVEL}.
+     * Callers that need to do expensive work to build a message should check this first, or use
+     * the functions that take a {@link Supplier} or format arguments.
+     *
+     * @param logPriority The {@link Log} priority like {@link Log#DEBUG}.
+     * @return Returns {@code true} if the message will be logged.
+     */
+    public static boolean isLoggable(int logPriority) {
+        switch (logPriority) {
+            case Log.ERROR:
+            case Log.WARN:
+            case Log.INFO:
+                return CURRENT_LOG_LEVEL >= LOG_LEVEL_NORMAL;
+            case Log.DEBUG:
+                return CURRENT_LOG_LEVEL >= LOG_LEVEL_DEBUG;
+            case Log.VERBOSE:
+                return CURRENT_LOG_LEVEL >= LOG_LEVEL_VERBOSE;
+            default:
+                return false;
+        }
+    }
+
     public static void logMessage(int logPriority, String tag, String message) {
-        if (logPriority == Log.ERROR && CURRENT_LOG_LEVEL >= LOG_LEVEL_NORMAL)
+        if (!isLoggable(logPriority)) return;
+
+        AsyncLogWriter asyncLogWriter = sAsyncLogWriter;
+        if (asyncLogWriter != null) {
+            asyncLogWriter.write(logPriority, getFullTag(tag), message, false);
+            return;
+        }
+
+        if (logPriority == Log.ERROR)
             Log.e(getFullTag(tag), message);
-        else if (logPriority == Log.WARN && CURRENT_LOG_LEVEL >= LOG_LEVEL_NORMAL)
+        else if (logPriority == Log.WARN)
             Log.w(getFullTag(tag), message);
-        else if (logPriority == Log.INFO && CURRENT_LOG_LEVEL >= LOG_LEVEL_NORMAL)
+        else if (logPriority == Log.INFO)
             Log.i(getFullTag(tag), message);
-        else if (logPriority == Log.DEBUG && CURRENT_LOG_LEVEL >= LOG_LEVEL_DEBUG)
+        else if (logPriority == Log.DEBUG)
             Log.d(getFullTag(tag), message);
-        else if (logPriority == Log.VERBOSE && CURRENT_LOG_LEVEL >= LOG_LEVEL_VERBOSE)
+        else if (logPriority == Log.VERBOSE)
             Log.v(getFullTag(tag), message);
     }
 
+    public static void logMessage(int logPriority, String tag, Supplier<String> messageSupplier) {
+        if (isLoggable(logPriority))
+            logMessage(logPriority, tag, messageSupplier.get());
+    }
+
     public static void logExtendedMessage(int logLevel, String tag, String message) {
-        if (message == null) return;
+        if (message == null || !isLoggable(logLevel)) return;
+
+        // Split on the writer thread if messages are being written asynchronously
+        AsyncLogWriter asyncLogWriter = sAsyncLogWriter;
+        if (asyncLogWriter != null) {
+            asyncLogWriter.write(logLevel, getFullTag(tag), message, true);
+            return;
+        }
 
+        for (String entry : splitExtendedMessage(getFullTag(tag), message))
+            logMessage(logLevel, tag, entry);
+    }
+
+    public static void logExtendedMessage(int logLevel, String tag, Supplier<String> messageSupplier) {
+        if (isLoggable(logLevel))
+            logExtendedMessage(logLevel, tag, messageSupplier.get());
+    }
+
+    /**
+     * Split a message into entries that fit in {@link #LOGGER_ENTRY_MAX_PAYLOAD}, preferably at
+     * newlines. If more than one entry is returned, then each entry is prefixed with "(x/y)\n".
+     *
+     * @param fullTag The full log tag returned by {@link #getFullTag(String)}.
+     * @param message The message to split.
+     * @return Returns the {@link List<String>} of entries.
+     */
+    @NonNull
+    public static List<String> splitExtendedMessage(String fullTag, @NonNull String message) {
         int cutOffIndex;
         int nextNewlineIndex;
-        String prefix = "";
 
         // -8 for prefix "(xx/xx)" (max 99 sections), - log tag length, -4 for log tag prefix "D/" and suffix ": "
-        int maxEntrySize = LOGGER_ENTRY_MAX_PAYLOAD - 8 - getFullTag(tag).length() - 4;
+        int maxEntrySize = LOGGER_ENTRY_MAX_PAYLOAD - 8 - fullTag.length() - 4;
 
         List<String> messagesList = new ArrayList<>();
 
@@ -93,11 +164,12 @@ public class Logger {
             }
         }
 
-        for(int i=0; i<messagesList.size(); i++) {
-            if (messagesList.size() > 1)
-                prefix = "(" + (i + 1) + "/" + messagesList.size() + ")\n";
-            logMessage(logLevel, tag, prefix + messagesList.get(i));
+        if (messagesList.size() > 1) {
+            for(int i=0; i<messagesList.size(); i++)
+                messagesList.set(i, "(" + (i + 1) + "/" + messagesList.size() + ")\n" + messagesList.get(i));
         }
+
+        return messagesList;
     }
 
 
@@ -194,6 +266,22 @@ public class Logger {
         logExtendedMessage(Log.DEBUG, DEFAULT_LOG_TAG, message);
     }
 
+    /** Log a debug message that is only built by {@code messageSupplier} if it will be logged. */
+    public static void logDebug(String tag, Supplier<String> messageSupplier) {
+        logMessage(Log.DEBUG, tag, messageSupplier);
+    }
+
+    /** Log a debug message that is only formatted with {@link String#format(String, Object...)} if it will be logged. */
+    public static void logDebug(String tag, String format, Object... args) {
+        if (isLoggable(Log.DEBUG))
+            logMessage(Log.DEBUG, tag, String.format(format, args));
+    }
+
+    /** Log an extended debug message that is only built by {@code messageSupplier} if it will be logged. */
+    public static void logDebugExtended(String tag, Supplier<String> messageSupplier) {
+        logExtendedMessage(Log.DEBUG, tag, messageSupplier);
+    }
+
 
 
     public static void logVerbose(String tag, String message) {
@@ -212,6 +300,22 @@ public class Logger {
         logExtendedMessage(Log.VERBOSE, DEFAULT_LOG_TAG, message);
     }
 
+    /** Log a verbose message that is only built by {@code messageSupplier} if it will be logged. */
+    public static void logVerbose(String tag, Supplier<String> messageSupplier) {
+        logMessage(Log.VERBOSE, tag, messageSupplier);
+    }
+
+    /** Log a verbose message that is only formatted with {@link String#format(String, Object...)} if it will be logged. */
+    public static void logVerbose(String tag, String format, Object... args) {
+        if (isLoggable(Log.VERBOSE))
+            logMessage(Log.VERBOSE, tag, String.format(format, args));
+    }
+
+    /** Log an extended verbose message that is only built by {@code messageSupplier} if it will be logged. */
+    public static void logVerboseExtended(String tag, Supplier<String> messageSupplier) {
+        logExtendedMessage(Log.VERBOSE, tag, messageSupplier);
+    }
+
     public static void logVerboseForce(String tag, String message) {
         Log.v(tag, message);
     }
@@ -456,6 +560,28 @@ public class Logger {
 
 
 
+    /** Get the {@link AsyncLogWriter} that log entries are queued to, or {@code null} if disabled. */
+    public static AsyncLogWriter getAsyncLogWriter() {
+        return sAsyncLogWriter;
+    }
+
+    /**
+     * Set the {@link AsyncLogWriter} that log entries are queued to. The previous writer is
+     * flushed and stopped.
+     *
+     * @param asyncLogWriter The {@link AsyncLogWriter} to set, or {@code null} to write entries
+     *                       to logcat on the caller thread.
+     */
+    public static synchronized void setAsyncLogWriter(AsyncLogWriter asyncLogWriter) {
+        AsyncLogWriter previousAsyncLogWriter = sAsyncLogWriter;
+        if (previousAsyncLogWriter == asyncLogWriter) return;
+        if (asyncLogWriter != null) asyncLogWriter.start();
+        sAsyncLogWriter = asyncLogWriter;
+        if (previousAsyncLogWriter != null) previousAsyncLogWriter.stop();
+    }
+
+
+
     public static int getLogLevel() {
         return CURRENT_LOG_LEVEL;
     }
@@ -0,0 +1,172 @@
+package com.termux.shared.settings.properties;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.file.filesystem.FileAttributes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the properties loaded from a properties file with
+ * {@link SharedProperties#loadPropertiesFromDisk()}. Since it is never modified, it can be
+ * published through a {@code volatile} reference and read without locks or copying the in-memory
+ * cache maps for every read, unlike a {@link SharedProperties} instance.
+ *
+ * The snapshot also stores the path, device, inode, size, modification and change times of the
+ * file it was loaded from, so that {@link #isUpToDate(File)} can check with a single
+ * {@code lstat()} call whether the file needs to be parsed again.
+ */
+public class SharedPropertiesSnapshot {
+
+    /** The file the snapshot was loaded from, or {@code null} if no file was found. */
+    private final File mPropertiesFile;
+
+    /** The {@link FileAttributes} of {@link #mPropertiesFile} before it was loaded. */
+    private final FileAttributes mFileAttributes;
+
+    /** The literal values in the file for the properties that were loaded. */
+    private final Map<String, String> mProperties;
+
+    /** The internal values of the properties that were loaded. */
+    private final Map<String, Object> mInternalProperties;
+
+    private SharedPropertiesSnapshot(@Nullable File propertiesFile, @Nullable FileAttributes fileAttributes,
+                                     @NonNull Properties properties, @NonNull Map<String, Object> internalProperties) {
+        mPropertiesFile = propertiesFile;
+        mFileAttributes = fileAttributes;
+
+        Map<String, String> map = new HashMap<>();
+        for (String key : properties.stringPropertyNames())
+            map.put(key, properties.getProperty(key));
+        mProperties = Collections.unmodifiableMap(map);
+        mInternalProperties = Collections.unmodifiableMap(new HashMap<>(internalProperties));
+    }
+
+    /**
+     * Load a {@link SharedPropertiesSnapshot} from a properties file.
+     *
+     * @param context The {@link Context} for operations.
+     * @param propertiesFile The {@link File} to load properties from. If this is {@code null},
+     *                       then only the default internal values will be loaded.
+     * @param propertiesList The {@link Set<String>} object that defined which properties to load.
+     *                       If this is set to {@code null}, then all properties that exist in
+     *                       {@code propertiesFile} will be loaded.
+     * @param sharedPropertiesParser The implementation of the {@link SharedPropertiesParser} interface.
+     * @return Returns the {@link SharedPropertiesSnapshot}.
+     */
+    @NonNull
+    public static SharedPropertiesSnapshot load(@NonNull Context context, @Nullable File propertiesFile,
+                                                Set<String> propertiesList, @NonNull SharedPropertiesParser sharedPropertiesParser) {
+        // Get the attributes before reading so that changes while reading are detected later
+        FileAttributes fileAttributes = getFileAttributes(propertiesFile);
+
+        SharedProperties sharedProperties = new SharedProperties(context, propertiesFile, propertiesList, sharedPropertiesParser);
+        sharedProperties.loadPropertiesFromDisk();
+        return new SharedPropertiesSnapshot(propertiesFile, fileAttributes,
+            sharedProperties.getProperties(true), sharedProperties.getInternalProperties());
+    }
+
+    @Nullable
+    private static FileAttributes getFileAttributes(@Nullable File propertiesFile) {
+        if (propertiesFile == null) return null;
+        try {
+            return FileAttributes.get(propertiesFile.getAbsolutePath(), false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if the snapshot is still up to date for a properties file.
+     *
+     * @param propertiesFile The {@link File} that properties should currently be loaded from.
+     * @return Returns {@code true} if {@code propertiesFile} is the same file that the snapshot
+     * was loaded from and it has not been modified or replaced since.
+     */
+    public boolean isUpToDate(@Nullable File propertiesFile) {
+        if (propertiesFile == null || mPropertiesFile == null)
+            return propertiesFile == null && mPropertiesFile == null;
+        if (!propertiesFile.getAbsolutePath().equals(mPropertiesFile.getAbsolutePath()))
+            return false;
+
+        FileAttributes fileAttributes = getFileAttributes(propertiesFile);
+        if (fileAttributes == null || mFileAttributes == null)
+            return false;
+
+        return fileAttributes.dev() == mFileAttributes.dev() &&
+            fileAttributes.ino() == mFileAttributes.ino() &&
+            fileAttributes.size() == mFileAttributes.size() &&
+            fileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) == mFileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) &&
+            fileAttributes.lastChangeTime().to(TimeUnit.NANOSECONDS) == mFileAttributes.lastChangeTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the keys whose internal values are different from another snapshot.
+     *
+     * @param snapshot The previous snapshot. If this is {@code null}, then all keys are returned.
+     * @return Returns the {@link Set<String>} of changed keys.
+     */
+    @NonNull
+    public Set<String> getChangedKeys(@Nullable SharedPropertiesSnapshot snapshot) {
+        Set<String> changedKeys = new HashSet<>(mInternalProperties.keySet());
+        if (snapshot == null) return changedKeys;
+
+        changedKeys.addAll(snapshot.mInternalProperties.keySet());
+        changedKeys.removeIf(key -> mInternalProperties.containsKey(key) == snapshot.mInternalProperties.containsKey(key) &&
+            Objects.equals(mInternalProperties.get(key), snapshot.mInternalProperties.get(key)));
+        return changedKeys;
+    }
+
+    /** Get the file the snapshot was loaded from, or {@code null} if no file was found. */
+    @Nullable
+    public File getPropertiesFile() {
+        return mPropertiesFile;
+    }
+
+    /** Get a copy of the {@link Properties} of the snapshot. */
+    @NonNull
+    public Properties getProperties() {
+        Properties properties = new Properties();
+        properties.putAll(mProperties);
+        return properties;
+    }
+
+    /** Get the literal value of a property, or {@code null} if it was not found. */
+    @Nullable
+    public String getProperty(String key) {
+        return key != null ? mProperties.get(key) : null;
+    }
+
+    /** Get a copy of the internal values of the snapshot. */
+    @NonNull
+    public Map<String, Object> getInternalProperties() {
+        return new HashMap<>(mInternalProperties);
+    }
+
+    /**
+     * Get the internal value of a property. This will be {@code null} if key is not found or if
+     * the object was {@code null}. Use {@link #containsInternalProperty(String)} to detect the later.
+     */
+    @Nullable
+    public Object getInternalProperty(String key) {
+        return key != null ? mInternalProperties.get(key) : null;
+    }
+
+    /** Check if an internal value exists for a property. */
+    public boolean containsInternalProperty(String key) {
+        return key != null && mInternalProperties.containsKey(key);
+    }
+
+}
@@ -29,6 +29,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.command.result.ResultDirectoryStream;
 
 /**
  * Thread utility class continuously reading from an InputStream
@@ -77,13 +78,15 @@ public class StreamGobbler extends Thread {
     private final String shell;
     @NonNull
     private final InputStream inputStream;
-    @NonNull
+    @Nullable
     private final BufferedReader reader;
     @Nullable
     private final List<String> listWriter;
     @Nullable
     private final StringBuilder stringWriter;
     @Nullable
+    private final ResultDirectoryStream.Sink sinkWriter;
+    @Nullable
     private final OnLineListener lineListener;
     @Nullable
     private final OnStreamClosedListener streamClosedListener;
@@ -119,6 +122,7 @@ public class StreamGobbler extends Thread {
 
         listWriter = outputList;
         stringWriter = null;
+        sinkWriter = null;
         lineListener = null;
 
         mLogLevel = logLevel;
@@ -151,6 +155,7 @@ public class StreamGobbler extends Thread {
 
         listWriter = null;
         stringWriter = outputString;
+        sinkWriter = null;
         lineListener = null;
 
         mLogLevel = logLevel;
@@ -183,11 +188,46 @@ public class StreamGobbler extends Thread {
 
         listWriter = null;
         stringWriter = null;
+        sinkWriter = null;
         lineListener = onLineListener;
 
         mLogLevel = logLevel;
     }
 
+    /**
+     * <p>StreamGobbler constructor</p>
+     *
+     * <p>We use this class because shell STDOUT and STDERR should be read as quickly as
+     * possible to prevent a deadlock from occurring, or Process.waitFor() never
+     * returning (as the buffer is full, pausing the native process)</p>
+     *
+     * <p>The raw bytes read are written as is to the {@code outputSink} instead of being split
+     * into lines, so that output can be streamed with constant memory usage.</p>
+     *
+     * @param shell Name of the shell
+     * @param inputStream InputStream to read from
+     * @param outputSink {@link ResultDirectoryStream.Sink} to write to
+     * @param logLevel The custom log level to use for logging the command output. If set to
+     *                 {@code null}, then {@link Logger#LOG_LEVEL_VERBOSE} will be used.
+     */
+    @AnyThread
+    public StreamGobbler(@NonNull String shell, @NonNull InputStream inputStream,
+                         @NonNull ResultDirectoryStream.Sink outputSink,
+                         @Nullable Integer logLevel) {
+        super("Gobbler#" + incThreadCounter());
+        this.shell = shell;
+        this.inputStream = inputStream;
+        reader = null;
+        streamClosedListener = null;
+
+        listWriter = null;
+        stringWriter = null;
+        sinkWriter = outputSink;
+        lineListener = null;
+
+        mLogLevel = logLevel;
+    }
+
     @Override
     public void run() {
         String defaultLogTag = Logger.getDefaultLogTag();
@@ -198,20 +238,24 @@ public class StreamGobbler extends Thread {
         // keep reading the InputStream until it ends (or an error occurs)
         // optionally pausing when a command is executed that consumes the InputStream itself
         try {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (loggingEnabled)
-                    Logger.logVerboseForce(defaultLogTag + "Command", String.format(Locale.ENGLISH, "[%s] %s", shell, line)); // This will get truncated by LOGGER_ENTRY_MAX_LEN, likely 4KB
-
-                if (stringWriter != null) stringWriter.append(line).append("\n");
-                if (listWriter != null) listWriter.add(line);
-                if (lineListener != null) lineListener.onLine(line);
-                while (!active) {
-                    synchronized (this) {
-                        try {
-                            this.wait(128);
-                        } catch (InterruptedException e) {
-                            // no action
+            if (sinkWriter != null) {
+                gobbleToSink(sinkWriter, loggingEnabled ? defaultLogTag : null);
+            } else {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (loggingEnabled)
+                        Logger.logVerboseForce(defaultLogTag + "Command", String.format(Locale.ENGLISH, "[%s] %s", shell, line)); // This will get truncated by LOGGER_ENTRY_MAX_LEN, likely 4KB
+
+                    if (stringWriter != null) stringWriter.append(line).append("\n");
+                    if (listWriter != null) listWriter.add(line);
+                    if (lineListener != null) lineListener.onLine(line);
+                    while (!active) {
+                        synchronized (this) {
+                            try {
+                                this.wait(128);
+                            } catch (InterruptedException e) {
+                                // no action
+                            }
                         }
                     }
                 }
@@ -226,7 +270,8 @@ public class StreamGobbler extends Thread {
 
         // make sure our stream is closed and resources will be freed
         try {
-            reader.close();
+            if (reader != null) reader.close();
+            else inputStream.close();
         } catch (IOException e) {
             // read already closed
         }
@@ -239,6 +284,40 @@ public class StreamGobbler extends Thread {
         }
     }
 
+    /**
+     * Read raw bytes from {@link #inputStream} and write them to {@code sink} until the stream ends.
+     * If the sink fails to write, then the rest of the stream is still drained so that the process
+     * does not block on a full pipe.
+     */
+    private void gobbleToSink(@NonNull ResultDirectoryStream.Sink sink, @Nullable String logTag) throws IOException {
+        byte[] buffer = new byte[8192];
+        boolean sinkFailed = false;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            if (logTag != null)
+                Logger.logVerboseForce(logTag + "Command", String.format(Locale.ENGLISH, "[%s] %s", shell, new String(buffer, 0, bytesRead))); // This will get truncated by LOGGER_ENTRY_MAX_LEN, likely 4KB
+
+            if (!sinkFailed) {
+                try {
+                    sink.write(buffer, 0, bytesRead);
+                } catch (IOException e) {
+                    Logger.logStackTraceWithMessage(LOG_TAG, "[" + shell + "] Failed to write to result stream", e);
+                    sinkFailed = true;
+                }
+            }
+
+            while (!active) {
+                synchronized (this) {
+                    try {
+                        this.wait(128);
+                    } catch (InterruptedException e) {
+                        // no action
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * <p>Resume consuming the input from the stream</p>
      */
@@ -93,7 +93,7 @@ public class AmSocketServer {
 
         String amCommandString = data.toString();
 
-        Logger.logVerbose(LOG_TAG, "am command received from peer " + clientSocket.getPeerCred().getMinimalString() +
+        Logger.logVerbose(LOG_TAG, () -> "am command received from peer " + clientSocket.getPeerCred().getMinimalString() +
             "\nam command: `" + amCommandString + "`");
 
         // Parse am command string and convert it to a list of arguments
@@ -106,7 +106,7 @@ public class AmSocketServer {
 
         String[] amCommandArray = amCommandList.toArray(new String[0]);
 
-        Logger.logDebug(LOG_TAG, "am command received from peer " + clientSocket.getPeerCred().getMinimalString() +
+        Logger.logDebug(LOG_TAG, () -> "am command received from peer " + clientSocket.getPeerCred().getMinimalString() +
             "\n" + ExecutionCommand.getArgumentsLogString("am command", amCommandArray));
 
         AmSocketServerRunConfig amSocketServerRunConfig = (AmSocketServerRunConfig) localSocketManager.getLocalSocketRunConfig();
@@ -114,8 +114,14 @@ public class AmSocketServer {
         // Run am command and send its result to the client
         StringBuilder stdout = new StringBuilder();
         StringBuilder stderr = new StringBuilder();
-        error = runAmCommand(localSocketManager.getContext(), amCommandArray, stdout, stderr,
-            amSocketServerRunConfig.shouldCheckDisplayOverAppsPermission());
+        ILocalSocketManager localSocketManagerClient = amSocketServerRunConfig.getLocalSocketManagerClient();
+        if (localSocketManagerClient instanceof AmSocketServerClient) {
+            error = ((AmSocketServerClient) localSocketManagerClient).runCommand(localSocketManager,
+                amCommandArray, stdout, stderr);
+        } else {
+            error = runAmCommand(localSocketManager.getContext(), amCommandArray, stdout, stderr,
+                amSocketServerRunConfig.shouldCheckDisplayOverAppsPermission());
+        }
         if (error != null) {
             sendResultToClient(localSocketManager, clientSocket, 1, stdout.toString(),
                 !stderr.toString().isEmpty() ? stderr + "\n\n" + error : error.toString());
@@ -253,6 +259,23 @@ public class AmSocketServer {
             super.onClientAccepted(localSocketManager, clientSocket);
         }
 
+        /**
+         * Run the command received from a client. This calls {@link #runAmCommand(Context, String[], StringBuilder, StringBuilder, boolean)}
+         * and can be overridden to serve commands other than am commands.
+         *
+         * @param localSocketManager The {@link LocalSocketManager} instance for the local socket.
+         * @param amCommandArray The command array.
+         * @param stdout The {@link StringBuilder} to set stdout in.
+         * @param stderr The {@link StringBuilder} to set stderr in.
+         * @return Returns the {@code error} if command failed, otherwise {@code null}.
+         */
+        public Error runCommand(@NonNull LocalSocketManager localSocketManager, String[] amCommandArray,
+                                @NonNull StringBuilder stdout, @NonNull StringBuilder stderr) {
+            AmSocketServerRunConfig amSocketServerRunConfig = (AmSocketServerRunConfig) localSocketManager.getLocalSocketRunConfig();
+            return runAmCommand(localSocketManager.getContext(), amCommandArray, stdout, stderr,
+                amSocketServerRunConfig.shouldCheckDisplayOverAppsPermission());
+        }
+
     }
 
 }
@@ -69,6 +69,8 @@ public class ShellCommandConstants {
         public static final String RESULT_FILE_STDERR_PREFIX = "stderr";
         /** The prefix for the exitCode result file. */
         public static final String RESULT_FILE_EXIT_CODE_PREFIX = "exit_code";
+        /** The prefix for the batch exitCodes result file. */
+        public static final String RESULT_FILE_BATCH_EXIT_CODES_PREFIX = "batch_exit_codes";
 
     }
 
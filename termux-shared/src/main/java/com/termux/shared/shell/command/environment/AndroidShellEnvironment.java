@@ -3,6 +3,7 @@ package com.termux.shared.shell.command.environment;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.termux.shared.shell.command.ExecutionCommand;
 
@@ -84,12 +85,49 @@ public class AndroidShellEnvironment extends UnixShellEnvironment {
     public HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
                                                                 @NonNull ExecutionCommand executionCommand) {
         HashMap<String, String> environment = getEnvironment(currentPackageContext, executionCommand.isFailsafe);
+        ShellEnvironmentUtils.createHomeDir(environment);
+        environment.putAll(getShellCommandOnlyEnvironment(currentPackageContext, executionCommand));
+        return environment;
+    }
+
+    @NonNull
+    @Override
+    public String[] setupShellCommandEnviron(@NonNull Context currentPackageContext,
+                                             @NonNull ExecutionCommand executionCommand,
+                                             @Nullable HashMap<String, String> additionalEnvironment) {
+        String[] environTemplate = getEnvironTemplate(currentPackageContext, executionCommand.isFailsafe);
+
+        HashMap<String, String> environment = getShellCommandOnlyEnvironment(currentPackageContext, executionCommand);
+        if (additionalEnvironment != null)
+            environment.putAll(additionalEnvironment);
+
+        return ShellEnvironmentUtils.mergeEnvironmentIntoEnviron(environTemplate, environment);
+    }
+
+    /**
+     * Get the sorted `environ` of {@link #getEnvironment(Context, boolean)} that the variables
+     * specific to each command are merged into by {@link #setupShellCommandEnviron(Context, ExecutionCommand, HashMap)}.
+     * The HOME directory will be created if it does not exist.
+     *
+     * Subclasses whose environment does not change between commands may cache the template.
+     */
+    @NonNull
+    protected String[] getEnvironTemplate(@NonNull Context currentPackageContext, boolean isFailSafe) {
+        HashMap<String, String> environment = getEnvironment(currentPackageContext, isFailSafe);
+        ShellEnvironmentUtils.createHomeDir(environment);
+        return ShellEnvironmentUtils.convertEnvironmentToSortedEnviron(environment);
+    }
+
+    /** Get the environment variables that are specific to the {@link ExecutionCommand}. */
+    @NonNull
+    protected HashMap<String, String> getShellCommandOnlyEnvironment(@NonNull Context currentPackageContext,
+                                                                     @NonNull ExecutionCommand executionCommand) {
+        HashMap<String, String> environment = new HashMap<>();
 
         String workingDirectory = executionCommand.workingDirectory;
         environment.put(ENV_PWD,
             workingDirectory != null && !workingDirectory.isEmpty() ? new File(workingDirectory).getAbsolutePath() : // PWD must be absolute path
             getDefaultWorkingDirectoryPath());
-        ShellEnvironmentUtils.createHomeDir(environment);
 
         if (executionCommand.setShellCommandShellEnvironment && shellCommandShellEnvironment != null)
             environment.putAll(shellCommandShellEnvironment.getEnvironment(currentPackageContext, executionCommand));
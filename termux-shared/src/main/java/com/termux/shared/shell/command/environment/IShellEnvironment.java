@@ -49,4 +49,20 @@ public interface IShellEnvironment {
     HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
                                                          @NonNull ExecutionCommand executionCommand);
 
+    /**
+     * Setup shell command environment to be used for commands as a sorted `environ` array that can
+     * be passed to the process, like returned by {@link #setupShellCommandEnvironment(Context, ExecutionCommand)}
+     * after {@code additionalEnvironment} has been added to it.
+     *
+     * @param currentPackageContext The {@link Context} for the current package.
+     * @param executionCommand The {@link ExecutionCommand} for which to set environment.
+     * @param additionalEnvironment The additional environment variables to set, which will
+     *                              override any existing variables with the same name.
+     * @return Should return the shell environment `environ`.
+     */
+    @NonNull
+    String[] setupShellCommandEnviron(@NonNull Context currentPackageContext,
+                                      @NonNull ExecutionCommand executionCommand,
+                                      @Nullable HashMap<String, String> additionalEnvironment);
+
 }
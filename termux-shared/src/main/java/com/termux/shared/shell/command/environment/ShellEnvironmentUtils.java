@@ -10,6 +10,7 @@ import com.termux.shared.file.FileUtils;
 import com.termux.shared.logger.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -42,6 +43,50 @@ public class ShellEnvironmentUtils {
         return environmentList;
     }
 
+    /**
+     * Convert environment {@link HashMap} to `environ` array sorted like the process environment
+     * is passed to processes. Check {@link #convertEnvironmentToEnviron(HashMap)}.
+     */
+    @NonNull
+    public static String[] convertEnvironmentToSortedEnviron(@NonNull HashMap<String, String> environmentMap) {
+        List<String> environmentList = convertEnvironmentToEnviron(environmentMap);
+        Collections.sort(environmentList);
+        return environmentList.toArray(new String[0]);
+    }
+
+    /**
+     * Merge environment {@link Map} into a sorted `environ` template, like one returned by
+     * {@link #convertEnvironmentToSortedEnviron(HashMap)}, without having to rebuild the template
+     * environment {@link HashMap} for each process. The variables in {@code environmentMap} will
+     * override the variables with the same name in {@code environTemplate}, which is not modified.
+     *
+     * @return Returns the sorted `environ` array, same as converting the template environment
+     * {@link HashMap} after {@code environmentMap} has been put into it.
+     */
+    @NonNull
+    public static String[] mergeEnvironmentIntoEnviron(@NonNull String[] environTemplate, @NonNull Map<String, String> environmentMap) {
+        String[] environ = new String[environTemplate.length + environmentMap.size()];
+        int count = 0;
+
+        for (String variable : environTemplate) {
+            int index = variable.indexOf('=');
+            if (index < 0 || !environmentMap.containsKey(variable.substring(0, index)))
+                environ[count++] = variable;
+        }
+
+        String value;
+        for (Map.Entry<String, String> entry : environmentMap.entrySet()) {
+            value = entry.getValue();
+            if (isValidEnvironmentVariableNameValuePair(entry.getKey(), value, true))
+                environ[count++] = entry.getKey() + "=" + value;
+        }
+
+        if (count < environ.length)
+            environ = Arrays.copyOf(environ, count);
+        Arrays.sort(environ);
+        return environ;
+    }
+
     /**
      * Convert environment {@link HashMap} to {@link String} where each item equals "key=value".
      *
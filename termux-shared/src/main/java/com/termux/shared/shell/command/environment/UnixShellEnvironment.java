@@ -80,4 +80,10 @@ public abstract class UnixShellEnvironment implements IShellEnvironment {
     public abstract HashMap<String, String> setupShellCommandEnvironment(@NonNull Context currentPackageContext,
                                                                          @NonNull ExecutionCommand executionCommand);
 
+    @NonNull
+    @Override
+    public abstract String[] setupShellCommandEnviron(@NonNull Context currentPackageContext,
+                                                      @NonNull ExecutionCommand executionCommand,
+                                                      @Nullable HashMap<String, String> additionalEnvironment);
+
 }
@@ -22,6 +22,8 @@ public class ResultConfig {
     public String resultStderrKey;
     /** The key with which to send {@link ResultData#exitCode} in {@link #resultPendingIntent}. */
     public String resultExitCodeKey;
+    /** The key with which to send {@link ResultData#batchExitCodes} in {@link #resultPendingIntent}. */
+    public String resultBatchExitCodesKey;
     /** The key with which to send {@link ResultData#errorsList} errCode in {@link #resultPendingIntent}. */
     public String resultErrCodeKey;
     /** The key with which to send {@link ResultData#errorsList} errmsg in {@link #resultPendingIntent}. */
@@ -49,6 +51,10 @@ public class ResultConfig {
     /** Defines the suffix of the result files that should be created in {@link #resultDirectoryPath}
      * if {@link #resultSingleFile} is {@code true}. */
     public String resultFilesSuffix;
+    /** Defines the {@link ResultDirectoryStream} to which stdout and stderr of the command are
+     * streamed while it is running. This is set by
+     * {@link ResultSender#openCommandResultDirectoryStream(android.content.Context, String, String, ResultConfig)}. */
+    public ResultDirectoryStream resultDirectoryStream;
 
 
     public ResultConfig() {
@@ -59,6 +65,14 @@ public class ResultConfig {
         return resultPendingIntent != null || resultDirectoryPath != null;
     }
 
+    /** Whether the stdout and stderr of the command can be streamed to {@link #resultDirectoryPath}
+     * with a {@link ResultDirectoryStream}. This is only possible if result is to be written to
+     * multiple files and is not to be sent via {@link #resultPendingIntent}, since otherwise full
+     * output is required in {@link ResultData}. */
+    public boolean isResultDirectoryStreamable() {
+        return resultPendingIntent == null && resultDirectoryPath != null && !resultSingleFile;
+    }
+
 
     @NonNull
     @Override
@@ -107,6 +121,8 @@ public class ResultConfig {
             resultPendingIntentVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result Stderr Key", resultStderrKey, "-"));
         if (!ignoreNull || resultExitCodeKey != null)
             resultPendingIntentVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result Exit Code Key", resultExitCodeKey, "-"));
+        if (!ignoreNull || resultBatchExitCodesKey != null)
+            resultPendingIntentVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result Batch Exit Codes Key", resultBatchExitCodesKey, "-"));
         if (!ignoreNull || resultErrCodeKey != null)
             resultPendingIntentVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result Err Code Key", resultErrCodeKey, "-"));
         if (!ignoreNull || resultErrmsgKey != null)
@@ -135,6 +151,8 @@ public class ResultConfig {
             resultDirectoryVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result File Error Format", resultFileErrorFormat, "-"));
         if (!ignoreNull || resultFilesSuffix != null)
             resultDirectoryVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result Files Suffix", resultFilesSuffix, "-"));
+        if (!ignoreNull || resultDirectoryStream != null)
+            resultDirectoryVariablesString.append("\n").append(Logger.getSingleLineLogStringEntry("Result Directory Streamed", resultDirectoryStream != null, "-"));
 
         return resultDirectoryVariablesString.toString();
     }
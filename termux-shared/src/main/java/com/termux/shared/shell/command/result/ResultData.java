@@ -21,6 +21,9 @@ public class ResultData implements Serializable {
     public final StringBuilder stderr = new StringBuilder();
     /** The exit code of command. */
     public Integer exitCode;
+    /** The exit codes of each command if command was a batch of commands, in the same order
+     * as the commands. */
+    public int[] batchExitCodes;
 
     /** The internal errors list of command. */
     public List<Error> errorsList =  new ArrayList<>();
@@ -146,6 +149,8 @@ public class ResultData implements Serializable {
             logString.append("\n").append(resultData.getStderrLogString());
         }
         logString.append("\n").append(resultData.getExitCodeLogString());
+        if (resultData.batchExitCodes != null)
+            logString.append("\n").append(resultData.getBatchExitCodesLogString());
 
         logString.append("\n\n").append(getErrorsListLogString(resultData));
 
@@ -172,6 +177,22 @@ public class ResultData implements Serializable {
         return Logger.getSingleLineLogStringEntry("Exit Code", exitCode, "-");
     }
 
+    public String getBatchExitCodesLogString() {
+        return Logger.getSingleLineLogStringEntry("Batch Exit Codes", getBatchExitCodesString(), "-");
+    }
+
+    /** Get {@link #batchExitCodes} as a space separated {@link String}, or {@code null} if not set. */
+    public String getBatchExitCodesString() {
+        if (batchExitCodes == null) return null;
+
+        StringBuilder batchExitCodesString = new StringBuilder();
+        for (int i = 0; i < batchExitCodes.length; i++) {
+            if (i > 0) batchExitCodesString.append(" ");
+            batchExitCodesString.append(batchExitCodes[i]);
+        }
+        return batchExitCodesString.toString();
+    }
+
     public static String getErrorsListLogString(final ResultData resultData) {
         if (resultData == null) return "null";
 
@@ -212,6 +233,8 @@ public class ResultData implements Serializable {
             markdownString.append("\n").append(MarkdownUtils.getMultiLineMarkdownStringEntry("Stderr", resultData.stderr.toString(), "-"));
 
         markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Exit Code", resultData.exitCode, "-"));
+        if (resultData.batchExitCodes != null)
+            markdownString.append("\n").append(MarkdownUtils.getSingleLineMarkdownStringEntry("Batch Exit Codes", resultData.getBatchExitCodesString(), "-"));
 
         markdownString.append("\n\n").append(getErrorsListMarkdownString(resultData));
 
@@ -0,0 +1,186 @@
+package com.termux.shared.shell.command.result;
+
+import androidx.annotation.NonNull;
+
+import com.termux.shared.errors.Error;
+import com.termux.shared.file.FileUtilsErrno;
+import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.command.ShellCommandConstants.RESULT_SENDER;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A result directory sink that streams the stdout and stderr of a command to the
+ * {@link RESULT_SENDER#RESULT_FILE_STDOUT_PREFIX} and {@link RESULT_SENDER#RESULT_FILE_STDERR_PREFIX}
+ * result files in {@link ResultConfig#resultDirectoryPath} while the command is still running,
+ * instead of collecting them in {@link ResultData#stdout} and {@link ResultData#stderr} and
+ * writing them after the command has exited.
+ *
+ * Data is written with write-behind buffering into a fixed size direct {@link ByteBuffer} per
+ * stream, which is only written to the {@link FileChannel} of the result file when it is full or
+ * when the stream is closed, so memory usage stays constant regardless of size of output.
+ * Result files are only created when first data is written to them, so that like before, they
+ * will not exist if the command did not output anything to them.
+ *
+ * The {@link RESULT_SENDER#RESULT_FILE_ERR_PREFIX} file is still written by
+ * {@link ResultSender#sendCommandResultDataToDirectory} only after {@link #close()} has flushed
+ * and synced the result files, so callers waiting on it can safely read the rest of the files.
+ */
+public class ResultDirectoryStream {
+
+    /** The default size of the write-behind buffer of each result file. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024; // 64KB
+
+    private final String mDirectoryPath;
+    private final String mFilesSuffix;
+
+    private final Sink mStdoutSink;
+    private final Sink mStderrSink;
+
+    private static final String LOG_TAG = "ResultDirectoryStream";
+
+    /**
+     * Create a {@link ResultDirectoryStream}.
+     *
+     * @param directoryPath The canonical path of an existing result directory.
+     * @param filesSuffix The suffix of the result files.
+     * @param bufferSize The size of the write-behind buffer of each result file.
+     */
+    public ResultDirectoryStream(@NonNull String directoryPath, @NonNull String filesSuffix, int bufferSize) {
+        mDirectoryPath = directoryPath;
+        mFilesSuffix = filesSuffix;
+        mStdoutSink = new Sink("stdout", directoryPath + "/" + RESULT_SENDER.RESULT_FILE_STDOUT_PREFIX + filesSuffix, bufferSize);
+        mStderrSink = new Sink("stderr", directoryPath + "/" + RESULT_SENDER.RESULT_FILE_STDERR_PREFIX + filesSuffix, bufferSize);
+    }
+
+    /**
+     * Flush and sync the result files and close them. Any further writes will be ignored.
+     *
+     * @return Returns the {@link Error} if failed to flush or close any of the result files,
+     * otherwise {@code null}.
+     */
+    public Error close() {
+        Error stdoutError = mStdoutSink.close();
+        Error stderrError = mStderrSink.close();
+        return stdoutError != null ? stdoutError : stderrError;
+    }
+
+    public String getDirectoryPath() {
+        return mDirectoryPath;
+    }
+
+    public String getFilesSuffix() {
+        return mFilesSuffix;
+    }
+
+    public Sink getStdoutSink() {
+        return mStdoutSink;
+    }
+
+    public Sink getStderrSink() {
+        return mStderrSink;
+    }
+
+
+
+    /** A write-behind sink for a single result file. */
+    public static class Sink {
+
+        private final String mLabel;
+        private final String mFilePath;
+        private final ByteBuffer mBuffer;
+
+        private FileChannel mChannel;
+        private long mLength;
+        private boolean mClosed;
+        private IOException mException;
+
+        Sink(@NonNull String label, @NonNull String filePath, int bufferSize) {
+            mLabel = label;
+            mFilePath = filePath;
+            mBuffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        /**
+         * Write {@code count} bytes from {@code data} starting at {@code offset} to the result file.
+         * The data is buffered and only written to the file when the buffer is full.
+         *
+         * Writes after the sink has been closed, like if the command was killed and its result
+         * has already been sent while it was still writing output, are silently ignored.
+         */
+        public synchronized void write(@NonNull byte[] data, int offset, int count) throws IOException {
+            if (mClosed) return;
+            if (mException != null) throw mException;
+
+            try {
+                while (count > 0) {
+                    int bytesToBuffer = Math.min(count, mBuffer.remaining());
+                    mBuffer.put(data, offset, bytesToBuffer);
+                    offset += bytesToBuffer;
+                    count -= bytesToBuffer;
+                    mLength += bytesToBuffer;
+
+                    if (!mBuffer.hasRemaining())
+                        flushBuffer();
+                }
+            } catch (IOException e) {
+                mException = e;
+                throw e;
+            }
+        }
+
+        /** Get the number of bytes written to the sink so far. */
+        public synchronized long getLength() {
+            return mLength;
+        }
+
+        private void flushBuffer() throws IOException {
+            mBuffer.flip();
+            if (mBuffer.hasRemaining()) {
+                // FileChannel.open() requires java.nio.file which is only available on android >= 8
+                if (mChannel == null)
+                    mChannel = new FileOutputStream(mFilePath).getChannel();
+
+                while (mBuffer.hasRemaining())
+                    mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+
+        synchronized Error close() {
+            if (mClosed) return null;
+            mClosed = true;
+
+            Logger.logVerbose(LOG_TAG, "Closing " + mLabel + " result file at path \"" + mFilePath + "\" after writing " + mLength + " bytes");
+
+            IOException exception = mException;
+            try {
+                if (exception == null) {
+                    flushBuffer();
+                    if (mChannel != null)
+                        mChannel.force(false);
+                }
+            } catch (IOException e) {
+                exception = e;
+            } finally {
+                if (mChannel != null) {
+                    try {
+                        mChannel.close();
+                    } catch (IOException e) {
+                        if (exception == null) exception = e;
+                    }
+                }
+            }
+
+            if (exception != null)
+                return FileUtilsErrno.ERRNO_WRITING_TEXT_TO_FILE_FAILED_WITH_EXCEPTION.getError(exception, mLabel + " result file", mFilePath, exception.getMessage());
+
+            return null;
+        }
+
+    }
+
+}
@@ -6,6 +6,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 
+import androidx.annotation.NonNull;
+
 import com.termux.shared.R;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.markdown.MarkdownUtils;
@@ -16,6 +18,9 @@ import com.termux.shared.errors.FunctionErrno;
 import com.termux.shared.android.AndroidUtils;
 import com.termux.shared.shell.command.ShellCommandConstants.RESULT_SENDER;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+
 public class ResultSender {
 
     private static final String LOG_TAG = "ResultSender";
@@ -127,6 +132,8 @@ public class ResultSender {
         resultBundle.putString(resultConfig.resultStderrOriginalLengthKey, stderrOriginalLength);
         if (resultData.exitCode != null)
             resultBundle.putInt(resultConfig.resultExitCodeKey, resultData.exitCode);
+        if (resultData.batchExitCodes != null && resultConfig.resultBatchExitCodesKey != null)
+            resultBundle.putIntArray(resultConfig.resultBatchExitCodesKey, resultData.batchExitCodes);
         resultBundle.putInt(resultConfig.resultErrCodeKey, resultData.getErrCode());
         resultBundle.putString(resultConfig.resultErrmsgKey, resultDataErrmsg);
 
@@ -182,17 +189,9 @@ public class ResultSender {
 
         Logger.logDebugExtended(logTag, "Writing result for command \"" + label + "\":\n" + resultConfig.toString() + "\n" + ResultData.getResultDataLogString(resultData, logStdoutAndStderr));
 
-        // If resultDirectoryPath is not a directory, or is not readable or writable, then just return
-        // Creation of missing directory and setting of read, write and execute permissions are
-        // only done if resultDirectoryPath is under resultDirectoryAllowedParentPath.
-        // We try to set execute permissions, but ignore if they are missing, since only read and write
-        // permissions are required for working directories.
-        error = FileUtils.validateDirectoryFileExistenceAndPermissions("result", resultConfig.resultDirectoryPath,
-            resultConfig.resultDirectoryAllowedParentPath, true,
-            FileUtils.APP_WORKING_DIRECTORY_PERMISSIONS, true, true,
-            true, true);
+        error = validateResultDirectory(context, resultConfig);
         if (error != null) {
-            error.appendMessage("\n" + context.getString(R.string.msg_directory_absolute_path, "Result", resultConfig.resultDirectoryPath));
+            closeCommandResultDirectoryStream(resultConfig);
             return error;
         }
 
@@ -271,12 +270,40 @@ public class ResultSender {
 
             // If resultFilesSuffix contains forward slashes "/"
             if (resultConfig.resultFilesSuffix.contains("/")) {
+                closeCommandResultDirectoryStream(resultConfig);
                 error = ResultSenderErrno.ERROR_RESULT_FILES_SUFFIX_INVALID.getError(resultConfig.resultFilesSuffix);
                 return error;
             }
 
             // Write result to result files under resultDirectoryPath
 
+            // If stdout and stderr were streamed to result files while command was running, then
+            // write any remaining output that was added to resultData afterwards, and flush and
+            // close the files
+            if (resultConfig.resultDirectoryStream != null) {
+                ResultDirectoryStream resultDirectoryStream = resultConfig.resultDirectoryStream;
+                try {
+                    if (!resultDataStdout.isEmpty()) {
+                        byte[] bytes = resultDataStdout.getBytes(Charset.defaultCharset());
+                        resultDirectoryStream.getStdoutSink().write(bytes, 0, bytes.length);
+                    }
+                    if (!resultDataStderr.isEmpty()) {
+                        byte[] bytes = resultDataStderr.getBytes(Charset.defaultCharset());
+                        resultDirectoryStream.getStderrSink().write(bytes, 0, bytes.length);
+                    }
+                } catch (IOException e) {
+                    // Error will be returned by close()
+                }
+
+                error = closeCommandResultDirectoryStream(resultConfig);
+                if (error != null) {
+                    return error;
+                }
+
+                resultDataStdout = "";
+                resultDataStderr = "";
+            }
+
             // Write stdout to file
             if (!resultDataStdout.isEmpty()) {
                 filename = RESULT_SENDER.RESULT_FILE_STDOUT_PREFIX + resultConfig.resultFilesSuffix;
@@ -307,6 +334,16 @@ public class ResultSender {
                 }
             }
 
+            // Write batchExitCodes to file
+            if (resultData.batchExitCodes != null) {
+                filename = RESULT_SENDER.RESULT_FILE_BATCH_EXIT_CODES_PREFIX + resultConfig.resultFilesSuffix;
+                error = FileUtils.writeTextToFile(filename, resultConfig.resultDirectoryPath + "/" + filename,
+                    null, resultData.getBatchExitCodesString(), false);
+                if (error != null) {
+                    return error;
+                }
+            }
+
             // Write errmsg to file
             if (resultData.isStateFailed() && !resultDataErrmsg.isEmpty()) {
                 filename = RESULT_SENDER.RESULT_FILE_ERRMSG_PREFIX + resultConfig.resultFilesSuffix;
@@ -346,4 +383,91 @@ public class ResultSender {
         return null;
     }
 
+
+    /**
+     * Open a {@link ResultDirectoryStream} for {@link ResultConfig#resultDirectoryPath} and set it
+     * in {@link ResultConfig#resultDirectoryStream}, so that stdout and stderr of the command can
+     * be streamed to the result files while it is running instead of being kept in memory
+     * in {@link ResultData} until it exits.
+     *
+     * The stream is only opened if {@link ResultConfig#isResultDirectoryStreamable()} is {@code true}.
+     * The {@link ResultConfig#resultDirectoryPath} and {@link ResultConfig#resultDirectoryAllowedParentPath}
+     * must have already been set to their final values. The stream will be closed and the remaining
+     * result files written by {@link #sendCommandResultDataToDirectory(Context, String, String, ResultConfig, ResultData, boolean)}.
+     *
+     * @param context The {@link Context} for operations.
+     * @param logTag The log tag to use for logging.
+     * @param label The label for the command.
+     * @param resultConfig The {@link ResultConfig} object containing information on how to send the result.
+     * @return Returns the {@link Error} if failed to open the stream, otherwise {@code null}.
+     */
+    public static Error openCommandResultDirectoryStream(Context context, String logTag, String label, ResultConfig resultConfig) {
+        if (context == null || resultConfig == null || DataUtils.isNullOrEmpty(resultConfig.resultDirectoryPath))
+            return FunctionErrno.ERRNO_NULL_OR_EMPTY_PARAMETER.getError("context, resultConfig or resultConfig.resultDirectoryPath", "openCommandResultDirectoryStream");
+
+        if (!resultConfig.isResultDirectoryStreamable() || resultConfig.resultDirectoryStream != null)
+            return null;
+
+        logTag = DataUtils.getDefaultIfNull(logTag, LOG_TAG);
+
+        Error error;
+
+        // Default to no suffix, useful if user expects result in an empty directory, like created with mktemp
+        if (resultConfig.resultFilesSuffix == null)
+            resultConfig.resultFilesSuffix = "";
+
+        // If resultFilesSuffix contains forward slashes "/"
+        if (resultConfig.resultFilesSuffix.contains("/")) {
+            error = ResultSenderErrno.ERROR_RESULT_FILES_SUFFIX_INVALID.getError(resultConfig.resultFilesSuffix);
+            return error;
+        }
+
+        resultConfig.resultDirectoryPath = FileUtils.getCanonicalPath(resultConfig.resultDirectoryPath, null);
+
+        error = validateResultDirectory(context, resultConfig);
+        if (error != null)
+            return error;
+
+        Logger.logDebug(logTag, "Streaming result for command \"" + label + "\" to result directory \"" + resultConfig.resultDirectoryPath + "\"");
+
+        resultConfig.resultDirectoryStream = new ResultDirectoryStream(resultConfig.resultDirectoryPath,
+            resultConfig.resultFilesSuffix, ResultDirectoryStream.DEFAULT_BUFFER_SIZE);
+        return null;
+    }
+
+    /**
+     * Close {@link ResultConfig#resultDirectoryStream} if its set.
+     *
+     * @param resultConfig The {@link ResultConfig} object containing the stream.
+     * @return Returns the {@link Error} if failed to close the stream, otherwise {@code null}.
+     */
+    private static Error closeCommandResultDirectoryStream(@NonNull ResultConfig resultConfig) {
+        if (resultConfig.resultDirectoryStream == null) return null;
+        Error error = resultConfig.resultDirectoryStream.close();
+        resultConfig.resultDirectoryStream = null;
+        return error;
+    }
+
+    /**
+     * Validate {@link ResultConfig#resultDirectoryPath}.
+     *
+     * If resultDirectoryPath is not a directory, or is not readable or writable, then an error is returned.
+     * Creation of missing directory and setting of read, write and execute permissions are
+     * only done if resultDirectoryPath is under resultDirectoryAllowedParentPath.
+     * We try to set execute permissions, but ignore if they are missing, since only read and write
+     * permissions are required for working directories.
+     */
+    private static Error validateResultDirectory(@NonNull Context context, @NonNull ResultConfig resultConfig) {
+        Error error = FileUtils.validateDirectoryFileExistenceAndPermissions("result", resultConfig.resultDirectoryPath,
+            resultConfig.resultDirectoryAllowedParentPath, true,
+            FileUtils.APP_WORKING_DIRECTORY_PERMISSIONS, true, true,
+            true, true);
+        if (error != null) {
+            error.appendMessage("\n" + context.getString(R.string.msg_directory_absolute_path, "Result", resultConfig.resultDirectoryPath));
+            return error;
+        }
+
+        return null;
+    }
+
 }
@@ -12,8 +12,8 @@ import com.google.common.base.Joiner;
 import com.termux.shared.R;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.shell.command.ExecutionCommand;
-import com.termux.shared.shell.command.environment.ShellEnvironmentUtils;
 import com.termux.shared.shell.command.result.ResultData;
+import com.termux.shared.shell.command.result.ResultDirectoryStream;
 import com.termux.shared.errors.Errno;
 import com.termux.shared.logger.Logger;
 import com.termux.shared.shell.command.ExecutionCommand.ExecutionState;
@@ -25,9 +25,7 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 
 /**
  * A class that maintains info for background app shells run with {@link Runtime#exec(String[], String[], File)}.
@@ -105,13 +103,8 @@ public final class AppShell {
         final String[] commandArray = shellEnvironmentClient.setupShellCommandArguments(executionCommand.executable, executionCommand.arguments);
 
         // Setup command environment
-        HashMap<String, String> environment = shellEnvironmentClient.setupShellCommandEnvironment(currentPackageContext,
-            executionCommand);
-        if (additionalEnvironment != null)
-            environment.putAll(additionalEnvironment);
-        List<String> environmentList = ShellEnvironmentUtils.convertEnvironmentToEnviron(environment);
-        Collections.sort(environmentList);
-        String[] environmentArray = environmentList.toArray(new String[0]);
+        String[] environmentArray = shellEnvironmentClient.setupShellCommandEnviron(currentPackageContext,
+            executionCommand, additionalEnvironment);
 
         if (!executionCommand.setState(ExecutionState.EXECUTING)) {
             executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), currentPackageContext.getString(R.string.error_failed_to_execute_app_shell_command, executionCommand.getCommandIdAndLabelLogString()));
@@ -120,9 +113,9 @@ public final class AppShell {
         }
 
         // No need to log stdin if logging is disabled, like for app internal scripts
-        Logger.logDebugExtended(LOG_TAG, ExecutionCommand.getExecutionInputLogString(executionCommand,
+        Logger.logDebugExtended(LOG_TAG, () -> ExecutionCommand.getExecutionInputLogString(executionCommand,
             true, Logger.shouldEnableLoggingForCustomLogLevel(executionCommand.backgroundCustomLogLevel)));
-        Logger.logVerboseExtended(LOG_TAG, "\"" + executionCommand.getCommandIdAndLabelLogString() + "\" AppShell Environment:\n" +
+        Logger.logVerboseExtended(LOG_TAG, () -> "\"" + executionCommand.getCommandIdAndLabelLogString() + "\" AppShell Environment:\n" +
             Joiner.on("\n").join(environmentArray));
 
         // Exec the process
@@ -135,6 +128,9 @@ public final class AppShell {
             return null;
         }
 
+        // Set the pid before the shell is returned so that it can be indexed when it is added to a ShellRegistry
+        executionCommand.mPid = ShellUtils.getPid(process);
+
         final AppShell appShell = new AppShell(process, executionCommand, appShellClient);
         if (isSynchronous) {
             try {
@@ -168,16 +164,24 @@ public final class AppShell {
      * @param context The {@link Context} for operations.
      */
     private void executeInner(@NonNull final Context context) throws IllegalThreadStateException, InterruptedException {
-        mExecutionCommand.mPid = ShellUtils.getPid(mProcess);
-
-        Logger.logDebug(LOG_TAG, "Running \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid);
+        Logger.logDebug(LOG_TAG, () -> "Running \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid);
 
         mExecutionCommand.resultData.exitCode = null;
 
         // setup stdin, and stdout and stderr gobblers
+        // If result is to be streamed to a result directory, then write output directly to result
+        // files instead of storing it in memory
         DataOutputStream STDIN = new DataOutputStream(mProcess.getOutputStream());
-        StreamGobbler STDOUT = new StreamGobbler(mExecutionCommand.mPid + "-stdout", mProcess.getInputStream(), mExecutionCommand.resultData.stdout, mExecutionCommand.backgroundCustomLogLevel);
-        StreamGobbler STDERR = new StreamGobbler(mExecutionCommand.mPid + "-stderr", mProcess.getErrorStream(), mExecutionCommand.resultData.stderr, mExecutionCommand.backgroundCustomLogLevel);
+        StreamGobbler STDOUT;
+        StreamGobbler STDERR;
+        ResultDirectoryStream resultDirectoryStream = mExecutionCommand.resultConfig.resultDirectoryStream;
+        if (resultDirectoryStream != null) {
+            STDOUT = new StreamGobbler(mExecutionCommand.mPid + "-stdout", mProcess.getInputStream(), resultDirectoryStream.getStdoutSink(), mExecutionCommand.backgroundCustomLogLevel);
+            STDERR = new StreamGobbler(mExecutionCommand.mPid + "-stderr", mProcess.getErrorStream(), resultDirectoryStream.getStderrSink(), mExecutionCommand.backgroundCustomLogLevel);
+        } else {
+            STDOUT = new StreamGobbler(mExecutionCommand.mPid + "-stdout", mProcess.getInputStream(), mExecutionCommand.resultData.stdout, mExecutionCommand.backgroundCustomLogLevel);
+            STDERR = new StreamGobbler(mExecutionCommand.mPid + "-stderr", mProcess.getErrorStream(), mExecutionCommand.resultData.stderr, mExecutionCommand.backgroundCustomLogLevel);
+        }
 
         // start gobbling
         STDOUT.start();
@@ -227,9 +231,9 @@ public final class AppShell {
 
         // Process result
         if (exitCode == 0)
-            Logger.logDebug(LOG_TAG, "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid + " exited normally");
+            Logger.logDebug(LOG_TAG, () -> "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid + " exited normally");
         else
-            Logger.logDebug(LOG_TAG, "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid + " exited with code: " + exitCode);
+            Logger.logDebug(LOG_TAG, () -> "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell with pid " + mExecutionCommand.mPid + " exited with code: " + exitCode);
 
         // If the execution command has already failed, like SIGKILL was sent, then don't continue
         if (mExecutionCommand.isStateFailed()) {
@@ -262,16 +266,18 @@ public final class AppShell {
 
         Logger.logDebug(LOG_TAG, "Send SIGKILL to \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell");
 
+        // Send SIGKILL before setting the failed state, since the command will not be executing
+        // anymore after it is set
+        if (mExecutionCommand.isExecuting()) {
+            kill();
+        }
+
         if (mExecutionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), context.getString(R.string.error_sending_sigkill_to_process))) {
             if (processResult) {
                 mExecutionCommand.resultData.exitCode = 137; // SIGKILL
                 AppShell.processAppShellResult(this, null);
             }
         }
-
-        if (mExecutionCommand.isExecuting()) {
-            kill();
-        }
     }
 
     /**
@@ -279,6 +285,14 @@ public final class AppShell {
      */
     public void kill() {
         int pid = ShellUtils.getPid(mProcess);
+        if (pid <= 0) {
+            // Os.kill() would send the signal to the process group or to all processes for a pid
+            // of 0 or -1, which is returned if the pid could not be read
+            Logger.logWarn(LOG_TAG, "Failed to get pid of \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShell, destroying its process instead of sending SIGKILL");
+            mProcess.destroy();
+            return;
+        }
+
         try {
             // Send SIGKILL to process
             Os.kill(pid, OsConstants.SIGKILL);
@@ -0,0 +1,303 @@
+package com.termux.shared.shell.command.runner.app;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.R;
+import com.termux.shared.errors.Errno;
+import com.termux.shared.errors.Error;
+import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.command.ExecutionCommand;
+import com.termux.shared.shell.command.ExecutionCommand.ExecutionState;
+import com.termux.shared.shell.command.environment.IShellEnvironment;
+import com.termux.shared.shell.command.result.ResultData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A class that runs a batch of {@link ExecutionCommand} with {@link AppShell} under a shared
+ * scheduler and aggregates their results into a single batch {@link ExecutionCommand}, so that
+ * callers running many small commands only need to send a single request and receive a
+ * single result.
+ *
+ * The commands are run in parallel, limited to the number of available processors, unless
+ * {@code sequential} is {@code true}, in which case they are run one after the other in order.
+ * If {@code failFast} is {@code true}, then once a command fails or exits with a non-zero exit
+ * code, the commands that have not yet been started are cancelled and the ones still running
+ * are killed.
+ *
+ * Once all commands have finished, the {@link ResultData#stdout} and {@link ResultData#stderr} of
+ * each command are appended to the batch command's {@link ResultData} under a
+ * {@link #BATCH_OUTPUT_HEADER_FORMAT} header, the {@link ResultData#batchExitCodes} is set to the
+ * exit code of each command in order, where commands that were cancelled or failed to start
+ * have exit code {@link #BATCH_EXIT_CODE_NOT_RUN}, and the {@link ResultData#exitCode} is set to
+ * the first non-zero exit code or {@code 0}.
+ */
+public final class AppShellBatch implements AppShell.AppShellClient {
+
+    /** The {@link java.util.Formatter} format of the header added before the stdout and stderr
+     * of each command in the batch result where the index of the command maps to `%1$d`,
+     * its label to `%2$s` and its exit code to `%3$s`. */
+    public static final String BATCH_OUTPUT_HEADER_FORMAT = "==> [%1$d] %2$s (exit_code=%3$s) <==%n";
+
+    /** The exit code set in {@link ResultData#batchExitCodes} for commands that were not run or
+     * did not exit normally. */
+    public static final int BATCH_EXIT_CODE_NOT_RUN = -1;
+
+    private final Context mContext;
+    private final ExecutionCommand mExecutionCommand;
+    private final List<ExecutionCommand> mExecutionCommands;
+    private final boolean mFailFast;
+    private final int mMaxRunningCommands;
+    private final AppShellBatchClient mAppShellBatchClient;
+    private final IShellEnvironment mShellEnvironmentClient;
+    private final HashMap<String, String> mAdditionalEnvironment;
+
+    private final List<AppShell> mRunningAppShells = new ArrayList<>();
+    /** Whether each of {@link #mExecutionCommands} was started, which it is not if it was
+     * cancelled or {@link AppShell#execute} failed. */
+    private final boolean[] mStartedCommands;
+    private int mNextCommandIndex;
+    private boolean mCancelled;
+    private boolean mProcessResult = true;
+    private boolean mFinished;
+
+    private static final String LOG_TAG = "AppShellBatch";
+
+    private AppShellBatch(@NonNull final Context context, @NonNull final ExecutionCommand executionCommand,
+                          @NonNull final List<ExecutionCommand> executionCommands,
+                          final boolean sequential, final boolean failFast,
+                          final AppShellBatchClient appShellBatchClient,
+                          @NonNull final IShellEnvironment shellEnvironmentClient,
+                          @Nullable final HashMap<String, String> additionalEnvironment) {
+        this.mContext = context;
+        this.mExecutionCommand = executionCommand;
+        this.mExecutionCommands = executionCommands;
+        this.mFailFast = failFast;
+        this.mMaxRunningCommands = sequential ? 1 : Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.mAppShellBatchClient = appShellBatchClient;
+        this.mShellEnvironmentClient = shellEnvironmentClient;
+        this.mAdditionalEnvironment = additionalEnvironment;
+        this.mStartedCommands = new boolean[executionCommands.size()];
+    }
+
+    /**
+     * Start asynchronous execution of a batch of {@link ExecutionCommand} with {@link AppShell}.
+     *
+     * @param currentPackageContext The {@link Context} for operations. This must be the context for
+     *                              the current package and not the context of a `sharedUserId` package,
+     *                              since environment setup may be dependent on current package.
+     * @param executionCommand The batch {@link ExecutionCommand} in which the aggregated result
+     *                         of the {@code executionCommands} will be set.
+     * @param executionCommands The list of {@link ExecutionCommand} to execute. The
+     *                          {@link ExecutionCommand#executable} must be set for each.
+     * @param sequential If set to {@code true}, then commands will be executed one after the
+     *                   other in order, otherwise in parallel.
+     * @param failFast If set to {@code true}, then remaining commands will be cancelled once a
+     *                 command fails or exits with a non-zero exit code.
+     * @param appShellBatchClient The {@link AppShellBatchClient} interface implementation.
+     *                            This can optionally be {@code null}.
+     * @param shellEnvironmentClient The {@link IShellEnvironment} interface implementation.
+     * @param additionalEnvironment The additional shell environment variables to export. Existing
+     *                              variables will be overridden.
+     * @return Returns the {@link AppShellBatch}. This will be {@code null} if failed to start
+     * the batch.
+     */
+    public static AppShellBatch execute(@NonNull final Context currentPackageContext, @NonNull ExecutionCommand executionCommand,
+                                        @NonNull final List<ExecutionCommand> executionCommands,
+                                        final boolean sequential, final boolean failFast,
+                                        final AppShellBatchClient appShellBatchClient,
+                                        @NonNull final IShellEnvironment shellEnvironmentClient,
+                                        @Nullable HashMap<String, String> additionalEnvironment) {
+        if (executionCommands.isEmpty() || !executionCommand.setState(ExecutionState.EXECUTING)) {
+            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), currentPackageContext.getString(R.string.error_failed_to_execute_app_shell_command, executionCommand.getCommandIdAndLabelLogString()));
+            return null;
+        }
+
+        final AppShellBatch appShellBatch = new AppShellBatch(currentPackageContext, executionCommand,
+            executionCommands, sequential, failFast, appShellBatchClient, shellEnvironmentClient, additionalEnvironment);
+
+        Logger.logDebug(LOG_TAG, "Running \"" + executionCommand.getCommandIdAndLabelLogString() + "\" AppShellBatch with " +
+            executionCommands.size() + " commands, max running commands " + appShellBatch.mMaxRunningCommands + " and fail fast " + failFast);
+
+        appShellBatch.scheduleCommands();
+        return appShellBatch;
+    }
+
+    /**
+     * Start the next commands while the number of running commands is less than
+     * {@link #mMaxRunningCommands}, and finish the batch if there is nothing left to run.
+     */
+    private synchronized void scheduleCommands() {
+        while (!mCancelled && mNextCommandIndex < mExecutionCommands.size() &&
+            mRunningAppShells.size() < mMaxRunningCommands) {
+            int commandIndex = mNextCommandIndex++;
+            ExecutionCommand executionCommand = mExecutionCommands.get(commandIndex);
+            AppShell appShell = AppShell.execute(mContext, executionCommand, this,
+                mShellEnvironmentClient, mAdditionalEnvironment, false);
+            if (appShell == null) {
+                Logger.logError(LOG_TAG, "Failed to execute \"" + executionCommand.getCommandIdAndLabelLogString() + "\" command of \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShellBatch");
+                if (mFailFast) mCancelled = true;
+                continue;
+            }
+
+            mStartedCommands[commandIndex] = true;
+            mRunningAppShells.add(appShell);
+            if (mAppShellBatchClient != null)
+                mAppShellBatchClient.onAppShellBatchCommandStarted(this, appShell);
+        }
+
+        if (mRunningAppShells.isEmpty() && (mCancelled || mNextCommandIndex >= mExecutionCommands.size()))
+            finish();
+    }
+
+    @Override
+    public void onAppShellExited(AppShell appShell) {
+        synchronized (this) {
+            if (!mRunningAppShells.remove(appShell)) return;
+
+            ExecutionCommand executionCommand = appShell.getExecutionCommand();
+            if (!executionCommand.isStateFailed())
+                executionCommand.setState(ExecutionState.SUCCESS);
+
+            if (mFailFast && !mCancelled && (executionCommand.isStateFailed() ||
+                executionCommand.resultData.exitCode == null || executionCommand.resultData.exitCode != 0)) {
+                Logger.logDebug(LOG_TAG, "Cancelling remaining commands of \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShellBatch since \"" + executionCommand.getCommandIdAndLabelLogString() + "\" command did not succeed");
+                mCancelled = true;
+                killRunningAppShells();
+            }
+        }
+
+        if (mAppShellBatchClient != null)
+            mAppShellBatchClient.onAppShellBatchCommandExited(this, appShell);
+
+        scheduleCommands();
+    }
+
+    /**
+     * Kill this {@link AppShellBatch} by cancelling commands that have not been started yet and
+     * killing the ones that are still running, if its still executing.
+     *
+     * @param context The {@link Context} for operations.
+     * @param processResult If set to {@code true}, then the
+     *                      {@link AppShellBatchClient#onAppShellBatchExited(AppShellBatch)} will
+     *                      be called to process the failure.
+     */
+    public synchronized void killIfExecuting(@NonNull final Context context, boolean processResult) {
+        if (mFinished) {
+            Logger.logDebug(LOG_TAG, "Ignoring killing \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShellBatch since it has already finished executing");
+            return;
+        }
+
+        Logger.logDebug(LOG_TAG, "Killing \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShellBatch");
+
+        mProcessResult = processResult;
+        mCancelled = true;
+        mExecutionCommand.setStateFailed(Errno.ERRNO_CANCELLED.getCode(), context.getString(R.string.error_execution_cancelled));
+        killRunningAppShells();
+        scheduleCommands();
+    }
+
+    private void killRunningAppShells() {
+        // Killing with processResult will call onAppShellExited() in current thread, which
+        // modifies mRunningAppShells
+        for (AppShell appShell : new ArrayList<>(mRunningAppShells))
+            appShell.killIfExecuting(mContext, true);
+    }
+
+    /**
+     * Aggregate the results of {@link #mExecutionCommands} into {@link #mExecutionCommand} and
+     * call {@link AppShellBatchClient#onAppShellBatchExited(AppShellBatch)}.
+     */
+    private void finish() {
+        if (mFinished) return;
+        mFinished = true;
+
+        ResultData resultData = mExecutionCommand.resultData;
+        resultData.batchExitCodes = new int[mExecutionCommands.size()];
+        int exitCode = 0;
+
+        for (int i = 0; i < mExecutionCommands.size(); i++) {
+            ExecutionCommand executionCommand = mExecutionCommands.get(i);
+            ResultData commandResultData = executionCommand.resultData;
+            boolean hasRun = mStartedCommands[i];
+
+            int commandExitCode = (hasRun && commandResultData.exitCode != null) ? commandResultData.exitCode : BATCH_EXIT_CODE_NOT_RUN;
+            resultData.batchExitCodes[i] = commandExitCode;
+            if (exitCode == 0 && commandExitCode != 0)
+                exitCode = commandExitCode;
+
+            String header = String.format(BATCH_OUTPUT_HEADER_FORMAT, i, executionCommand.commandLabel,
+                hasRun ? String.valueOf(commandExitCode) : "-");
+            resultData.appendStdout(header).append(commandResultData.stdout);
+            if (commandResultData.stderr.length() > 0)
+                resultData.appendStderr(header).append(commandResultData.stderr);
+
+            // Internal errors of commands are errors of the batch, except for the ones caused by the
+            // batch itself killing the command
+            if (executionCommand.isStateFailed() && !mCancelled) {
+                for (Error error : commandResultData.errorsList) {
+                    if (error.isStateFailed())
+                        mExecutionCommand.setStateFailed(error.getType(), error.getCode(),
+                            "[" + i + "] " + executionCommand.getCommandIdAndLabelLogString() + ": " + error.getMessage(), error.getThrowablesList());
+                }
+            }
+        }
+
+        resultData.exitCode = exitCode;
+
+        Logger.logDebug(LOG_TAG, "The \"" + mExecutionCommand.getCommandIdAndLabelLogString() + "\" AppShellBatch finished with batch exit codes: " + resultData.getBatchExitCodesString());
+
+        if (!mExecutionCommand.isStateFailed() && !mExecutionCommand.setState(ExecutionState.EXECUTED))
+            return;
+
+        if (mProcessResult && mAppShellBatchClient != null)
+            mAppShellBatchClient.onAppShellBatchExited(this);
+    }
+
+    public ExecutionCommand getExecutionCommand() {
+        return mExecutionCommand;
+    }
+
+    public List<ExecutionCommand> getExecutionCommands() {
+        return mExecutionCommands;
+    }
+
+    public synchronized List<AppShell> getRunningAppShells() {
+        return new ArrayList<>(mRunningAppShells);
+    }
+
+
+
+    public interface AppShellBatchClient {
+
+        /**
+         * Callback function for when a command of {@link AppShellBatch} has been started.
+         *
+         * @param appShellBatch The {@link AppShellBatch} of the command.
+         * @param appShell The {@link AppShell} of the command that was started.
+         */
+        void onAppShellBatchCommandStarted(AppShellBatch appShellBatch, AppShell appShell);
+
+        /**
+         * Callback function for when a command of {@link AppShellBatch} exits.
+         *
+         * @param appShellBatch The {@link AppShellBatch} of the command.
+         * @param appShell The {@link AppShell} of the command that exited.
+         */
+        void onAppShellBatchCommandExited(AppShellBatch appShellBatch, AppShell appShell);
+
+        /**
+         * Callback function for when all commands of {@link AppShellBatch} have finished.
+         *
+         * @param appShellBatch The {@link AppShellBatch} that finished.
+         */
+        void onAppShellBatchExited(AppShellBatch appShellBatch);
+
+    }
+
+}
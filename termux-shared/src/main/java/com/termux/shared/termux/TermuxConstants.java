@@ -12,7 +12,7 @@ import java.util.Formatter;
 import java.util.List;
 
 /*
- * Version: v0.53.0
+ * Version: v0.59.0
  * SPDX-License-Identifier: MIT
  *
  * Changelog
@@ -282,6 +282,30 @@ import java.util.List;
  * - 0.53.0 (2025-01-12)
  *      - Renamed `TERMUX_API`, `TERMUX_STYLING`, `TERMUX_TASKER`, `TERMUX_WIDGET` classes with `_APP` suffix added.
  *      - Added `TERMUX_*_MAIN_ACTIVITY_NAME` and `TERMUX_*_LAUNCHER_ACTIVITY_NAME` constants to each app class.
+ *
+ * - 0.54.0 (2026-10-19)
+ *      - Added `TERMUX_APP.RUN_COMMAND_SERVICE.EXTRA_BATCH_COMMANDS`, `*.EXTRA_BATCH_SEQUENTIAL`
+ *          and `*.EXTRA_BATCH_FAIL_FAST`.
+ *      - Added `TERMUX_APP.TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH`, `*.EXTRA_BATCH_COMMANDS`,
+ *          `*.EXTRA_BATCH_EXECUTABLE`, `*.EXTRA_BATCH_SEQUENTIAL`, `*.EXTRA_BATCH_FAIL_FAST`
+ *          and `*.EXTRA_PLUGIN_RESULT_BUNDLE_BATCH_EXIT_CODES`.
+ *
+ * - 0.55.0 (2026-10-19)
+ *      - Added `TERMUX_APP.FILE_RECEIVER_SERVICE_NAME`.
+ *      - Added `TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_ID`, `TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_NAME`
+ *          and `TERMUX_FILE_RECEIVER_NOTIFICATION_ID`.
+ *
+ * - 0.56.0 (2026-10-19)
+ *      - Added `TERMUX_APP.TERMINAL_SCROLLBACK_DIR_PATH`.
+ *
+ * - 0.57.0 (2026-10-19)
+ *      - Added `TERMUX_APP.TERMINAL_METRICS_FILE_PATH`.
+ *
+ * - 0.58.0 (2026-10-19)
+ *      - Added `TERMUX_APP.TERMINAL_RECORDINGS_DIR_PATH`.
+ *
+ * - 0.59.0 (2026-10-19)
+ *      - Added `TERMUX_APP.LOG_FILE_PATH`.
  */
 
 /**
@@ -855,6 +879,13 @@ public final class TermuxConstants {
     /** Termux app unique notification id used by {@link TERMUX_APP.RUN_COMMAND_SERVICE} */
     public static final int TERMUX_RUN_COMMAND_NOTIFICATION_ID = 1338;
 
+    /** Termux app notification channel id used by {@link TERMUX_APP#FILE_RECEIVER_SERVICE_NAME} */
+    public static final String TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_ID = "termux_file_receiver_notification_channel";
+    /** Termux app notification channel name used by {@link TERMUX_APP#FILE_RECEIVER_SERVICE_NAME} */
+    public static final String TERMUX_FILE_RECEIVER_NOTIFICATION_CHANNEL_NAME = TermuxConstants.TERMUX_APP_NAME + " File Receiver";
+    /** Termux app unique notification id used by {@link TERMUX_APP#FILE_RECEIVER_SERVICE_NAME} */
+    public static final int TERMUX_FILE_RECEIVER_NOTIFICATION_ID = 1340;
+
     /** Termux app notification channel id used for plugin command errors */
     public static final String TERMUX_PLUGIN_COMMAND_ERRORS_NOTIFICATION_CHANNEL_ID = "termux_plugin_command_errors_notification_channel";
     /** Termux app notification channel name used for plugin command errors */
@@ -923,6 +954,18 @@ public final class TermuxConstants {
         /** termux-am socket file path */
         public static final String TERMUX_AM_SOCKET_FILE_PATH = APPS_DIR_PATH + "/termux-am/am.sock"; // Default: "/data/data/com.termux/files/apps/com.termux/termux-am/am.sock"
 
+        /** Terminal disk backed scrollback directory path, that contains a directory for each session */
+        public static final String TERMINAL_SCROLLBACK_DIR_PATH = APPS_DIR_PATH + "/terminal-scrollback"; // Default: "/data/data/com.termux/files/apps/com.termux/terminal-scrollback"
+
+        /** Terminal session metrics dump file path */
+        public static final String TERMINAL_METRICS_FILE_PATH = APPS_DIR_PATH + "/terminal-metrics.txt"; // Default: "/data/data/com.termux/files/apps/com.termux/terminal-metrics.txt"
+
+        /** Terminal session recordings directory path, that contains asciicast files */
+        public static final String TERMINAL_RECORDINGS_DIR_PATH = APPS_DIR_PATH + "/terminal-recordings"; // Default: "/data/data/com.termux/files/apps/com.termux/terminal-recordings"
+
+        /** Termux app log file path, that log entries are appended to by the {@link com.termux.shared.logger.AsyncLogWriter} */
+        public static final String LOG_FILE_PATH = APPS_DIR_PATH + "/termux-app.log"; // Default: "/data/data/com.termux/files/apps/com.termux/termux-app.log"
+
 
         /** Termux app BuildConfig class name */
         public static final String BUILD_CONFIG_CLASS_NAME = TERMUX_PACKAGE_NAME + ".BuildConfig"; // Default: "com.termux.BuildConfig"
@@ -933,6 +976,9 @@ public final class TermuxConstants {
         /** Termux app FileViewReceiverActivity class name */
         public static final String FILE_VIEW_RECEIVER_ACTIVITY_CLASS_NAME = TERMUX_PACKAGE_NAME + ".app.api.file.FileViewReceiverActivity"; // Default: "com.termux.app.api.file.FileViewReceiverActivity"
 
+        /** Termux app FileReceiverService name */
+        public static final String FILE_RECEIVER_SERVICE_NAME = TERMUX_PACKAGE_NAME + ".app.api.file.FileReceiverService"; // Default: "com.termux.app.api.file.FileReceiverService"
+
 
         /** Termux app core activity name. */
         public static final String TERMUX_ACTIVITY_NAME = TERMUX_PACKAGE_NAME + ".app.TermuxActivity"; // Default: "com.termux.app.TermuxActivity"
@@ -998,6 +1044,10 @@ public final class TermuxConstants {
             /** Intent action to execute command with TERMUX_SERVICE */
             public static final String ACTION_SERVICE_EXECUTE = TERMUX_PACKAGE_NAME + ".service_execute"; // Default: "com.termux.service_execute"
 
+            /** Intent action to execute a batch of {@link Runner#APP_SHELL} commands with TERMUX_SERVICE
+             * and send back a single aggregated result for all of them */
+            public static final String ACTION_SERVICE_EXECUTE_BATCH = TERMUX_PACKAGE_NAME + ".service_execute_batch"; // Default: "com.termux.service_execute_batch"
+
             /** Uri scheme for paths sent via intent to TERMUX_SERVICE */
             public static final String URI_SCHEME_SERVICE_EXECUTE = TERMUX_PACKAGE_NAME + ".file"; // Default: "com.termux.file"
             /** Intent {@code String[]} extra for arguments to the executable of the command for the TERMUX_SERVICE.ACTION_SERVICE_EXECUTE intent */
@@ -1051,6 +1101,19 @@ public final class TermuxConstants {
              * be created in {@link #EXTRA_RESULT_DIRECTORY} if {@link #EXTRA_RESULT_SINGLE_FILE} is
              * {@code false} for the TERMUX_SERVICE.ACTION_SERVICE_EXECUTE intent */
             public static final String EXTRA_RESULT_FILES_SUFFIX = TERMUX_PACKAGE_NAME + ".execute.result_files_suffix"; // Default: "com.termux.execute.result_files_suffix"
+            /** Intent {@code ArrayList<Bundle>} extra for the commands of the TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH
+             * intent. Each {@link android.os.Bundle} must contain the {@link #EXTRA_BATCH_EXECUTABLE}
+             * and may contain the {@link #EXTRA_ARGUMENTS}, {@link #EXTRA_STDIN}, {@link #EXTRA_WORKDIR}
+             * and {@link #EXTRA_COMMAND_LABEL} extras for the command */
+            public static final String EXTRA_BATCH_COMMANDS = TERMUX_PACKAGE_NAME + ".execute.batch_commands"; // Default: "com.termux.execute.batch_commands"
+            /** Intent {@code String} extra for the absolute path of the executable of a command in {@link #EXTRA_BATCH_COMMANDS} */
+            public static final String EXTRA_BATCH_EXECUTABLE = TERMUX_PACKAGE_NAME + ".execute.batch_executable"; // Default: "com.termux.execute.batch_executable"
+            /** Intent {@code boolean} extra for whether the {@link #EXTRA_BATCH_COMMANDS} should be run
+             * one after the other in order instead of in parallel for the TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH intent */
+            public static final String EXTRA_BATCH_SEQUENTIAL = TERMUX_PACKAGE_NAME + ".execute.batch_sequential"; // Default: "com.termux.execute.batch_sequential"
+            /** Intent {@code boolean} extra for whether the remaining {@link #EXTRA_BATCH_COMMANDS} should be
+             * cancelled once a command fails or exits with a non-zero exit code for the TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH intent */
+            public static final String EXTRA_BATCH_FAIL_FAST = TERMUX_PACKAGE_NAME + ".execute.batch_fail_fast"; // Default: "com.termux.execute.batch_fail_fast"
 
 
 
@@ -1112,6 +1175,9 @@ public final class TermuxConstants {
             public static final String EXTRA_PLUGIN_RESULT_BUNDLE_ERR = "err"; // Default: "err"
             /** Intent {@code String} extra for errmsg value of execute command of the {@link #EXTRA_PLUGIN_RESULT_BUNDLE} */
             public static final String EXTRA_PLUGIN_RESULT_BUNDLE_ERRMSG = "errmsg"; // Default: "errmsg"
+            /** Intent {@code int[]} extra for exit codes of each command of the {@link #EXTRA_PLUGIN_RESULT_BUNDLE}
+             * for the TERMUX_SERVICE.ACTION_SERVICE_EXECUTE_BATCH intent */
+            public static final String EXTRA_PLUGIN_RESULT_BUNDLE_BATCH_EXIT_CODES = "batchExitCodes"; // Default: "batchExitCodes"
 
         }
 
@@ -1189,6 +1255,19 @@ public final class TermuxConstants {
              * created in {@link #EXTRA_RESULT_DIRECTORY} if {@link #EXTRA_RESULT_SINGLE_FILE} is
              * {@code false} for the RUN_COMMAND_SERVICE.ACTION_RUN_COMMAND intent */
             public static final String EXTRA_RESULT_FILES_SUFFIX = TERMUX_PACKAGE_NAME + ".RUN_COMMAND_RESULT_FILES_SUFFIX"; // Default: "com.termux.RUN_COMMAND_RESULT_FILES_SUFFIX"
+            /** Intent {@code ArrayList<Bundle>} extra for running multiple {@link Runner#APP_SHELL} commands
+             * with a single RUN_COMMAND_SERVICE.ACTION_RUN_COMMAND intent instead of the {@link #EXTRA_COMMAND_PATH}.
+             * Each {@link android.os.Bundle} must contain the {@link #EXTRA_COMMAND_PATH} and may contain the
+             * {@link #EXTRA_ARGUMENTS}, {@link #EXTRA_STDIN}, {@link #EXTRA_WORKDIR} and {@link #EXTRA_COMMAND_LABEL}
+             * extras for the command. A single result is sent back for all the commands with the
+             * exit code of each command in the same order */
+            public static final String EXTRA_BATCH_COMMANDS = TERMUX_PACKAGE_NAME + ".RUN_COMMAND_BATCH_COMMANDS"; // Default: "com.termux.RUN_COMMAND_BATCH_COMMANDS"
+            /** Intent {@code boolean} extra for whether the {@link #EXTRA_BATCH_COMMANDS} should be run
+             * one after the other in order instead of in parallel for the RUN_COMMAND_SERVICE.ACTION_RUN_COMMAND intent */
+            public static final String EXTRA_BATCH_SEQUENTIAL = TERMUX_PACKAGE_NAME + ".RUN_COMMAND_BATCH_SEQUENTIAL"; // Default: "com.termux.RUN_COMMAND_BATCH_SEQUENTIAL"
+            /** Intent {@code boolean} extra for whether the remaining {@link #EXTRA_BATCH_COMMANDS} should be
+             * cancelled once a command fails or exits with a non-zero exit code for the RUN_COMMAND_SERVICE.ACTION_RUN_COMMAND intent */
+            public static final String EXTRA_BATCH_FAIL_FAST = TERMUX_PACKAGE_NAME + ".RUN_COMMAND_BATCH_FAIL_FAST"; // Default: "com.termux.RUN_COMMAND_BATCH_FAIL_FAST"
 
         }
     }
@@ -215,6 +215,7 @@ public class TermuxPluginUtils {
         resultConfig.resultStderrKey = TERMUX_SERVICE.EXTRA_PLUGIN_RESULT_BUNDLE_STDERR;
         resultConfig.resultStderrOriginalLengthKey = TERMUX_SERVICE.EXTRA_PLUGIN_RESULT_BUNDLE_STDERR_ORIGINAL_LENGTH;
         resultConfig.resultExitCodeKey = TERMUX_SERVICE.EXTRA_PLUGIN_RESULT_BUNDLE_EXIT_CODE;
+        resultConfig.resultBatchExitCodesKey = TERMUX_SERVICE.EXTRA_PLUGIN_RESULT_BUNDLE_BATCH_EXIT_CODES;
         resultConfig.resultErrCodeKey = TERMUX_SERVICE.EXTRA_PLUGIN_RESULT_BUNDLE_ERR;
         resultConfig.resultErrmsgKey = TERMUX_SERVICE.EXTRA_PLUGIN_RESULT_BUNDLE_ERRMSG;
     }
@@ -232,6 +233,34 @@ public class TermuxPluginUtils {
             resultConfig.resultFileBasename = ShellUtils.getExecutableBasename(executionCommand.executable) + "-" + AndroidUtils.getCurrentMilliSecondLocalTimeStamp() + ".log";
     }
 
+    /**
+     * Open a {@link com.termux.shared.shell.command.result.ResultDirectoryStream} for the
+     * {@link ExecutionCommand} before it is executed if its result is to be written to
+     * {@link ResultConfig#resultDirectoryPath}, so that its stdout and stderr are streamed to the
+     * result files while it is running instead of being kept in memory until it exits.
+     *
+     * If the stream cannot be opened, then the error is only logged, and the result will be
+     * written by {@link #processPluginExecutionCommandResult(Context, String, ExecutionCommand)}
+     * after the command exits like normal, which will report the error.
+     *
+     * @param context The {@link Context} for operations.
+     * @param logTag The log tag to use for logging.
+     * @param executionCommand The {@link ExecutionCommand} that will be executed.
+     */
+    public static void setupPluginResultDirectoryStream(final Context context, String logTag, final ExecutionCommand executionCommand) {
+        if (context == null || executionCommand == null || !executionCommand.isPluginExecutionCommand ||
+            !executionCommand.resultConfig.isResultDirectoryStreamable())
+            return;
+
+        logTag = DataUtils.getDefaultIfNull(logTag, LOG_TAG);
+
+        setPluginResultDirectoryVariables(executionCommand);
+        Error error = ResultSender.openCommandResultDirectoryStream(context, logTag,
+            executionCommand.getCommandIdAndLabelLogString(), executionCommand.resultConfig);
+        if (error != null)
+            Logger.logErrorExtended(logTag, "Failed to open result directory stream for " + executionCommand.getCommandIdAndLabelLogString() + ":\n" + error);
+    }
+
 
 
 
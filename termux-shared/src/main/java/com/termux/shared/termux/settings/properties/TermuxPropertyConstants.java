@@ -18,7 +18,7 @@ import java.util.List;
 import java.util.Set;
 
 /*
- * Version: v0.18.0
+ * Version: v0.23.0
  * SPDX-License-Identifier: MIT
  *
  * Changelog
@@ -80,6 +80,21 @@ import java.util.Set;
  *
  * - 0.18.0 (2022-06-13)
  *      - Add `KEY_DISABLE_FILE_SHARE_RECEIVER` and `KEY_DISABLE_FILE_VIEW_RECEIVER`.
+ *
+ * - 0.19.0 (2026-10-19)
+ *      - Add `KEY_SHELL_POOL_SIZE`.
+ *
+ * - 0.20.0 (2026-10-19)
+ *      - Add `KEY_TERMINAL_SCROLLBACK_DISK_ROWS`.
+ *
+ * - 0.21.0 (2026-10-19)
+ *      - Add `KEY_TERMINAL_FRAME_STATS_OVERLAY`.
+ *
+ * - 0.22.0 (2026-10-19)
+ *      - Add `KEY_TERMINAL_LOCAL_ECHO`.
+ *
+ * - 0.23.0 (2026-10-19)
+ *      - Add `KEY_ASYNC_LOGGING`.
  */
 
 /**
@@ -99,6 +114,12 @@ public final class TermuxPropertyConstants {
 
     /* boolean */
 
+    /** Defines the key for whether log entries are written by the {@link com.termux.shared.logger.AsyncLogWriter} on a background thread
+     * to logcat and to {@link com.termux.shared.termux.TermuxConstants.TERMUX_APP#LOG_FILE_PATH} */
+    public static final String KEY_ASYNC_LOGGING =  "async-logging"; // Default: "async-logging"
+
+
+
     /** Defines the key for whether file share receiver of the app is enabled. */
     public static final String KEY_DISABLE_FILE_SHARE_RECEIVER =  "disable-file-share-receiver"; // Default: "disable-file-share-receiver"
 
@@ -137,6 +158,16 @@ public final class TermuxPropertyConstants {
 
 
 
+    /** Defines the key for whether the debug overlay of terminal frame stats is drawn over the terminal view */
+    public static final String KEY_TERMINAL_FRAME_STATS_OVERLAY =  "terminal-frame-stats-overlay"; // Default: "terminal-frame-stats-overlay"
+
+
+
+    /** Defines the key for whether the echo of typed input is predicted and shown before the process echoes it */
+    public static final String KEY_TERMINAL_LOCAL_ECHO =  "terminal-local-echo"; // Default: "terminal-local-echo"
+
+
+
     /** Defines the key for whether url links in terminal transcript will automatically open on click or on tap */
     public static final String KEY_TERMINAL_ONCLICK_URL_OPEN =  "terminal-onclick-url-open"; // Default: "terminal-onclick-url-open"
 
@@ -233,6 +264,15 @@ public final class TermuxPropertyConstants {
 
 
 
+    /** Defines the key for the number of idle login shells to keep pre-started for new terminal
+     * sessions. `0` disables the pool. */
+    public static final String KEY_SHELL_POOL_SIZE =  "shell-pool-size"; // Default: "shell-pool-size"
+    public static final int IVALUE_SHELL_POOL_SIZE_MIN = 0;
+    public static final int IVALUE_SHELL_POOL_SIZE_MAX = 4;
+    public static final int DEFAULT_IVALUE_SHELL_POOL_SIZE = 0;
+
+
+
     /** Defines the key for the terminal margin on left and right in dp units */
     public static final String KEY_TERMINAL_MARGIN_HORIZONTAL =  "terminal-margin-horizontal"; // Default: "terminal-margin-horizontal"
     public static final int IVALUE_TERMINAL_MARGIN_HORIZONTAL_MIN = 0;
@@ -255,6 +295,17 @@ public final class TermuxPropertyConstants {
 
 
 
+    /**
+     * Defines the key for the max number of rows evicted from the terminal transcript that should
+     * be kept in disk backed scrollback files. Disabled if 0.
+     */
+    public static final String KEY_TERMINAL_SCROLLBACK_DISK_ROWS =  "terminal-scrollback-disk-rows"; // Default: "terminal-scrollback-disk-rows"
+    public static final int IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS_MIN = 0;
+    public static final int IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS_MAX = 10000000;
+    public static final int DEFAULT_IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS = 0;
+
+
+
 
 
     /* float */
@@ -391,6 +442,7 @@ public final class TermuxPropertyConstants {
      * */
     public static final Set<String> TERMUX_APP_PROPERTIES_LIST = new HashSet<>(Arrays.asList(
         /* boolean */
+        KEY_ASYNC_LOGGING,
         KEY_DISABLE_FILE_SHARE_RECEIVER,
         KEY_DISABLE_FILE_VIEW_RECEIVER,
         KEY_DISABLE_HARDWARE_KEYBOARD_SHORTCUTS,
@@ -399,6 +451,8 @@ public final class TermuxPropertyConstants {
         KEY_EXTRA_KEYS_TEXT_ALL_CAPS,
         KEY_HIDE_SOFT_KEYBOARD_ON_STARTUP,
         KEY_RUN_TERMUX_AM_SOCKET_SERVER,
+        KEY_TERMINAL_FRAME_STATS_OVERLAY,
+        KEY_TERMINAL_LOCAL_ECHO,
         KEY_TERMINAL_ONCLICK_URL_OPEN,
         KEY_USE_CTRL_SPACE_WORKAROUND,
         KEY_USE_FULLSCREEN,
@@ -408,10 +462,12 @@ public final class TermuxPropertyConstants {
         /* int */
         KEY_BELL_BEHAVIOUR,
         KEY_DELETE_TMPDIR_FILES_OLDER_THAN_X_DAYS_ON_EXIT,
+        KEY_SHELL_POOL_SIZE,
         KEY_TERMINAL_CURSOR_BLINK_RATE,
         KEY_TERMINAL_CURSOR_STYLE,
         KEY_TERMINAL_MARGIN_HORIZONTAL,
         KEY_TERMINAL_MARGIN_VERTICAL,
+        KEY_TERMINAL_SCROLLBACK_DISK_ROWS,
         KEY_TERMINAL_TRANSCRIPT_ROWS,
 
         /* float */
@@ -439,12 +495,15 @@ public final class TermuxPropertyConstants {
      * default: false
      */
     public static final Set<String> TERMUX_DEFAULT_FALSE_BOOLEAN_BEHAVIOUR_PROPERTIES_LIST = new HashSet<>(Arrays.asList(
+        KEY_ASYNC_LOGGING,
         KEY_DISABLE_FILE_SHARE_RECEIVER,
         KEY_DISABLE_FILE_VIEW_RECEIVER,
         KEY_DISABLE_HARDWARE_KEYBOARD_SHORTCUTS,
         KEY_DISABLE_TERMINAL_SESSION_CHANGE_TOAST,
         KEY_ENFORCE_CHAR_BASED_INPUT,
         KEY_HIDE_SOFT_KEYBOARD_ON_STARTUP,
+        KEY_TERMINAL_FRAME_STATS_OVERLAY,
+        KEY_TERMINAL_LOCAL_ECHO,
         KEY_TERMINAL_ONCLICK_URL_OPEN,
         KEY_USE_CTRL_SPACE_WORKAROUND,
         KEY_USE_FULLSCREEN,
@@ -1,6 +1,7 @@
 package com.termux.shared.termux.settings.properties;
 
 import android.content.Context;
+import android.os.FileObserver;
 
 import androidx.annotation.NonNull;
 
@@ -8,14 +9,18 @@ import com.termux.shared.logger.Logger;
 import com.termux.shared.data.DataUtils;
 import com.termux.shared.settings.properties.SharedProperties;
 import com.termux.shared.settings.properties.SharedPropertiesParser;
+import com.termux.shared.settings.properties.SharedPropertiesSnapshot;
 import com.termux.shared.termux.TermuxConstants;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class TermuxSharedProperties {
 
@@ -24,11 +29,37 @@ public abstract class TermuxSharedProperties {
     protected final List<String> mPropertiesFilePaths;
     protected final Set<String> mPropertiesList;
     protected final SharedPropertiesParser mSharedPropertiesParser;
-    protected File mPropertiesFile;
-    protected SharedProperties mSharedProperties;
+
+    /**
+     * The {@link SharedPropertiesSnapshot} of the properties currently loaded. It is replaced as
+     * a whole on reload, so reads do not need locks.
+     */
+    protected volatile SharedPropertiesSnapshot mSnapshot;
+
+    private final Object mReloadLock = new Object();
+    private final List<OnPropertiesChangedListener> mOnPropertiesChangedListeners = new CopyOnWriteArrayList<>();
+    private final List<FileObserver> mPropertiesFileObservers = new ArrayList<>();
+
+    /**
+     * The {@link SharedPropertiesSnapshot} for {@link #getTermuxInternalPropertyValue(Context, String)},
+     * shared by the whole process.
+     */
+    private static volatile SharedPropertiesSnapshot sTermuxPropertiesSnapshot;
 
     public static final String LOG_TAG = "TermuxSharedProperties";
 
+    /** The listener for changes to the properties. */
+    public interface OnPropertiesChangedListener {
+        /**
+         * Called after properties were reloaded from disk and the internal values of some of them
+         * changed. This may be called on the {@link FileObserver} thread.
+         *
+         * @param properties The {@link TermuxSharedProperties} that were reloaded.
+         * @param changedKeys The keys of the properties whose internal values changed.
+         */
+        void onPropertiesChanged(@NonNull TermuxSharedProperties properties, @NonNull Set<String> changedKeys);
+    }
+
     public TermuxSharedProperties(@NonNull Context context, @NonNull String label, List<String> propertiesFilePaths,
                                   @NonNull Set<String> propertiesList, @NonNull SharedPropertiesParser sharedPropertiesParser) {
         mContext = context.getApplicationContext();
@@ -40,19 +71,97 @@ public abstract class TermuxSharedProperties {
     }
 
     /**
-     * Reload the termux properties from disk into an in-memory cache.
+     * Reload the termux properties from disk into an in-memory cache if the properties file was
+     * changed since it was last loaded. The {@link OnPropertiesChangedListener} listeners are
+     * notified of the changed keys.
      */
-    public synchronized void loadTermuxPropertiesFromDisk() {
-        // Properties files must be searched everytime since no file may exist when constructor is
-        // called or a higher priority file may have been created afterward. Otherwise, if no file
-        // was found, then default props would keep loading, since mSharedProperties would be null. #2836
-        mPropertiesFile = SharedProperties.getPropertiesFileFromList(mPropertiesFilePaths, LOG_TAG);
-        mSharedProperties = null;
-        mSharedProperties = new SharedProperties(mContext, mPropertiesFile, mPropertiesList, mSharedPropertiesParser);
+    public void loadTermuxPropertiesFromDisk() {
+        SharedPropertiesSnapshot oldSnapshot;
+        Set<String> changedKeys;
+        synchronized (mReloadLock) {
+            // Properties files must be searched everytime since no file may exist when constructor is
+            // called or a higher priority file may have been created afterward. Otherwise, if no file
+            // was found, then default props would keep loading. #2836
+            File propertiesFile = SharedProperties.getPropertiesFileFromList(mPropertiesFilePaths, LOG_TAG);
+            oldSnapshot = mSnapshot;
+            if (oldSnapshot != null && oldSnapshot.isUpToDate(propertiesFile))
+                return;
+
+            SharedPropertiesSnapshot snapshot = SharedPropertiesSnapshot.load(mContext, propertiesFile, mPropertiesList, mSharedPropertiesParser);
+            changedKeys = snapshot.getChangedKeys(oldSnapshot);
+            mSnapshot = snapshot;
+        }
 
-        mSharedProperties.loadPropertiesFromDisk();
         dumpPropertiesToLog();
         dumpInternalPropertiesToLog();
+
+        if (oldSnapshot != null && !changedKeys.isEmpty()) {
+            Logger.logDebug(LOG_TAG, mLabel + " properties changed: " + changedKeys);
+            for (OnPropertiesChangedListener listener : mOnPropertiesChangedListeners)
+                listener.onPropertiesChanged(this, changedKeys);
+        }
+    }
+
+    /**
+     * Add an {@link OnPropertiesChangedListener}. While any listener is added, the directories of
+     * the properties files are observed and the properties are reloaded when a file is written,
+     * moved or deleted.
+     */
+    public void addOnPropertiesChangedListener(@NonNull OnPropertiesChangedListener listener) {
+        synchronized (mPropertiesFileObservers) {
+            if (mOnPropertiesChangedListeners.contains(listener)) return;
+            mOnPropertiesChangedListeners.add(listener);
+            if (mOnPropertiesChangedListeners.size() == 1)
+                startWatchingPropertiesFiles();
+        }
+    }
+
+    /** Remove an {@link OnPropertiesChangedListener} added with {@link #addOnPropertiesChangedListener(OnPropertiesChangedListener)}. */
+    public void removeOnPropertiesChangedListener(@NonNull OnPropertiesChangedListener listener) {
+        synchronized (mPropertiesFileObservers) {
+            if (mOnPropertiesChangedListeners.remove(listener) && mOnPropertiesChangedListeners.isEmpty())
+                stopWatchingPropertiesFiles();
+        }
+    }
+
+    private void startWatchingPropertiesFiles() {
+        if (mPropertiesFilePaths == null) return;
+
+        // Observe each parent directory once for the names of all properties files in it, since
+        // editors may replace the file instead of writing to it
+        Map<String, Set<String>> directories = new HashMap<>();
+        for (String propertiesFilePath : mPropertiesFilePaths) {
+            File propertiesFile = new File(propertiesFilePath);
+            String directory = propertiesFile.getParent();
+            if (directory == null) continue;
+            Set<String> fileNames = directories.get(directory);
+            if (fileNames == null) {
+                fileNames = new HashSet<>();
+                directories.put(directory, fileNames);
+            }
+            fileNames.add(propertiesFile.getName());
+        }
+
+        for (Map.Entry<String, Set<String>> entry : directories.entrySet()) {
+            final Set<String> fileNames = entry.getValue();
+            @SuppressWarnings("deprecation")
+            FileObserver fileObserver = new FileObserver(entry.getKey(),
+                FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.MOVED_FROM | FileObserver.DELETE) {
+                @Override
+                public void onEvent(int event, String path) {
+                    if (path != null && fileNames.contains(path))
+                        loadTermuxPropertiesFromDisk();
+                }
+            };
+            fileObserver.startWatching();
+            mPropertiesFileObservers.add(fileObserver);
+        }
+    }
+
+    private void stopWatchingPropertiesFiles() {
+        for (FileObserver fileObserver : mPropertiesFileObservers)
+            fileObserver.stopWatching();
+        mPropertiesFileObservers.clear();
     }
 
 
@@ -60,20 +169,31 @@ public abstract class TermuxSharedProperties {
 
 
     /**
-     * Get the {@link Properties} from the {@link #mPropertiesFile} file.
+     * Get the properties file that the properties are currently loaded from. This will be
+     * {@code null} if no readable file was found.
+     */
+    public File getPropertiesFile() {
+        return mSnapshot.getPropertiesFile();
+    }
+
+    /**
+     * Get the {@link Properties} from the {@link #getPropertiesFile()} file.
      *
      * @param cached If {@code true}, then the {@link Properties} in-memory cache is returned.
      *               Otherwise the {@link Properties} object is read directly from the
-     *               {@link #mPropertiesFile} file.
+     *               {@link #getPropertiesFile()} file.
      * @return Returns the {@link Properties} object. It will be {@code null} if an exception is
      * raised while reading the file.
      */
     public Properties getProperties(boolean cached) {
-        return mSharedProperties.getProperties(cached);
+        if (cached)
+            return mSnapshot.getProperties();
+        else
+            return SharedProperties.getPropertiesFromFile(mContext, getPropertiesFile(), mSharedPropertiesParser);
     }
 
     /**
-     * Get the {@link String} value for the key passed from the {@link #mPropertiesFile} file.
+     * Get the {@link String} value for the key passed from the {@link #getPropertiesFile()} file.
      *
      * @param key The key to read.
      * @param def The default value.
@@ -83,12 +203,15 @@ public abstract class TermuxSharedProperties {
      * @return Returns the {@link String} object. This will be {@code null} if key is not found.
      */
     public String getPropertyValue(String key, String def, boolean cached) {
-        return SharedProperties.getDefaultIfNull(mSharedProperties.getProperty(key, cached), def);
+        if (cached)
+            return SharedProperties.getDefaultIfNull(mSnapshot.getProperty(key), def);
+        else
+            return SharedProperties.getProperty(mContext, getPropertiesFile(), key, def, mSharedPropertiesParser);
     }
 
     /**
      * A function to check if the value is {@code true} for {@link Properties} key read from
-     * the {@link #mPropertiesFile} file.
+     * the {@link #getPropertiesFile()} file.
      *
      * @param key The key to read.
      * @param cached If {@code true}, then the value is checked from the the {@link Properties} in-memory cache.
@@ -106,7 +229,7 @@ public abstract class TermuxSharedProperties {
 
     /**
      * A function to check if the value is {@code false} for {@link Properties} key read from
-     * the {@link #mPropertiesFile} file.
+     * the {@link #getPropertiesFile()} file.
      *
      * @param key The key to read.
      * @param cached If {@code true}, then the value is checked from the the {@link Properties} in-memory cache.
@@ -128,19 +251,18 @@ public abstract class TermuxSharedProperties {
 
     /**
      * Get the internal value {@link Object} {@link HashMap <>} in-memory cache for the
-     * {@link #mPropertiesFile} file. A call to {@link #loadTermuxPropertiesFromDisk()} must be made
-     * before this.
+     * {@link #getPropertiesFile()} file.
      *
      * @return Returns a copy of {@link Map} object.
      */
     public Map<String, Object> getInternalProperties() {
-        return mSharedProperties.getInternalProperties();
+        return mSnapshot.getInternalProperties();
     }
 
     /**
-     * Get the internal {@link Object} value for the key passed from the {@link #mPropertiesFile} file.
+     * Get the internal {@link Object} value for the key passed from the {@link #getPropertiesFile()} file.
      * If cache is {@code true}, then value is returned from the {@link HashMap <>} in-memory cache,
-     * so a call to {@link #loadTermuxPropertiesFromDisk()} must be made before this.
+     * which does not require a lock or a copy of the cache.
      *
      * @param key The key to read from the {@link HashMap<>} in-memory cache.
      * @param cached If {@code true}, then the value is returned from the the {@link HashMap <>} in-memory cache,
@@ -153,15 +275,15 @@ public abstract class TermuxSharedProperties {
     public Object getInternalPropertyValue(String key, boolean cached) {
         Object value;
         if (cached) {
-            value = mSharedProperties.getInternalProperty(key);
+            SharedPropertiesSnapshot snapshot = mSnapshot;
+            value = snapshot.getInternalProperty(key);
             // If the value is not null since key was found or if the value was null since the
             // object stored for the key was itself null, we detect the later by checking if the key
             // exists in the map.
-            if (value != null || mSharedProperties.getInternalProperties().containsKey(key)) {
+            if (value != null || snapshot.containsInternalProperty(key)) {
                 return value;
             } else {
-                // This should not happen normally unless mMap was modified after the
-                // {@link #loadTermuxPropertiesFromDisk()} call
+                // This should not happen normally unless key is not in mPropertiesList
                 // A null value can still be returned by
                 // {@link #getInternalPropertyValueFromValue(Context,String,String)} for some keys
                 value = getInternalTermuxPropertyValueFromValue(mContext, key, null);
@@ -170,7 +292,7 @@ public abstract class TermuxSharedProperties {
             }
         } else {
             // We get the property value directly from file and return its internal value
-            return getInternalTermuxPropertyValueFromValue(mContext, key, mSharedProperties.getProperty(key, false));
+            return getInternalTermuxPropertyValueFromValue(mContext, key, getPropertyValue(key, null, false));
         }
     }
 
@@ -180,8 +302,8 @@ public abstract class TermuxSharedProperties {
 
     /**
      * Get the internal {@link Object} value for the key passed from the first file found in
-     * {@link TermuxConstants#TERMUX_PROPERTIES_FILE_PATHS_LIST}. The {@link Properties} object is
-     * read directly from the file and internal value is returned for the property value against the key.
+     * {@link TermuxConstants#TERMUX_PROPERTIES_FILE_PATHS_LIST}. The file is only parsed again if it
+     * was changed or replaced since the last call in the process.
      *
      * @param context The context for operations.
      * @param key The key for which the internal object is required.
@@ -189,9 +311,18 @@ public abstract class TermuxSharedProperties {
      * the object stored against the key is {@code null}.
      */
     public static Object getTermuxInternalPropertyValue(Context context, String key) {
-        return SharedProperties.getInternalProperty(context,
-            SharedProperties.getPropertiesFileFromList(TermuxConstants.TERMUX_PROPERTIES_FILE_PATHS_LIST, LOG_TAG),
-            key, new SharedPropertiesParserClient());
+        File propertiesFile = SharedProperties.getPropertiesFileFromList(TermuxConstants.TERMUX_PROPERTIES_FILE_PATHS_LIST, LOG_TAG);
+        SharedPropertiesSnapshot snapshot = sTermuxPropertiesSnapshot;
+        SharedPropertiesParser sharedPropertiesParser = new SharedPropertiesParserClient();
+        if (snapshot == null || !snapshot.isUpToDate(propertiesFile)) {
+            snapshot = SharedPropertiesSnapshot.load(context, propertiesFile, null, sharedPropertiesParser);
+            sTermuxPropertiesSnapshot = snapshot;
+        }
+
+        if (snapshot.containsInternalProperty(key))
+            return snapshot.getInternalProperty(key);
+        else
+            return sharedPropertiesParser.getInternalPropertyValueFromValue(context, key, null);
     }
 
     /**
@@ -263,6 +394,8 @@ public abstract class TermuxSharedProperties {
                 return (int) getBellBehaviourInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_DELETE_TMPDIR_FILES_OLDER_THAN_X_DAYS_ON_EXIT:
                 return (int) getDeleteTMPDIRFilesOlderThanXDaysOnExitInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_SHELL_POOL_SIZE:
+                return (int) getShellPoolSizeInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_TERMINAL_CURSOR_BLINK_RATE:
                 return (int) getTerminalCursorBlinkRateInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_TERMINAL_CURSOR_STYLE:
@@ -271,6 +404,8 @@ public abstract class TermuxSharedProperties {
                 return (int) getTerminalMarginHorizontalInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_TERMINAL_MARGIN_VERTICAL:
                 return (int) getTerminalMarginVerticalInternalPropertyValueFromValue(value);
+            case TermuxPropertyConstants.KEY_TERMINAL_SCROLLBACK_DISK_ROWS:
+                return (int) getTerminalScrollbackDiskRowsInternalPropertyValueFromValue(value);
             case TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_ROWS:
                 return (int) getTerminalTranscriptRowsInternalPropertyValueFromValue(value);
 
@@ -354,6 +489,24 @@ public abstract class TermuxSharedProperties {
             true, true, LOG_TAG);
     }
 
+    /**
+     * Returns the int for the value if its not null and is between
+     * {@link TermuxPropertyConstants#IVALUE_SHELL_POOL_SIZE_MIN} and
+     * {@link TermuxPropertyConstants#IVALUE_SHELL_POOL_SIZE_MAX},
+     * otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_SHELL_POOL_SIZE}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getShellPoolSizeInternalPropertyValueFromValue(String value) {
+        return SharedProperties.getDefaultIfNotInRange(TermuxPropertyConstants.KEY_SHELL_POOL_SIZE,
+            DataUtils.getIntFromString(value, TermuxPropertyConstants.DEFAULT_IVALUE_SHELL_POOL_SIZE),
+            TermuxPropertyConstants.DEFAULT_IVALUE_SHELL_POOL_SIZE,
+            TermuxPropertyConstants.IVALUE_SHELL_POOL_SIZE_MIN,
+            TermuxPropertyConstants.IVALUE_SHELL_POOL_SIZE_MAX,
+            true, true, LOG_TAG);
+    }
+
     /**
      * Returns the int for the value if its not null and is between
      * {@link TermuxPropertyConstants#IVALUE_TERMINAL_CURSOR_BLINK_RATE_MIN} and
@@ -420,6 +573,24 @@ public abstract class TermuxSharedProperties {
             true, true, LOG_TAG);
     }
 
+    /**
+     * Returns the int for the value if its not null and is between
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS_MIN} and
+     * {@link TermuxPropertyConstants#IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS_MAX},
+     * otherwise returns {@link TermuxPropertyConstants#DEFAULT_IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS}.
+     *
+     * @param value The {@link String} value to convert.
+     * @return Returns the internal value for value.
+     */
+    public static int getTerminalScrollbackDiskRowsInternalPropertyValueFromValue(String value) {
+        return SharedProperties.getDefaultIfNotInRange(TermuxPropertyConstants.KEY_TERMINAL_SCROLLBACK_DISK_ROWS,
+            DataUtils.getIntFromString(value, TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS),
+            TermuxPropertyConstants.DEFAULT_IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS,
+            TermuxPropertyConstants.IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS_MIN,
+            TermuxPropertyConstants.IVALUE_TERMINAL_SCROLLBACK_DISK_ROWS_MAX,
+            true, true, LOG_TAG);
+    }
+
     /**
      * Returns the int for the value if its not null and is between
      * {@link TermuxPropertyConstants#IVALUE_TERMINAL_TRANSCRIPT_ROWS_MIN} and
@@ -578,6 +749,10 @@ public abstract class TermuxSharedProperties {
         return (boolean) getInternalPropertyValue(TermuxConstants.PROP_ALLOW_EXTERNAL_APPS, true);
     }
 
+    public boolean isAsyncLoggingEnabled() {
+        return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_ASYNC_LOGGING, true);
+    }
+
     public boolean isFileShareReceiverDisabled() {
         return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_DISABLE_FILE_SHARE_RECEIVER, true);
     }
@@ -610,6 +785,14 @@ public abstract class TermuxSharedProperties {
         return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_RUN_TERMUX_AM_SOCKET_SERVER, true);
     }
 
+    public boolean isTerminalFrameStatsOverlayEnabled() {
+        return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_FRAME_STATS_OVERLAY, true);
+    }
+
+    public boolean isTerminalLocalEchoEnabled() {
+        return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_LOCAL_ECHO, true);
+    }
+
     public boolean shouldOpenTerminalTranscriptURLOnClick() {
         return (boolean) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_ONCLICK_URL_OPEN, true);
     }
@@ -634,6 +817,10 @@ public abstract class TermuxSharedProperties {
         return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_DELETE_TMPDIR_FILES_OLDER_THAN_X_DAYS_ON_EXIT, true);
     }
 
+    public int getShellPoolSize() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_SHELL_POOL_SIZE, true);
+    }
+
     public int getTerminalCursorBlinkRate() {
         return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_CURSOR_BLINK_RATE, true);
     }
@@ -650,6 +837,10 @@ public abstract class TermuxSharedProperties {
         return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_MARGIN_VERTICAL, true);
     }
 
+    public int getTerminalScrollbackDiskRows() {
+        return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_SCROLLBACK_DISK_ROWS, true);
+    }
+
     public int getTerminalTranscriptRows() {
         return (int) getInternalPropertyValue(TermuxPropertyConstants.KEY_TERMINAL_TRANSCRIPT_ROWS, true);
     }
@@ -0,0 +1,239 @@
+package com.termux.shared.termux.shell;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.shell.command.ExecutionCommand;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * An ordered list of shells, like TermuxSessions or AppShells, with lookup by index, shell name,
+ * pid and an optional handle that does not scan the list.
+ *
+ * Reads do not lock and iterate over a snapshot of the list, so the shells can be read from any
+ * thread while they are being added or removed. Adding and removing shells copies the list and
+ * updates the indexes of the shells after it, which is fine since it happens far less often than
+ * reading. An index read while another thread adds or removes a shell may be stale.
+ *
+ * @param <T> The type of the shell.
+ */
+public class ShellRegistry<T> extends AbstractList<T> implements RandomAccess {
+
+    private final CopyOnWriteArrayList<T> mShells = new CopyOnWriteArrayList<>();
+
+    private final Map<String, T> mShellsByName = new ConcurrentHashMap<>();
+    private final Map<String, T> mShellsByHandle = new ConcurrentHashMap<>();
+    private final Map<Integer, T> mShellsByPid = new ConcurrentHashMap<>();
+    private final Map<T, Integer> mIndexes = new ConcurrentHashMap<>();
+
+    private final Function<T, ExecutionCommand> mExecutionCommandGetter;
+    private final Function<T, String> mHandleGetter;
+
+    /**
+     * @param executionCommandGetter The function that returns the {@link ExecutionCommand} of a
+     *                               shell, whose {@link ExecutionCommand#shellName} and
+     *                               {@link ExecutionCommand#mPid} are indexed.
+     * @param handleGetter The optional function that returns the unique handle of a shell.
+     */
+    public ShellRegistry(@NonNull Function<T, ExecutionCommand> executionCommandGetter,
+                         @Nullable Function<T, String> handleGetter) {
+        mExecutionCommandGetter = executionCommandGetter;
+        mHandleGetter = handleGetter;
+    }
+
+    @Override
+    public T get(int index) {
+        return mShells.get(index);
+    }
+
+    @Override
+    public int size() {
+        return mShells.size();
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Integer index = o == null ? null : mIndexes.get(o);
+        return index == null ? -1 : index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && mIndexes.containsKey(o);
+    }
+
+    /** The returned iterator iterates over a snapshot of the list and does not support removal. */
+    @NonNull
+    @Override
+    public Iterator<T> iterator() {
+        return mShells.iterator();
+    }
+
+    /**
+     * Get the shell at the index, or {@code null} if there is none, like if it was removed by
+     * another thread after the size was checked.
+     */
+    @Nullable
+    public T getOrNull(int index) {
+        if (index < 0) return null;
+        try {
+            return mShells.get(index);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /** Get the last shell, or {@code null} if there is none. */
+    @Nullable
+    public T getLast() {
+        while (true) {
+            int size = mShells.size();
+            if (size == 0) return null;
+            try {
+                return mShells.get(size - 1);
+            } catch (IndexOutOfBoundsException e) {
+                // A shell was removed by another thread after the size was read
+            }
+        }
+    }
+
+    @Override
+    public synchronized void add(int index, T shell) {
+        if (shell == null) throw new NullPointerException("The shell must not be null");
+        if (mIndexes.containsKey(shell)) throw new IllegalArgumentException("The shell has already been added");
+        mShells.add(index, shell);
+        updateIndexes(index);
+
+        String name = getShellName(shell);
+        if (name != null) mShellsByName.putIfAbsent(name, shell);
+        String handle = mHandleGetter != null ? mHandleGetter.apply(shell) : null;
+        if (handle != null) mShellsByHandle.put(handle, shell);
+        int pid = getShellPid(shell);
+        if (pid > 0) mShellsByPid.put(pid, shell);
+    }
+
+    @Override
+    public synchronized T remove(int index) {
+        T shell = mShells.remove(index);
+        mIndexes.remove(shell);
+        updateIndexes(index);
+        unindex(shell);
+        return shell;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        mShells.clear();
+        mIndexes.clear();
+        mShellsByName.clear();
+        mShellsByHandle.clear();
+        mShellsByPid.clear();
+    }
+
+    @Override
+    public T set(int index, T shell) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Get the first shell with the {@link ExecutionCommand#shellName}, or {@code null} if there is none. */
+    @Nullable
+    public T getForName(@Nullable String name) {
+        return name == null ? null : mShellsByName.get(name);
+    }
+
+    /** Get the shell with the handle, or {@code null} if there is none. */
+    @Nullable
+    public T getForHandle(@Nullable String handle) {
+        return handle == null ? null : mShellsByHandle.get(handle);
+    }
+
+    /** Get the shell with the {@link ExecutionCommand#mPid}, or {@code null} if there is none. */
+    @Nullable
+    public T getForPid(int pid) {
+        return pid <= 0 ? null : mShellsByPid.get(pid);
+    }
+
+    /**
+     * Set the {@link ExecutionCommand#mPid} of a shell. This must be used instead of setting it
+     * directly once the shell has been added so that it can be found by its pid.
+     */
+    public synchronized void setShellPid(@NonNull T shell, int pid) {
+        ExecutionCommand executionCommand = mExecutionCommandGetter.apply(shell);
+        if (executionCommand == null) return;
+        if (executionCommand.mPid > 0) mShellsByPid.remove(executionCommand.mPid, shell);
+        executionCommand.mPid = pid;
+        if (pid > 0 && mIndexes.containsKey(shell)) mShellsByPid.put(pid, shell);
+    }
+
+    /**
+     * Set the {@link ExecutionCommand#shellName} of a shell. This must be used instead of setting
+     * it directly once the shell has been added so that it can be found by its new name.
+     */
+    public synchronized void setShellName(@NonNull T shell, @Nullable String name) {
+        ExecutionCommand executionCommand = mExecutionCommandGetter.apply(shell);
+        if (executionCommand == null) return;
+        unindexName(shell);
+        executionCommand.shellName = name;
+        if (name != null && mIndexes.containsKey(shell)) mShellsByName.putIfAbsent(name, shell);
+    }
+
+    /** Update the indexes of the shells from the index to the end of the list. */
+    private void updateIndexes(int fromIndex) {
+        for (int i = fromIndex; i < mShells.size(); i++)
+            mIndexes.put(mShells.get(i), i);
+    }
+
+    private void unindexName(T shell) {
+        String name = getShellName(shell);
+        if (name != null && mShellsByName.remove(name, shell)) {
+            // Another shell with the same name now has to be found by name
+            for (T s : mShells) {
+                if (s != shell && name.equals(getShellName(s))) {
+                    mShellsByName.put(name, s);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void unindex(T shell) {
+        unindexName(shell);
+
+        String handle = mHandleGetter != null ? mHandleGetter.apply(shell) : null;
+        if (handle != null) mShellsByHandle.remove(handle, shell);
+        int pid = getShellPid(shell);
+        if (pid > 0) mShellsByPid.remove(pid, shell);
+    }
+
+    @Nullable
+    private String getShellName(T shell) {
+        ExecutionCommand executionCommand = mExecutionCommandGetter.apply(shell);
+        return executionCommand == null ? null : executionCommand.shellName;
+    }
+
+    private int getShellPid(T shell) {
+        ExecutionCommand executionCommand = mExecutionCommandGetter.apply(shell);
+        return executionCommand == null ? -1 : executionCommand.mPid;
+    }
+
+}
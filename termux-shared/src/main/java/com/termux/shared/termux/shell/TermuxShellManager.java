@@ -8,11 +8,13 @@ import androidx.annotation.NonNull;
 
 import com.termux.shared.shell.command.ExecutionCommand;
 import com.termux.shared.shell.command.runner.app.AppShell;
+import com.termux.shared.shell.command.runner.app.AppShellBatch;
 import com.termux.shared.termux.settings.preferences.TermuxAppSharedPreferences;
 import com.termux.shared.termux.shell.command.runner.terminal.TermuxSession;
+import com.termux.terminal.TerminalSession;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TermuxShellManager {
 
@@ -23,22 +25,30 @@ public class TermuxShellManager {
     protected final Context mContext;
 
     /**
-     * The foreground TermuxSessions which this service manages.
+     * The foreground TermuxSessions which this service manages, which can be looked up by
+     * {@link TerminalSession#mHandle}, shell name and pid.
      * Note that this list is observed by an activity, like TermuxActivity.mTermuxSessionListViewController,
-     * so any changes must be made on the UI thread and followed by a call to
-     * {@link ArrayAdapter#notifyDataSetChanged()}.
+     * so any changes must be followed by a call to {@link ArrayAdapter#notifyDataSetChanged()} on the
+     * UI thread.
      */
-    public final List<TermuxSession> mTermuxSessions = new ArrayList<>();
+    public final ShellRegistry<TermuxSession> mTermuxSessions = new ShellRegistry<>(
+        TermuxSession::getExecutionCommand, termuxSession -> termuxSession.getTerminalSession().mHandle);
 
     /**
-     * The background TermuxTasks which this service manages.
+     * The background TermuxTasks which this service manages, which can be looked up by shell name and pid.
      */
-    public final List<AppShell> mTermuxTasks = new ArrayList<>();
+    public final ShellRegistry<AppShell> mTermuxTasks = new ShellRegistry<>(AppShell::getExecutionCommand, null);
+
+    /**
+     * The background TermuxTask batches which this service manages. The commands of each batch
+     * that are currently running are also in {@link #mTermuxTasks}.
+     */
+    public final List<AppShellBatch> mTermuxTaskBatches = new CopyOnWriteArrayList<>();
 
     /**
      * The pending plugin ExecutionCommands that have yet to be processed by this service.
      */
-    public final List<ExecutionCommand> mPendingPluginExecutionCommands = new ArrayList<>();
+    public final List<ExecutionCommand> mPendingPluginExecutionCommands = new CopyOnWriteArrayList<>();
 
     /**
      * The {@link ExecutionCommand.Runner#APP_SHELL} number after app process was started/restarted.
@@ -97,10 +97,6 @@ public class TermuxShellUtils {
         TermuxAppSharedProperties properties = TermuxAppSharedProperties.getProperties();
         int days = properties.getDeleteTMPDIRFilesOlderThanXDaysOnExit();
 
-        // Disable currently until FileUtils.deleteFilesOlderThanXDays() is fixed.
-        if (days > 0)
-            days = 0;
-
         if (days < 0) {
             Logger.logInfo(LOG_TAG, "Not clearing termux $TMPDIR");
         } else if (days == 0) {
@@ -15,6 +15,7 @@ import com.termux.shared.net.socket.local.LocalSocketManagerClientBase;
 import com.termux.shared.net.socket.local.LocalSocketRunConfig;
 import com.termux.shared.shell.am.AmSocketServerRunConfig;
 import com.termux.shared.shell.am.AmSocketServer;
+import com.termux.shared.shell.am.AmSocketServerErrno;
 import com.termux.shared.termux.TermuxConstants;
 import com.termux.shared.termux.crash.TermuxCrashUtils;
 import com.termux.shared.termux.plugins.TermuxPluginUtils;
@@ -49,6 +50,10 @@ import com.termux.shared.termux.shell.command.environment.TermuxAppShellEnvironm
  * adding the prop with value "false" to the "~/.termux/termux.properties" file. Changes
  * require termux-app to be force stopped and restarted.
  *
+ * The {@link #METRICS_COMMAND} is served by the {@link MetricsProvider} set with
+ * {@link #setMetricsProvider(MetricsProvider)} instead of being run as an am command, like with
+ * `termux-am termux-metrics [--dump]`.
+ *
  * The current state of the server can be checked with the
  * {@link TermuxAppShellEnvironment#ENV_TERMUX_APP__AM_SOCKET_SERVER_ENABLED} env variable, which is exported
  * for all shell sessions and tasks.
@@ -65,6 +70,15 @@ public class TermuxAmSocketServer {
     /** The static instance for the {@link TermuxAmSocketServer} {@link LocalSocketManager}. */
     private static LocalSocketManager termuxAmSocketServer;
 
+    /** The command that gets the metrics of terminal sessions from the {@link #metricsProvider}. */
+    public static final String METRICS_COMMAND = "termux-metrics";
+
+    /** The argument for {@link #METRICS_COMMAND} to also dump the metrics to a file. */
+    public static final String METRICS_COMMAND_DUMP_ARG = "--dump";
+
+    /** The provider for {@link #METRICS_COMMAND}, set while the termux service is running. */
+    private static MetricsProvider metricsProvider;
+
     /** Whether {@link TermuxAmSocketServer} is enabled and running or not. */
     @Keep
     protected static Boolean TERMUX_APP_AM_SOCKET_SERVER_ENABLED;
@@ -147,6 +161,20 @@ public class TermuxAmSocketServer {
         return termuxAmSocketServer;
     }
 
+    /**
+     * Set {@link #metricsProvider}.
+     */
+    public static synchronized void setMetricsProvider(@Nullable MetricsProvider provider) {
+        metricsProvider = provider;
+    }
+
+    /**
+     * Get {@link #metricsProvider}.
+     */
+    public static synchronized MetricsProvider getMetricsProvider() {
+        return metricsProvider;
+    }
+
     /**
      * Show an error notification on the {@link TermuxConstants#TERMUX_PLUGIN_COMMAND_ERRORS_NOTIFICATION_CHANNEL_ID}
      * {@link TermuxConstants#TERMUX_PLUGIN_COMMAND_ERRORS_NOTIFICATION_CHANNEL_NAME} with a call
@@ -184,6 +212,26 @@ public class TermuxAmSocketServer {
 
 
 
+    /** The provider of terminal session metrics for the {@link #METRICS_COMMAND}. */
+    public interface MetricsProvider {
+
+        /**
+         * Get the metrics of all terminal sessions. This is called from the socket listener
+         * thread, so the metrics that are only safe to read on the main thread must be got there.
+         *
+         * @return Returns the metrics, or {@code null} if they could not be got.
+         */
+        @Nullable
+        String getMetrics();
+
+        /** Write the metrics of all terminal sessions to {@link TermuxConstants.TERMUX_APP#TERMINAL_METRICS_FILE_PATH}. */
+        @Nullable
+        Error dumpMetrics();
+
+    }
+
+
+
     /** Enhanced implementation for {@link AmSocketServer.AmSocketServerClient} for {@link TermuxAmSocketServer}. */
     public static class TermuxAmSocketServerClient extends AmSocketServer.AmSocketServerClient {
 
@@ -222,6 +270,29 @@ public class TermuxAmSocketServer {
 
 
 
+        @Override
+        public Error runCommand(@NonNull LocalSocketManager localSocketManager, String[] amCommandArray,
+                                @NonNull StringBuilder stdout, @NonNull StringBuilder stderr) {
+            if (amCommandArray.length == 0 || !METRICS_COMMAND.equals(amCommandArray[0]))
+                return super.runCommand(localSocketManager, amCommandArray, stdout, stderr);
+
+            MetricsProvider provider = getMetricsProvider();
+            if (provider == null)
+                return AmSocketServerErrno.ERRNO_RUN_COMMAND_FAILED.getError(METRICS_COMMAND, "The termux service is not running");
+
+            String metrics = provider.getMetrics();
+            if (metrics == null)
+                return AmSocketServerErrno.ERRNO_RUN_COMMAND_FAILED.getError(METRICS_COMMAND, "Failed to get the terminal session metrics");
+
+            stdout.append(metrics).append("\n");
+            if (amCommandArray.length > 1 && METRICS_COMMAND_DUMP_ARG.equals(amCommandArray[1])) {
+                Error error = provider.dumpMetrics();
+                if (error != null) return error;
+                stdout.append("Dumped to \"").append(TermuxConstants.TERMUX_APP.TERMINAL_METRICS_FILE_PATH).append("\"\n");
+            }
+            return null;
+        }
+
         @Override
         protected String getLogTag() {
             return LOG_TAG;
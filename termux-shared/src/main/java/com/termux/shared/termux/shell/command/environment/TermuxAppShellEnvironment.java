@@ -167,6 +167,7 @@ public class TermuxAppShellEnvironment {
         termuxAppEnvironment.remove(ENV_TERMUX_APP__AM_SOCKET_SERVER_ENABLED);
         ShellEnvironmentUtils.putToEnvIfSet(termuxAppEnvironment, ENV_TERMUX_APP__AM_SOCKET_SERVER_ENABLED,
             TermuxAmSocketServer.getTermuxAppAMSocketServerEnabled(currentPackageContext));
+        TermuxShellEnvironment.invalidateEnvironTemplates();
     }
 
 }
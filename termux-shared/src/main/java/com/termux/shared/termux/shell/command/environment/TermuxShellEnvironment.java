@@ -14,6 +14,7 @@ import com.termux.shared.shell.command.environment.ShellCommandShellEnvironment;
 import com.termux.shared.termux.TermuxBootstrap;
 import com.termux.shared.termux.TermuxConstants;
 import com.termux.shared.termux.shell.TermuxShellUtils;
+import com.termux.shared.termux.shell.command.runner.terminal.TermuxSessionPool;
 
 import java.nio.charset.Charset;
 import java.util.HashMap;
@@ -28,6 +29,12 @@ public class TermuxShellEnvironment extends AndroidShellEnvironment {
     /** Environment variable for the termux {@link TermuxConstants#TERMUX_PREFIX_DIR_PATH}. */
     public static final String ENV_PREFIX = "PREFIX";
 
+    /**
+     * The cached `environ` templates for the Termux app returned by {@link #getEnvironTemplate(Context, boolean)},
+     * for when failsafe is disabled and enabled respectively.
+     */
+    private static final String[][] sEnvironTemplates = new String[2][];
+
     public TermuxShellEnvironment() {
         super();
         shellCommandShellEnvironment = new TermuxShellCommandShellEnvironment();
@@ -39,6 +46,25 @@ public class TermuxShellEnvironment extends AndroidShellEnvironment {
         TermuxAppShellEnvironment.setTermuxAppEnvironment(currentPackageContext);
     }
 
+    /**
+     * Invalidate the cached `environ` templates so that they are built again for the next command.
+     * This must be called if any of the variables returned by {@link #getEnvironment(Context, boolean)}
+     * may have changed, like when a Termux plugin app is installed, updated or removed or when
+     * termux properties are reloaded.
+     */
+    public static void invalidateEnvironTemplates() {
+        synchronized (sEnvironTemplates) {
+            if (sEnvironTemplates[0] != null || sEnvironTemplates[1] != null) {
+                Logger.logVerbose(LOG_TAG, "Invalidating environ templates");
+                sEnvironTemplates[0] = null;
+                sEnvironTemplates[1] = null;
+            }
+        }
+
+        // Pooled shells were started with the old environment
+        TermuxSessionPool.getSessionPool().drain();
+    }
+
     /** Init {@link TermuxShellEnvironment} constants and caches. */
     public synchronized static void writeEnvironmentToFile(@NonNull Context currentPackageContext) {
         HashMap<String, String> environmentMap = new TermuxShellEnvironment().getEnvironment(currentPackageContext, false);
@@ -96,6 +122,37 @@ public class TermuxShellEnvironment extends AndroidShellEnvironment {
     }
 
 
+    /**
+     * Get the `environ` template. For the Termux app, the template is only built for the first
+     * command and then cached until {@link #invalidateEnvironTemplates()} is called, so that the
+     * package and SELinux info lookups done to build it are not repeated for every command.
+     * Other apps will build it again since the Termux app may be updated in the background.
+     */
+    @NonNull
+    @Override
+    protected String[] getEnvironTemplate(@NonNull Context currentPackageContext, boolean isFailSafe) {
+        if (!TermuxConstants.TERMUX_PACKAGE_NAME.equals(currentPackageContext.getPackageName()))
+            return super.getEnvironTemplate(currentPackageContext, isFailSafe);
+
+        int index = isFailSafe ? 1 : 0;
+        String[] environTemplate;
+        synchronized (sEnvironTemplates) {
+            environTemplate = sEnvironTemplates[index];
+            if (environTemplate == null) {
+                environTemplate = super.getEnvironTemplate(currentPackageContext, isFailSafe);
+                sEnvironTemplates[index] = environTemplate;
+                return environTemplate;
+            }
+        }
+
+        // The HOME directory may have been deleted after the template was built
+        Error error = FileUtils.createDirectoryFile("shell home", TermuxConstants.TERMUX_HOME_DIR_PATH);
+        if (error != null)
+            Logger.logErrorExtended(LOG_TAG, "Failed to create shell home directory\n" + error.toString());
+        return environTemplate;
+    }
+
+
     @NonNull
     @Override
     public String getDefaultWorkingDirectoryPath() {
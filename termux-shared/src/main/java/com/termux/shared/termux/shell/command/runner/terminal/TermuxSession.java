@@ -8,7 +8,6 @@ import com.google.common.base.Joiner;
 import com.termux.shared.R;
 import com.termux.app.service.ServiceExecutionManager;
 import com.termux.shared.shell.command.ExecutionCommand;
-import com.termux.shared.shell.command.environment.ShellEnvironmentUtils;
 import com.termux.shared.shell.command.environment.UnixShellEnvironment;
 import com.termux.shared.shell.command.result.ResultData;
 import com.termux.shared.errors.Errno;
@@ -18,9 +17,7 @@ import com.termux.shared.shell.ShellUtils;
 import com.termux.terminal.TerminalSession;
 import com.termux.terminal.TerminalSessionClient;
 import java.io.File;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 
 public class TermuxSession {
     private final TerminalSession mTerminalSession;
@@ -48,6 +45,80 @@ public class TermuxSession {
             executionCommand.workingDirectory = shellEnvironmentClient.getDefaultWorkingDirectoryPath();
         if (executionCommand.workingDirectory.isEmpty())
             executionCommand.workingDirectory = "/";
+
+        if (TermuxSessionPool.isPoolable(executionCommand, additionalEnvironment)) {
+            TermuxSessionPool.PooledShell pooledShell = TermuxSessionPool.getSessionPool().claim(executionCommand.workingDirectory);
+            if (pooledShell != null)
+                return executePooled(currentPackageContext, executionCommand, pooledShell, terminalSessionClient, termuxSessionClient, setStdoutOnExit);
+        }
+
+        String[] environmentArray = setupCommand(currentPackageContext, executionCommand, shellEnvironmentClient, additionalEnvironment);
+
+        if (!executionCommand.setState(ExecutionCommand.ExecutionState.EXECUTING)) {
+            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), currentPackageContext.getString(R.string.error_failed_to_execute_termux_session_command, executionCommand.getCommandIdAndLabelLogString()));
+            TermuxSession.processTermuxSessionResult(null, executionCommand);
+            return null;
+        }
+
+        Logger.logDebugExtended(LOG_TAG, executionCommand.toString());
+        Logger.logVerboseExtended(LOG_TAG, executionCommand.getCommandIdAndLabelLogString() + " TermuxSession Environment:\n" + Joiner.on("\n").join(environmentArray));
+        Logger.logDebug(LOG_TAG, "Running " + executionCommand.getCommandIdAndLabelLogString() + " TermuxSession via Native Loader");
+
+        int[] result = ServiceExecutionManager.nativeStartSession(executionCommand.executable, executionCommand.arguments, environmentArray);
+        if (result == null || result.length < 2 || result[0] <= 0) {
+            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), "Failed to start native session via loader");
+            TermuxSession.processTermuxSessionResult(null, executionCommand);
+            return null;
+        }
+        int pid = result[0];
+        int fd = result[1];
+
+        TerminalSession terminalSession = new TerminalSession(fd, pid, executionCommand.workingDirectory, executionCommand.terminalTranscriptRows, terminalSessionClient);
+        if (executionCommand.shellName != null) {
+            terminalSession.mSessionName = executionCommand.shellName;
+        }
+        return new TermuxSession(terminalSession, executionCommand, termuxSessionClient, setStdoutOnExit);
+    }
+
+    /**
+     * Run the {@link ExecutionCommand} in a shell already started by the {@link TermuxSessionPool}.
+     * The {@link ExecutionCommand#id} is replaced with the one the pooled shell was started with,
+     * since it has already been exported in its environment.
+     */
+    private static TermuxSession executePooled(@NonNull final Context currentPackageContext, @NonNull ExecutionCommand executionCommand,
+                                               @NonNull TermuxSessionPool.PooledShell pooledShell,
+                                               @NonNull final TerminalSessionClient terminalSessionClient, final TermuxSessionClient termuxSessionClient,
+                                               final boolean setStdoutOnExit) {
+        ExecutionCommand pooledExecutionCommand = pooledShell.getExecutionCommand();
+        executionCommand.id = pooledExecutionCommand.id;
+        executionCommand.executable = pooledExecutionCommand.executable;
+        executionCommand.arguments = pooledExecutionCommand.arguments;
+        if (executionCommand.commandLabel == null) executionCommand.commandLabel = pooledExecutionCommand.commandLabel;
+
+        if (!executionCommand.setState(ExecutionCommand.ExecutionState.EXECUTING)) {
+            TermuxSessionPool.getSessionPool().discard(pooledShell);
+            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), currentPackageContext.getString(R.string.error_failed_to_execute_termux_session_command, executionCommand.getCommandIdAndLabelLogString()));
+            TermuxSession.processTermuxSessionResult(null, executionCommand);
+            return null;
+        }
+
+        Logger.logDebugExtended(LOG_TAG, executionCommand.toString());
+        Logger.logDebug(LOG_TAG, "Running " + executionCommand.getCommandIdAndLabelLogString() + " TermuxSession in pooled shell with pid " + pooledShell.getPid());
+
+        TerminalSession terminalSession = new TerminalSession(pooledShell.getTerminalFileDescriptor(), pooledShell.getPid(), executionCommand.workingDirectory, executionCommand.terminalTranscriptRows, terminalSessionClient);
+        return new TermuxSession(terminalSession, executionCommand, termuxSessionClient, setStdoutOnExit);
+    }
+
+    /**
+     * Resolve the {@link ExecutionCommand#executable} and {@link ExecutionCommand#arguments} to run
+     * for a {@link TermuxSession} and setup its environment.
+     *
+     * @return Returns the environment for the command.
+     */
+    @NonNull
+    static String[] setupCommand(@NonNull final Context currentPackageContext, @NonNull ExecutionCommand executionCommand,
+                                 @NonNull final IShellEnvironment shellEnvironmentClient,
+                                 @Nullable HashMap<String, String> additionalEnvironment) {
         String defaultBinPath = shellEnvironmentClient.getDefaultBinPath();
         if (defaultBinPath.isEmpty())
             defaultBinPath = "/system/bin";
@@ -78,36 +149,7 @@ public class TermuxSession {
         executionCommand.arguments = arguments;
         if (executionCommand.commandLabel == null) executionCommand.commandLabel = processName;
 
-        HashMap<String, String> environment = shellEnvironmentClient.setupShellCommandEnvironment(currentPackageContext, executionCommand);
-        if (additionalEnvironment != null) environment.putAll(additionalEnvironment);
-        List<String> environmentList = ShellEnvironmentUtils.convertEnvironmentToEnviron(environment);
-        Collections.sort(environmentList);
-        String[] environmentArray = environmentList.toArray(new String[0]);
-
-        if (!executionCommand.setState(ExecutionCommand.ExecutionState.EXECUTING)) {
-            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), currentPackageContext.getString(R.string.error_failed_to_execute_termux_session_command, executionCommand.getCommandIdAndLabelLogString()));
-            TermuxSession.processTermuxSessionResult(null, executionCommand);
-            return null;
-        }
-
-        Logger.logDebugExtended(LOG_TAG, executionCommand.toString());
-        Logger.logVerboseExtended(LOG_TAG, executionCommand.getCommandIdAndLabelLogString() + " TermuxSession Environment:\n" + Joiner.on("\n").join(environmentArray));
-        Logger.logDebug(LOG_TAG, "Running " + executionCommand.getCommandIdAndLabelLogString() + " TermuxSession via Native Loader");
-
-        int[] result = ServiceExecutionManager.nativeStartSession(executionCommand.executable, arguments, environmentArray);
-        if (result == null || result.length < 2 || result[0] <= 0) {
-            executionCommand.setStateFailed(Errno.ERRNO_FAILED.getCode(), "Failed to start native session via loader");
-            TermuxSession.processTermuxSessionResult(null, executionCommand);
-            return null;
-        }
-        int pid = result[0];
-        int fd = result[1];
-
-        TerminalSession terminalSession = new TerminalSession(fd, pid, executionCommand.workingDirectory, executionCommand.terminalTranscriptRows, terminalSessionClient);
-        if (executionCommand.shellName != null) {
-            terminalSession.mSessionName = executionCommand.shellName;
-        }
-        return new TermuxSession(terminalSession, executionCommand, termuxSessionClient, setStdoutOnExit);
+        return shellEnvironmentClient.setupShellCommandEnviron(currentPackageContext, executionCommand, additionalEnvironment);
     }
 
     public void finish() {
@@ -0,0 +1,282 @@
+package com.termux.shared.termux.shell.command.runner.terminal;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.app.service.ServiceExecutionManager;
+import com.termux.shared.logger.Logger;
+import com.termux.shared.shell.command.ExecutionCommand;
+import com.termux.shared.shell.command.ExecutionCommand.Runner;
+import com.termux.shared.termux.shell.TermuxShellManager;
+import com.termux.shared.termux.shell.command.environment.TermuxShellEnvironment;
+import com.termux.terminal.TerminalSession;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A pool of login shells that are started in the background before they are needed, so that a
+ * new {@link TermuxSession} does not have to wait for the shell process to be forked and exec-ed.
+ *
+ * The environment and working directory of a process cannot be changed after it has been started,
+ * so a pooled shell is only used for requests for a plain login shell in the default working
+ * directory without any additional environment, as returned by {@link #isPoolable(ExecutionCommand, HashMap)}.
+ * All other requests start a new shell like before. The pseudo-terminal window size of a pooled
+ * shell is set when its {@link TerminalSession} is initialized.
+ *
+ * The pool is disabled by default and its size is set by the
+ * {@link com.termux.shared.termux.settings.properties.TermuxPropertyConstants#KEY_SHELL_POOL_SIZE}
+ * property. It is refilled in the background after a shell is claimed, drained when the environment
+ * of the shells may have changed, and should be cleared on memory pressure and when the app exits.
+ */
+public class TermuxSessionPool {
+
+    private static TermuxSessionPool sSessionPool;
+
+    private final ArrayDeque<PooledShell> mShells = new ArrayDeque<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private Context mContext;
+    private int mSize;
+    private String mWorkingDirectory;
+
+    /** Incremented when the pool is drained, so that shells being started before are not added. */
+    private int mGeneration;
+
+    private long mHits;
+    private long mMisses;
+
+    private static final String LOG_TAG = "TermuxSessionPool";
+
+    private TermuxSessionPool() {}
+
+    /** Get the {@link TermuxSessionPool} singleton. */
+    @NonNull
+    public static synchronized TermuxSessionPool getSessionPool() {
+        if (sSessionPool == null)
+            sSessionPool = new TermuxSessionPool();
+        return sSessionPool;
+    }
+
+    /**
+     * Set the size of the pool and fill it in the background. Any extra shells will be killed
+     * if size is lower than the number of shells currently in the pool.
+     *
+     * @param context The {@link Context} to start shells with.
+     * @param size The number of shells to keep started. Pass {@code 0} to disable the pool.
+     */
+    public synchronized void setup(@NonNull Context context, int size) {
+        mContext = context.getApplicationContext();
+        mSize = Math.max(size, 0);
+        mWorkingDirectory = new TermuxShellEnvironment().getDefaultWorkingDirectoryPath();
+        Logger.logDebug(LOG_TAG, "Setting up pool with size " + mSize);
+        trim(mSize);
+        fill();
+    }
+
+    /**
+     * Check whether the {@link ExecutionCommand} can be run in a pooled shell.
+     *
+     * @param executionCommand The {@link ExecutionCommand} to check.
+     * @param additionalEnvironment The additional environment for the command.
+     * @return Returns {@code true} if the command is for a plain login shell, otherwise {@code false}.
+     */
+    public static boolean isPoolable(@NonNull ExecutionCommand executionCommand, @Nullable HashMap<String, String> additionalEnvironment) {
+        return executionCommand.executable == null && !executionCommand.isFailsafe &&
+            (executionCommand.arguments == null || executionCommand.arguments.length == 0) &&
+            executionCommand.shellName == null && executionCommand.setShellCommandShellEnvironment &&
+            (additionalEnvironment == null || additionalEnvironment.isEmpty());
+    }
+
+    /**
+     * Claim a shell from the pool. The caller takes ownership of the shell and the pool is
+     * refilled in the background.
+     *
+     * @param workingDirectory The working directory required by the caller.
+     * @return Returns the {@link PooledShell} if one was available, otherwise {@code null}.
+     */
+    @Nullable
+    public synchronized PooledShell claim(@NonNull String workingDirectory) {
+        if (mSize <= 0) return null;
+
+        PooledShell pooledShell = null;
+        if (workingDirectory.equals(mWorkingDirectory)) {
+            while ((pooledShell = mShells.poll()) != null) {
+                if (pooledShell.isAlive()) break;
+                Logger.logDebug(LOG_TAG, "Discarding pooled shell with pid " + pooledShell.getPid() + " since it has exited");
+                discard(pooledShell);
+            }
+        }
+
+        if (pooledShell != null) mHits++;
+        else mMisses++;
+        Logger.logVerbose(LOG_TAG, getStatsLogString());
+
+        fill();
+        return pooledShell;
+    }
+
+    /** Kill a {@link PooledShell} that was claimed but will not be used, in the background. */
+    public void discard(@NonNull PooledShell pooledShell) {
+        mExecutor.execute(pooledShell::kill);
+    }
+
+    /**
+     * Kill shells until only {@code size} shells remain in the pool. This does not change the
+     * size the pool will be refilled to on the next {@link #claim(String)}.
+     */
+    public synchronized void trim(int size) {
+        List<PooledShell> pooledShells = new ArrayList<>();
+        while (mShells.size() > Math.max(size, 0))
+            pooledShells.add(mShells.pollLast());
+        if (pooledShells.isEmpty()) return;
+
+        Logger.logDebug(LOG_TAG, "Trimming " + pooledShells.size() + " pooled shells");
+        for (PooledShell pooledShell : pooledShells)
+            discard(pooledShell);
+    }
+
+    /** Kill all shells in the pool. */
+    public void clear() {
+        trim(0);
+    }
+
+    /**
+     * Kill all shells in the pool, including the ones being started, and fill it again in the
+     * background. This must be called if the environment the shells are started with may have
+     * changed.
+     */
+    public synchronized void drain() {
+        mGeneration++;
+        trim(0);
+        fill();
+    }
+
+    /** Start shells in the background until the pool is full. */
+    private synchronized void fill() {
+        if (mContext == null || mSize <= 0) return;
+        mExecutor.execute(this::fillPool);
+    }
+
+    private void fillPool() {
+        while (true) {
+            Context context;
+            int generation;
+            synchronized (this) {
+                if (mShells.size() >= mSize) return;
+                context = mContext;
+                generation = mGeneration;
+            }
+
+            PooledShell pooledShell = startShell(context);
+            if (pooledShell == null) return;
+
+            synchronized (this) {
+                if (mShells.size() < mSize && generation == mGeneration) {
+                    mShells.add(pooledShell);
+                    continue;
+                }
+            }
+
+            // Pool was trimmed or drained while the shell was being started
+            pooledShell.kill();
+            return;
+        }
+    }
+
+    @Nullable
+    private static PooledShell startShell(@NonNull Context context) {
+        ExecutionCommand executionCommand = new ExecutionCommand(TermuxShellManager.getNextShellId());
+        executionCommand.runner = Runner.TERMINAL_SESSION.getName();
+        executionCommand.setShellCommandShellEnvironment = true;
+
+        TermuxShellEnvironment shellEnvironment = new TermuxShellEnvironment();
+        executionCommand.workingDirectory = shellEnvironment.getDefaultWorkingDirectoryPath();
+        String[] environmentArray = TermuxSession.setupCommand(context, executionCommand, shellEnvironment, null);
+
+        int[] result = ServiceExecutionManager.nativeStartSession(executionCommand.executable, executionCommand.arguments, environmentArray);
+        if (result == null || result.length < 2 || result[0] <= 0) {
+            Logger.logError(LOG_TAG, "Failed to start pooled shell for " + executionCommand.getCommandIdAndLabelLogString());
+            return null;
+        }
+
+        Logger.logVerbose(LOG_TAG, "Started pooled shell " + executionCommand.getCommandIdAndLabelLogString() + " with pid " + result[0]);
+        return new PooledShell(executionCommand, result[0], result[1]);
+    }
+
+    public synchronized int getPooledShellsCount() {
+        return mShells.size();
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    @NonNull
+    public synchronized String getStatsLogString() {
+        return "Pool size: " + mShells.size() + "/" + mSize + ", hits: " + mHits + ", misses: " + mMisses;
+    }
+
+
+
+    /** A shell started by the {@link TermuxSessionPool}. */
+    public static class PooledShell {
+
+        private final ExecutionCommand mExecutionCommand;
+        private final int mPid;
+        private final int mTerminalFileDescriptor;
+
+        PooledShell(@NonNull ExecutionCommand executionCommand, int pid, int terminalFileDescriptor) {
+            mExecutionCommand = executionCommand;
+            mPid = pid;
+            mTerminalFileDescriptor = terminalFileDescriptor;
+        }
+
+        /** The {@link ExecutionCommand} the shell was started with. */
+        @NonNull
+        public ExecutionCommand getExecutionCommand() {
+            return mExecutionCommand;
+        }
+
+        public int getPid() {
+            return mPid;
+        }
+
+        public int getTerminalFileDescriptor() {
+            return mTerminalFileDescriptor;
+        }
+
+        /** Check if the shell process exists and is not a zombie from its {@code /proc/<pid>/stat}. */
+        boolean isAlive() {
+            try (BufferedReader reader = new BufferedReader(new FileReader("/proc/" + mPid + "/stat"))) {
+                String stat = reader.readLine();
+                if (stat == null) return false;
+                // The state follows the process name, which is in parenthesis and may contain spaces
+                int index = stat.lastIndexOf(')');
+                return index >= 0 && index + 2 < stat.length() && stat.charAt(index + 2) != 'Z';
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /** Kill the shell and wait for it to exit. */
+        void kill() {
+            TerminalSession.killSubprocess(mTerminalFileDescriptor, mPid);
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.termux.shared.termux.shell;
+
+import com.termux.shared.shell.command.ExecutionCommand;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShellRegistryTest {
+
+    private static ExecutionCommand newShell(int id, String shellName) {
+        ExecutionCommand executionCommand = new ExecutionCommand(id);
+        executionCommand.shellName = shellName;
+        return executionCommand;
+    }
+
+    private static ShellRegistry<ExecutionCommand> newRegistry() {
+        return new ShellRegistry<>(executionCommand -> executionCommand, executionCommand -> "handle-" + executionCommand.id);
+    }
+
+    @Test
+    public void testLookup() {
+        ShellRegistry<ExecutionCommand> registry = newRegistry();
+        ExecutionCommand shell1 = newShell(1, "a");
+        ExecutionCommand shell2 = newShell(2, "b");
+        ExecutionCommand shell3 = newShell(3, "a");
+        registry.add(shell1);
+        registry.add(shell2);
+        registry.add(shell3);
+
+        Assert.assertEquals(3, registry.size());
+        Assert.assertSame(shell2, registry.get(1));
+        Assert.assertSame(shell1, registry.getForName("a"));
+        Assert.assertSame(shell2, registry.getForName("b"));
+        Assert.assertNull(registry.getForName("c"));
+        Assert.assertSame(shell3, registry.getForHandle("handle-3"));
+        Assert.assertNull(registry.getForHandle("handle-4"));
+
+        // The next shell with the same name is found once the first is removed
+        Assert.assertTrue(registry.remove(shell1));
+        Assert.assertSame(shell3, registry.getForName("a"));
+        Assert.assertNull(registry.getForHandle("handle-1"));
+        Assert.assertEquals(1, registry.indexOf(shell3));
+    }
+
+    @Test
+    public void testGetOrNullAndGetLast() {
+        ShellRegistry<ExecutionCommand> registry = newRegistry();
+        Assert.assertNull(registry.getOrNull(0));
+        Assert.assertNull(registry.getLast());
+
+        ExecutionCommand shell1 = newShell(1, null);
+        ExecutionCommand shell2 = newShell(2, null);
+        registry.add(shell1);
+        registry.add(shell2);
+        Assert.assertSame(shell1, registry.getOrNull(0));
+        Assert.assertSame(shell2, registry.getOrNull(1));
+        Assert.assertNull(registry.getOrNull(2));
+        Assert.assertNull(registry.getOrNull(-1));
+        Assert.assertSame(shell2, registry.getLast());
+
+        registry.remove(shell2);
+        Assert.assertSame(shell1, registry.getLast());
+    }
+
+    @Test
+    public void testSetShellName() {
+        ShellRegistry<ExecutionCommand> registry = newRegistry();
+        ExecutionCommand shell = newShell(1, "a");
+        registry.add(shell);
+
+        registry.setShellName(shell, "b");
+        Assert.assertEquals("b", shell.shellName);
+        Assert.assertNull(registry.getForName("a"));
+        Assert.assertSame(shell, registry.getForName("b"));
+    }
+
+    @Test
+    public void testSetShellPid() {
+        ShellRegistry<ExecutionCommand> registry = newRegistry();
+        ExecutionCommand shell1 = newShell(1, null);
+        ExecutionCommand shell2 = newShell(2, null);
+        // A pid set before the shell is added is indexed when it is added
+        shell1.mPid = 100;
+        registry.add(shell1);
+        registry.add(shell2);
+        Assert.assertSame(shell1, registry.getForPid(100));
+        Assert.assertNull(registry.getForPid(-1));
+
+        registry.setShellPid(shell2, 200);
+        Assert.assertEquals(200, shell2.mPid);
+        Assert.assertSame(shell2, registry.getForPid(200));
+
+        registry.setShellPid(shell2, 201);
+        Assert.assertNull(registry.getForPid(200));
+        Assert.assertSame(shell2, registry.getForPid(201));
+
+        registry.remove(shell1);
+        Assert.assertNull(registry.getForPid(100));
+
+        // A shell that has not been added is not indexed
+        ExecutionCommand shell3 = newShell(3, null);
+        registry.setShellPid(shell3, 300);
+        Assert.assertEquals(300, shell3.mPid);
+        Assert.assertNull(registry.getForPid(300));
+    }
+
+    @Test
+    public void testIndexOf() {
+        ShellRegistry<ExecutionCommand> registry = newRegistry();
+        ExecutionCommand[] shells = new ExecutionCommand[5];
+        for (int i = 0; i < shells.length; i++) {
+            shells[i] = newShell(i, null);
+            registry.add(shells[i]);
+        }
+        Assert.assertEquals(3, registry.indexOf(shells[3]));
+        Assert.assertEquals(-1, registry.indexOf(newShell(5, null)));
+        Assert.assertEquals(-1, registry.indexOf(null));
+
+        // The indexes of the shells after a removed or inserted shell are updated
+        registry.remove(shells[1]);
+        Assert.assertEquals(-1, registry.indexOf(shells[1]));
+        Assert.assertFalse(registry.contains(shells[1]));
+        Assert.assertEquals(0, registry.indexOf(shells[0]));
+        Assert.assertEquals(2, registry.indexOf(shells[3]));
+        registry.add(0, shells[1]);
+        Assert.assertEquals(0, registry.indexOf(shells[1]));
+        Assert.assertEquals(3, registry.indexOf(shells[3]));
+        for (int i = 0; i < registry.size(); i++)
+            Assert.assertEquals(i, registry.indexOf(registry.get(i)));
+
+        registry.clear();
+        Assert.assertEquals(-1, registry.indexOf(shells[0]));
+    }
+
+    @Test
+    public void testIterationIsSnapshot() {
+        ShellRegistry<ExecutionCommand> registry = newRegistry();
+        for (int i = 0; i < 10; i++)
+            registry.add(newShell(i, null));
+
+        int count = 0;
+        for (ExecutionCommand shell : registry) {
+            // Removing while iterating must not throw ConcurrentModificationException
+            registry.remove(shell);
+            count++;
+        }
+        Assert.assertEquals(10, count);
+        Assert.assertTrue(registry.isEmpty());
+    }
+
+}